@@ -23,7 +23,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.histone.deparser.Deparser;
 import ru.histone.deparser.IDeparser;
+import ru.histone.bundle.AstDiskCache;
 import ru.histone.evaluator.Evaluator;
+import ru.histone.evaluator.compiled.CompiledTemplate;
+import ru.histone.evaluator.compiled.CompiledTemplateCache;
+import ru.histone.evaluator.compiled.CompiledTemplateCacheStatistics;
+import ru.histone.evaluator.output.EarlyFlushTemplateOutput;
+import ru.histone.evaluator.output.FlushPolicy;
+import ru.histone.evaluator.output.OutputStreamTemplateOutput;
+import ru.histone.evaluator.output.TemplateOutput;
+import ru.histone.evaluator.output.WriterTemplateOutput;
 import ru.histone.evaluator.nodes.NodeFactory;
 import ru.histone.optimizer.AbstractASTWalker;
 import ru.histone.optimizer.AdditionalDataForOptimizationDebug;
@@ -36,21 +45,33 @@ import ru.histone.optimizer.OptimizationTrace;
 import ru.histone.optimizer.OptimizationTypes;
 import ru.histone.optimizer.SafeASTEvaluationOptimizer;
 import ru.histone.optimizer.SafeASTNodesMarker;
+import ru.histone.parser.AstInternerStatistics;
+import ru.histone.parser.BinaryAstReader;
+import ru.histone.parser.BinaryAstWriter;
+import ru.histone.parser.CompactAst;
 import ru.histone.parser.Parser;
 import ru.histone.parser.ParserException;
 import ru.histone.resourceloaders.AstResource;
+import ru.histone.resourceloaders.CachingResourceLoader;
 import ru.histone.resourceloaders.ContentType;
+import ru.histone.resourceloaders.HttpCacheStatistics;
+import ru.histone.resourceloaders.HttpResponseCache;
 import ru.histone.resourceloaders.Resource;
+import ru.histone.resourceloaders.ResourceCacheStatistics;
 import ru.histone.resourceloaders.ResourceLoadException;
 import ru.histone.resourceloaders.ResourceLoader;
 import ru.histone.resourceloaders.StreamResource;
 import ru.histone.resourceloaders.StringResource;
 import ru.histone.utils.IOUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
-import java.io.StringReader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -84,6 +105,11 @@ public class Histone {
     private Evaluator evaluator;
     private NodeFactory nodeFactory;
     private ResourceLoader resourceLoader;
+    private CompiledTemplateCache templateCache;
+    private AstDiskCache astDiskCache;
+    private FlushPolicy flushPolicy;
+    private HttpResponseCache httpResponseCache;
+    private BinaryAstReader binaryAstReader;
 
     private final IDeparser deparser = new Deparser();
 
@@ -92,21 +118,22 @@ public class Histone {
         this.evaluator = bootstrap.getEvaluator();
         this.nodeFactory = bootstrap.getNodeFactory();
         this.resourceLoader = bootstrap.getResourceLoader();
+        this.templateCache = bootstrap.getTemplateCache();
+        this.astDiskCache = bootstrap.getAstDiskCache();
+        this.flushPolicy = bootstrap.getFlushPolicy();
+        this.httpResponseCache = bootstrap.getHttpResponseCache();
+        this.binaryAstReader = new BinaryAstReader(nodeFactory);
     }
 
     public ArrayNode parseTemplateToAST(String templateData) throws HistoneException {
-        return parseTemplateToAST(new StringReader(templateData));
+        return parser.parse(templateData);
     }
 
+    /**
+     * Parse template streamed from Reader, template source isn't read into memory as a whole
+     */
     public ArrayNode parseTemplateToAST(Reader templateReader) throws HistoneException {
-        String inputString = null;
-        try {
-            inputString = IOUtils.toString(templateReader);
-        } catch (IOException e) {
-            log.error("Error reading input Reader", e);
-            throw new HistoneException("Error reading input Reader", e);
-        }
-        return parser.parse(inputString);
+        return parser.parse(templateReader);
     }
 
     /**
@@ -348,23 +375,271 @@ public class Histone {
     }
 
     public void evaluateAST(String baseURI, ArrayNode templateAST, JsonNode context, Writer output) throws HistoneException {
+        evaluateCompiled(baseURI, compileAST(templateAST), context, output);
+    }
+
+    /**
+     * Compile template AST into tree of executable nodes.<br/>
+     * Compiled template can be cached and evaluated many times using {@link #evaluateCompiled(String, CompiledTemplate, JsonNode)},
+     * evaluation of compiled template doesn't need JSON representation of AST anymore.
+     *
+     * @param templateAST template AST
+     * @return compiled template
+     */
+    public CompiledTemplate compileAST(ArrayNode templateAST) {
+        return evaluator.compile(templateAST);
+    }
+
+    /**
+     * Write template AST in compact binary format, which can be loaded much faster than JSON.<br/>
+     * Resources with content type {@link ContentType#BINARY_AST} are expected in this format.
+     *
+     * @param templateAST template AST
+     * @param output      output stream, it isn't closed
+     * @throws HistoneException if AST can't be written
+     */
+    public void writeBinaryAST(ArrayNode templateAST, OutputStream output) throws HistoneException {
+        try {
+            new BinaryAstWriter().write(templateAST, output);
+        } catch (IOException e) {
+            throw new HistoneException("Error writing binary AST", e);
+        }
+    }
+
+    /**
+     * Read template AST written by {@link #writeBinaryAST(ArrayNode, OutputStream)}
+     *
+     * @param input input stream, it isn't closed
+     * @return template AST
+     * @throws HistoneException if stream can't be read or doesn't contain binary AST
+     */
+    public ArrayNode readBinaryAST(InputStream input) throws HistoneException {
+        JsonNode ast;
+        try {
+            ast = binaryAstReader.read(input);
+        } catch (IOException e) {
+            throw new HistoneException("Error reading binary AST", e);
+        }
+        if (!ast.isArray()) {
+            throw new HistoneException("Binary AST doesn't contain template");
+        }
+        return (ArrayNode) ast;
+    }
+
+    /**
+     * Read binary template AST and compile it into tree of executable nodes
+     *
+     * @param input input stream, it isn't closed
+     * @return compiled template
+     * @throws HistoneException if stream can't be read or doesn't contain binary AST
+     */
+    public CompiledTemplate compileBinaryAST(InputStream input) throws HistoneException {
+        return compileAST(readBinaryAST(input));
+    }
+
+    /**
+     * Convert template AST into compact immutable form, which occupies much less memory than JSON tree.
+     * Use it to keep many template ASTs resident.
+     *
+     * @param templateAST template AST
+     * @return compact AST
+     */
+    public CompactAst toCompactAST(ArrayNode templateAST) {
+        return CompactAst.fromJson(templateAST);
+    }
+
+    /**
+     * Convert compact AST back into JSON form, e.g. for optimizers, deparser or tooling
+     *
+     * @param templateAST compact template AST
+     * @return template AST
+     * @throws HistoneException if compact AST doesn't contain template
+     */
+    public ArrayNode fromCompactAST(CompactAst templateAST) throws HistoneException {
+        JsonNode ast = templateAST.toJson(nodeFactory);
+        if (!ast.isArray()) {
+            throw new HistoneException("Compact AST doesn't contain template");
+        }
+        return (ArrayNode) ast;
+    }
+
+    /**
+     * Compile compact template AST into tree of executable nodes
+     *
+     * @param templateAST compact template AST
+     * @return compiled template
+     * @throws HistoneException if compact AST doesn't contain template
+     */
+    public CompiledTemplate compileCompactAST(CompactAst templateAST) throws HistoneException {
+        return compileAST(fromCompactAST(templateAST));
+    }
+
+    /**
+     * Parse and compile template source.<br/>
+     * If template cache is enabled, compiled template is taken from cache, and parse errors are remembered for a short time.
+     *
+     * @param templateContent template source
+     * @return compiled template
+     * @throws HistoneException if template can't be parsed
+     */
+    public CompiledTemplate compileTemplate(final String templateContent) throws HistoneException {
+        CompiledTemplateCache.Compilation compilation = new CompiledTemplateCache.Compilation() {
+            @Override
+            public CompiledTemplate compile() throws HistoneException {
+                return compileAST(loadTemplateAST(templateContent));
+            }
+        };
+        if (templateCache == null) {
+            return compilation.compile();
+        }
+        return templateCache.get(templateContent, templateContent.length(), compilation);
+    }
+
+    /**
+     * Return AST of template source, taking it from persistent AST cache if it's enabled.<br/>
+     * On cache miss template is parsed, optimized with cache optimizations and stored in cache.
+     *
+     * @param templateContent template source
+     * @return template AST
+     * @throws HistoneException if template can't be parsed
+     */
+    public ArrayNode loadTemplateAST(String templateContent) throws HistoneException {
+        if (astDiskCache == null) {
+            return parser.parse(templateContent);
+        }
+        ArrayNode ast = astDiskCache.get(templateContent);
+        if (ast != null && parser.getInterner() != null) {
+            parser.getInterner().intern(ast);
+        }
+        if (ast == null) {
+            ast = parser.parse(templateContent);
+            OptimizationTypes[] optimizations = astDiskCache.getOptimizations();
+            if (optimizations.length > 0) {
+                ast = optimizeAST(ast, optimizations);
+            }
+            astDiskCache.put(templateContent, ast);
+        }
+        return ast;
+    }
+
+    /**
+     * Return statistics of values deduplicated among parsed templates
+     *
+     * @return statistics snapshot, null if interning is disabled
+     */
+    public AstInternerStatistics getAstInternerStatistics() {
+        return (parser.getInterner() == null) ? null : parser.getInterner().getStatistics();
+    }
+
+    /**
+     * @return persistent AST cache, null if it's disabled
+     */
+    public AstDiskCache getAstDiskCache() {
+        return astDiskCache;
+    }
+
+    /**
+     * Return template cache usage statistics
+     *
+     * @return statistics snapshot, null if template cache is disabled
+     */
+    public CompiledTemplateCacheStatistics getTemplateCacheStatistics() {
+        return (templateCache == null) ? null : templateCache.getStatistics();
+    }
+
+    /**
+     * Return statistics of resource cache, see {@link HistoneBuilder#setResourceCacheSize(int)}
+     *
+     * @return statistics snapshot, null if resource cache is disabled
+     */
+    public ResourceCacheStatistics getResourceCacheStatistics() {
+        return (resourceLoader instanceof CachingResourceLoader) ? ((CachingResourceLoader) resourceLoader).getStatistics() : null;
+    }
+
+    /**
+     * Return statistics of HTTP response cache, see {@link HistoneBuilder#setHttpCacheSize(long)}
+     *
+     * @return statistics snapshot, null if HTTP response cache is disabled
+     */
+    public HttpCacheStatistics getHttpCacheStatistics() {
+        return (httpResponseCache == null) ? null : httpResponseCache.getStatistics();
+    }
+
+    /**
+     * Remove all templates from template cache
+     */
+    public void clearTemplateCache() {
+        if (templateCache != null) {
+            templateCache.clear();
+        }
+    }
+
+    public String evaluateCompiled(String baseURI, CompiledTemplate template, JsonNode context) throws HistoneException {
+        if (context == null) context = nodeFactory.jsonObject();
+        return evaluator.process(baseURI, template, context);
+    }
+
+    /**
+     * Evaluate compiled template writing result directly into output Writer
+     */
+    public void evaluateCompiled(String baseURI, CompiledTemplate template, JsonNode context, Writer output) throws HistoneException {
         if (context == null) context = nodeFactory.jsonObject();
-        String result = evaluateAST(baseURI, templateAST, context);
         try {
-            output.write(result);
+            evaluator.process(baseURI, template, context, streamed(new WriterTemplateOutput(output)));
         } catch (IOException e) {
             throw new HistoneException("Error writing to output Writer", e);
         }
     }
 
+    /**
+     * Evaluate compiled template writing result directly into output stream in specified charset.<br/>
+     * Static text of template is written as pre-encoded bytes, only dynamic values are encoded.
+     */
+    public void evaluateCompiled(String baseURI, CompiledTemplate template, JsonNode context, OutputStream output,
+                                 Charset charset) throws HistoneException {
+        if (context == null) context = nodeFactory.jsonObject();
+        TemplateOutput templateOutput = streamed(new OutputStreamTemplateOutput(output, charset));
+        try {
+            evaluator.process(baseURI, template, context, templateOutput);
+            templateOutput.finish();
+        } catch (IOException e) {
+            throw new HistoneException("Error writing to output stream", e);
+        }
+    }
+
+    /**
+     * Wrap output into one flushing it early, if flush policy is set
+     */
+    private TemplateOutput streamed(TemplateOutput output) {
+        return (flushPolicy == null) ? output : new EarlyFlushTemplateOutput(output, flushPolicy);
+    }
+
+    /**
+     * Evaluate compiled template into bytes in specified charset
+     *
+     * @return buffer with evaluation result, ready for reading
+     */
+    public ByteBuffer evaluateCompiledToBytes(String baseURI, CompiledTemplate template, JsonNode context,
+                                              Charset charset) throws HistoneException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        evaluateCompiled(baseURI, template, context, output, charset);
+        return ByteBuffer.wrap(output.toByteArray());
+    }
+
+    /**
+     * Evaluate template writing result directly into output stream in specified charset
+     */
+    public void evaluate(String baseURI, String templateContent, JsonNode context, OutputStream output,
+                         Charset charset) throws HistoneException {
+        evaluateCompiled(baseURI, compileTemplate(templateContent), context, output, charset);
+    }
+
     /**
      * Main function for Histone template evaluation.
      */
     public String evaluate(String baseURI, String templateContent, JsonNode context) throws HistoneException {
         if (context == null) context = nodeFactory.jsonObject();
-        ArrayNode ast = parser.parse(templateContent);
-//        ArrayNode optimizedAst = optimizeAST(ast);
-        return evaluator.process(baseURI, ast, context);
+        return evaluator.process(baseURI, compileTemplate(templateContent), context);
     }
 
     public ArrayNode evaluateAsAST(String baseURI, String templateContent, JsonNode context) throws HistoneException {
@@ -398,23 +673,29 @@ public class Histone {
 
     public String evaluate(String baseURI, Reader templateReader, JsonNode context) throws HistoneException {
         if (context == null) context = nodeFactory.jsonObject();
-        String templateContent = null;
-        try {
-            templateContent = IOUtils.toString(templateReader);
-        } catch (IOException e) {
-            throw new HistoneException("Error reading input Reader");
-        }
-        return evaluate(baseURI, templateContent, context);
+        return evaluator.process(baseURI, compileTemplate(templateReader), context);
     }
 
     public void evaluate(String baseURI, Reader templateReader, JsonNode context, Writer outputWriter) throws HistoneException {
-        if (context == null) context = nodeFactory.jsonObject();
-        String result = evaluate(baseURI, templateReader, context);
+        evaluateCompiled(baseURI, compileTemplate(templateReader), context, outputWriter);
+    }
+
+    /**
+     * Compile template from Reader<br/>
+     * Template and AST caches are keyed by template source, so with any of them enabled the whole source is read first,
+     * otherwise template is parsed while it's streamed from Reader.
+     */
+    private CompiledTemplate compileTemplate(Reader templateReader) throws HistoneException {
+        if (templateCache == null && astDiskCache == null) {
+            return compileAST(parser.parse(templateReader));
+        }
+        String templateContent = null;
         try {
-            outputWriter.write(result);
+            templateContent = IOUtils.toString(templateReader);
         } catch (IOException e) {
-            throw new HistoneException("Error writing to output Writer", e);
+            throw new HistoneException("Error reading input Reader", e);
         }
+        return compileTemplate(templateContent);
     }
 
     public void setGlobalProperty(GlobalProperty property, String value) {
@@ -495,6 +776,8 @@ public class Histone {
             String templateContent = null;
             if (resource instanceof StringResource) {
                 templateContent = ((StringResource) resource).getContent();
+            } else if (resource instanceof StreamResource && resource.getContentType() == ContentType.BINARY_AST) {
+                ast = binaryAstReader.read(((StreamResource) resource).getContent());
             } else if (resource instanceof StreamResource) {
                 templateContent = IOUtils.toString(((StreamResource) resource).getContent());
             } else if (resource instanceof AstResource) {
@@ -503,7 +786,7 @@ public class Histone {
                 throw new ResourceLoadException(MessageFormat.format("Unsupported resource class: {0}", resource.getClass()));
             }
 
-            if (resource instanceof StringResource || resource instanceof StreamResource) {
+            if (ast == null && (resource instanceof StringResource || resource instanceof StreamResource)) {
                 if (templateContent == null) {
                     throw new ResourceLoadException(MessageFormat.format("Can't import resource by path: {0}. Resource is unreadable", path));
                 }
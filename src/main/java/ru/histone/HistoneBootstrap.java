@@ -15,9 +15,13 @@
  */
 package ru.histone;
 
+import ru.histone.bundle.AstDiskCache;
 import ru.histone.evaluator.Evaluator;
+import ru.histone.evaluator.compiled.CompiledTemplateCache;
 import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.evaluator.output.FlushPolicy;
 import ru.histone.parser.Parser;
+import ru.histone.resourceloaders.HttpResponseCache;
 import ru.histone.resourceloaders.ResourceLoader;
 
 public class HistoneBootstrap {
@@ -25,6 +29,10 @@ public class HistoneBootstrap {
     private Evaluator evaluator;
     private NodeFactory nodeFactory;
     private ResourceLoader resourceLoader;
+    private CompiledTemplateCache templateCache;
+    private AstDiskCache astDiskCache;
+    private FlushPolicy flushPolicy;
+    private HttpResponseCache httpResponseCache;
 
     public Parser getParser() {
         return parser;
@@ -58,6 +66,38 @@ public class HistoneBootstrap {
         this.resourceLoader = resourceLoader;
     }
 
+    public CompiledTemplateCache getTemplateCache() {
+        return templateCache;
+    }
+
+    public void setTemplateCache(CompiledTemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
+
+    public AstDiskCache getAstDiskCache() {
+        return astDiskCache;
+    }
+
+    public void setAstDiskCache(AstDiskCache astDiskCache) {
+        this.astDiskCache = astDiskCache;
+    }
+
+    public FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
+
+    public HttpResponseCache getHttpResponseCache() {
+        return httpResponseCache;
+    }
+
+    public void setHttpResponseCache(HttpResponseCache httpResponseCache) {
+        this.httpResponseCache = httpResponseCache;
+    }
+
 }
 
 
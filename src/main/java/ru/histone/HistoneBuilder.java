@@ -19,12 +19,13 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.impl.conn.BasicClientConnectionManager;
-import org.apache.http.impl.conn.SchemeRegistryFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.histone.bundle.AstDiskCache;
 import ru.histone.evaluator.Evaluator;
 import ru.histone.evaluator.EvaluatorBootstrap;
+import ru.histone.evaluator.compiled.CompilationMode;
+import ru.histone.evaluator.compiled.CompiledTemplateCache;
 import ru.histone.evaluator.functions.global.GlobalFunction;
 import ru.histone.evaluator.functions.global.GlobalFunctionsManager;
 import ru.histone.evaluator.functions.node.NodeFunction;
@@ -32,15 +33,23 @@ import ru.histone.evaluator.functions.node.NodeFunctionsManager;
 import ru.histone.evaluator.nodes.GlobalObjectNode;
 import ru.histone.evaluator.nodes.Node;
 import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.evaluator.output.FlushPolicy;
 import ru.histone.optimizer.AstImportResolver;
+import ru.histone.optimizer.OptimizationTypes;
+import ru.histone.parser.AstInterner;
 import ru.histone.parser.Parser;
+import ru.histone.resourceloaders.CachingResourceLoader;
 import ru.histone.resourceloaders.DefaultResourceLoader;
+import ru.histone.resourceloaders.HttpResponseCache;
+import ru.histone.resourceloaders.PooledHttpConnectionManager;
 import ru.histone.resourceloaders.ResourceLoader;
 import ru.histone.tokenizer.TokenizerFactory;
 
+import java.io.File;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -63,17 +72,69 @@ import java.util.concurrent.ConcurrentHashMap;
 public class HistoneBuilder {
     private static final Logger log = LoggerFactory.getLogger(HistoneBuilder.class);
 
+    /**
+     * Default number of evaluations of compiled template, after which it's compiled into bytecode
+     */
+    public static final int DEFAULT_BYTECODE_COMPILATION_THRESHOLD = 100;
+
+    /**
+     * Default maximum number of templates in compiled template cache
+     */
+    public static final int DEFAULT_TEMPLATE_CACHE_SIZE = 512;
+
+    /**
+     * Default maximum total length of sources of templates in compiled template cache
+     */
+    public static final long DEFAULT_TEMPLATE_CACHE_WEIGHT = 8 * 1024 * 1024;
+
+    /**
+     * Default time in milliseconds, during which template parse errors are cached
+     */
+    public static final long DEFAULT_TEMPLATE_CACHE_FAILURE_TTL = 1000;
+
+    /**
+     * Default maximum total weight of templates in resource cache
+     */
+    public static final long DEFAULT_RESOURCE_CACHE_WEIGHT = 4 * 1024 * 1024;
+
+    /**
+     * Default minimal interval in milliseconds between modification checks of cached template files
+     */
+    public static final long DEFAULT_RESOURCE_CACHE_CHECK_INTERVAL = 1000;
+
     //    private Gson gson = new Gson();
     private NodeFactory nodeFactory = new NodeFactory(new ObjectMapper());
 
     private ConcurrentHashMap<GlobalProperty, Node> globalProperties = new ConcurrentHashMap<GlobalProperty, Node>();
     private ConcurrentHashMap<String, GlobalFunction> globalFunctions = new ConcurrentHashMap<String, GlobalFunction>();
     private ConcurrentHashMap<Class<? extends Node>, ConcurrentHashMap<String, NodeFunction>> nodeFunctions = new ConcurrentHashMap<Class<? extends Node>, ConcurrentHashMap<String, NodeFunction>>();
-    private ResourceLoader resourceLoader = new DefaultResourceLoader();
-    private ClientConnectionManager httpClientConnectionManager = new BasicClientConnectionManager(SchemeRegistryFactory.createDefault());
+    private final DefaultResourceLoader defaultResourceLoader = new DefaultResourceLoader();
+    private ResourceLoader resourceLoader = defaultResourceLoader;
+    private ClientConnectionManager httpClientConnectionManager;
+    private int httpMaxConnections = DefaultResourceLoader.DEFAULT_MAX_CONNECTIONS;
+    private int httpMaxConnectionsPerRoute = DefaultResourceLoader.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private long httpIdleTimeout = DefaultResourceLoader.DEFAULT_IDLE_TIMEOUT;
+    private int httpConnectTimeout = DefaultResourceLoader.DEFAULT_CONNECT_TIMEOUT;
+    private int httpReadTimeout = DefaultResourceLoader.DEFAULT_READ_TIMEOUT;
+    private boolean httpRequestCoalescing = true;
+    private long httpCacheSize;
+    private final Map<String, Long> httpCacheOverrides = new LinkedHashMap<String, Long>();
+    private HttpResponseCache httpResponseCache;
+    private CompilationMode compilationMode = CompilationMode.TREE;
+    private int bytecodeCompilationThreshold = DEFAULT_BYTECODE_COMPILATION_THRESHOLD;
+    private int templateCacheSize = DEFAULT_TEMPLATE_CACHE_SIZE;
+    private long templateCacheWeight = DEFAULT_TEMPLATE_CACHE_WEIGHT;
+    private long templateCacheFailureTtl = DEFAULT_TEMPLATE_CACHE_FAILURE_TTL;
+    private File astCacheDirectory;
+    private OptimizationTypes[] astCacheOptimizations = new OptimizationTypes[0];
+    private FlushPolicy flushPolicy;
+    private int resourceCacheSize;
+    private long resourceCacheWeight = DEFAULT_RESOURCE_CACHE_WEIGHT;
+    private long resourceCacheCheckInterval = DEFAULT_RESOURCE_CACHE_CHECK_INTERVAL;
+    private long resourceCacheTtl;
+    private boolean astInterning = true;
 
     public HistoneBuilder() {
-        ((DefaultResourceLoader) resourceLoader).setHttpClientConnectionManager(httpClientConnectionManager);
     }
 
     /**
@@ -96,7 +157,9 @@ public class HistoneBuilder {
     }
 
     /**
-     * Set custom resource loader
+     * Set custom resource loader<br/>
+     * HTTP timeouts, request coalescing and HTTP response cache of this builder are applied only to its default
+     * resource loader, custom {@link DefaultResourceLoader} keeps its own settings.
      *
      * @param resourceLoader custom resource loader to use
      * @throws IllegalArgumentException if resource loader object is null
@@ -109,7 +172,9 @@ public class HistoneBuilder {
     }
 
     /**
-     * Set custom Http client connection manager
+     * Set custom Http client connection manager<br/>
+     * By default {@link PooledHttpConnectionManager} is created on first {@link #build()} and is shared by all
+     * Histone instances built by this builder.
      *
      * @param httpClientConnectionManager
      */
@@ -117,6 +182,239 @@ public class HistoneBuilder {
         this.httpClientConnectionManager = httpClientConnectionManager;
     }
 
+    /**
+     * Set maximum number of pooled HTTP connections of default connection manager
+     *
+     * @param httpMaxConnections maximum number of connections
+     */
+    public void setHttpMaxConnections(int httpMaxConnections) {
+        this.httpMaxConnections = httpMaxConnections;
+    }
+
+    /**
+     * Set maximum number of pooled HTTP connections to one host of default connection manager
+     *
+     * @param httpMaxConnectionsPerRoute maximum number of connections per route
+     */
+    public void setHttpMaxConnectionsPerRoute(int httpMaxConnectionsPerRoute) {
+        this.httpMaxConnectionsPerRoute = httpMaxConnectionsPerRoute;
+    }
+
+    /**
+     * Set time, after which idle HTTP connection of default connection manager is closed
+     *
+     * @param httpIdleTimeout time in milliseconds, 0 disables closing of idle connections
+     */
+    public void setHttpIdleTimeout(long httpIdleTimeout) {
+        this.httpIdleTimeout = httpIdleTimeout;
+    }
+
+    /**
+     * Set HTTP connect timeout of default resource loader
+     *
+     * @param httpConnectTimeout timeout in milliseconds, 0 means no timeout
+     */
+    public void setHttpConnectTimeout(int httpConnectTimeout) {
+        this.httpConnectTimeout = httpConnectTimeout;
+    }
+
+    /**
+     * Set HTTP read timeout of default resource loader
+     *
+     * @param httpReadTimeout timeout in milliseconds, 0 means no timeout
+     */
+    public void setHttpReadTimeout(int httpReadTimeout) {
+        this.httpReadTimeout = httpReadTimeout;
+    }
+
+    /**
+     * Enable or disable coalescing of concurrent identical HTTP requests, see {@link DefaultResourceLoader#setRequestCoalescing(boolean)}
+     *
+     * @param httpRequestCoalescing true to share one in-flight request between identical concurrent loads (default)
+     */
+    public void setHttpRequestCoalescing(boolean httpRequestCoalescing) {
+        this.httpRequestCoalescing = httpRequestCoalescing;
+    }
+
+    /**
+     * Set maximum total size of HTTP response cache<br/>
+     * GET responses of loadJSON, loadText and include are cached according to their caching headers, see {@link HttpResponseCache}.
+     * Cache is created on first {@link #build()} and is shared by all Histone instances built by this builder.
+     *
+     * @param httpCacheSize maximum size in bytes, 0 disables cache (default)
+     */
+    public void setHttpCacheSize(long httpCacheSize) {
+        this.httpCacheSize = httpCacheSize;
+    }
+
+    /**
+     * Override freshness of cached HTTP responses, which URL starts with specified prefix
+     *
+     * @param urlPrefix URL prefix
+     * @param ttl       time in milliseconds, during which response is fresh regardless of its headers, 0 disables caching
+     */
+    public void setHttpCacheOverride(String urlPrefix, long ttl) {
+        httpCacheOverrides.put(urlPrefix, ttl);
+    }
+
+    /**
+     * Set freshness overrides of cached HTTP responses, see {@link #setHttpCacheOverride(String, long)}
+     *
+     * @param httpCacheOverrides time in milliseconds by URL prefix
+     */
+    public void setHttpCacheOverrides(Map<String, Long> httpCacheOverrides) {
+        this.httpCacheOverrides.clear();
+        this.httpCacheOverrides.putAll(httpCacheOverrides);
+    }
+
+    /**
+     * Return HTTP connection manager used by built Histone instances, default one is created on first call
+     */
+    public synchronized ClientConnectionManager getHttpClientConnectionManager() {
+        if (httpClientConnectionManager == null) {
+            httpClientConnectionManager = new PooledHttpConnectionManager(httpMaxConnections, httpMaxConnectionsPerRoute, httpIdleTimeout);
+        }
+        return httpClientConnectionManager;
+    }
+
+    /**
+     * Set template compilation backend<br/>
+     * With {@link CompilationMode#BYTECODE} templates compiled by {@link Histone#compileAST} are compiled into JVM classes
+     * after they have been evaluated {@link #setBytecodeCompilationThreshold threshold} times.
+     *
+     * @param compilationMode compilation backend
+     */
+    public void setCompilationMode(CompilationMode compilationMode) {
+        if (compilationMode == null) {
+            throw new IllegalArgumentException("Compilation mode can't be null");
+        }
+        this.compilationMode = compilationMode;
+    }
+
+    /**
+     * Set number of evaluations of compiled template, after which it's compiled into bytecode
+     *
+     * @param bytecodeCompilationThreshold number of evaluations, 0 or 1 means compile on first evaluation
+     */
+    public void setBytecodeCompilationThreshold(int bytecodeCompilationThreshold) {
+        this.bytecodeCompilationThreshold = bytecodeCompilationThreshold;
+    }
+
+    /**
+     * Set maximum number of templates in compiled template cache<br/>
+     * Cache is used by {@link Histone#evaluate} and {@link Histone#compileTemplate} methods, templates are identified by their source.
+     *
+     * @param templateCacheSize maximum number of templates, 0 disables cache
+     */
+    public void setTemplateCacheSize(int templateCacheSize) {
+        this.templateCacheSize = templateCacheSize;
+    }
+
+    /**
+     * Set maximum total length of sources of templates in compiled template cache
+     *
+     * @param templateCacheWeight maximum total length, templates longer than it aren't cached
+     */
+    public void setTemplateCacheWeight(long templateCacheWeight) {
+        if (templateCacheWeight <= 0) {
+            throw new IllegalArgumentException("Template cache weight should be positive");
+        }
+        this.templateCacheWeight = templateCacheWeight;
+    }
+
+    /**
+     * Set time, during which template parse errors are cached
+     *
+     * @param templateCacheFailureTtl time in milliseconds, 0 disables caching of parse errors
+     */
+    public void setTemplateCacheFailureTtl(long templateCacheFailureTtl) {
+        this.templateCacheFailureTtl = templateCacheFailureTtl;
+    }
+
+    /**
+     * Set maximum number of templates in resource cache<br/>
+     * Templates loaded by resource loader for import, include and require are cached parsed, see {@link CachingResourceLoader}.
+     *
+     * @param resourceCacheSize maximum number of templates, 0 disables cache (default)
+     */
+    public void setResourceCacheSize(int resourceCacheSize) {
+        this.resourceCacheSize = resourceCacheSize;
+    }
+
+    /**
+     * Set maximum total weight (number of AST nodes plus length of strings) of templates in resource cache
+     *
+     * @param resourceCacheWeight maximum total weight
+     */
+    public void setResourceCacheWeight(long resourceCacheWeight) {
+        if (resourceCacheWeight <= 0) {
+            throw new IllegalArgumentException("Resource cache weight should be positive");
+        }
+        this.resourceCacheWeight = resourceCacheWeight;
+    }
+
+    /**
+     * Set minimal interval between checks, that cached template file wasn't modified
+     *
+     * @param resourceCacheCheckInterval interval in milliseconds, 0 checks file on every access
+     */
+    public void setResourceCacheCheckInterval(long resourceCacheCheckInterval) {
+        this.resourceCacheCheckInterval = resourceCacheCheckInterval;
+    }
+
+    /**
+     * Set time to live of cached templates, that aren't files (e.g. loaded by HTTP)
+     *
+     * @param resourceCacheTtl time in milliseconds, 0 disables caching of such templates (default)
+     */
+    public void setResourceCacheTtl(long resourceCacheTtl) {
+        this.resourceCacheTtl = resourceCacheTtl;
+    }
+
+    /**
+     * Set directory of persistent AST cache<br/>
+     * Parsed and optimized ASTs of templates evaluated by {@link Histone#evaluate} and {@link Histone#compileTemplate}
+     * methods are stored there, so restarted instances don't need to parse templates again.
+     *
+     * @param astCacheDirectory cache directory, null disables cache
+     */
+    public void setAstCacheDirectory(File astCacheDirectory) {
+        this.astCacheDirectory = astCacheDirectory;
+    }
+
+    /**
+     * Set optimizations, which are applied to templates before they are stored in persistent AST cache<br/>
+     * Only {@link OptimizationTypes#FRAGMENT_CONCATENATION} and {@link OptimizationTypes#ELIMINATE_SINGLE_NODE} are
+     * supported: results of other optimizations depend on configuration of Histone instance, see {@link AstDiskCache}.
+     *
+     * @param astCacheOptimizations optimizations, none by default
+     * @throws IllegalArgumentException if optimizations contain null or unsupported optimization
+     */
+    public void setAstCacheOptimizations(OptimizationTypes... astCacheOptimizations) {
+        AstDiskCache.checkOptimizations(astCacheOptimizations);
+        this.astCacheOptimizations = astCacheOptimizations.clone();
+    }
+
+    /**
+     * Enable interning of strings and number literals of parsed templates<br/>
+     * Identical values of all templates of Histone instance are stored once, see {@link AstInterner}.
+     *
+     * @param astInterning true to intern values, enabled by default
+     */
+    public void setAstInterning(boolean astInterning) {
+        this.astInterning = astInterning;
+    }
+
+    /**
+     * Enable early flushing of output, when template is evaluated into Writer or OutputStream<br/>
+     * Output is flushed at points specified by policy, so beginning of page reaches client before the whole template is evaluated.
+     *
+     * @param flushPolicy flush policy, null disables early flushing (default)
+     */
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
+
     /**
      * Update all global functions in HistoneBuilder<br/>
      * This method removes all previously added global functions and adds new from specified Set
@@ -314,10 +612,21 @@ public class HistoneBuilder {
 
         TokenizerFactory tokenizerFactory = new TokenizerFactory(HistoneTokensHolder.getTokens());
         Parser parser = new Parser(tokenizerFactory, nodeFactory);
+        if (astInterning) {
+            parser.setInterner(new AstInterner());
+        }
 
         EvaluatorBootstrap evaluatorBootstrap = new EvaluatorBootstrap();
         evaluatorBootstrap.setNodeFactory(nodeFactory);
         evaluatorBootstrap.setParser(parser);
+        evaluatorBootstrap.setCompilationMode(compilationMode);
+        evaluatorBootstrap.setBytecodeCompilationThreshold(bytecodeCompilationThreshold);
+        // templates compiled from source, resources and eval() share one cache
+        CompiledTemplateCache templateCache = null;
+        if (templateCacheSize > 0) {
+            templateCache = new CompiledTemplateCache(templateCacheSize, templateCacheWeight, templateCacheFailureTtl);
+        }
+        evaluatorBootstrap.setTemplateCache(templateCache);
         URI baseURI = extractBaseURI(globalProperties);
         if (baseURI != null) {
             if (!baseURI.isAbsolute()) {
@@ -331,9 +640,20 @@ public class HistoneBuilder {
         NodeFunctionsManager nodeFunctionsManager = new NodeFunctionsManager(nodeFunctions);
 
         if (resourceLoader instanceof DefaultResourceLoader) {
-            ((DefaultResourceLoader) resourceLoader).setHttpClientConnectionManager(httpClientConnectionManager);
+            ((DefaultResourceLoader) resourceLoader).setHttpClientConnectionManager(getHttpClientConnectionManager());
         }
-        evaluatorBootstrap.setResourceLoader(resourceLoader);
+        if (resourceLoader == defaultResourceLoader) {
+            defaultResourceLoader.setConnectTimeout(httpConnectTimeout);
+            defaultResourceLoader.setReadTimeout(httpReadTimeout);
+            defaultResourceLoader.setRequestCoalescing(httpRequestCoalescing);
+            defaultResourceLoader.setHttpResponseCache(getHttpResponseCache());
+        }
+        ResourceLoader loader = resourceLoader;
+        if (resourceCacheSize > 0) {
+            loader = new CachingResourceLoader(resourceLoader, resourceCacheSize, resourceCacheWeight,
+                    resourceCacheCheckInterval, resourceCacheTtl);
+        }
+        evaluatorBootstrap.setResourceLoader(loader);
         evaluatorBootstrap.setGlobalFunctionsManager(globalFunctionsManager);
         evaluatorBootstrap.setNodeFunctionsManager(nodeFunctionsManager);
 
@@ -345,17 +665,35 @@ public class HistoneBuilder {
 
         Evaluator evaluator = new Evaluator(evaluatorBootstrap);
 
-        AstImportResolver astImportResolver = new AstImportResolver(parser, resourceLoader, nodeFactory);
+        AstImportResolver astImportResolver = new AstImportResolver(parser, loader, nodeFactory);
 
         HistoneBootstrap histoneBootstrap = new HistoneBootstrap();
         histoneBootstrap.setNodeFactory(nodeFactory);
         histoneBootstrap.setParser(parser);
         histoneBootstrap.setEvaluator(evaluator);
-        histoneBootstrap.setResourceLoader(new DefaultResourceLoader());
+        histoneBootstrap.setResourceLoader(loader);
+        histoneBootstrap.setTemplateCache(templateCache);
+        if (astCacheDirectory != null) {
+            histoneBootstrap.setAstDiskCache(new AstDiskCache(astCacheDirectory, nodeFactory, astCacheOptimizations));
+        }
+        histoneBootstrap.setFlushPolicy(flushPolicy);
+        if (resourceLoader instanceof DefaultResourceLoader) {
+            histoneBootstrap.setHttpResponseCache(((DefaultResourceLoader) resourceLoader).getHttpResponseCache());
+        }
 
         return new Histone(histoneBootstrap);
     }
 
+    private synchronized HttpResponseCache getHttpResponseCache() {
+        if (httpResponseCache == null && httpCacheSize > 0) {
+            httpResponseCache = new HttpResponseCache(httpCacheSize);
+        }
+        if (httpResponseCache != null) {
+            httpResponseCache.setOverrides(httpCacheOverrides);
+        }
+        return httpResponseCache;
+    }
+
     private URI extractBaseURI(Map<GlobalProperty, Node> globalProperties) throws HistoneException {
         try {
             Node node = globalProperties.get(GlobalProperty.BASE_URI);
@@ -27,9 +27,20 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 
+import static ru.histone.tokenizer.TokenMatchers.anyOf;
+import static ru.histone.tokenizer.TokenMatchers.digits;
+import static ru.histone.tokenizer.TokenMatchers.exponent;
+import static ru.histone.tokenizer.TokenMatchers.fraction;
+import static ru.histone.tokenizer.TokenMatchers.identifier;
+import static ru.histone.tokenizer.TokenMatchers.keyword;
+import static ru.histone.tokenizer.TokenMatchers.literal;
+import static ru.histone.tokenizer.TokenMatchers.quoted;
+import static ru.histone.tokenizer.TokenMatchers.whitespaces;
+
 /**
  * This class stores all tokens that exists in Histone syntax<br/>
- * All tokens are defined using {@link TokenDef} class and consists of four parts: token name, kind, context, and regexp.
+ * All tokens are defined using {@link TokenDef} class and consists of four parts: token name, kind, context, and matcher.
+ * Matchers are created by {@link ru.histone.tokenizer.TokenMatchers}, each of them is equivalent to simple regexp.
  * For more details see {@link TokenDef}
  *
  * @see TokenDef
@@ -48,11 +59,11 @@ public final class HistoneTokensHolder {
 
     private static final List<TokenDef> tokens = Collections.unmodifiableList(new ArrayList<TokenDef>() {
         {
-            add(new TokenDef(TokenType.T_COMMENT_START, TokenKind.TOKEN, TokenContext.TEMPLATE, TokenContext.COMMENT, "\\Q{{*\\E"));
-            add(new TokenDef(TokenType.T_COMMENT_END, TokenKind.TOKEN, TokenContext.COMMENT, TokenContext.TEMPLATE, "\\Q*}}\\E"));
+            add(new TokenDef(TokenType.T_COMMENT_START, TokenKind.TOKEN, TokenContext.TEMPLATE, TokenContext.COMMENT, literal("{{*")));
+            add(new TokenDef(TokenType.T_COMMENT_END, TokenKind.TOKEN, TokenContext.COMMENT, TokenContext.TEMPLATE, literal("*}}")));
 
-            add(new TokenDef(TokenType.T_LITERAL_START, TokenKind.TOKEN, TokenContext.TEMPLATE, TokenContext.LITERAL, "\\Q{{%\\E"));
-            add(new TokenDef(TokenType.T_LITERAL_END, TokenKind.TOKEN, TokenContext.LITERAL, TokenContext.TEMPLATE, "\\Q%}}\\E"));
+            add(new TokenDef(TokenType.T_LITERAL_START, TokenKind.TOKEN, TokenContext.TEMPLATE, TokenContext.LITERAL, literal("{{%")));
+            add(new TokenDef(TokenType.T_LITERAL_END, TokenKind.TOKEN, TokenContext.LITERAL, TokenContext.TEMPLATE, literal("%}}")));
 
             add(new TokenDef(TokenType.T_BLOCK_START, TokenKind.TOKEN, collection(TokenContext.TEMPLATE, TokenContext.EXPRESSION), new TokenTransitionCallback() {
                 @Override
@@ -61,7 +72,7 @@ public final class HistoneTokensHolder {
                     nestLevelHolder.nestLevel++;
                     return result;
                 }
-            }, "\\Q{{\\E"));
+            }, literal("{{")));
 
             add(new TokenDef(TokenType.T_BLOCK_END, TokenKind.TOKEN, collection(TokenContext.TEMPLATE, TokenContext.EXPRESSION), new TokenTransitionCallback() {
                 @Override
@@ -71,61 +82,61 @@ public final class HistoneTokensHolder {
                     nestLevelHolder.nestLevel--;
                     return result;
                 }
-            }, "\\Q}}\\E"));
-
-            add(new TokenDef(TokenType.EXPR_IF, TokenKind.LITERAL, TokenContext.EXPRESSION, "if\\b"));
-            add(new TokenDef(TokenType.EXPR_ELSEIF, TokenKind.LITERAL, TokenContext.EXPRESSION, "elseif\\b"));
-            add(new TokenDef(TokenType.EXPR_ELSE, TokenKind.LITERAL, TokenContext.EXPRESSION, "else\\b"));
-            add(new TokenDef(TokenType.EXPR_FOR, TokenKind.LITERAL, TokenContext.EXPRESSION, "for\\b"));
-            add(new TokenDef(TokenType.EXPR_IN, TokenKind.LITERAL, TokenContext.EXPRESSION, "in\\b"));
-            add(new TokenDef(TokenType.EXPR_VAR, TokenKind.LITERAL, TokenContext.EXPRESSION, "var\\b"));
-            add(new TokenDef(TokenType.EXPR_MACRO, TokenKind.LITERAL, TokenContext.EXPRESSION, "macro\\b"));
-            add(new TokenDef(TokenType.EXPRT_IMPORT, TokenKind.LITERAL, TokenContext.EXPRESSION, "import\\b"));
-
-            add(new TokenDef(TokenType.EXPR_THIS, TokenKind.LITERAL, TokenContext.EXPRESSION, "this\\b"));
-            add(new TokenDef(TokenType.EXPR_SELF, TokenKind.LITERAL, TokenContext.EXPRESSION, "self\\b"));
-            add(new TokenDef(TokenType.EXPR_GLOBAL, TokenKind.LITERAL, TokenContext.EXPRESSION, "global\\b"));
-
-            add(new TokenDef(TokenType.EXPR_TRUE, TokenKind.LITERAL, TokenContext.EXPRESSION, "true\\b"));
-            add(new TokenDef(TokenType.EXPR_FALSE, TokenKind.LITERAL, TokenContext.EXPRESSION, "false\\b"));
-            add(new TokenDef(TokenType.EXPR_NULL, TokenKind.LITERAL, TokenContext.EXPRESSION, "null\\b"));
-
-            add(new TokenDef(TokenType.EXPR_AND, TokenKind.LITERAL, TokenContext.EXPRESSION, "and\\b"));
-            add(new TokenDef(TokenType.EXPR_OR, TokenKind.LITERAL, TokenContext.EXPRESSION, "or\\b"));
-            add(new TokenDef(TokenType.EXPR_NOT, TokenKind.LITERAL, TokenContext.EXPRESSION, "not\\b"));
-            add(new TokenDef(TokenType.EXPR_MOD, TokenKind.LITERAL, TokenContext.EXPRESSION, "mod\\b"));
-            add(new TokenDef(TokenType.EXPR_IS, TokenKind.LITERAL, TokenContext.EXPRESSION, "is\\b"));
-            add(new TokenDef(TokenType.EXPR_NOT_EQUAL, TokenKind.LITERAL, TokenContext.EXPRESSION, "isNot\\b|<>|!="));
-            add(new TokenDef(TokenType.EXPR_LESS_OR_EQUAL, TokenKind.LITERAL, TokenContext.EXPRESSION, "<="));
-            add(new TokenDef(TokenType.EXPR_GREATER_OR_EQUAL, TokenKind.LITERAL, TokenContext.EXPRESSION, ">="));
-            add(new TokenDef(TokenType.EXPR_LESS_THAN, TokenKind.LITERAL, TokenContext.EXPRESSION, "<"));
-            add(new TokenDef(TokenType.EXPR_GREATER_THAN, TokenKind.LITERAL, TokenContext.EXPRESSION, ">"));
-
-            add(new TokenDef(TokenType.EXPR_WHITESPACES, TokenKind.IGNORE, TokenContext.EXPRESSION, "[\\s]+"));
-
-            add(new TokenDef(TokenType.EXPR_DOUBLE, TokenKind.TOKEN, TokenContext.EXPRESSION, "(?:[0-9]*\\.)?[0-9]+[eE][\\+\\-]?[0-9]+"));
-            add(new TokenDef(TokenType.EXPR_DOUBLE, TokenKind.TOKEN, TokenContext.EXPRESSION, "[0-9]*\\.[0-9]+"));
-            add(new TokenDef(TokenType.EXPR_INTEGER, TokenKind.TOKEN, TokenContext.EXPRESSION, "[0-9]+"));
-
-            add(new TokenDef(TokenType.EXPR_LBRACKET, TokenKind.LITERAL, TokenContext.EXPRESSION, "\\["));
-            add(new TokenDef(TokenType.EXPR_RBRACKET, TokenKind.LITERAL, TokenContext.EXPRESSION, "\\]"));
-            add(new TokenDef(TokenType.EXPR_LPAREN, TokenKind.LITERAL, TokenContext.EXPRESSION, "\\("));
-            add(new TokenDef(TokenType.EXPR_RPAREN, TokenKind.LITERAL, TokenContext.EXPRESSION, "\\)"));
-            add(new TokenDef(TokenType.EXPR_QUERY, TokenKind.LITERAL, TokenContext.EXPRESSION, "\\?"));
-            add(new TokenDef(TokenType.EXPR_ASSIGN, TokenKind.LITERAL, TokenContext.EXPRESSION, "="));
-            add(new TokenDef(TokenType.EXPR_COLON, TokenKind.LITERAL, TokenContext.EXPRESSION, ":"));
-            add(new TokenDef(TokenType.EXPR_COMMA, TokenKind.LITERAL, TokenContext.EXPRESSION, ","));
-
-            add(new TokenDef(TokenType.EXPR_DOT, TokenKind.LITERAL, TokenContext.EXPRESSION, "\\."));
-            add(new TokenDef(TokenType.EXPR_ADD, TokenKind.LITERAL, TokenContext.EXPRESSION, "\\+"));
-            add(new TokenDef(TokenType.EXPR_SUB, TokenKind.LITERAL, TokenContext.EXPRESSION, "\\-"));
-            add(new TokenDef(TokenType.EXPR_MUL, TokenKind.LITERAL, TokenContext.EXPRESSION, "\\*"));
-            add(new TokenDef(TokenType.EXPR_DIV, TokenKind.LITERAL, TokenContext.EXPRESSION, "\\/"));
-
-            add(new TokenDef(TokenType.EXPR_STRING, TokenKind.TOKEN, TokenContext.EXPRESSION, "\'(?:[^\'\\\\]|\\\\.)*\'"));
-            add(new TokenDef(TokenType.EXPR_STRING, TokenKind.TOKEN, TokenContext.EXPRESSION, "\"(?:[^\"\\\\]|\\\\.)*\""));
-
-            add(new TokenDef(TokenType.EXPR_IDENT, TokenKind.TOKEN, TokenContext.EXPRESSION, "[a-zA-Z_$][a-zA-Z0-9_$]*"));
+            }, literal("}}")));
+
+            add(new TokenDef(TokenType.EXPR_IF, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("if")));
+            add(new TokenDef(TokenType.EXPR_ELSEIF, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("elseif")));
+            add(new TokenDef(TokenType.EXPR_ELSE, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("else")));
+            add(new TokenDef(TokenType.EXPR_FOR, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("for")));
+            add(new TokenDef(TokenType.EXPR_IN, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("in")));
+            add(new TokenDef(TokenType.EXPR_VAR, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("var")));
+            add(new TokenDef(TokenType.EXPR_MACRO, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("macro")));
+            add(new TokenDef(TokenType.EXPRT_IMPORT, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("import")));
+
+            add(new TokenDef(TokenType.EXPR_THIS, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("this")));
+            add(new TokenDef(TokenType.EXPR_SELF, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("self")));
+            add(new TokenDef(TokenType.EXPR_GLOBAL, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("global")));
+
+            add(new TokenDef(TokenType.EXPR_TRUE, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("true")));
+            add(new TokenDef(TokenType.EXPR_FALSE, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("false")));
+            add(new TokenDef(TokenType.EXPR_NULL, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("null")));
+
+            add(new TokenDef(TokenType.EXPR_AND, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("and")));
+            add(new TokenDef(TokenType.EXPR_OR, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("or")));
+            add(new TokenDef(TokenType.EXPR_NOT, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("not")));
+            add(new TokenDef(TokenType.EXPR_MOD, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("mod")));
+            add(new TokenDef(TokenType.EXPR_IS, TokenKind.LITERAL, TokenContext.EXPRESSION, keyword("is")));
+            add(new TokenDef(TokenType.EXPR_NOT_EQUAL, TokenKind.LITERAL, TokenContext.EXPRESSION, anyOf(keyword("isNot"), literal("<>"), literal("!="))));
+            add(new TokenDef(TokenType.EXPR_LESS_OR_EQUAL, TokenKind.LITERAL, TokenContext.EXPRESSION, literal("<=")));
+            add(new TokenDef(TokenType.EXPR_GREATER_OR_EQUAL, TokenKind.LITERAL, TokenContext.EXPRESSION, literal(">=")));
+            add(new TokenDef(TokenType.EXPR_LESS_THAN, TokenKind.LITERAL, TokenContext.EXPRESSION, literal("<")));
+            add(new TokenDef(TokenType.EXPR_GREATER_THAN, TokenKind.LITERAL, TokenContext.EXPRESSION, literal(">")));
+
+            add(new TokenDef(TokenType.EXPR_WHITESPACES, TokenKind.IGNORE, TokenContext.EXPRESSION, whitespaces()));
+
+            add(new TokenDef(TokenType.EXPR_DOUBLE, TokenKind.TOKEN, TokenContext.EXPRESSION, exponent()));
+            add(new TokenDef(TokenType.EXPR_DOUBLE, TokenKind.TOKEN, TokenContext.EXPRESSION, fraction()));
+            add(new TokenDef(TokenType.EXPR_INTEGER, TokenKind.TOKEN, TokenContext.EXPRESSION, digits()));
+
+            add(new TokenDef(TokenType.EXPR_LBRACKET, TokenKind.LITERAL, TokenContext.EXPRESSION, literal("[")));
+            add(new TokenDef(TokenType.EXPR_RBRACKET, TokenKind.LITERAL, TokenContext.EXPRESSION, literal("]")));
+            add(new TokenDef(TokenType.EXPR_LPAREN, TokenKind.LITERAL, TokenContext.EXPRESSION, literal("(")));
+            add(new TokenDef(TokenType.EXPR_RPAREN, TokenKind.LITERAL, TokenContext.EXPRESSION, literal(")")));
+            add(new TokenDef(TokenType.EXPR_QUERY, TokenKind.LITERAL, TokenContext.EXPRESSION, literal("?")));
+            add(new TokenDef(TokenType.EXPR_ASSIGN, TokenKind.LITERAL, TokenContext.EXPRESSION, literal("=")));
+            add(new TokenDef(TokenType.EXPR_COLON, TokenKind.LITERAL, TokenContext.EXPRESSION, literal(":")));
+            add(new TokenDef(TokenType.EXPR_COMMA, TokenKind.LITERAL, TokenContext.EXPRESSION, literal(",")));
+
+            add(new TokenDef(TokenType.EXPR_DOT, TokenKind.LITERAL, TokenContext.EXPRESSION, literal(".")));
+            add(new TokenDef(TokenType.EXPR_ADD, TokenKind.LITERAL, TokenContext.EXPRESSION, literal("+")));
+            add(new TokenDef(TokenType.EXPR_SUB, TokenKind.LITERAL, TokenContext.EXPRESSION, literal("-")));
+            add(new TokenDef(TokenType.EXPR_MUL, TokenKind.LITERAL, TokenContext.EXPRESSION, literal("*")));
+            add(new TokenDef(TokenType.EXPR_DIV, TokenKind.LITERAL, TokenContext.EXPRESSION, literal("/")));
+
+            add(new TokenDef(TokenType.EXPR_STRING, TokenKind.TOKEN, TokenContext.EXPRESSION, quoted('\'')));
+            add(new TokenDef(TokenType.EXPR_STRING, TokenKind.TOKEN, TokenContext.EXPRESSION, quoted('"')));
+
+            add(new TokenDef(TokenType.EXPR_IDENT, TokenKind.TOKEN, TokenContext.EXPRESSION, identifier()));
         }
 
     });
@@ -0,0 +1,254 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.bundle;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.optimizer.OptimizationTypes;
+import ru.histone.parser.BinaryAst;
+import ru.histone.parser.BinaryAstReader;
+import ru.histone.parser.BinaryAstWriter;
+import ru.histone.utils.HistoneVersion;
+import ru.histone.utils.IOUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of parsed and optimized template ASTs<br/>
+ * Every entry is a file named by SHA-256 digest of template source, engine version, binary AST version and
+ * optimization set, so entries written by other engine versions or with other optimizations are never used.
+ * Entry contains AST in binary format followed by its CRC32. Entries are written into temporary file and renamed,
+ * so concurrent readers never see partial entries, corrupted entries are deleted and treated as misses.
+ * Cache can be shared by several processes.<br/>
+ * Only optimizations, which depend on nothing but template source, are supported:
+ * {@link OptimizationTypes#FRAGMENT_CONCATENATION} and {@link OptimizationTypes#ELIMINATE_SINGLE_NODE}.
+ * Results of other ones depend on global functions and properties of Histone instance, which aren't part of key.
+ */
+public class AstDiskCache {
+    private static final Logger log = LoggerFactory.getLogger(AstDiskCache.class);
+
+    static final String ENTRY_EXTENSION = ".ast";
+    private static final Set<OptimizationTypes> SUPPORTED_OPTIMIZATIONS =
+            EnumSet.of(OptimizationTypes.FRAGMENT_CONCATENATION, OptimizationTypes.ELIMINATE_SINGLE_NODE);
+
+    private final File directory;
+    private final OptimizationTypes[] optimizations;
+    private final String keyPrefix;
+    private final BinaryAstWriter astWriter = new BinaryAstWriter();
+    private final BinaryAstReader astReader;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong corrupted = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    /**
+     * @param directory     cache directory, it's created if not exists
+     * @param nodeFactory   node factory to create AST nodes
+     * @param optimizations optimizations, which are applied to cached ASTs
+     * @throws IllegalArgumentException if optimizations contain null or unsupported optimization
+     */
+    public AstDiskCache(File directory, NodeFactory nodeFactory, OptimizationTypes... optimizations) {
+        checkOptimizations(optimizations);
+        this.directory = directory;
+        this.optimizations = optimizations.clone();
+        this.astReader = new BinaryAstReader(nodeFactory);
+
+        StringBuilder prefix = new StringBuilder();
+        prefix.append(HistoneVersion.VERSION).append('\u0000').append(BinaryAst.VERSION).append('\u0000');
+        for (OptimizationTypes optimization : new TreeSet<OptimizationTypes>(Arrays.asList(optimizations))) {
+            prefix.append(optimization.name()).append(',');
+        }
+        this.keyPrefix = prefix.append('\u0000').toString();
+    }
+
+    /**
+     * Check, that optimizations can be applied to cached ASTs
+     *
+     * @param optimizations optimizations
+     * @throws IllegalArgumentException if optimizations contain null or unsupported optimization
+     */
+    public static void checkOptimizations(OptimizationTypes... optimizations) {
+        if (optimizations == null) {
+            throw new IllegalArgumentException("Optimizations can't be null");
+        }
+        for (OptimizationTypes optimization : optimizations) {
+            if (!SUPPORTED_OPTIMIZATIONS.contains(optimization)) {
+                throw new IllegalArgumentException("Optimization " + optimization + " can't be applied to cached ASTs, supported ones are " + SUPPORTED_OPTIMIZATIONS);
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return optimizations, which should be applied to ASTs before they are put into cache
+     */
+    public OptimizationTypes[] getOptimizations() {
+        return optimizations.clone();
+    }
+
+    /**
+     * Return cache key of template source
+     *
+     * @param source template source
+     * @return hex encoded digest
+     */
+    public String key(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(keyPrefix.getBytes("UTF-8"));
+            digest.update(source.getBytes("UTF-8"));
+            return TemplateBundle.toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 isn't supported", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 isn't supported", e);
+        }
+    }
+
+    /**
+     * Load cached AST of template
+     *
+     * @param source template source
+     * @return AST, or null if there is no valid entry for template
+     */
+    public ArrayNode get(String source) {
+        File file = entryFile(key(source));
+        if (!file.isFile()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            byte[] data = TemplateBundleCompiler.readFile(file);
+            if (data.length < 4 || crc(data, data.length - 4) != readInt(data, data.length - 4)) {
+                throw new IOException("checksum mismatch");
+            }
+            JsonNode ast = astReader.read(data, 0, data.length - 4);
+            if (!ast.isArray()) {
+                throw new IOException("entry doesn't contain template");
+            }
+            hits.incrementAndGet();
+            return (ArrayNode) ast;
+        } catch (IOException e) {
+            log.warn("Ignoring corrupted AST cache entry {}: {}", file, e.getMessage());
+            corrupted.incrementAndGet();
+            misses.incrementAndGet();
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Store AST of template, errors are logged and ignored
+     *
+     * @param source template source
+     * @param ast    parsed and optimized AST
+     */
+    public void put(String source, ArrayNode ast) {
+        File file = entryFile(key(source));
+        File temp = null;
+        OutputStream out = null;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+                throw new IOException("Can't create directory " + directory);
+            }
+            byte[] data = astWriter.toByteArray(ast);
+            temp = File.createTempFile(file.getName(), ".tmp", directory);
+            out = new FileOutputStream(temp);
+            out.write(data);
+            out.write(toBytes(crc(data, data.length)));
+            out.close();
+            out = null;
+            // entry with the same name has the same content, so it's enough if any writer succeeds
+            if (temp.renameTo(file) || file.isFile()) {
+                writes.incrementAndGet();
+            } else {
+                throw new IOException("Can't rename " + temp + " to " + file);
+            }
+        } catch (IOException e) {
+            log.warn("Error writing AST cache entry {}: {}", file, e.getMessage());
+        } finally {
+            IOUtils.closeQuietly(out);
+            if (temp != null && temp.exists()) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * @return number of templates loaded from cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of requests, that didn't find valid entry
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of corrupted entries, that were ignored and deleted
+     */
+    public long getCorrupted() {
+        return corrupted.get();
+    }
+
+    /**
+     * @return number of entries written
+     */
+    public long getWrites() {
+        return writes.get();
+    }
+
+    File entryFile(String key) {
+        return new File(directory, key + ENTRY_EXTENSION);
+    }
+
+    private static int crc(byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return (int) crc.getValue();
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private static byte[] toBytes(int value) {
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.bundle;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import ru.histone.parser.BinaryAstReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Read-only view of template bundle file<br/>
+ * <p/>
+ * Layout of bundle file:
+ * <pre>
+ * magic          4 bytes "HSBN"
+ * version        int
+ * count          int
+ * index offset   long
+ * templates      binary AST of every template, see {@link ru.histone.parser.BinaryAst}
+ * engine version UTF
+ * index          (name UTF, SHA-256 digest of source, AST offset long, AST length int) for every template
+ * </pre>
+ * The whole file is memory-mapped, only the index is read on open, templates ASTs are decoded on request
+ * right from the mapped buffer.
+ */
+public class TemplateBundle implements Closeable {
+    /**
+     * Current version of bundle format
+     */
+    public static final int VERSION = 1;
+
+    static final byte[] MAGIC = {'H', 'S', 'B', 'N'};
+    static final int HEADER_LENGTH = 20;
+    static final int DIGEST_LENGTH = 32;
+    /**
+     * Minimal length of index entry: empty name, digest, AST offset and length
+     */
+    static final int MIN_INDEX_ENTRY_LENGTH = 2 + DIGEST_LENGTH + 12;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private final String engineVersion;
+    private final Map<String, Entry> entries;
+
+    private TemplateBundle(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            ByteBuffer index = buffer.duplicate();
+            byte[] magic = new byte[MAGIC.length];
+            index.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("File " + file + " isn't template bundle");
+            }
+            int version = index.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported template bundle version " + version + ", expected " + VERSION);
+            }
+            int count = index.getInt();
+            long indexOffset = index.getLong();
+            if (count < 0 || indexOffset < HEADER_LENGTH || indexOffset > buffer.capacity()
+                    || count > (buffer.capacity() - indexOffset) / MIN_INDEX_ENTRY_LENGTH) {
+                throw new IOException("Template bundle " + file + " is corrupted");
+            }
+
+            index.position((int) indexOffset);
+            this.engineVersion = readUTF(index);
+            Map<String, Entry> entries = new HashMap<String, Entry>();
+            for (int i = 0; i < count; i++) {
+                String name = readUTF(index);
+                byte[] digest = new byte[DIGEST_LENGTH];
+                index.get(digest);
+                long offset = index.getLong();
+                int length = index.getInt();
+                if (offset < HEADER_LENGTH || length < 0 || offset + length > indexOffset) {
+                    throw new IOException("Template bundle " + file + " is corrupted, invalid entry " + name);
+                }
+                entries.put(name, new Entry(digest, (int) offset, length));
+            }
+            this.entries = entries;
+        } catch (BufferUnderflowException e) {
+            raf.close();
+            throw new IOException("Template bundle " + file + " is truncated");
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open bundle file
+     *
+     * @param file bundle file
+     * @return bundle
+     * @throws IOException if file can't be read or isn't a valid bundle
+     */
+    public static TemplateBundle open(File file) throws IOException {
+        return new TemplateBundle(file);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return version of Histone, which compiled this bundle
+     */
+    public String getEngineVersion() {
+        return engineVersion;
+    }
+
+    /**
+     * @return names of all templates in bundle
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * Return manifest of bundle: hex encoded SHA-256 digest of every template source by template name
+     */
+    public Map<String, String> getManifest() {
+        Map<String, String> result = new TreeMap<String, String>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            result.put(entry.getKey(), toHex(entry.getValue().digest));
+        }
+        return result;
+    }
+
+    /**
+     * Return hex encoded SHA-256 digest of template source
+     *
+     * @param name template name
+     * @return digest, or null if there is no such template
+     */
+    public String getDigest(String name) {
+        Entry entry = entries.get(name);
+        return (entry == null) ? null : toHex(entry.digest);
+    }
+
+    /**
+     * Decode AST of template
+     *
+     * @param name   template name
+     * @param reader binary AST reader
+     * @return template AST, or null if there is no such template
+     * @throws IOException if AST is corrupted
+     */
+    public JsonNode readAst(String name, BinaryAstReader reader) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.position(entry.offset);
+        view.limit(entry.offset + entry.length);
+        return reader.read(view);
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    private static String readUTF(ByteBuffer buffer) throws IOException {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length + 2];
+        bytes[0] = (byte) (length >>> 8);
+        bytes[1] = (byte) length;
+        buffer.get(bytes, 2, length);
+        return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return result.toString();
+    }
+
+    private static class Entry {
+        final byte[] digest;
+        final int offset;
+        final int length;
+
+        Entry(byte[] digest, int offset, int length) {
+            this.digest = digest;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
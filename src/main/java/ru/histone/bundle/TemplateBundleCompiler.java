@@ -0,0 +1,299 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.bundle;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.histone.Histone;
+import ru.histone.HistoneBuilder;
+import ru.histone.HistoneException;
+import ru.histone.optimizer.OptimizationTypes;
+import ru.histone.parser.AstNodeType;
+import ru.histone.resourceloaders.BundleResourceLoader;
+import ru.histone.utils.IOUtils;
+import ru.histone.utils.PathUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Ahead-of-time template compiler<br/>
+ * Walks template directory, parses and optimizes every template and writes them all into one bundle file,
+ * which is served by {@link BundleResourceLoader} without parsing at runtime.
+ * <p/>
+ * Command line usage:
+ * <pre>
+ * java -cp histone.jar ru.histone.bundle.TemplateBundleCompiler [-e .tpl] [-O OPTIMIZATION,...] [-m manifest.txt] templateDir bundleFile
+ * </pre>
+ * From Maven build it can be called with exec-maven-plugin (goal {@code java}, mainClass
+ * {@code ru.histone.bundle.TemplateBundleCompiler}) bound to {@code prepare-package} phase.
+ * <p/>
+ * Constant imports of templates, that are not found in bundle, are reported as warnings,
+ * they will be loaded through delegate resource loader at runtime.
+ */
+public class TemplateBundleCompiler {
+    private static final Logger log = LoggerFactory.getLogger(TemplateBundleCompiler.class);
+
+    public static final String DEFAULT_EXTENSION = ".tpl";
+    private static final OptimizationTypes[] DEFAULT_OPTIMIZATIONS = {
+            OptimizationTypes.FRAGMENT_CONCATENATION,
+            OptimizationTypes.ELIMINATE_SINGLE_NODE
+    };
+    private static final char BOM = '\uFEFF';
+
+    private final Histone histone;
+    private String extension = DEFAULT_EXTENSION;
+    private OptimizationTypes[] optimizations = DEFAULT_OPTIMIZATIONS;
+    private final List<String> warnings = new ArrayList<String>();
+
+    public TemplateBundleCompiler(Histone histone) {
+        this.histone = histone;
+    }
+
+    /**
+     * Set extension of template files, files with other extensions are skipped
+     */
+    public void setExtension(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Set optimizations to run on every template AST
+     */
+    public void setOptimizations(OptimizationTypes... optimizations) {
+        this.optimizations = optimizations;
+    }
+
+    /**
+     * @return warnings of last compilation
+     */
+    public List<String> getWarnings() {
+        return Collections.unmodifiableList(warnings);
+    }
+
+    /**
+     * Compile all templates of directory into bundle
+     *
+     * @param templateDir root directory of templates
+     * @param bundleFile  bundle file to write
+     * @return manifest of bundle: hex encoded SHA-256 digest of every template source by template name
+     * @throws IOException      if templates can't be read or bundle can't be written
+     * @throws HistoneException if template can't be parsed or optimized
+     */
+    public Map<String, String> compile(File templateDir, File bundleFile) throws IOException, HistoneException {
+        if (!templateDir.isDirectory()) {
+            throw new IOException("Template directory " + templateDir + " not found");
+        }
+        warnings.clear();
+
+        Map<String, File> files = new TreeMap<String, File>();
+        collectTemplates(templateDir, "", files);
+
+        TemplateBundleWriter writer = new TemplateBundleWriter();
+        Map<String, String> manifest = new TreeMap<String, String>();
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            String name = entry.getKey();
+            byte[] source = readFile(entry.getValue());
+            byte[] digest = digest(source);
+
+            ArrayNode ast;
+            try {
+                String template = new String(source, "UTF-8");
+                if (template.length() > 0 && template.charAt(0) == BOM) {
+                    template = template.substring(1);
+                }
+                ast = histone.parseTemplateToAST(template);
+                if (optimizations.length > 0) {
+                    ast = histone.optimizeAST(ast, optimizations);
+                }
+            } catch (HistoneException e) {
+                throw new HistoneException("Error compiling template " + entry.getValue(), e);
+            }
+
+            checkImports(name, ast, files);
+            writer.add(name, digest, ast);
+            manifest.put(name, TemplateBundle.toHex(digest));
+            log.debug("Compiled template {}", name);
+        }
+
+        writer.write(bundleFile);
+        log.info("Compiled {} templates from {} into {}", new Object[]{writer.size(), templateDir, bundleFile});
+        return manifest;
+    }
+
+    private void collectTemplates(File dir, String prefix, Map<String, File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collectTemplates(child, prefix + child.getName() + "/", files);
+            } else if (child.isFile() && child.getName().endsWith(extension)) {
+                files.put(prefix + child.getName(), child);
+            }
+        }
+    }
+
+    /**
+     * Report constant imports, that can't be resolved inside bundle
+     */
+    private void checkImports(String name, JsonNode node, Map<String, File> files) {
+        if (!node.isArray()) {
+            return;
+        }
+        if (node.size() == 2 && node.get(0).isInt() && node.get(0).intValue() == AstNodeType.IMPORT && node.get(1).isTextual()) {
+            String path = node.get(1).textValue();
+            String fullPath = PathUtils.resolveUrl(path, BundleResourceLoader.DEFAULT_ROOT + name);
+            String target = fullPath.startsWith(BundleResourceLoader.DEFAULT_ROOT) ? fullPath.substring(BundleResourceLoader.DEFAULT_ROOT.length()) : null;
+            if (target == null || !files.containsKey(target)) {
+                String warning = "Template " + name + " imports '" + path + "', that isn't in bundle";
+                warnings.add(warning);
+                log.warn(warning);
+            }
+            return;
+        }
+        for (JsonNode child : node) {
+            checkImports(name, child, files);
+        }
+    }
+
+    static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            IOUtils.copy(in, out);
+            return out.toByteArray();
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private static byte[] digest(byte[] source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 isn't supported", e);
+        }
+    }
+
+    /**
+     * Command line entry point, exits with non zero status on errors
+     */
+    public static void main(String[] args) {
+        int status = run(args);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Run compiler with command line arguments
+     *
+     * @return exit status: 0 on success, 1 on compilation errors, 2 on invalid arguments
+     */
+    public static int run(String[] args) {
+        String extension = DEFAULT_EXTENSION;
+        OptimizationTypes[] optimizations = DEFAULT_OPTIMIZATIONS;
+        File manifestFile = null;
+        List<String> files = new ArrayList<String>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if ("-e".equals(args[i])) {
+                    extension = args[++i];
+                } else if ("-O".equals(args[i])) {
+                    optimizations = parseOptimizations(args[++i]);
+                } else if ("-m".equals(args[i])) {
+                    manifestFile = new File(args[++i]);
+                } else {
+                    files.add(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            files.clear();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            files.clear();
+        }
+        if (files.size() != 2) {
+            System.err.println("Usage: " + TemplateBundleCompiler.class.getName() +
+                    " [-e " + DEFAULT_EXTENSION + "] [-O OPTIMIZATION,...] [-m manifestFile] templateDir bundleFile");
+            return 2;
+        }
+
+        try {
+            TemplateBundleCompiler compiler = new TemplateBundleCompiler(new HistoneBuilder().build());
+            compiler.setExtension(extension);
+            compiler.setOptimizations(optimizations);
+            Map<String, String> manifest = compiler.compile(new File(files.get(0)), new File(files.get(1)));
+            for (String warning : compiler.getWarnings()) {
+                System.err.println("WARNING: " + warning);
+            }
+            if (manifestFile != null) {
+                writeManifest(manifest, manifestFile);
+            }
+            System.out.println("Compiled " + manifest.size() + " templates into " + files.get(1));
+            return 0;
+        } catch (Exception e) {
+            System.err.println("ERROR: " + e.getMessage());
+            if (e.getCause() != null) {
+                System.err.println("  caused by: " + e.getCause().getMessage());
+            }
+            return 1;
+        }
+    }
+
+    private static OptimizationTypes[] parseOptimizations(String value) {
+        List<OptimizationTypes> result = new ArrayList<OptimizationTypes>();
+        for (String name : value.split(",")) {
+            if (name.trim().length() > 0) {
+                result.add(OptimizationTypes.valueOf(name.trim()));
+            }
+        }
+        return result.toArray(new OptimizationTypes[result.size()]);
+    }
+
+    /**
+     * Write manifest in sha256sum compatible format
+     */
+    private static void writeManifest(Map<String, String> manifest, File file) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            for (Map.Entry<String, String> entry : manifest.entrySet()) {
+                writer.write(entry.getValue() + "  " + entry.getKey() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.bundle;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import ru.histone.parser.BinaryAstWriter;
+import ru.histone.utils.HistoneVersion;
+import ru.histone.utils.IOUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects compiled templates and writes them into bundle file, see {@link TemplateBundle} for file layout
+ */
+public class TemplateBundleWriter {
+    private final BinaryAstWriter astWriter = new BinaryAstWriter();
+    private final Map<String, Entry> entries = new TreeMap<String, Entry>();
+
+    /**
+     * Add template to bundle
+     *
+     * @param name   template name, path relative to bundle root with '/' separators
+     * @param digest digest of template source
+     * @param ast    template AST
+     * @throws IOException if AST can't be written in binary format
+     */
+    public void add(String name, byte[] digest, JsonNode ast) throws IOException {
+        if (digest.length != TemplateBundle.DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Digest should be " + TemplateBundle.DIGEST_LENGTH + " bytes long");
+        }
+        entries.put(name, new Entry(digest, astWriter.toByteArray(ast)));
+    }
+
+    /**
+     * @return number of templates added
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Write bundle into file. Bundle is written into temporary file first and then renamed,
+     * so readers never see partially written bundle.
+     *
+     * @param file bundle file
+     * @throws IOException in case of writing errors
+     */
+    public void write(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create directory " + dir);
+        }
+        File temp = File.createTempFile(file.getName(), ".tmp", dir);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            writeTo(out);
+            out.close();
+            out = null;
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Can't replace bundle " + file);
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Can't rename " + temp + " to " + file);
+            }
+        } finally {
+            IOUtils.closeQuietly(out);
+            if (temp.exists()) {
+                temp.delete();
+            }
+        }
+    }
+
+    private void writeTo(DataOutputStream out) throws IOException {
+        long offset = TemplateBundle.HEADER_LENGTH;
+        for (Entry entry : entries.values()) {
+            entry.offset = offset;
+            offset += entry.ast.length;
+        }
+
+        out.write(TemplateBundle.MAGIC);
+        out.writeInt(TemplateBundle.VERSION);
+        out.writeInt(entries.size());
+        out.writeLong(offset);
+        for (Entry entry : entries.values()) {
+            out.write(entry.ast);
+        }
+
+        out.writeUTF(String.valueOf(HistoneVersion.VERSION));
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.write(entry.getValue().digest);
+            out.writeLong(entry.getValue().offset);
+            out.writeInt(entry.getValue().ast.length);
+        }
+    }
+
+    private static class Entry {
+        final byte[] digest;
+        final byte[] ast;
+        long offset;
+
+        Entry(byte[] digest, byte[] ast) {
+            this.digest = digest;
+            this.ast = ast;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+/**
+ * Ahead-of-time compilation of templates into bundles<br/>
+ * {@link ru.histone.bundle.TemplateBundleCompiler} parses and optimizes all templates of a directory and writes them
+ * into a single bundle file in binary AST format, {@link ru.histone.resourceloaders.BundleResourceLoader} serves
+ * templates from memory-mapped bundle, so they are never tokenized or parsed at runtime.
+ */
+package ru.histone.bundle;
@@ -24,6 +24,10 @@ import ru.histone.GlobalProperty;
 import ru.histone.Histone;
 import ru.histone.HistoneException;
 import ru.histone.HistoneStopTheWorldException;
+import ru.histone.evaluator.compiled.CompiledNode;
+import ru.histone.evaluator.compiled.CompiledTemplate;
+import ru.histone.evaluator.compiled.CompiledTemplateCache;
+import ru.histone.evaluator.compiled.TemplateCompiler;
 import ru.histone.evaluator.functions.global.DayOfWeek;
 import ru.histone.evaluator.functions.global.DaysInMonth;
 import ru.histone.evaluator.functions.global.GlobalFunctionExecutionException;
@@ -80,7 +84,10 @@ import ru.histone.evaluator.nodes.NodeFactory;
 import ru.histone.evaluator.nodes.NumberHistoneNode;
 import ru.histone.evaluator.nodes.ObjectHistoneNode;
 import ru.histone.evaluator.nodes.StringHistoneNode;
-import ru.histone.parser.AstNodeType;
+import ru.histone.evaluator.output.FlushPoint;
+import ru.histone.evaluator.output.TemplateOutput;
+import ru.histone.parser.BinaryAstReader;
+import ru.histone.parser.CompactAst;
 import ru.histone.parser.Parser;
 import ru.histone.parser.ParserException;
 import ru.histone.resourceloaders.AstResource;
@@ -95,16 +102,21 @@ import ru.histone.utils.IOUtils;
 import ru.histone.utils.StringUtils;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.lang.reflect.Array;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Histone AST evaluator<br/>
@@ -114,6 +126,14 @@ public class Evaluator {
     private static final Logger log = LoggerFactory.getLogger(Evaluator.class);
 
     private static final String UTF8_BOM = "\uFEFF";
+    /**
+     * Weight in template cache of template compiled from AST resource, which size isn't known without walking it
+     */
+    private static final long AST_RESOURCE_WEIGHT = 4096;
+    /**
+     * Loads with these HTTP methods can change state on server, so they aren't memoized unless 'memo' is requested explicitly
+     */
+    private static final Set<String> NON_IDEMPOTENT_METHODS = new HashSet<String>(Arrays.asList("POST", "PATCH"));
 
     private final Parser parser;
     private final NodeFactory nodeFactory;
@@ -121,7 +141,9 @@ public class Evaluator {
     private final GlobalFunctionsManager globalFunctionsManager;
     private final NodeFunctionsManager nodeFunctionsManager;
     private final GlobalObjectNode global;
-
+    private final TemplateCompiler compiler;
+    private final CompiledTemplateCache templateCache;
+    private final BinaryAstReader binaryAstReader;
 
     public Evaluator(EvaluatorBootstrap bootstrap) {
         this.parser = bootstrap.getParser();
@@ -130,6 +152,9 @@ public class Evaluator {
         this.globalFunctionsManager = registerMandatoryGlobalFunctions(bootstrap);
         this.nodeFunctionsManager = registerMandatoryNodeFunctions(bootstrap);
         this.global = bootstrap.getGlobal();
+        this.compiler = new TemplateCompiler(nodeFactory, this, bootstrap.getCompilationMode(), bootstrap.getBytecodeCompilationThreshold());
+        this.templateCache = bootstrap.getTemplateCache();
+        this.binaryAstReader = new BinaryAstReader(nodeFactory);
     }
 
     /**
@@ -276,6 +301,16 @@ public class Evaluator {
 //        return process(ast, EvaluatorContext.createFromJson(nodeFactory, global, jsonCtx));
 //    }
 
+    /**
+     * Compile template AST into tree of executable nodes
+     *
+     * @param ast template AST in json representation
+     * @return compiled template
+     */
+    public CompiledTemplate compile(ArrayNode ast) {
+        return compiler.compile(ast);
+    }
+
     /**
      * Evaluate template AST using specified evaluator context
      *
@@ -285,6 +320,37 @@ public class Evaluator {
      * @throws ru.histone.HistoneException in case of eny errors
      */
     public String process(String baseURI, ArrayNode ast, JsonNode jsonContext) throws HistoneException {
+        return process(baseURI, compile(ast), jsonContext);
+    }
+
+    /**
+     * Evaluate compiled template using specified evaluator context
+     *
+     * @param template    compiled template
+     * @param jsonContext special context object for evaluator context
+     * @return evaluation result
+     * @throws ru.histone.HistoneException in case of eny errors
+     */
+    public String process(String baseURI, CompiledTemplate template, JsonNode jsonContext) throws HistoneException {
+        return template.process(createContext(baseURI, jsonContext));
+    }
+
+    /**
+     * Evaluate compiled template using specified evaluator context writing result into output
+     *
+     * @param template    compiled template
+     * @param jsonContext special context object for evaluator context
+     * @param output      evaluation output
+     * @throws ru.histone.HistoneException in case of eny errors
+     * @throws IOException                 if output can't be written
+     */
+    public void process(String baseURI, CompiledTemplate template, JsonNode jsonContext, TemplateOutput output) throws HistoneException, IOException {
+        EvaluatorContext context = createContext(baseURI, jsonContext);
+        context.setOutput(output);
+        template.render(context, output);
+    }
+
+    private EvaluatorContext createContext(String baseURI, JsonNode jsonContext) {
         EvaluatorContext context = EvaluatorContext.createFromJson(nodeFactory, global, jsonContext);
         if (jsonContext.has("baseURI")) {
             String globalBaseURI = jsonContext.path("baseURI").asText();
@@ -293,168 +359,16 @@ public class Evaluator {
         } else {
             context.setBaseURI(baseURI);
         }
-        return processInternal(ast, context);
+        log.debug("process(): baseURI={}, context={}", baseURI, context);
+        return context;
     }
 
     public Node evaluate(JsonNode ast) throws EvaluatorException {
         EvaluatorContext context = EvaluatorContext.createFromJson(nodeFactory, global, nodeFactory.jsonObject());
-        return processNode(ast, context);
-    }
-
-    private String processInternal(JsonNode jsonElement, EvaluatorContext context) throws EvaluatorException {
-        return processInternal((ArrayNode) jsonElement, context);
-    }
-
-    private String processInternal(ArrayNode ast, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processInternal(): template={}, context={}", ast, context);
-
-        if ("HISTONE".equals(ast.path(0).path(0).asText())) {
-            //TODO should be checked in HSTJ-7
-            ast = (ArrayNode) ast.path(1);
-        }
-
-        StringBuilder out = new StringBuilder();
-        for (JsonNode element : ast) {
-            log.debug("process(): fragment={}", element);
-            Node node = processNode(element, context);
-            log.debug("process(): node={}", node);
-            out.append(node.getAsString().getValue());
-        }
-        return out.toString();
-    }
-
-    private Node processNode(JsonNode jsonElement, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processNode(): element={}, context={}", new Object[]{jsonElement, context});
-
-        if (jsonElement.isTextual()) {
-            return nodeFactory.string(jsonElement);
-//            return nodeFactory.string(jsonElement.getAsJsonPrimitive().getAsString());
-        }
-
-        if (!jsonElement.isArray()) {
-            Histone.runtime_log_warn("Invalid JSON element! Neither 'string', nor 'array'. Element: '{}'", jsonElement.toString());
-            return nodeFactory.UNDEFINED;
-        }
-
-        ArrayNode astArray = (ArrayNode) jsonElement;
-
-        int nodeType = astArray.get(0).intValue();
-        switch (nodeType) {
-            case AstNodeType.TRUE:
-                return nodeFactory.TRUE;
-
-            case AstNodeType.FALSE:
-                return nodeFactory.FALSE;
-
-            case AstNodeType.NULL:
-                return nodeFactory.NULL;
-
-            case AstNodeType.INT:
-                return nodeFactory.number(astArray.get(1).decimalValue());
-
-            case AstNodeType.DOUBLE:
-                return nodeFactory.number(astArray.get(1).decimalValue());
-
-            case AstNodeType.STRING:
-                return nodeFactory.string(astArray.get(1).asText());
-
-            case AstNodeType.MAP:
-                return processMap((ArrayNode) astArray.get(1), context);
-//
-//            case AstNodeType.ARRAY:
-//                return processArray(astArray.get(1).getAsArrayNode(), context);
-//
-//            case AstNodeType.OBJECT:
-//                return processObject(astArray.get(1).getAsArrayNode(), context);
-
-            case AstNodeType.ADD:
-                return processAdd((ArrayNode) astArray.get(1), (ArrayNode) astArray.get(2), context);
-            case AstNodeType.SUB:
-                return processSub((ArrayNode) astArray.get(1), (ArrayNode) astArray.get(2), context);
-            case AstNodeType.MUL:
-                return processMul((ArrayNode) astArray.get(1), (ArrayNode) astArray.get(2), context);
-            case AstNodeType.DIV:
-                return processDiv((ArrayNode) astArray.get(1), (ArrayNode) astArray.get(2), context);
-            case AstNodeType.MOD:
-                return processMod((ArrayNode) astArray.get(1), (ArrayNode) astArray.get(2), context);
-
-            case AstNodeType.NEGATE:
-                return processNegate((ArrayNode) astArray.get(1), context);
-
-            case AstNodeType.OR:
-                return processOr((ArrayNode) astArray.get(1), (ArrayNode) astArray.get(2), context);
-            case AstNodeType.AND:
-                return processAnd((ArrayNode) astArray.get(1), (ArrayNode) astArray.get(2), context);
-            case AstNodeType.NOT:
-                return processNot((ArrayNode) astArray.get(1), context);
-
-            case AstNodeType.EQUAL:
-                return processEqual((ArrayNode) astArray.get(1), (ArrayNode) astArray.get(2), context);
-            case AstNodeType.NOT_EQUAL:
-                return processNotEqual((ArrayNode) astArray.get(1), (ArrayNode) astArray.get(2), context);
-
-            case AstNodeType.LESS_OR_EQUAL:
-                return processLessOrEqual((ArrayNode) astArray.get(1), (ArrayNode) astArray.get(2), context);
-            case AstNodeType.LESS_THAN:
-                return processLessThan((ArrayNode) astArray.get(1), (ArrayNode) astArray.get(2), context);
-            case AstNodeType.GREATER_OR_EQUAL:
-                return processGreaterOrEqual((ArrayNode) astArray.get(1), (ArrayNode) astArray.get(2), context);
-            case AstNodeType.GREATER_THAN:
-                return processGreaterThan((ArrayNode) astArray.get(1), (ArrayNode) astArray.get(2), context);
-            case AstNodeType.TERNARY:
-                return processTernary((ArrayNode) astArray.get(1), (ArrayNode) astArray.get(2), (astArray.size() > 3) ? (ArrayNode) astArray.get(3) : null, context);
-            case AstNodeType.IF:
-                return processIf((ArrayNode) astArray.get(1), context);
-            case AstNodeType.FOR:
-                return processFor((ArrayNode) astArray.get(1), (ArrayNode) astArray.get(2), (ArrayNode) astArray.get(3), context);
-
-            case AstNodeType.STATEMENTS:
-                return processStatements(astArray.get(1), context);
-
-            case AstNodeType.VAR:
-                return processVar(astArray.get(1), (ArrayNode) astArray.get(2), context);
-
-            case AstNodeType.SELECTOR:
-                return processSelector((ArrayNode) astArray.get(1), context);
-
-            case AstNodeType.CALL:
-                return processCall(astArray.get(1), astArray.get(2), astArray.get(3), context);
-
-            case AstNodeType.IMPORT:
-                return processImport(astArray.get(1), context);
-
-            case AstNodeType.MACRO:
-                return processMacro(astArray.get(1), (ArrayNode) astArray.get(2), (ArrayNode) astArray.get(3), context);
-
-            default:
-                Histone.runtime_log_error("Unknown nodeType", null, nodeType);
-                return nodeFactory.UNDEFINED;
-        }
+        return compiler.compileNode(ast).evaluate(context);
     }
 
-    private ArrayNode slice(ArrayNode astArray, int fromIndex) {
-        ArrayNode result = nodeFactory.jsonArray();
-
-        for (int i = fromIndex; i < astArray.size(); i++) {
-            result.add(astArray.get(i));
-        }
-
-        return result;
-    }
-
-    private Node processMacro(JsonNode ident, ArrayNode args, ArrayNode statements, EvaluatorContext context) throws EvaluatorException {
-        String name = ident.asText();
-
-        MacroFunc func = new MacroFunc();
-        func.setArgs(args);
-        func.setStatements(statements);
-        func.setBaseURI(getContextBaseURI(context));
-        context.putMacro(name, func);
-
-        return nodeFactory.UNDEFINED;
-    }
-
-    private Node runMacro(String name, List<Node> args, EvaluatorContext context) throws EvaluatorException {
+    private Node runMacro(String name, List<Node> args, EvaluatorContext context, TemplateOutput output) throws EvaluatorException, IOException {
         MacroFunc macro = context.getMacro(name);
         if (macro == null) {
             Histone.runtime_log_warn("No macro found by name = '{}'", name);
@@ -463,24 +377,29 @@ public class Evaluator {
         ObjectHistoneNode self = nodeFactory.object();
         ObjectHistoneNode argsNode = nodeFactory.object(args);
         self.add("arguments", argsNode);
-        context.putProp("self", self);
+        context.putProp(Symbol.SELF, self);
 
         Iterator<Node> argsItr = args.iterator();
-        for (JsonNode macroArg : macro.getArgs()) {
-            context.putProp(macroArg.asText(), (argsItr.hasNext() ? argsItr.next() : nodeFactory.UNDEFINED));
+        for (Symbol macroArg : macro.getArgSymbols()) {
+            context.putProp(macroArg, (argsItr.hasNext() ? argsItr.next() : nodeFactory.UNDEFINED));
         }
         String currentBaseURI = getContextBaseURI(context);
         String macroBaseURI = macro.getBaseURI();
         if (macroBaseURI != null/* && macroBaseURI.isAbsolute() && !macroBaseURI.isOpaque()*/) {
             context.setBaseURI(macroBaseURI);
         }
-        StringHistoneNode result = nodeFactory.string(processInternal(macro.getStatements(), context));
+        StringHistoneNode result = null;
+        if (output != null) {
+            macro.getStatements().render(context, output);
+        } else {
+            result = nodeFactory.string(macro.getStatements().process(context));
+        }
         context.setBaseURI(currentBaseURI);
         return result;
     }
 
 
-    private Node runNameSpaceMacro(MacroFunc macro, List<Node> args, EvaluatorContext context) throws EvaluatorException {
+    private Node runNameSpaceMacro(MacroFunc macro, List<Node> args, EvaluatorContext context, TemplateOutput output) throws EvaluatorException, IOException {
         // MacroFunc macro = context.getMacro(name);
         if (macro == null) {
             Histone.runtime_log_warn("macro not found");
@@ -489,29 +408,38 @@ public class Evaluator {
         ObjectHistoneNode self = nodeFactory.object();
         ObjectHistoneNode argsNode = nodeFactory.object(args);
         self.add("arguments", argsNode);
-        context.putProp("self", self);
+        context.putProp(Symbol.SELF, self);
 
         Iterator<Node> argsItr = args.iterator();
-        for (JsonNode macroArg : macro.getArgs()) {
-            context.putProp(macroArg.asText(), (argsItr.hasNext() ? argsItr.next() : nodeFactory.UNDEFINED));
+        for (Symbol macroArg : macro.getArgSymbols()) {
+            context.putProp(macroArg, (argsItr.hasNext() ? argsItr.next() : nodeFactory.UNDEFINED));
         }
         String currentBaseURI = getContextBaseURI(context);
         String macroBaseURI = macro.getBaseURI();
         if (macroBaseURI != null/* && macroBaseURI.isAbsolute() && !macroBaseURI.isOpaque()*/) {
             context.setBaseURI(macroBaseURI);
         }
-        StringHistoneNode result = nodeFactory.string(processInternal(macro.getStatements(), context));
+        StringHistoneNode result = null;
+        if (output != null) {
+            macro.getStatements().render(context, output);
+        } else {
+            result = nodeFactory.string(macro.getStatements().process(context));
+        }
         context.setBaseURI(currentBaseURI);
         return result;
     }
 
 
-    private Node processImport(JsonNode pathElement, EvaluatorContext context) throws EvaluatorException {
-        if (!pathElement.isTextual()) {
-            Histone.runtime_log_warn("Invalid path to imported template: '{}'", pathElement.toString());
-            return nodeFactory.UNDEFINED;
-        }
-        String path = pathElement.asText();
+    /**
+     * Import template by specified path into current context<br/>
+     * All variables and macros defined in imported template become available in current context frame.
+     *
+     * @param path    path to imported template
+     * @param context evaluator context
+     * @return always undefined
+     * @throws EvaluatorException in case of evaluation errors
+     */
+    public Node importResource(String path, EvaluatorContext context) throws EvaluatorException {
         Resource resource = null;
         try {
             String currentBaseURI = getContextBaseURI(context);
@@ -522,11 +450,7 @@ public class Evaluator {
                 return nodeFactory.UNDEFINED;
             } else {
                 resource = resourceLoader.load(path, currentBaseURI, new String[]{ContentType.TEXT, ContentType.AST});
-                JsonNode ast = readAstFromResource(resource, path, currentBaseURI);
-
-                if (ast == null) {
-                    return nodeFactory.UNDEFINED;
-                }
+                CompiledTemplate template = compileResource(resource, resourceFullPath, path, currentBaseURI);
 
                 // Add this resource full path to context
                 context.addImportedResource(resourceFullPath.toString());
@@ -535,7 +459,7 @@ public class Evaluator {
                 if (resourceURI != null && resourceURI.isAbsolute() && !resourceURI.isOpaque()) {
                     context.setBaseURI(resourceURI.toString());
                 }
-                processInternal(ast, context);
+                template.process(context);
                 context.setBaseURI(currentBaseURI);
 
                 return nodeFactory.UNDEFINED;
@@ -560,39 +484,52 @@ public class Evaluator {
         return context.getBaseURI() == null ? null : context.getBaseURI().toString();
     }
 
-    private Node processCall(JsonNode target, JsonNode nameElement, JsonNode args, EvaluatorContext context) throws EvaluatorException {
-        if (nameElement.isArray()) {
-            Node functionNameNode = processNode(nameElement, context);
-            nameElement = functionNameNode.getAsJsonNode();
-        }
-        if (!nameElement.isTextual()) {
-            Histone.runtime_log_warn("call to undefined function '{}'", nameElement.toString());
-            return nodeFactory.UNDEFINED;
-        }
-        String name = nameElement.asText();
-        if (name == null || name.length() == 0) {
-            Histone.runtime_log_warn("call to undefined anonymous function");
-            return nodeFactory.UNDEFINED;
-        }
-
-        List<Node> argsList = new ArrayList<Node>();
-        if (!args.isNull()) {
-            Iterator<JsonNode> iter = args.iterator();
-            while (iter.hasNext()) {
-                JsonNode arg = iter.next();
-                Node argNode = processNode(arg, context);
-                argsList.add(argNode);
-            }
+    /**
+     * Call function by specified name<br/>
+     * Function is looked up in following order: node function of target (or macro of namespace target),
+     * anonymous macro of namespace variable, macro, global function and finally built-in functions
+     * (include, eval, loadJSON, loadText, require).
+     *
+     * @param target   call target, null for calls without target
+     * @param name     function name
+     * @param argsList evaluated call arguments
+     * @param context  evaluator context
+     * @return function result
+     * @throws EvaluatorException in case of evaluation errors
+     */
+    public Node call(CompiledNode target, String name, List<Node> argsList, EvaluatorContext context) throws EvaluatorException {
+        try {
+            return call(target, name, argsList, context, null);
+        } catch (IOException e) {
+            // there is no output, so it never happens
+            throw new EvaluatorException(e);
         }
+    }
 
+    /**
+     * Call function by specified name, rendering macros directly into output<br/>
+     * Results of all other functions are returned as usual.
+     *
+     * @param target   call target, null for calls without target
+     * @param name     function name
+     * @param argsList evaluated call arguments
+     * @param context  evaluator context
+     * @param output   output for macro results, can be null
+     * @return function result, or null if result was written into output
+     * @throws EvaluatorException in case of evaluation errors
+     * @throws IOException        if output can't be written
+     * @see #call(CompiledNode, String, List, EvaluatorContext)
+     */
+    public Node call(CompiledNode target, String name, List<Node> argsList, EvaluatorContext context, TemplateOutput output)
+            throws EvaluatorException, IOException {
         try {
             context.saveState();
 
 
-            if (!target.isNull()) {
+            if (target != null) {
                 // if target is not null, then it means we want to run Node fucntion or global.functionName()
 
-                Node targetNode = processNode(target, context);
+                Node targetNode = target.evaluate(context);
                 // if target is reserved word 'global' then we will run ObjectHistoneNode.function() or global function
                 if (targetNode.isObject() && targetNode.getAsObject().isGlobalObject()) {
 
@@ -614,7 +551,7 @@ public class Evaluator {
                         if (targetNode.isNamespace()) {
                             NameSpaceNode nameSpaceNode = (NameSpaceNode) targetNode;
                             if (nameSpaceNode.hasMacro(name)) {
-                                return runNameSpaceMacro(nameSpaceNode.getMacro(name), argsList, context);
+                                return runNameSpaceMacro(nameSpaceNode.getMacro(name), argsList, context, output);
                             }
                         }
                         Histone.runtime_log_warn("'{}' is undefined function for type '{}'", name, targetNode.toString());
@@ -626,20 +563,24 @@ public class Evaluator {
             } else if (context.hasProp(name) && context.getProp(name).isNamespace()) {
                 NameSpaceNode nameSpaceNode = (NameSpaceNode) context.getProp(name);
                 if (nameSpaceNode.hasMacro("")) {
-                    return runNameSpaceMacro(nameSpaceNode.getMacro(""), argsList, context);
+                    return runNameSpaceMacro(nameSpaceNode.getMacro(""), argsList, context, output);
                 }
 
             }
 
             // next we will call macro if it exists
             if (context.hasMacro(name)) {
-                return runMacro(name, argsList, context);
+                return runMacro(name, argsList, context, output);
             }
 
             // if we don't have macro with such name, then check for globalFunction
             if (globalFunctionsManager.hasFunction(name)) {
                 return runGlobalFunc(name, argsList);
             }
+            if ("flush".equals(name)) {
+                context.flushPoint(FlushPoint.MARKER);
+                return nodeFactory.string("");
+            }
             if ("include".equals(name)) {
                 // we need to be able to override include function via user GlobalFunction,
                 // that's why we need to check this here, after GlobalFunctionManager check
@@ -672,7 +613,7 @@ public class Evaluator {
         }
     }
 
-    private Node processLoadJSON(List<Node> argsList, EvaluatorContext context) {
+    private Node processLoadJSON(List<Node> argsList, EvaluatorContext context) throws IOException {
         Node[] args = argsList.toArray((Node[]) Array.newInstance(Node.class, argsList.size()));
         if (ArrayUtils.isEmpty(args)) {
             return nodeFactory.UNDEFINED;
@@ -694,6 +635,11 @@ public class Evaluator {
                 throw new GlobalFunctionExecutionException("Wrong argument type: " + args[1].getAsString().getValue());
             }
         }
+        final String memoKey = memoKey("loadJSON", path, currentBaseURI, (args.length == 2) ? args[1] : null);
+        Node memoized = (memoKey == null) ? null : (Node) context.getMemoizedResource(memoKey);
+        if (memoized != null) {
+            return memoized;
+        }
         // if we are doing http request, then check query parameters and if
         // there no 'callback' parameter add it with random string value (random
         // string should be generated, using all english symbols, length = 6)
@@ -707,6 +653,8 @@ public class Evaluator {
             }
         }
 
+        // load can block evaluation, so output written so far is sent first
+        context.flushPoint(FlushPoint.RESOURCE_CALL);
         Resource resource = null;
         InputStream resourceStream = null;
         BufferedReader reader = null;
@@ -734,7 +682,11 @@ public class Evaluator {
                 Histone.runtime_log_warn("Invalid JSON data found by path: " + path);
                 return nodeFactory.UNDEFINED;
             }
-            return nodeFactory.jsonToNode(json);
+            Node result = nodeFactory.jsonToLazyNode(json);
+            if (memoKey != null) {
+                context.memoizeResource(memoKey, result);
+            }
+            return result;
         } catch (Exception e) {
             Histone.runtime_log_warn_e("Resource loadJSON failed! Unresolvable resource.", e);
             return nodeFactory.UNDEFINED;
@@ -745,7 +697,7 @@ public class Evaluator {
         }
     }
 
-    private Node processLoadText(List<Node> argsList, EvaluatorContext context) {
+    private Node processLoadText(List<Node> argsList, EvaluatorContext context) throws IOException {
         Node[] args = argsList.toArray((Node[]) Array.newInstance(Node.class, argsList.size()));
         if (ArrayUtils.isEmpty(args)) {
             return nodeFactory.UNDEFINED;
@@ -764,13 +716,23 @@ public class Evaluator {
                 throw new GlobalFunctionExecutionException("Wrong argument type: " + args[1].getAsString().getValue());
             }
         }
+        final String memoKey = memoKey("loadText", path, currentBaseURI, requestMap);
+        Node memoized = (memoKey == null) ? null : (Node) context.getMemoizedResource(memoKey);
+        if (memoized != null) {
+            return memoized;
+        }
 
+        context.flushPoint(FlushPoint.RESOURCE_CALL);
         Resource resource = null;
         try {
             resource = resourceLoader.load(path, currentBaseURI, new String[]{ContentType.TEXT}, requestMap);
             String content = readStringFromResource(resource, path, currentBaseURI);
 
-            return nodeFactory.string(content);
+            Node result = nodeFactory.string(content);
+            if (memoKey != null) {
+                context.memoizeResource(memoKey, result);
+            }
+            return result;
         } catch (Exception e) {
             Histone.runtime_log_warn_e("Resource loadText failed! Unresolvable resource.", e);
             return nodeFactory.UNDEFINED;
@@ -780,7 +742,7 @@ public class Evaluator {
     }
 
 
-    private Node processInclude(List<Node> args, EvaluatorContext context) {
+    private Node processInclude(List<Node> args, EvaluatorContext context) throws IOException {
         if (args.size() == 0) {
             return nodeFactory.UNDEFINED;
         }
@@ -800,24 +762,38 @@ public class Evaluator {
             }
         }
 
+        final String memoKey = memoKey("template", path, currentBaseURI, requestMap);
         Resource resource = null;
         try {
-            resource = resourceLoader.load(path, currentBaseURI, new String[]{ContentType.TEXT, ContentType.AST}, requestMap);
-            JsonNode ast = readAstFromResource(resource, path, currentBaseURI);
+            LoadedTemplate template = (memoKey == null) ? null : (LoadedTemplate) context.getMemoizedResource(memoKey);
+            if (template == null) {
+                context.flushPoint(FlushPoint.RESOURCE_CALL);
+                resource = resourceLoader.load(path, currentBaseURI, new String[]{ContentType.TEXT, ContentType.AST}, requestMap);
+                template = new LoadedTemplate(compileResource(resource, resolveLocation(path, currentBaseURI), path, currentBaseURI),
+                        resource.getBaseHref());
+                if (memoKey != null) {
+                    context.memoizeResource(memoKey, template);
+                }
+            }
 
             GlobalObjectNode globalCopy = new GlobalObjectNode(nodeFactory, global);
-            URI resourceUri = (resource.getBaseHref() != null) ? URI.create(resource.getBaseHref()) : null;
+            URI resourceUri = (template.baseHref != null) ? URI.create(template.baseHref) : null;
             if (args.size() <= 1) {
                 EvaluatorContext includeContext = EvaluatorContext.createEmpty(nodeFactory, globalCopy);
                 if (resourceUri != null && resourceUri.isAbsolute() && !resourceUri.isOpaque()) {
                     includeContext.setBaseURI(resourceUri.toString());
                 }
-                String includeOutput = processInternal(ast, includeContext);
+                // flush points of included template flush output of including one
+                includeContext.setOutput(context.getOutput());
+                includeContext.setResourceMemo(context.getResourceMemo());
+                String includeOutput = template.compiled.process(includeContext);
                 return nodeFactory.string(includeOutput);
             }
             EvaluatorContext includeContext = EvaluatorContext.createFromJson(nodeFactory, globalCopy, args.get(1).getAsJsonNode());
             includeContext.setBaseURI(resourceUri.toString());
-            StringHistoneNode result = nodeFactory.string(processInternal(ast, includeContext));
+            includeContext.setOutput(context.getOutput());
+            includeContext.setResourceMemo(context.getResourceMemo());
+            StringHistoneNode result = nodeFactory.string(template.compiled.process(includeContext));
             context.setBaseURI(currentBaseURI);
             return result;
         } catch (ResourceLoadException e) {
@@ -842,11 +818,11 @@ public class Evaluator {
             requestMap = args.get(1);
 
         try {
-            ArrayNode parsed = parser.parse(templateContent);
+            CompiledTemplate template = compileEval(templateContent);
 
             context.saveState();
-            if (requestMap != null) context.putProp("this", requestMap);
-            String processed = processInternal(parsed, context);
+            if (requestMap != null) context.putProp(Symbol.THIS, requestMap);
+            String processed = template.process(context);
             context.restoreState();
 
             return nodeFactory.string(processed);
@@ -856,10 +832,13 @@ public class Evaluator {
         } catch (EvaluatorException e) {
             Histone.runtime_log_warn_e("Cannot evaluate eval expression.", e);
             return nodeFactory.UNDEFINED;
+        } catch (HistoneException e) {
+            Histone.runtime_log_warn_e("Cannot compile eval expression.", e);
+            return nodeFactory.UNDEFINED;
         }
     }
 
-    private Node processRequire(List<Node> args, EvaluatorContext context) {
+    private Node processRequire(List<Node> args, EvaluatorContext context) throws IOException {
         if (args.size() == 0) {
             return nodeFactory.UNDEFINED;
         }
@@ -870,19 +849,28 @@ public class Evaluator {
         final String path = args.get(0).getAsString().getValue();
         final String currentBaseURI = getContextBaseURI(context);
 
+        final String memoKey = memoKey("template", path, currentBaseURI, null);
         Resource resource = null;
         try {
-            resource = resourceLoader.load(path, currentBaseURI, new String[]{ContentType.TEXT, ContentType.AST});
-
-            JsonNode ast = readAstFromResource(resource, path, currentBaseURI);
+            LoadedTemplate template = (memoKey == null) ? null : (LoadedTemplate) context.getMemoizedResource(memoKey);
+            if (template == null) {
+                context.flushPoint(FlushPoint.RESOURCE_CALL);
+                resource = resourceLoader.load(path, currentBaseURI, new String[]{ContentType.TEXT, ContentType.AST});
+                template = new LoadedTemplate(compileResource(resource, resolveLocation(path, currentBaseURI), path, currentBaseURI),
+                        resource.getBaseHref());
+                if (memoKey != null) {
+                    context.memoizeResource(memoKey, template);
+                }
+            }
 
             GlobalObjectNode globalCopy = new GlobalObjectNode(nodeFactory, global);
-            URI resourceUri = (resource.getBaseHref() != null) ? URI.create(resource.getBaseHref()) : null;
+            URI resourceUri = (template.baseHref != null) ? URI.create(template.baseHref) : null;
             EvaluatorContext includeContext = EvaluatorContext.createEmpty(nodeFactory, globalCopy);
             if (resourceUri != null && resourceUri.isAbsolute() && !resourceUri.isOpaque()) {
                 includeContext.setBaseURI(resourceUri.toString());
             }
-            processInternal(ast, includeContext);
+            includeContext.setResourceMemo(context.getResourceMemo());
+            template.compiled.process(includeContext);
             NameSpaceNode nameSpaceNode = nodeFactory.nameSpace();
             Map<String, Node> props = includeContext.getProps();
             for (String key : props.keySet()) {
@@ -906,6 +894,50 @@ public class Evaluator {
         }
     }
 
+    /**
+     * Return key of resource load in per-evaluation memo, or null if the load shouldn't be memoized<br/>
+     * Loads with POST or PATCH method aren't memoized, any load can opt out (or in) with boolean 'memo' request property.
+     *
+     * @param kind    kind of loaded resource
+     * @param path    resource path
+     * @param baseURI base URI path is resolved against
+     * @param request request argument of load function, may be null
+     */
+    private String memoKey(String kind, String path, String baseURI, Node request) {
+        if (request != null && request.isObject()) {
+            Node memo = request.hasProp("memo") ? request.getProp("memo") : null;
+            Node method = request.hasProp("method") ? request.getProp("method") : null;
+            if (memo != null && memo.isBoolean()) {
+                if (!memo.getAsBoolean().getValue()) {
+                    return null;
+                }
+            } else if (method != null && method.isString()
+                    && NON_IDEMPOTENT_METHODS.contains(method.getAsString().getValue().toUpperCase())) {
+                return null;
+            }
+        }
+        String fullPath = resolveLocation(path, baseURI);
+        if (fullPath == null) {
+            return null;
+        }
+        try {
+            return kind + "\n" + fullPath + "\n" + ((request == null) ? "" : request.getAsJsonNode().toString());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Return full path of resource, or null if resource loader can't resolve it
+     */
+    private String resolveLocation(String path, String baseURI) {
+        try {
+            return resourceLoader.resolveFullPath(path, baseURI);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     private Node runNodeFunc(Node targetNode, String name, List<Node> args) throws EvaluatorException {
         try {
             return nodeFunctionsManager.execute(targetNode, name, args.toArray((Node[]) Array.newInstance(Node.class, args.size())));
@@ -926,395 +958,124 @@ public class Evaluator {
         }
     }
 
-    private Node processVar(JsonNode ident, ArrayNode expression, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processVar(): ident={}, expression={}, context={}", new Object[]{ident, expression, context});
-
-        Node exprNode = processNode(expression, context);
-        context.putProp(ident.asText(), exprNode);
-        return nodeFactory.UNDEFINED;
-    }
-
-    private Node processStatements(JsonNode jsonElement, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processStatements(): JsonNode={}, context={}", new Object[]{jsonElement, context});
-
-        return nodeFactory.string(processInternal(jsonElement, context));
-    }
-
-    private Node processFor(ArrayNode iterator, ArrayNode collection, ArrayNode statements, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processFor(): iterator={}, collection={}, statements={}, context={}", new Object[]{iterator, collection, statements, context});
-
-        StringBuilder sb = new StringBuilder();
-
-        String iterVal = iterator.get(0).asText();
-        String iterKey = (iterator.size() > 1) ? iterator.get(1).asText() : null;
-
-
-        Node collectionNode = processNode(collection, context);
-
-        ObjectHistoneNode self = nodeFactory.object();
-        context.putProp("self", self);
-
-
-        if (collectionNode.isObject() && collectionNode.getAsObject().size() > 0) {
-            int idx = 0;
-            self.add("last", nodeFactory.number(collectionNode.getAsObject().size() - 1));
-            Map<Object, Node> elements = collectionNode.getAsObject().getElements();
-            for (Object key : elements.keySet()) {
-                // Save context state on each iteration
-                // HSTJ-26
-                context.saveState();
-
-                self.add("index", nodeFactory.number(idx));
-
-                context.putProp(iterVal, elements.get(key));
-                if (iterKey != null) {
-                    context.putProp(iterKey, nodeFactory.string(key.toString()));
-                }
-
-                context.putProp("self", self);
-                sb.append(processInternal(statements.get(0), context));
-
-                idx++;
-
-                // HSTJ-26
-                context.restoreState();
-            }
-        } else if (statements.size() > 1) {
-            String result = processInternal(statements.get(1), context);
-            sb.append(result);
-        }
-
-
-        return nodeFactory.string(sb.toString());
-    }
-
-    private Node processIf(ArrayNode conditions, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processIf(): conditions={} context={}", new Object[]{conditions, context});
-
-        StringHistoneNode result = nodeFactory.string();
-
-        context.saveState();
-
-        for (JsonNode condition : conditions) {
-            Node conditionResult = processNode(condition.get(0), context);
-
-            if (conditionResult.getAsBoolean().getValue()) {
-                result = nodeFactory.string(processInternal(condition.get(1), context));
-                break;
+    /**
+     * Compile template passed to eval(), taking it from template cache if it's enabled
+     */
+    private CompiledTemplate compileEval(final String templateContent) throws HistoneException {
+        CompiledTemplateCache.Compilation compilation = new CompiledTemplateCache.Compilation() {
+            @Override
+            public CompiledTemplate compile() throws HistoneException {
+                return compiler.compile(parser.parse(templateContent));
             }
+        };
+        if (templateCache == null) {
+            return compilation.compile();
         }
-
-        context.restoreState();
-
-        return result;
+        return templateCache.get(new TemplateKey(null, ContentType.TEXT, templateContent, false), templateContent.length(), compilation);
     }
 
-    private Node processTernary(ArrayNode condition, ArrayNode trueNode, ArrayNode falseNode, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processTernary(): conditions={}, trueNode={}, falseNode={}, context={}", new Object[]{condition, trueNode, falseNode, context});
-
-        Node conditionResult = processNode(condition, context);
-        Node result;
-
-        if (conditionResult.getAsBoolean().getValue()) {
-            result = processNode(trueNode, context);
-        } else if (falseNode != null) {
-            result = processNode(falseNode, context);
-        } else {
-            result = nodeFactory.UNDEFINED;
+    /**
+     * Compile template resource loaded by import, include or require<br/>
+     * If template cache is enabled, compiled template is cached by resource location and resource content: template source
+     * for text resources and AST instance for AST resources (caching loaders return the same instance while resource is
+     * unchanged), so templates are compiled once and modified resources are recompiled.
+     *
+     * @param resource       loaded resource
+     * @param location       full path of resource, may be null
+     * @param path           resource path used for loading
+     * @param currentBaseURI base URI used for loading
+     * @return compiled template
+     * @throws ResourceLoadException if resource can't be read or parsed
+     */
+    private CompiledTemplate compileResource(Resource resource, String location, final String path, final String currentBaseURI) {
+        if (resource == null) {
+            throw new ResourceLoadException(MessageFormat.format("Can't import resource by path = ''{0}''. Resource was not found.", path));
         }
-
-        return result;
-    }
-
-    private Node processGreaterThan(ArrayNode nodeLeft, ArrayNode nodeRight, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processGreaterThan(): left={}, right={}, context={}", new Object[]{nodeLeft, nodeRight, context});
-
-        Node left = processNode(nodeLeft, context);
-        Node right = processNode(nodeRight, context);
-        log.trace("processGreaterThan(): left={}, right={}, context={}", new Object[]{left, right, context});
-
-        return left.oper_greaterThan(right);
-    }
-
-    private Node processGreaterOrEqual(ArrayNode nodeLeft, ArrayNode nodeRight, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processGreaterOrEqual(): left={}, right={}, context={}", new Object[]{nodeLeft, nodeRight, context});
-
-        Node left = processNode(nodeLeft, context);
-        Node right = processNode(nodeRight, context);
-        log.trace("processGreaterOrEqual(): left={}, right={}, context={}", new Object[]{left, right, context});
-
-        return left.oper_greaterOrEqual(right);
-    }
-
-    private Node processLessThan(ArrayNode nodeLeft, ArrayNode nodeRight, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processLessThan(): left={}, right={}, context={}", new Object[]{nodeLeft, nodeRight, context});
-
-        Node left = processNode(nodeLeft, context);
-        Node right = processNode(nodeRight, context);
-        log.trace("processLessThan(): left={}, right={}, context={}", new Object[]{left, right, context});
-
-        return left.oper_lessThan(right);
-    }
-
-    private Node processLessOrEqual(ArrayNode nodeLeft, ArrayNode nodeRight, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processLessOrEqual(): nodeLeft={}, nodeRight={}, context={}", new Object[]{nodeLeft, nodeRight, context});
-
-        Node left = processNode(nodeLeft, context);
-        Node right = processNode(nodeRight, context);
-        log.trace("processLessOrEqual(): left={}, right={}, context={}", new Object[]{left, right, context});
-
-        return left.oper_lessOrEqual(right);
-    }
-
-    private Node processNotEqual(ArrayNode nodeLeft, ArrayNode nodeRight, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processNotEqual(): nodeLeft={}, nodeRight={}, context={}", new Object[]{nodeLeft, nodeRight, context});
-
-        Node left = processNode(nodeLeft, context);
-        Node right = processNode(nodeRight, context);
-        log.trace("processNotEqual(): left={}, right={}, context={}", new Object[]{left, right, context});
-
-        return left.oper_notEqual(right);
-    }
-
-    private Node processEqual(ArrayNode nodeLeft, ArrayNode nodeRight, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processEqual(): nodeLeft={}, nodeRight={}, context={}", new Object[]{nodeLeft, nodeRight, context});
-
-        log.trace("processEqual(): nodeLeft={}, nodeRight={}, context={}", new Object[]{nodeLeft.getClass(), nodeRight.getClass(), context});
-        Node left = processNode(nodeLeft, context);
-        Node right = processNode(nodeRight, context);
-        log.trace("processEqual(): nodeLeft={}, nodeRight={}, context={}", new Object[]{left.getClass(), right.getClass(), context});
-
-        return left.oper_equal(right);
-    }
-
-    private Node processNot(ArrayNode node, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processNot(): node={}, context={}", new Object[]{node, context});
-        Node left = processNode(node, context);
-        log.trace("processNot(): node={}, context={}", new Object[]{node.getClass(), context});
-
-        return left.oper_not();
-    }
-
-    private Node processAnd(ArrayNode nodeLeft, ArrayNode nodeRight, EvaluatorContext context) throws EvaluatorException {
-        log.debug("pricessAnd(): nodeLeft={}, nodeRight={}, context={}", new Object[]{nodeLeft, nodeRight, context});
-
-        log.trace("pricessAnd(): nodeLeft={}, nodeRight={}, context={}", new Object[]{nodeLeft.getClass(), nodeRight.getClass(), context});
-        Node left = processNode(nodeLeft, context);
-        Node right = processNode(nodeRight, context);
-        log.trace("pricessAnd(): nodeLeft={}, nodeRight={}, context={}", new Object[]{left.getClass(), right.getClass(), context});
-
-        return left.oper_and(right);
-    }
-
-    private Node processOr(ArrayNode nodeLeft, ArrayNode nodeRight, EvaluatorContext context) throws EvaluatorException {
-        log.debug("pricessOr(): nodeLeft={}, nodeRight={}, context={}", new Object[]{nodeLeft, nodeRight, context});
-
-        log.trace("pricessOr(): nodeLeft={}, nodeRight={}, context={}", new Object[]{nodeLeft.getClass(), nodeRight.getClass(), context});
-        Node left = processNode(nodeLeft, context);
-        Node right = processNode(nodeRight, context);
-        log.trace("pricessOr(): nodeLeft={}, nodeRight={}, context={}", new Object[]{left.getClass(), right.getClass(), context});
-
-        return left.oper_or(right);
-    }
-
-    private Node processAdd(ArrayNode nodeLeft, ArrayNode nodeRight, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processAdd(): nodeLeft={}, nodeRight={}, context={}", new Object[]{nodeLeft, nodeRight, context});
-
-        log.trace("processAdd(): nodeLeft={}, nodeRight={}, context={}", new Object[]{nodeLeft.getClass(), nodeRight.getClass(), context});
-        Node left = processNode(nodeLeft, context);
-        Node right = processNode(nodeRight, context);
-        log.trace("processAdd(): nodeLeft={}, nodeRight={}, context={}", new Object[]{left.getClass(), right.getClass(), context});
-
-        return left.oper_add(right);
-    }
-
-    private Node processSub(ArrayNode nodeLeft, ArrayNode nodeRight, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processSub(): nodeLeft={}, nodeRight={}, context={}", new Object[]{nodeLeft, nodeRight, context});
-        Node left = processNode(nodeLeft, context);
-        Node right = processNode(nodeRight, context);
-
-        return left.oper_sub(right);
-    }
-
-    private Node processMul(ArrayNode nodeLeft, ArrayNode nodeRight, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processMul(): nodeLeft={}, nodeRight={}, context={}", new Object[]{nodeLeft, nodeRight, context});
-        Node left = processNode(nodeLeft, context);
-        Node right = processNode(nodeRight, context);
-
-        return left.oper_mul(right);
-    }
-
-    private Node processDiv(ArrayNode nodeLeft, ArrayNode nodeRight, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processDiv(): nodeLeft={}, nodeRight={}, context={}", new Object[]{nodeLeft, nodeRight, context});
-        Node left = processNode(nodeLeft, context);
-        Node right = processNode(nodeRight, context);
-
-        return left.oper_div(right);
-    }
-
-    private Node processMod(ArrayNode nodeLeft, ArrayNode nodeRight, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processMod(): nodeLeft={}, nodeRight={}, context={}", new Object[]{nodeLeft, nodeRight, context});
-        Node left = processNode(nodeLeft, context);
-        Node right = processNode(nodeRight, context);
-
-        return left.oper_mod(right);
-    }
-
-    private Node processNegate(ArrayNode node, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processNegate(): node={}, context={}", new Object[]{node, context});
-        Node left = processNode(node, context);
-        return left.oper_negate();
-    }
-
-    private Node processMap(ArrayNode element, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processMap(): element={}, context={}", new Object[]{element, context});
-        ObjectHistoneNode result = nodeFactory.object();
-
-        for (JsonNode item : element) {
-            JsonNode key = item.get(0);
-            if (key.isNull()) {
-                result.add(processNode(item.get(1), context));
-            } else {
-                if (key.isNumber()) {
-                    result.add(key.intValue(), processNode(item.get(1), context));
-                } else if (key.isTextual()) {
-                    result.add(key.asText(), processNode(item.get(1), context));
-                }
-            }
+        if (!(resource instanceof StringResource) && !(resource instanceof StreamResource) && !(resource instanceof AstResource)) {
+            throw new ResourceLoadException(MessageFormat.format("Can't import resource by path = ''{0}''. Resource type ''{1}'' is unknown", path, resource.getClass()));
         }
 
-        return result;
-    }
-
-    private Node processSelector(ArrayNode element, EvaluatorContext context) throws EvaluatorException {
-        log.debug("processSelector(): element={}, context={}", new Object[]{element, context});
-
-        int startIdx = 0;
-        Node ctx;
-        if (element.get(0).isArray()) {
-            ctx = processNode(element.get(startIdx++), context);
-        } else if ("this".equals(element.get(0).asText())) {
-            if (context.hasProp("this")) {
-                ctx = context.getProp("this");
-            } else {
-                ctx = context.getInitialContext();
-            }
-            startIdx++;
-        } else if ("global".equals(element.get(0).asText())) {
-            if ("baseURI".equals(element.path(1).asText())) {
-                if (context.getGlobal().hasProp("baseURI")) {
-                    ctx = context.getGlobal().getProp("baseURI");
-                    startIdx = startIdx + 2;
-                } else {
-                    ctx = nodeFactory.string(context.getBaseURI());//context.getProp("baseURI");
-                    startIdx = startIdx + 2;
-                }
-            } else {
-                ctx = context.getGlobal();
-                startIdx++;
-            }
-        } else if ("self".equals(element.get(0).asText())) {
-            ctx = context.getProp("self");
-            startIdx++;
-        } else {
-            if ("baseURI".equals(element.path(0).asText()) && !context.hasStackProp("baseURI")) {
-                if (context.getGlobal().hasProp("baseURI")) {
-                    ctx = context.getGlobal().getProp("baseURI");
-                    startIdx = startIdx + 1;
+        final String contentType = resource.getContentType();
+        final Object content;
+        Object contentKey = null;
+        try {
+            if (resource instanceof AstResource) {
+                AstResource astResource = (AstResource) resource;
+                contentKey = astResource.getContentKey();
+                if (astResource.getCompactContent() != null) {
+                    content = astResource.getCompactContent();
                 } else {
-                    ctx = nodeFactory.string(context.getBaseURI());//context.getProp("baseURI");
-                    startIdx = startIdx + 1;
+                    // AST of resource with known content key is read only if template isn't compiled yet
+                    content = (contentKey != null) ? resource : astResource.getContent();
                 }
+            } else if (resource instanceof StringResource) {
+                content = ((StringResource) resource).getContent();
+            } else if (contentType == ContentType.BINARY_AST) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                IOUtils.copy(((StreamResource) resource).getContent(), bytes);
+                content = ByteBuffer.wrap(bytes.toByteArray());
             } else {
-                ctx = context.getAsNode();
+                content = IOUtils.toString(((StreamResource) resource).getContent());
             }
+        } catch (IOException e) {
+            throw new ResourceLoadException("Resource import failed! Resource reading error.", e);
+        }
+        if (content == null) {
+            throw new ResourceLoadException(MessageFormat.format("Can't import resource by path = ''{0}''. Resource is unreadable", path));
         }
 
-        for (int j = startIdx; j < element.size(); j++) {
-            JsonNode selector = element.get(j);
-            String propName;
-
-            if (selector.isTextual()) {
-                // selector is written as it is
-                propName = selector.asText();
-            } else {
-                // selector is written inside ['...'], like access to array
-                propName = processNode(selector, context).getAsString().getValue();
+        CompiledTemplateCache.Compilation compilation = new CompiledTemplateCache.Compilation() {
+            @Override
+            public CompiledTemplate compile() {
+                if (content instanceof CompactAst) {
+                    return compiler.compile((CompactAst) content);
+                }
+                return compiler.compile(readAst(contentType, content, path, currentBaseURI));
             }
-
-            if (ctx.hasProp(propName)) {
-                ctx = ctx.getProp(propName);
-            } else if (context.getGlobal().hasProp(propName)) {
-                ctx = context.getGlobal().getProp(propName);
-            } else {
-                Histone.runtime_log_warn("Selector: in selector '{}' object '{}' doesn't have property '{}'", element, ctx, propName);
-                ctx = null;
-                break;
+        };
+        try {
+            if (templateCache == null) {
+                return compilation.compile();
             }
-
-            // }
-        }
-
-        Node result;
-
-        if (ctx == null) {
-            Histone.runtime_log_warn("Property value was null, returning 'undefined()'");
-            result = nodeFactory.UNDEFINED;
-        } else {
-            result = ctx;
+            // AST instances without content key are compared by identity, comparing them would walk whole trees
+            boolean identity = (content instanceof JsonNode) || (content instanceof CompactAst);
+            Object token = (contentKey != null) ? contentKey : content;
+            long weight = (token instanceof String) ? ((String) token).length()
+                    : (token instanceof ByteBuffer) ? ((ByteBuffer) token).remaining() : AST_RESOURCE_WEIGHT;
+            return templateCache.get(new TemplateKey(location, contentType, token, identity), weight, compilation);
+        } catch (HistoneException e) {
+            throw new ResourceLoadException("Resource import failed! Resource compilation error.", e);
         }
-
-        log.debug("processSelector(): result={}", new Object[]{result});
-
-        return result;
     }
 
-    private JsonNode readAstFromResource(Resource resource, String path, String currentBaseURI) throws EvaluatorException {
-        JsonNode ast = null;
+    /**
+     * Return AST of resource content read by {@link #compileResource}
+     */
+    private JsonNode readAst(String contentType, Object content, String path, String currentBaseURI) {
         try {
-            if (resource == null) {
-                throw new ResourceLoadException(MessageFormat.format("Can't import resource by path = '{}'. Resource was not found.", path));
-            }
-
-            if (!(resource instanceof StringResource) && !(resource instanceof StreamResource) && !(resource instanceof AstResource)) {
-                throw new ResourceLoadException(MessageFormat.format("Can't import resource by path = '{}'. Resource type '{}' is unknown", path, resource.getClass()));
-            }
-
-            String templateContent = null;
-            if (resource instanceof StringResource) {
-                templateContent = ((StringResource) resource).getContent();
-            } else if (resource instanceof StreamResource) {
-                templateContent = IOUtils.toString(((StreamResource) resource).getContent());
-            } else if (resource instanceof AstResource) {
-                ast = ((AstResource) resource).getContent();
-            } else {
-                throw new ResourceLoadException(MessageFormat.format("Unsupported resource class: {0}", resource.getClass()));
-            }
-
-            if (resource instanceof StringResource || resource instanceof StreamResource) {
-                if (templateContent == null) {
-                    throw new ResourceLoadException(MessageFormat.format("Can't import resource by path: {0}. Resource is unreadable", path));
-                }
-
-                if (resource.getContentType() == ContentType.TEXT) {
-                    ast = parser.parse(templateContent);
-                } else if (resource.getContentType() == ContentType.AST) {
-                    ast = nodeFactory.jsonNode(templateContent);
-                } else {
-                    throw new ResourceLoadException(MessageFormat.format("Unsupported content-type:{0} of resource href:{1}, baseHref:{2}", resource.getContentType(), path, currentBaseURI));
-                }
-            } else {
+            if (content instanceof AstResource) {
+                JsonNode ast = ((AstResource) content).getContent();
                 if (ast == null) {
-                    throw new ResourceLoadException(MessageFormat.format("Can't import resource by path = {0}. Resource is unreadable", path));
+                    throw new ResourceLoadException(MessageFormat.format("Can't import resource by path = ''{0}''. Resource is unreadable", path));
                 }
+                return ast;
+            } else if (content instanceof JsonNode) {
+                return (JsonNode) content;
+            } else if (content instanceof ByteBuffer) {
+                ByteBuffer bytes = (ByteBuffer) content;
+                return binaryAstReader.read(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            } else if (contentType == ContentType.TEXT) {
+                return parser.parse((String) content);
+            } else if (contentType == ContentType.AST) {
+                return nodeFactory.jsonNode((String) content);
+            } else {
+                throw new ResourceLoadException(MessageFormat.format("Unsupported content-type:{0} of resource href:{1}, baseHref:{2}", contentType, path, currentBaseURI));
             }
         } catch (IOException e) {
             throw new ResourceLoadException("Resource import failed! Resource reading error.", e);
         } catch (ParserException e) {
             throw new ResourceLoadException("Resource import failed! Resource parsing error.", e);
         }
-
-        return ast;
     }
 
     private String readStringFromResource(Resource resource, String path, String currentBaseURI) throws ResourceLoadException {
@@ -1346,4 +1107,57 @@ public class Evaluator {
 
         return content;
     }
+
+    /**
+     * Template loaded by include or require, memoized for the rest of evaluation
+     */
+    private static final class LoadedTemplate {
+        final CompiledTemplate compiled;
+        final String baseHref;
+
+        LoadedTemplate(CompiledTemplate compiled, String baseHref) {
+            this.compiled = compiled;
+            this.baseHref = baseHref;
+        }
+    }
+
+    /**
+     * Key of template compiled from resource or eval() in template cache<br/>
+     * Resource content is identified by its source, digest or other content key, ASTs without content key are compared
+     * by identity.
+     */
+    private static final class TemplateKey {
+        private final String location;
+        private final String contentType;
+        private final Object content;
+        private final boolean identity;
+
+        TemplateKey(String location, String contentType, Object content, boolean identity) {
+            this.location = location;
+            this.contentType = contentType;
+            this.content = content;
+            this.identity = identity;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TemplateKey)) {
+                return false;
+            }
+            TemplateKey other = (TemplateKey) o;
+            return (location == null ? other.location == null : location.equals(other.location))
+                    && contentType.equals(other.contentType) && identity == other.identity
+                    && (identity ? content == other.content : content.equals(other.content));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (location == null) ? 0 : location.hashCode();
+            result = 31 * result + contentType.hashCode();
+            return 31 * result + (identity ? System.identityHashCode(content) : content.hashCode());
+        }
+    }
 }
@@ -15,6 +15,8 @@
  */
 package ru.histone.evaluator;
 
+import ru.histone.evaluator.compiled.CompilationMode;
+import ru.histone.evaluator.compiled.CompiledTemplateCache;
 import ru.histone.evaluator.functions.global.GlobalFunctionsManager;
 import ru.histone.evaluator.functions.node.NodeFunctionsManager;
 import ru.histone.evaluator.nodes.GlobalObjectNode;
@@ -32,6 +34,9 @@ public class EvaluatorBootstrap {
     private GlobalFunctionsManager globalFunctionsManager;
     private NodeFunctionsManager nodeFunctionsManager;
     private GlobalObjectNode global;
+    private CompilationMode compilationMode = CompilationMode.TREE;
+    private int bytecodeCompilationThreshold;
+    private CompiledTemplateCache templateCache;
 
     public Parser getParser() {
         return parser;
@@ -80,4 +85,33 @@ public class EvaluatorBootstrap {
     public void setGlobal(GlobalObjectNode global) {
         this.global = global;
     }
+
+    public CompilationMode getCompilationMode() {
+        return compilationMode;
+    }
+
+    public void setCompilationMode(CompilationMode compilationMode) {
+        this.compilationMode = compilationMode;
+    }
+
+    public int getBytecodeCompilationThreshold() {
+        return bytecodeCompilationThreshold;
+    }
+
+    public void setBytecodeCompilationThreshold(int bytecodeCompilationThreshold) {
+        this.bytecodeCompilationThreshold = bytecodeCompilationThreshold;
+    }
+
+    public CompiledTemplateCache getTemplateCache() {
+        return templateCache;
+    }
+
+    /**
+     * Set cache of compiled templates used for imported, included and required resources and eval() templates
+     *
+     * @param templateCache template cache, null disables caching
+     */
+    public void setTemplateCache(CompiledTemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
 }
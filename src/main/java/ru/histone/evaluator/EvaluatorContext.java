@@ -20,29 +20,36 @@ import ru.histone.GlobalProperty;
 import ru.histone.evaluator.nodes.ContextWrapperNode;
 import ru.histone.evaluator.nodes.GlobalObjectNode;
 import ru.histone.evaluator.nodes.Node;
-import ru.histone.evaluator.nodes.*;
+import ru.histone.evaluator.nodes.NodeFactory;
 import ru.histone.evaluator.nodes.ObjectHistoneNode;
+import ru.histone.evaluator.output.FlushPoint;
+import ru.histone.evaluator.output.TemplateOutput;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.io.IOException;
+import java.util.AbstractMap;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.*;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 /**
  * Special object for storing evaluator context<br/>
+ * Variables and macros are stored in array backed frames and are looked up by {@link Symbol},
+ * methods accepting names resolve symbols by themselves.
  */
 public class EvaluatorContext {
     private NodeFactory nodeFactory;
-    private Deque<Map<String, Node>> stacksProps;
-    private Deque<Map<String, MacroFunc>> stacksMacro;
+    private FrameStack<Node> stacksProps;
+    private FrameStack<MacroFunc> stacksMacro;
     private Node initialContext;
     private ObjectHistoneNode global;
     private Set<String> importedResources;
     private String baseURI;
+    private TemplateOutput output;
+    private Map<String, Object> resourceMemo;
 
     /**
      * Creates evaluator context from JSON object
@@ -75,18 +82,15 @@ public class EvaluatorContext {
     }
 
     private EvaluatorContext(NodeFactory nodeFactory, ObjectHistoneNode global, JsonNode initialContext) {
-        this.stacksProps = new ArrayDeque<Map<String, Node>>();
-        this.stacksMacro = new ArrayDeque<Map<String, MacroFunc>>();
-
-        this.stacksProps.push(new LinkedHashMap<String, Node>());
-        this.stacksMacro.push(new LinkedHashMap<String, MacroFunc>());
+        this.stacksProps = new FrameStack<Node>();
+        this.stacksMacro = new FrameStack<MacroFunc>();
 
         this.importedResources = new HashSet<String>();
 
         this.nodeFactory = nodeFactory;
 
         if (initialContext != null) {
-            this.initialContext = this.nodeFactory.jsonToNode(initialContext);
+            this.initialContext = this.nodeFactory.jsonToLazyNode(initialContext);
         } else {
             this.initialContext = this.nodeFactory.UNDEFINED;
         }
@@ -104,19 +108,25 @@ public class EvaluatorContext {
         return "baseURI".equals(name) || hasStackProp(name) || initialContext.hasProp(name);
     }
 
+    /**
+     * Check if context has specified variable
+     *
+     * @param symbol variable symbol
+     * @return true if context has specified variable
+     */
+    public boolean hasProp(Symbol symbol) {
+        return symbol == Symbol.BASE_URI || stacksProps.contains(symbol) || initialContext.hasProp(symbol.getName());
+    }
+
     /**
      * Check if context has specified variable in stack
      *
      * @param name variable name
      * @return true if context has specified variable
      */
-    public boolean hasStackProp(String name){
-        for (Map<String, Node> stack : stacksProps) {
-            if (stack.containsKey(name)) {
-                return true;
-            }
-        }
-        return false;
+    public boolean hasStackProp(String name) {
+        Symbol symbol = Symbol.find(name);
+        return symbol != null && stacksProps.contains(symbol);
     }
 
     /**
@@ -126,35 +136,60 @@ public class EvaluatorContext {
      * @return variable object, or UNDEFINED if variable doesn't exists in context
      */
     public Node getProp(String name) {
-        for (Map<String, Node> stack : stacksProps) {
-            if (stack.containsKey(name)) {
-                return stack.get(name);
-            }
+        Symbol symbol = Symbol.find(name);
+        if (symbol != null) {
+            return getProp(symbol);
         }
 
         if (initialContext.hasProp(name)) {
             return initialContext.getProp(name);
-        } else if ("baseURI".equals(name)){
-            return nodeFactory.string(baseURI);
         } else {
             return nodeFactory.UNDEFINED;
         }
     }
 
+    /**
+     * Return sepcified variable
+     *
+     * @param symbol variable symbol
+     * @return variable object, or UNDEFINED if variable doesn't exists in context
+     */
+    public Node getProp(Symbol symbol) {
+        Node result = findProp(symbol);
+        return (result == null) ? nodeFactory.UNDEFINED : result;
+    }
 
-    public Map<String, Node> getProps(){
-        Map<String, Node> props = new HashMap<String, Node>();
-        for (Map<String, Node> stack : stacksProps) {
-            props.putAll(stack);
+    /**
+     * Return specified variable, doing single lookup instead of {@link #hasProp} and {@link #getProp} calls
+     *
+     * @param symbol variable symbol
+     * @return variable object, or null if context doesn't have such variable
+     */
+    public Node findProp(Symbol symbol) {
+        Node result = stacksProps.get(symbol);
+        if (result != null) {
+            return result;
+        }
+
+        String name = symbol.getName();
+        if (initialContext.hasProp(name)) {
+            return initialContext.getProp(name);
+        } else if (symbol == Symbol.BASE_URI) {
+            return nodeFactory.string(baseURI);
+        } else {
+            return null;
         }
+    }
+
+    public Map<String, Node> getProps() {
+        Map<String, Node> props = new HashMap<String, Node>();
+        stacksProps.collect(props);
         return props;
     }
 
-    public Map<String, MacroFunc> getMacros(){
+    public Map<String, MacroFunc> getMacros() {
         Map<String, MacroFunc> macros = new HashMap<String, MacroFunc>();
-        for (Map<String, MacroFunc> macro : stacksMacro) {
-            macros.putAll(macro);
-        }
+        stacksMacro.collect(macros);
         return macros;
     }
 
@@ -165,7 +200,17 @@ public class EvaluatorContext {
      * @param value variable value
      */
     public void putProp(String name, Node value) {
-        stacksProps.getFirst().put(name, value);
+        stacksProps.put(Symbol.of(name), value);
+    }
+
+    /**
+     * Stores variable to context
+     *
+     * @param symbol variable symbol
+     * @param value  variable value
+     */
+    public void putProp(Symbol symbol, Node value) {
+        stacksProps.put(symbol, value);
     }
 
     // ----------------------------------------------------
@@ -188,14 +233,8 @@ public class EvaluatorContext {
      * @return macro object
      */
     public MacroFunc getMacro(String name) {
-
-        for (Map<String, MacroFunc> stack : stacksMacro) {
-            if (stack.containsKey(name)) {
-                return stack.get(name);
-            }
-        }
-
-        return null;
+        Symbol symbol = Symbol.find(name);
+        return (symbol == null) ? null : stacksMacro.get(symbol);
     }
 
     /**
@@ -205,7 +244,7 @@ public class EvaluatorContext {
      * @param macro macro object
      */
     public void putMacro(String name, MacroFunc macro) {
-        stacksMacro.getFirst().put(name, macro);
+        stacksMacro.put(Symbol.of(name), macro);
     }
 
     // ----------------------------------------------------
@@ -215,19 +254,18 @@ public class EvaluatorContext {
      * Save current context state to stack
      */
     public void saveState() {
-        stacksProps.push(new LinkedHashMap<String, Node>());
-        stacksMacro.push(new LinkedHashMap<String, MacroFunc>());
+        stacksProps.push();
+        stacksMacro.push();
     }
 
     /**
      * Restore previously saved context state from stack
      */
     public void restoreState() {
-        if (stacksProps.size() == 1) {
+        if (!stacksProps.pop()) {
             throw new RuntimeException("Can't restore, when saveState wasn't run");
         }
-        stacksProps.pollFirst();
-        stacksMacro.pollFirst();
+        stacksMacro.pop();
     }
 
     // ----------------------------------------------------
@@ -252,6 +290,43 @@ public class EvaluatorContext {
         importedResources.add(resourceFullPath);
     }
 
+    // ----------------------------------------------------
+    // Resource memo --------------------------------------
+
+    /**
+     * Return resource loaded earlier during this evaluation
+     *
+     * @param key key identifying resource load (function, full path and request)
+     * @return loaded resource, or null if it wasn't loaded yet
+     */
+    public Object getMemoizedResource(String key) {
+        return (resourceMemo == null) ? null : resourceMemo.get(key);
+    }
+
+    /**
+     * Remember loaded resource until the end of this evaluation
+     *
+     * @param key      key identifying resource load (function, full path and request)
+     * @param resource loaded resource
+     */
+    public void memoizeResource(String key, Object resource) {
+        getResourceMemo().put(key, resource);
+    }
+
+    /**
+     * Return resources loaded during this evaluation, contexts of included templates share it with including one
+     */
+    public Map<String, Object> getResourceMemo() {
+        if (resourceMemo == null) {
+            resourceMemo = new HashMap<String, Object>();
+        }
+        return resourceMemo;
+    }
+
+    public void setResourceMemo(Map<String, Object> resourceMemo) {
+        this.resourceMemo = resourceMemo;
+    }
+
     // ----------------------------------------------------
     // Other methods --------------------------------------
 
@@ -313,13 +388,13 @@ public class EvaluatorContext {
 
     @Deprecated
     public Set<Entry<String, Node>> entries() {
-        Set<Entry<String, Node>> result = new LinkedHashSet<Map.Entry<String, Node>>();
+        Map<String, Node> props = new LinkedHashMap<String, Node>();
+        stacksProps.collect(props);
 
-        for (Map<String, Node> stack : stacksProps) {
-            for (Entry<String, Node> entry : stack.entrySet()) {
-                if (!"this".equals(entry.getKey())) {
-                    result.add(entry);
-                }
+        Set<Entry<String, Node>> result = new LinkedHashSet<Map.Entry<String, Node>>();
+        for (Entry<String, Node> entry : props.entrySet()) {
+            if (!"this".equals(entry.getKey())) {
+                result.add(new AbstractMap.SimpleEntry<String, Node>(entry));
             }
         }
 
@@ -342,4 +417,27 @@ public class EvaluatorContext {
             this.baseURI = baseURI;
         }
     }
+
+    /**
+     * Return output, which evaluation result is written into, null if result is returned as string
+     */
+    public TemplateOutput getOutput() {
+        return output;
+    }
+
+    public void setOutput(TemplateOutput output) {
+        this.output = output;
+    }
+
+    /**
+     * Notify evaluation output about flush point
+     *
+     * @param point flush point
+     * @throws IOException if output can't be written
+     */
+    public void flushPoint(FlushPoint point) throws IOException {
+        if (output != null) {
+            output.flushPoint(point);
+        }
+    }
 }
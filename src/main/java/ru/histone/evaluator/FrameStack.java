@@ -0,0 +1,122 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Stack of context frames backed by arrays<br/>
+ * Entries of all frames are stored in single array, frame is just an index of it's first entry, so saving state
+ * doesn't allocate anything and frames without entries cost nothing. Entries are found by symbol reference,
+ * starting from the innermost frame.
+ *
+ * @param <T> type of values
+ */
+class FrameStack<T> {
+    private Symbol[] symbols = new Symbol[16];
+    private Object[] values = new Object[16];
+    private int size;
+
+    private int[] frames = new int[8];
+    private int depth;
+
+    /**
+     * Start new frame
+     */
+    void push() {
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        frames[depth++] = size;
+    }
+
+    /**
+     * Drop current frame with all it's entries
+     *
+     * @return false if there is no frame to drop
+     */
+    boolean pop() {
+        if (depth == 0) {
+            return false;
+        }
+        int start = frames[--depth];
+        Arrays.fill(values, start, size, null);
+        Arrays.fill(symbols, start, size, null);
+        size = start;
+        return true;
+    }
+
+    /**
+     * Put value into current frame, replacing value with the same symbol in current frame
+     */
+    void put(Symbol symbol, T value) {
+        int start = (depth == 0) ? 0 : frames[depth - 1];
+        for (int i = size - 1; i >= start; i--) {
+            if (symbols[i] == symbol) {
+                values[i] = value;
+                return;
+            }
+        }
+        if (size == symbols.length) {
+            symbols = Arrays.copyOf(symbols, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        symbols[size] = symbol;
+        values[size] = value;
+        size++;
+    }
+
+    boolean contains(Symbol symbol) {
+        return indexOf(symbol) >= 0;
+    }
+
+    /**
+     * Return value from the innermost frame, containing specified symbol
+     *
+     * @return value or null if there is no such symbol
+     */
+    @SuppressWarnings("unchecked")
+    T get(Symbol symbol) {
+        int index = indexOf(symbol);
+        return (index < 0) ? null : (T) values[index];
+    }
+
+    private int indexOf(Symbol symbol) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (symbols[i] == symbol) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Put all entries into specified map, frames are visited from the innermost to the outermost one
+     * and entries of each frame are visited in insertion order.
+     */
+    @SuppressWarnings("unchecked")
+    void collect(Map<String, ? super T> target) {
+        int end = size;
+        for (int frame = depth; frame >= 0; frame--) {
+            int start = (frame == 0) ? 0 : frames[frame - 1];
+            for (int i = start; i < end; i++) {
+                target.put(symbols[i].getName(), (T) values[i]);
+            }
+            end = start;
+        }
+    }
+}
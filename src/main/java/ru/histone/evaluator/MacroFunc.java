@@ -15,30 +15,39 @@
  */
 package ru.histone.evaluator;
 
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import ru.histone.evaluator.compiled.StatementsNode;
 
 /**
  * Special object for storing macro definitions
  */
 public class MacroFunc {
 
-    private ArrayNode args;
-    private ArrayNode statements;
+    private String[] args;
+    private Symbol[] argSymbols;
+    private StatementsNode statements;
     private String baseURI;
 
-    public void setArgs(ArrayNode args) {
+    public void setArgs(String[] args) {
         this.args = args;
+        this.argSymbols = Symbol.of(args);
     }
 
-    public void setStatements(ArrayNode statements) {
+    public void setStatements(StatementsNode statements) {
         this.statements = statements;
     }
 
-    public ArrayNode getArgs() {
+    public String[] getArgs() {
         return args;
     }
 
-    public ArrayNode getStatements() {
+    /**
+     * Return symbols of macro arguments, resolved once when macro is defined
+     */
+    public Symbol[] getArgSymbols() {
+        return argSymbols;
+    }
+
+    public StatementsNode getStatements() {
         return statements;
     }
 
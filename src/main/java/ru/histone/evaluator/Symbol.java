@@ -0,0 +1,123 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interned name of variable or macro<br/>
+ * Names used in templates are resolved into symbols during compilation, so evaluator context can find
+ * variables by comparing symbol references instead of hashing and comparing strings.
+ * Symbol table holds symbols through weak references, so names of unloaded templates and dynamic property names
+ * are removed once no compiled template or context uses them.
+ */
+public final class Symbol {
+    private static final ConcurrentMap<String, SymbolReference> SYMBOLS = new ConcurrentHashMap<String, SymbolReference>();
+    private static final ReferenceQueue<Symbol> COLLECTED = new ReferenceQueue<Symbol>();
+
+    public static final Symbol THIS = of("this");
+    public static final Symbol SELF = of("self");
+    public static final Symbol BASE_URI = of("baseURI");
+
+    private final String name;
+
+    private Symbol(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Return symbol for specified name, creating it if needed
+     *
+     * @param name variable or macro name
+     * @return symbol
+     */
+    public static Symbol of(String name) {
+        Symbol symbol = find(name);
+        if (symbol != null) {
+            return symbol;
+        }
+
+        expungeCollected();
+        Symbol created = new Symbol(name);
+        SymbolReference ref = new SymbolReference(created);
+        while (true) {
+            SymbolReference existing = SYMBOLS.putIfAbsent(name, ref);
+            if (existing == null) {
+                return created;
+            }
+            symbol = existing.get();
+            if (symbol != null) {
+                return symbol;
+            }
+            // symbol was collected, but its entry wasn't removed yet
+            SYMBOLS.replace(name, existing, ref);
+        }
+    }
+
+    /**
+     * Return symbol for specified name, if it was created before<br/>
+     * Names without symbols were never stored in any context, so lookups by such names may be skipped.
+     *
+     * @param name variable or macro name
+     * @return symbol or null
+     */
+    public static Symbol find(String name) {
+        SymbolReference ref = SYMBOLS.get(name);
+        return (ref != null) ? ref.get() : null;
+    }
+
+    /**
+     * Remove entries of collected symbols
+     */
+    private static void expungeCollected() {
+        SymbolReference ref;
+        while ((ref = (SymbolReference) COLLECTED.poll()) != null) {
+            SYMBOLS.remove(ref.name, ref);
+        }
+    }
+
+    /**
+     * Return symbols for specified names
+     */
+    public static Symbol[] of(String[] names) {
+        Symbol[] symbols = new Symbol[names.length];
+        for (int i = 0; i < names.length; i++) {
+            symbols[i] = of(names[i]);
+        }
+        return symbols;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static final class SymbolReference extends WeakReference<Symbol> {
+        private final String name;
+
+        SymbolReference(Symbol symbol) {
+            super(symbol, COLLECTED);
+            this.name = symbol.name;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.EvaluatorException;
+import ru.histone.evaluator.nodes.Node;
+
+/**
+ * Base class for compiled binary operations<br/>
+ * Both operands are always evaluated (left one first), then operation is applied to results.
+ */
+public abstract class BinaryOperationNode extends CompiledNode {
+    private final CompiledNode left;
+    private final CompiledNode right;
+
+    protected BinaryOperationNode(CompiledNode left, CompiledNode right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    public CompiledNode getLeft() {
+        return left;
+    }
+
+    public CompiledNode getRight() {
+        return right;
+    }
+
+    @Override
+    public final Node evaluate(EvaluatorContext context) throws EvaluatorException {
+        Node leftValue = left.evaluate(context);
+        Node rightValue = right.evaluate(context);
+        return apply(leftValue, rightValue);
+    }
+
+    /**
+     * Apply operation to evaluated operands
+     *
+     * @param left  left operand value
+     * @param right right operand value
+     * @return operation result
+     */
+    public abstract Node apply(Node left, Node right);
+}
@@ -0,0 +1,600 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.evaluator.compiled.bytecode.ClassFileWriter;
+import ru.histone.evaluator.compiled.bytecode.CodeBuilder;
+import ru.histone.evaluator.compiled.bytecode.Label;
+import ru.histone.evaluator.compiled.bytecode.TemplateClassLoader;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ru.histone.evaluator.compiled.bytecode.CodeBuilder.*;
+
+/**
+ * Compiles tree of executable nodes into JVM class<br/>
+ * Generated class has one method per template body and per macro body. Static fragments, variables, selectors,
+ * operators, maps, calls and 'if'/'for' statements are translated into straight-line bytecode, all other nodes
+ * (imports, 'eval()' calls, calls with dynamic names, etc) are evaluated by their tree implementation.
+ * If template can't be compiled (e.g. it's too large for single method) it stays in tree form.
+ */
+public class BytecodeCompiler {
+    private static final Logger log = LoggerFactory.getLogger(BytecodeCompiler.class);
+
+    private static final String CLASS_PREFIX = "ru/histone/evaluator/compiled/generated/Template$";
+    private static final AtomicInteger classCounter = new AtomicInteger();
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String STRING = "java/lang/String";
+    private static final String SYMBOL = "ru/histone/evaluator/Symbol";
+    private static final String NODE = "ru/histone/evaluator/nodes/Node";
+    private static final String STRING_NODE = "ru/histone/evaluator/nodes/StringHistoneNode";
+    private static final String BOOLEAN_NODE = "ru/histone/evaluator/nodes/BooleanHistoneNode";
+    private static final String OBJECT_NODE = "ru/histone/evaluator/nodes/ObjectHistoneNode";
+    private static final String NODE_FACTORY = "ru/histone/evaluator/nodes/NodeFactory";
+    private static final String CONTEXT = "ru/histone/evaluator/EvaluatorContext";
+    private static final String OUTPUT = "ru/histone/evaluator/output/TemplateOutput";
+    private static final String STATIC_FRAGMENT = "ru/histone/evaluator/output/StaticFragment";
+    private static final String EVALUATOR = "ru/histone/evaluator/Evaluator";
+    private static final String COMPILED_NODE = "ru/histone/evaluator/compiled/CompiledNode";
+    private static final String STATEMENTS_NODE = "ru/histone/evaluator/compiled/StatementsNode";
+    private static final String GENERATED_NODE = "ru/histone/evaluator/compiled/GeneratedStatementsNode";
+
+    private static final String NODE_DESC = "L" + NODE + ";";
+    private static final String STRING_DESC = "L" + STRING + ";";
+    private static final String SYMBOL_DESC = "L" + SYMBOL + ";";
+    private static final String CONTEXT_DESC = "L" + CONTEXT + ";";
+    private static final String OBJECT_NODE_DESC = "L" + OBJECT_NODE + ";";
+    private static final String OUTPUT_DESC = "L" + OUTPUT + ";";
+    private static final String CONSTRUCTOR_DESC = "(L" + NODE_FACTORY + ";[L" + COMPILED_NODE + ";[L" + OBJECT + ";[L"
+            + STATEMENTS_NODE + ";I)V";
+    private static final String RENDER_DESC = "(" + CONTEXT_DESC + OUTPUT_DESC + ")V";
+
+    /**
+     * Local variables of entry methods
+     */
+    private static final int THIS = 0;
+    private static final int CONTEXT_LOCAL = 1;
+    private static final int OUTPUT_LOCAL = 2;
+
+    private final NodeFactory nodeFactory;
+
+    public BytecodeCompiler(NodeFactory nodeFactory) {
+        this.nodeFactory = nodeFactory;
+    }
+
+    /**
+     * Compile statements into JVM class
+     *
+     * @param body compiled template body
+     * @return statements node implemented by generated class, or specified body if it can't be compiled
+     */
+    public StatementsNode compile(StatementsNode body) {
+        try {
+            return new Generator().generate(body);
+        } catch (Exception e) {
+            log.debug("Template can't be compiled into bytecode, tree evaluation will be used", e);
+        } catch (LinkageError e) {
+            log.warn("Generated template class is invalid, tree evaluation will be used", e);
+        }
+        return body;
+    }
+
+    private static String operation(CompiledNode node) {
+        if (node instanceof AddNode) {
+            return "oper_add";
+        } else if (node instanceof SubNode) {
+            return "oper_sub";
+        } else if (node instanceof MulNode) {
+            return "oper_mul";
+        } else if (node instanceof DivNode) {
+            return "oper_div";
+        } else if (node instanceof ModNode) {
+            return "oper_mod";
+        } else if (node instanceof OrNode) {
+            return "oper_or";
+        } else if (node instanceof AndNode) {
+            return "oper_and";
+        } else if (node instanceof EqualNode) {
+            return "oper_equal";
+        } else if (node instanceof NotEqualNode) {
+            return "oper_notEqual";
+        } else if (node instanceof LessOrEqualNode) {
+            return "oper_lessOrEqual";
+        } else if (node instanceof LessThanNode) {
+            return "oper_lessThan";
+        } else if (node instanceof GreaterOrEqualNode) {
+            return "oper_greaterOrEqual";
+        } else if (node instanceof GreaterThanNode) {
+            return "oper_greaterThan";
+        } else if (node instanceof NegateNode) {
+            return "oper_negate";
+        } else if (node instanceof NotNode) {
+            return "oper_not";
+        }
+        return null;
+    }
+
+    /**
+     * Generator of single class
+     */
+    private class Generator {
+        private final String className = CLASS_PREFIX + classCounter.incrementAndGet();
+        private final ClassFileWriter classWriter = new ClassFileWriter(className, GENERATED_NODE);
+
+        private final List<Object> constants = new ArrayList<Object>();
+        private final Map<Object, Integer> constantIndexes = new IdentityHashMap<Object, Integer>();
+        private final List<StatementsNode> entryBodies = new ArrayList<StatementsNode>();
+
+        private CodeBuilder code;
+
+        StatementsNode generate(StatementsNode body) throws Exception {
+            entryBodies.add(body);
+            for (int i = 0; i < entryBodies.size(); i++) {
+                generateEntry(i);
+            }
+            generateConstructor();
+            generateRender();
+
+            Class<?> generatedClass = new TemplateClassLoader(GeneratedStatementsNode.class.getClassLoader())
+                    .define(className.replace('/', '.'), classWriter.toByteArray());
+            Constructor<?> constructor = generatedClass.getConstructor(NodeFactory.class, CompiledNode[].class,
+                    Object[].class, StatementsNode[].class, int.class);
+
+            Object[] constantsArray = constants.toArray();
+            StatementsNode[] entries = new StatementsNode[entryBodies.size()];
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = (StatementsNode) constructor.newInstance(nodeFactory, entryBodies.get(i).getStatements(),
+                        constantsArray, entries, i);
+            }
+            return entries[0];
+        }
+
+        private void generateConstructor() {
+            CodeBuilder constructor = classWriter.newCode(6);
+            for (int i = 0; i < 5; i++) {
+                constructor.load(ALOAD, i);
+            }
+            constructor.load(ILOAD, 5);
+            constructor.invoke(INVOKESPECIAL, GENERATED_NODE, "<init>", CONSTRUCTOR_DESC);
+            constructor.op(RETURN);
+            classWriter.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", CONSTRUCTOR_DESC, constructor);
+        }
+
+        private void generateRender() {
+            CodeBuilder render = classWriter.newCode(3);
+            int last = entryBodies.size() - 1;
+            for (int i = 0; i <= last; i++) {
+                Label next = render.newLabel();
+                if (i < last) {
+                    render.load(ALOAD, THIS);
+                    render.field(GETFIELD, GENERATED_NODE, "entry", "I");
+                    render.pushInt(i);
+                    render.jump(IF_ICMPNE, next);
+                }
+                render.load(ALOAD, THIS);
+                render.load(ALOAD, CONTEXT_LOCAL);
+                render.load(ALOAD, OUTPUT_LOCAL);
+                render.invoke(INVOKESPECIAL, className, entryName(i), RENDER_DESC);
+                render.op(RETURN);
+                if (i < last) {
+                    render.mark(next);
+                }
+            }
+            classWriter.addMethod(ClassFileWriter.ACC_PUBLIC, "render", RENDER_DESC, render);
+        }
+
+        private String entryName(int entry) {
+            return "entry" + entry;
+        }
+
+        private void generateEntry(int entry) {
+            code = classWriter.newCode(3);
+            generateStatements(entryBodies.get(entry));
+            code.op(RETURN);
+            classWriter.addMethod(ClassFileWriter.ACC_PRIVATE, entryName(entry), RENDER_DESC, code);
+        }
+
+        /**
+         * Generate code writing results of statements into output
+         */
+        private void generateStatements(StatementsNode statements) {
+            for (CompiledNode statement : statements.getStatements()) {
+                generateStatement(statement);
+            }
+        }
+
+        private void generateStatement(CompiledNode node) {
+            if (node instanceof FragmentNode) {
+                FragmentNode fragment = (FragmentNode) node;
+                if (fragment.getText().length() > 0) {
+                    // static text is written as fragment, so byte outputs can use it's pre-encoded bytes
+                    code.load(ALOAD, OUTPUT_LOCAL);
+                    pushConstant(fragment.getFragment(), STATIC_FRAGMENT);
+                    code.invoke(INVOKEVIRTUAL, OUTPUT, "write", "(L" + STATIC_FRAGMENT + ";)V");
+                }
+            } else if (node instanceof StatementsNode) {
+                generateStatements((StatementsNode) node);
+            } else if (node instanceof VarNode && ((VarNode) node).name != null) {
+                VarNode var = (VarNode) node;
+                code.load(ALOAD, CONTEXT_LOCAL);
+                pushConstant(var.name, SYMBOL);
+                generateExpression(var.expression);
+                code.invoke(INVOKEVIRTUAL, CONTEXT, "putProp", "(" + SYMBOL_DESC + NODE_DESC + ")V");
+            } else if (node instanceof MacroNode && ((MacroNode) node).name != null) {
+                MacroNode macro = (MacroNode) node;
+                int macroEntry = entryBodies.size();
+                entryBodies.add(macro.body);
+                code.load(ALOAD, THIS);
+                code.load(ALOAD, CONTEXT_LOCAL);
+                code.pushString(macro.name);
+                pushConstant(macro.args, "[" + STRING_DESC);
+                code.pushInt(macroEntry);
+                code.invoke(INVOKEVIRTUAL, GENERATED_NODE, "defineMacro",
+                        "(" + CONTEXT_DESC + STRING_DESC + "[" + STRING_DESC + "I)V");
+            } else if (node instanceof IfNode) {
+                generateIf((IfNode) node);
+            } else if (node instanceof ForNode && ((ForNode) node).iterVal != null) {
+                generateFor((ForNode) node);
+            } else if (node instanceof CallNode && isStaticCall((CallNode) node)) {
+                // macros are rendered directly into output
+                generateCall((CallNode) node, true);
+                code.load(ALOAD, OUTPUT_LOCAL);
+                code.invoke(INVOKESTATIC, GENERATED_NODE, "writeResult", "(" + NODE_DESC + OUTPUT_DESC + ")V");
+            } else if (isExpression(node)) {
+                code.load(ALOAD, OUTPUT_LOCAL);
+                generateExpression(node);
+                code.invoke(INVOKEVIRTUAL, NODE, "getAsString", "()L" + STRING_NODE + ";");
+                code.invoke(INVOKEVIRTUAL, STRING_NODE, "getValue", "()" + STRING_DESC);
+                write();
+            } else {
+                // render node by it's tree implementation
+                pushConstant(node, COMPILED_NODE);
+                code.load(ALOAD, CONTEXT_LOCAL);
+                code.load(ALOAD, OUTPUT_LOCAL);
+                code.invoke(INVOKEVIRTUAL, COMPILED_NODE, "render", RENDER_DESC);
+            }
+        }
+
+        private void write() {
+            code.invoke(INVOKEVIRTUAL, OUTPUT, "write", "(" + STRING_DESC + ")V");
+        }
+
+        private void generateIf(IfNode node) {
+            code.load(ALOAD, CONTEXT_LOCAL);
+            code.invoke(INVOKEVIRTUAL, CONTEXT, "saveState", "()V");
+            if (node.conditions.length == 0) {
+                code.load(ALOAD, CONTEXT_LOCAL);
+                code.invoke(INVOKEVIRTUAL, CONTEXT, "restoreState", "()V");
+                return;
+            }
+
+            Label start = code.newLabel();
+            Label end = code.newLabel();
+            Label handler = code.newLabel();
+            Label after = code.newLabel();
+
+            code.mark(start);
+            for (int i = 0; i < node.conditions.length; i++) {
+                Label next = code.newLabel();
+                generateCondition(node.conditions[i], next);
+                generateStatements(node.bodies[i]);
+                code.jump(GOTO, end);
+                code.mark(next);
+            }
+            code.mark(end);
+            code.load(ALOAD, CONTEXT_LOCAL);
+            code.invoke(INVOKEVIRTUAL, CONTEXT, "restoreState", "()V");
+            code.jump(GOTO, after);
+
+            generateRestoreHandler(start, end, handler);
+            code.mark(after);
+        }
+
+        private void generateFor(ForNode node) {
+            int self = code.newLocal();
+            int iterator = code.newLocal();
+            int index = code.newLocal();
+            int entry = code.newLocal();
+
+            Label loop = code.newLabel();
+            Label start = code.newLabel();
+            Label end = code.newLabel();
+            Label handler = code.newLabel();
+            Label elseBody = code.newLabel();
+            Label after = code.newLabel();
+
+            generateExpression(node.collection);
+            int collection = code.newLocal();
+            code.store(ASTORE, collection);
+
+            code.load(ALOAD, THIS);
+            code.load(ALOAD, CONTEXT_LOCAL);
+            code.invoke(INVOKEVIRTUAL, GENERATED_NODE, "forSelf", "(" + CONTEXT_DESC + ")" + OBJECT_NODE_DESC);
+            code.store(ASTORE, self);
+
+            code.load(ALOAD, THIS);
+            code.load(ALOAD, collection);
+            code.load(ALOAD, self);
+            code.invoke(INVOKEVIRTUAL, GENERATED_NODE, "forIterator", "(" + NODE_DESC + OBJECT_NODE_DESC + ")Ljava/util/Iterator;");
+            code.store(ASTORE, iterator);
+            code.load(ALOAD, iterator);
+            code.jump(IFNULL, elseBody);
+
+            code.pushInt(0);
+            code.store(ISTORE, index);
+
+            code.mark(loop);
+            code.load(ALOAD, iterator);
+            code.invoke(INVOKEINTERFACE, "java/util/Iterator", "hasNext", "()Z");
+            code.jump(IFEQ, after);
+            code.load(ALOAD, iterator);
+            code.invoke(INVOKEINTERFACE, "java/util/Iterator", "next", "()L" + OBJECT + ";");
+            code.type(CHECKCAST, "java/util/Map$Entry");
+            code.store(ASTORE, entry);
+
+            code.load(ALOAD, CONTEXT_LOCAL);
+            code.invoke(INVOKEVIRTUAL, CONTEXT, "saveState", "()V");
+            code.mark(start);
+            code.load(ALOAD, THIS);
+            code.load(ALOAD, CONTEXT_LOCAL);
+            code.load(ALOAD, self);
+            code.load(ILOAD, index);
+            code.load(ALOAD, entry);
+            pushConstant(node.iterVal, SYMBOL);
+            if (node.iterKey != null) {
+                pushConstant(node.iterKey, SYMBOL);
+            } else {
+                code.op(ACONST_NULL);
+            }
+            code.invoke(INVOKEVIRTUAL, GENERATED_NODE, "forIteration",
+                    "(" + CONTEXT_DESC + OBJECT_NODE_DESC + "ILjava/util/Map$Entry;" + SYMBOL_DESC + SYMBOL_DESC + ")V");
+            generateStatements(node.body);
+            code.mark(end);
+            code.load(ALOAD, CONTEXT_LOCAL);
+            code.invoke(INVOKEVIRTUAL, CONTEXT, "restoreState", "()V");
+            code.iinc(index, 1);
+            code.jump(GOTO, loop);
+
+            generateRestoreHandler(start, end, handler);
+
+            code.mark(elseBody);
+            if (node.elseBody != null) {
+                generateStatements(node.elseBody);
+            }
+            code.mark(after);
+        }
+
+        /**
+         * Generate exception handler, that restores context state and rethrows exception (like finally block)
+         */
+        private void generateRestoreHandler(Label start, Label end, Label handler) {
+            int exception = code.newLocal();
+            code.markHandler(start, end, handler);
+            code.store(ASTORE, exception);
+            code.load(ALOAD, CONTEXT_LOCAL);
+            code.invoke(INVOKEVIRTUAL, CONTEXT, "restoreState", "()V");
+            code.load(ALOAD, exception);
+            code.op(ATHROW);
+        }
+
+        /**
+         * Generate code jumping to specified label if condition is false
+         */
+        private void generateCondition(CompiledNode condition, Label ifFalse) {
+            generateExpression(condition);
+            code.invoke(INVOKEVIRTUAL, NODE, "getAsBoolean", "()L" + BOOLEAN_NODE + ";");
+            code.invoke(INVOKEVIRTUAL, BOOLEAN_NODE, "getValue", "()Ljava/lang/Boolean;");
+            code.invoke(INVOKEVIRTUAL, "java/lang/Boolean", "booleanValue", "()Z");
+            code.jump(IFEQ, ifFalse);
+        }
+
+        /**
+         * Generate code leaving expression value on the stack
+         */
+        private void generateExpression(CompiledNode node) {
+            String operation = operation(node);
+            if (node instanceof ConstantNode) {
+                pushConstant(((ConstantNode) node).getValue(), NODE);
+            } else if (node instanceof BinaryOperationNode && operation != null) {
+                generateExpression(((BinaryOperationNode) node).getLeft());
+                generateExpression(((BinaryOperationNode) node).getRight());
+                code.invoke(INVOKEVIRTUAL, NODE, operation, "(" + NODE_DESC + ")" + NODE_DESC);
+            } else if (node instanceof UnaryOperationNode && operation != null) {
+                generateExpression(((UnaryOperationNode) node).getOperand());
+                code.invoke(INVOKEVIRTUAL, NODE, operation, "()" + NODE_DESC);
+            } else if (node instanceof TernaryNode) {
+                generateTernary((TernaryNode) node);
+            } else if (node instanceof SelectorNode && ((SelectorNode) node).root != SelectorNode.ROOT_BASE_URI) {
+                generateSelector((SelectorNode) node);
+            } else if (node instanceof MapNode) {
+                generateMap((MapNode) node);
+            } else if (node instanceof CallNode && isStaticCall((CallNode) node)) {
+                generateCall((CallNode) node, false);
+            } else {
+                // evaluate node by it's tree implementation
+                pushConstant(node, COMPILED_NODE);
+                code.load(ALOAD, CONTEXT_LOCAL);
+                code.invoke(INVOKEVIRTUAL, COMPILED_NODE, "evaluate", "(" + CONTEXT_DESC + ")" + NODE_DESC);
+            }
+        }
+
+        private void generateTernary(TernaryNode node) {
+            Label ifFalse = code.newLabel();
+            Label after = code.newLabel();
+            generateCondition(node.condition, ifFalse);
+            generateExpression(node.trueNode);
+            code.jump(GOTO, after);
+            code.mark(ifFalse);
+            if (node.falseNode != null) {
+                generateExpression(node.falseNode);
+            } else {
+                pushConstant(nodeFactory.UNDEFINED, NODE);
+            }
+            code.mark(after);
+        }
+
+        private void generateSelector(SelectorNode node) {
+            Label missing = code.newLabel();
+            Label after = code.newLabel();
+            int startIdx = 0;
+            if (node.root == SelectorNode.ROOT_EXPRESSION) {
+                generateExpression(node.rootExpression);
+            } else if (node.rootSymbol != null) {
+                code.load(ALOAD, CONTEXT_LOCAL);
+                pushConstant(node.rootSymbol, SYMBOL);
+                pushConstant(node, OBJECT);
+                code.invoke(INVOKESTATIC, GENERATED_NODE, "selectorContextProperty",
+                        "(" + CONTEXT_DESC + SYMBOL_DESC + "L" + OBJECT + ";)" + NODE_DESC);
+                code.op(DUP);
+                code.jump(IFNULL, missing);
+                startIdx++;
+            } else {
+                code.load(ALOAD, THIS);
+                code.load(ALOAD, CONTEXT_LOCAL);
+                code.pushInt(node.root);
+                code.invoke(INVOKEVIRTUAL, GENERATED_NODE, "selectorRoot", "(" + CONTEXT_DESC + "I)" + NODE_DESC);
+            }
+            if (node.names.length == 0) {
+                return;
+            }
+
+            for (int i = startIdx; i < node.names.length; i++) {
+                if (node.names[i] != null) {
+                    code.pushString(node.names[i]);
+                } else {
+                    generateExpression(node.expressions[i]);
+                    code.invoke(INVOKEVIRTUAL, NODE, "getAsString", "()L" + STRING_NODE + ";");
+                    code.invoke(INVOKEVIRTUAL, STRING_NODE, "getValue", "()" + STRING_DESC);
+                }
+                code.load(ALOAD, CONTEXT_LOCAL);
+                pushConstant(node, OBJECT);
+                code.invoke(INVOKESTATIC, GENERATED_NODE, "selectorProperty",
+                        "(" + NODE_DESC + STRING_DESC + CONTEXT_DESC + "L" + OBJECT + ";)" + NODE_DESC);
+                code.op(DUP);
+                code.jump(IFNULL, missing);
+            }
+            code.jump(GOTO, after);
+            code.mark(missing);
+            code.op(POP);
+            code.invoke(INVOKESTATIC, GENERATED_NODE, "selectorMissing", "()V");
+            pushConstant(nodeFactory.UNDEFINED, NODE);
+            code.mark(after);
+        }
+
+        private void generateMap(MapNode node) {
+            pushConstant(nodeFactory, NODE_FACTORY);
+            code.invoke(INVOKEVIRTUAL, NODE_FACTORY, "object", "()" + OBJECT_NODE_DESC);
+            for (int i = 0; i < node.values.length; i++) {
+                Object key = node.keys[i];
+                code.op(DUP);
+                if (key == null) {
+                    generateExpression(node.values[i]);
+                    code.invoke(INVOKEVIRTUAL, OBJECT_NODE, "add", "(" + NODE_DESC + ")V");
+                } else if (key instanceof Integer) {
+                    code.pushInt((Integer) key);
+                    code.invoke(INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;");
+                    generateExpression(node.values[i]);
+                    code.invoke(INVOKEVIRTUAL, OBJECT_NODE, "add", "(Ljava/lang/Integer;" + NODE_DESC + ")V");
+                } else {
+                    code.pushString((String) key);
+                    generateExpression(node.values[i]);
+                    code.invoke(INVOKEVIRTUAL, OBJECT_NODE, "add", "(" + STRING_DESC + NODE_DESC + ")V");
+                }
+            }
+        }
+
+        /**
+         * Check if call has static name and can be dispatched without tree implementation,
+         * 'eval()' is always left for tree implementation
+         */
+        private boolean isStaticCall(CallNode node) {
+            return node.nameExpression == null && node.name != null && node.name.length() > 0 && !"eval".equals(node.name);
+        }
+
+        /**
+         * Check if node is expression, that is compiled into bytecode
+         */
+        private boolean isExpression(CompiledNode node) {
+            return node instanceof ConstantNode || (operation(node) != null && (node instanceof BinaryOperationNode || node instanceof UnaryOperationNode))
+                    || node instanceof TernaryNode || node instanceof MapNode
+                    || (node instanceof SelectorNode && ((SelectorNode) node).root != SelectorNode.ROOT_BASE_URI);
+        }
+
+        /**
+         * Generate function call, if output is used macros are rendered directly into output and result can be null
+         */
+        private void generateCall(CallNode node, boolean useOutput) {
+            pushConstant(node.evaluator, EVALUATOR);
+            if (node.target != null) {
+                pushConstant(node.target, COMPILED_NODE);
+            } else {
+                code.op(ACONST_NULL);
+            }
+            code.pushString(node.name);
+            if (node.args.length == 0) {
+                code.invoke(INVOKESTATIC, "java/util/Collections", "emptyList", "()Ljava/util/List;");
+            } else {
+                code.type(NEW, "java/util/ArrayList");
+                code.op(DUP);
+                code.pushInt(node.args.length);
+                code.invoke(INVOKESPECIAL, "java/util/ArrayList", "<init>", "(I)V");
+                for (CompiledNode arg : node.args) {
+                    code.op(DUP);
+                    generateExpression(arg);
+                    code.invoke(INVOKEVIRTUAL, "java/util/ArrayList", "add", "(L" + OBJECT + ";)Z");
+                    code.op(POP);
+                }
+            }
+            code.load(ALOAD, CONTEXT_LOCAL);
+            if (useOutput) {
+                code.load(ALOAD, OUTPUT_LOCAL);
+                code.invoke(INVOKEVIRTUAL, EVALUATOR, "call",
+                        "(L" + COMPILED_NODE + ";" + STRING_DESC + "Ljava/util/List;" + CONTEXT_DESC + OUTPUT_DESC + ")" + NODE_DESC);
+            } else {
+                code.invoke(INVOKEVIRTUAL, EVALUATOR, "call",
+                        "(L" + COMPILED_NODE + ";" + STRING_DESC + "Ljava/util/List;" + CONTEXT_DESC + ")" + NODE_DESC);
+            }
+        }
+
+        /**
+         * Push object from constants array of generated class
+         */
+        private void pushConstant(Object value, String type) {
+            Integer index = constantIndexes.get(value);
+            if (index == null) {
+                index = constants.size();
+                constants.add(value);
+                constantIndexes.put(value, index);
+            }
+            code.load(ALOAD, THIS);
+            code.field(GETFIELD, GENERATED_NODE, "constants", "[L" + OBJECT + ";");
+            code.pushInt(index);
+            code.op(AALOAD);
+            if (!OBJECT.equals(type)) {
+                code.type(CHECKCAST, type);
+            }
+        }
+    }
+}
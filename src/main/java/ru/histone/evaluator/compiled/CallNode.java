@@ -0,0 +1,120 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.Histone;
+import ru.histone.evaluator.Evaluator;
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.EvaluatorException;
+import ru.histone.evaluator.nodes.Node;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.evaluator.output.TemplateOutput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compiled function call (macro, global function, node function or one of built-in functions)<br/>
+ * Arguments are evaluated here, function resolution is done by {@link Evaluator#call}.
+ */
+public class CallNode extends CompiledNode {
+    final NodeFactory nodeFactory;
+    final Evaluator evaluator;
+    final CompiledNode target;
+    final String name;
+    final CompiledNode nameExpression;
+    final CompiledNode[] args;
+    final String description;
+
+    /**
+     * @param target         call target, null for calls without target
+     * @param name           static function name, null if name is evaluated at runtime or is invalid
+     * @param nameExpression expression for function name, evaluated at runtime
+     * @param args           call arguments
+     * @param description    AST name element description, used for reporting invalid names
+     */
+    CallNode(NodeFactory nodeFactory, Evaluator evaluator, CompiledNode target, String name, CompiledNode nameExpression,
+             CompiledNode[] args, String description) {
+        this.nodeFactory = nodeFactory;
+        this.evaluator = evaluator;
+        this.target = target;
+        this.name = name;
+        this.nameExpression = nameExpression;
+        this.args = args;
+        this.description = description;
+    }
+
+    @Override
+    public Node evaluate(EvaluatorContext context) throws EvaluatorException {
+        String functionName = resolveName(context);
+        if (functionName == null) {
+            return nodeFactory.UNDEFINED;
+        }
+        return evaluator.call(target, functionName, evaluateArgs(context), context);
+    }
+
+    /**
+     * Call function writing it's result into output, macros are rendered directly into output
+     */
+    @Override
+    public void render(EvaluatorContext context, TemplateOutput output) throws EvaluatorException, IOException {
+        String functionName = resolveName(context);
+        if (functionName == null) {
+            return;
+        }
+        Node result = evaluator.call(target, functionName, evaluateArgs(context), context, output);
+        if (result != null) {
+            output.write(result.getAsString().getValue());
+        }
+    }
+
+    /**
+     * Return name of called function, or null if name is invalid
+     */
+    private String resolveName(EvaluatorContext context) throws EvaluatorException {
+        String functionName = name;
+        if (nameExpression != null) {
+            Node functionNameNode = nameExpression.evaluate(context);
+            if (functionNameNode.isString()) {
+                functionName = functionNameNode.getAsString().getValue();
+            } else {
+                Histone.runtime_log_warn("call to undefined function '{}'", functionNameNode);
+                return null;
+            }
+        } else if (functionName == null) {
+            Histone.runtime_log_warn("call to undefined function '{}'", description);
+            return null;
+        }
+        if (functionName.length() == 0) {
+            Histone.runtime_log_warn("call to undefined anonymous function");
+            return null;
+        }
+        return functionName;
+    }
+
+    private List<Node> evaluateArgs(EvaluatorContext context) throws EvaluatorException {
+        if (args.length == 0) {
+            return Collections.emptyList();
+        }
+        List<Node> argsList = new ArrayList<Node>(args.length);
+        for (CompiledNode arg : args) {
+            argsList.add(arg.evaluate(context));
+        }
+        return argsList;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.EvaluatorException;
+import ru.histone.evaluator.nodes.Node;
+import ru.histone.evaluator.output.StringTemplateOutput;
+import ru.histone.evaluator.output.TemplateOutput;
+
+import java.io.IOException;
+
+/**
+ * Base class for all nodes of compiled template tree<br/>
+ * Each AST node type has it's own subclass, all constant values are created during compilation,
+ * so evaluation of compiled node never touches JSON representation of template.
+ */
+public abstract class CompiledNode {
+
+    /**
+     * Evaluate this node using specified evaluator context
+     *
+     * @param context evaluator context
+     * @return evaluation result
+     * @throws EvaluatorException in case of evaluation errors
+     */
+    public abstract Node evaluate(EvaluatorContext context) throws EvaluatorException;
+
+    /**
+     * Evaluate this node and write it's string value into output<br/>
+     * Statements override this method to write their results directly, without building intermediate strings.
+     *
+     * @param context evaluator context
+     * @param output  evaluation output
+     * @throws EvaluatorException in case of evaluation errors
+     * @throws IOException        if output can't be written
+     */
+    public void render(EvaluatorContext context, TemplateOutput output) throws EvaluatorException, IOException {
+        output.write(evaluate(context).getAsString().getValue());
+    }
+
+    /**
+     * Render this node into string, used when value of statement is really needed (e.g. macro result in expression)
+     *
+     * @param context evaluator context
+     * @return rendered text
+     * @throws EvaluatorException in case of evaluation errors
+     */
+    protected final String renderToString(EvaluatorContext context) throws EvaluatorException {
+        StringTemplateOutput output = new StringTemplateOutput();
+        try {
+            render(context, output);
+        } catch (IOException e) {
+            // string output never fails
+            throw new EvaluatorException(e);
+        }
+        return output.toString();
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.EvaluatorException;
+import ru.histone.evaluator.output.TemplateOutput;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Template compiled into tree of executable nodes<br/>
+ * Compiled template is immutable and can be cached and evaluated many times (also concurrently),
+ * but only by the Histone instance, that compiled it.<br/>
+ * If bytecode compilation is enabled, template body is replaced by generated class after specified number of evaluations.
+ */
+public class CompiledTemplate {
+    private volatile StatementsNode body;
+
+    private final BytecodeCompiler bytecodeCompiler;
+    private final int bytecodeThreshold;
+    private final AtomicInteger evaluations = new AtomicInteger();
+    private volatile boolean hot;
+
+    CompiledTemplate(StatementsNode body) {
+        this(body, null, 0);
+    }
+
+    /**
+     * @param bytecodeCompiler  compiler used when template becomes hot, null if template shouldn't be compiled into bytecode
+     * @param bytecodeThreshold number of evaluations, after which template is compiled into bytecode
+     */
+    CompiledTemplate(StatementsNode body, BytecodeCompiler bytecodeCompiler, int bytecodeThreshold) {
+        this.body = body;
+        this.bytecodeCompiler = bytecodeCompiler;
+        this.bytecodeThreshold = Math.max(bytecodeThreshold, 1);
+    }
+
+    /**
+     * Return compiled template body
+     *
+     * @return template body
+     */
+    public StatementsNode getBody() {
+        return body;
+    }
+
+    /**
+     * Evaluate template using specified evaluator context
+     *
+     * @param context evaluator context
+     * @return evaluation result
+     * @throws EvaluatorException in case of evaluation errors
+     */
+    public String process(EvaluatorContext context) throws EvaluatorException {
+        return getHotBody().process(context);
+    }
+
+    /**
+     * Evaluate template using specified evaluator context writing result into output
+     *
+     * @param context evaluator context
+     * @param output  evaluation output
+     * @throws EvaluatorException in case of evaluation errors
+     * @throws IOException        if output can't be written
+     */
+    public void render(EvaluatorContext context, TemplateOutput output) throws EvaluatorException, IOException {
+        getHotBody().render(context, output);
+    }
+
+    /**
+     * Return template body, compiling it into bytecode if template has become hot
+     */
+    private StatementsNode getHotBody() {
+        StatementsNode current = body;
+        if (bytecodeCompiler != null && !hot && evaluations.incrementAndGet() == bytecodeThreshold) {
+            current = bytecodeCompiler.compile(current);
+            body = current;
+            hot = true;
+        }
+        return current;
+    }
+
+    /**
+     * Check if template body is compiled into JVM bytecode
+     *
+     * @return true if template body is implemented by generated class
+     */
+    public boolean isBytecodeCompiled() {
+        return body instanceof GeneratedStatementsNode;
+    }
+}
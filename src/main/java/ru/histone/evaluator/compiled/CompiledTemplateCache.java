@@ -0,0 +1,236 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.HistoneException;
+import ru.histone.parser.ParserException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of compiled templates with least recently used eviction<br/>
+ * Cache is limited both by number of entries and by their total weight (for templates, compiled from source, it's source length).
+ * Concurrent requests for the same key are coalesced: template is compiled only once, other threads wait for the result.
+ * Parse errors are cached for a short period, so broken template isn't reparsed on every request.<br/>
+ * This class is thread safe.
+ */
+public class CompiledTemplateCache {
+    /**
+     * Template compilation, that is run on cache miss
+     */
+    public interface Compilation {
+        CompiledTemplate compile() throws HistoneException;
+    }
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long failureTtlNanos;
+
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+    private long weight;
+
+    private long hits;
+    private long misses;
+    private long failureHits;
+    private long evictions;
+
+    /**
+     * @param maxEntries        maximum number of cached templates
+     * @param maxWeight         maximum total weight of cached templates
+     * @param failureTtlMillis  how long parse errors are cached, 0 disables caching of errors
+     */
+    public CompiledTemplateCache(int maxEntries, long maxWeight, long failureTtlMillis) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Maximum number of entries should be positive");
+        }
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight should be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.failureTtlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(failureTtlMillis, 0));
+    }
+
+    /**
+     * Return cached template or compile it, if it's missing
+     *
+     * @param key         template identity (e.g. source itself or its digest)
+     * @param weight      template weight
+     * @param compilation compilation to run on cache miss
+     * @return compiled template
+     * @throws HistoneException if compilation failed now, or failed recently with parse error
+     */
+    public CompiledTemplate get(Object key, long weight, Compilation compilation) throws HistoneException {
+        Entry entry;
+        boolean owner = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.isExpired(System.nanoTime())) {
+                remove(key, entry);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(weight);
+                entries.put(key, entry);
+                misses++;
+                owner = true;
+            } else if (entry.isFailed()) {
+                failureHits++;
+            } else {
+                hits++;
+            }
+        }
+
+        if (owner) {
+            compile(key, entry, compilation);
+        }
+        return entry.await();
+    }
+
+    /**
+     * Remove all cached templates
+     */
+    public synchronized void clear() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.isDone()) {
+                uncount(entry);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return snapshot of cache usage
+     */
+    public synchronized CompiledTemplateCacheStatistics getStatistics() {
+        return new CompiledTemplateCacheStatistics(hits, misses, failureHits, evictions, entries.size(), weight);
+    }
+
+    private void compile(Object key, Entry entry, Compilation compilation) {
+        try {
+            entry.complete(compilation.compile(), null, 0);
+        } catch (ParserException e) {
+            entry.complete(null, e, System.nanoTime() + failureTtlNanos);
+        } catch (HistoneException e) {
+            entry.complete(null, e, System.nanoTime());
+        } catch (RuntimeException e) {
+            entry.complete(null, e, System.nanoTime());
+        } catch (Error e) {
+            entry.complete(null, e, System.nanoTime());
+        }
+
+        synchronized (this) {
+            if (entries.get(key) != entry) {
+                // cleared or replaced while compiling
+                return;
+            }
+            if (entry.isExpired(System.nanoTime()) || entry.weight > maxWeight) {
+                entries.remove(key);
+                return;
+            }
+            entry.counted = true;
+            weight += entry.weight;
+            evict(entry);
+        }
+    }
+
+    private void evict(Entry current) {
+        Iterator<Entry> it = entries.values().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && it.hasNext()) {
+            Entry eldest = it.next();
+            if (eldest.counted && eldest != current) {
+                uncount(eldest);
+                it.remove();
+                evictions++;
+            }
+        }
+    }
+
+    private void remove(Object key, Entry entry) {
+        entries.remove(key);
+        uncount(entry);
+    }
+
+    private void uncount(Entry entry) {
+        if (entry.counted) {
+            weight -= entry.weight;
+            entry.counted = false;
+        }
+    }
+
+    private static class Entry {
+        private final long weight;
+        private final CountDownLatch done = new CountDownLatch(1);
+        // guarded by cache lock: weight of entry is included into cache weight
+        private boolean counted;
+
+        private volatile CompiledTemplate template;
+        private volatile Throwable failure;
+        private volatile long expires;
+
+        Entry(long weight) {
+            this.weight = weight;
+        }
+
+        void complete(CompiledTemplate template, Throwable failure, long expires) {
+            this.template = template;
+            this.failure = failure;
+            this.expires = expires;
+            done.countDown();
+        }
+
+        boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        boolean isFailed() {
+            return isDone() && failure != null;
+        }
+
+        boolean isExpired(long now) {
+            return isFailed() && now - expires >= 0;
+        }
+
+        CompiledTemplate await() throws HistoneException {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (failure instanceof HistoneException) {
+                throw (HistoneException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            return template;
+        }
+    }
+}
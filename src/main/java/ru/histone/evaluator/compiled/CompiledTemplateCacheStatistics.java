@@ -0,0 +1,93 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+/**
+ * Snapshot of {@link CompiledTemplateCache} usage
+ */
+public class CompiledTemplateCacheStatistics {
+    private final long hits;
+    private final long misses;
+    private final long failureHits;
+    private final long evictions;
+    private final int size;
+    private final long weight;
+
+    public CompiledTemplateCacheStatistics(long hits, long misses, long failureHits, long evictions, int size, long weight) {
+        this.hits = hits;
+        this.misses = misses;
+        this.failureHits = failureHits;
+        this.evictions = evictions;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    /**
+     * @return number of requests served by already compiled (or currently compiling) templates
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of requests, that compiled template
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of requests, that failed with cached parse error
+     */
+    public long getFailureHits() {
+        return failureHits;
+    }
+
+    /**
+     * @return number of templates removed from cache because of size or weight limits
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return number of cached entries
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return total weight of cached entries
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return share of requests served without compilation, 0 if there were no requests
+     */
+    public double getHitRate() {
+        long total = hits + misses + failureHits;
+        return (total == 0) ? 0 : (double) (hits + failureHits) / total;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledTemplateCacheStatistics{hits=" + hits + ", misses=" + misses + ", failureHits=" + failureHits +
+                ", evictions=" + evictions + ", size=" + size + ", weight=" + weight + ", hitRate=" + getHitRate() + "}";
+    }
+}
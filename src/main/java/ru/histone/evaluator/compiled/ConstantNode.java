@@ -0,0 +1,45 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.nodes.Node;
+
+/**
+ * Compiled literal (true, false, null, number or string)<br/>
+ * Value is created once during compilation and returned as is on every evaluation.
+ */
+public class ConstantNode extends CompiledNode {
+    private final Node value;
+
+    ConstantNode(Node value) {
+        this.value = value;
+    }
+
+    public Node getValue() {
+        return value;
+    }
+
+    @Override
+    public Node evaluate(EvaluatorContext context) {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(value);
+    }
+}
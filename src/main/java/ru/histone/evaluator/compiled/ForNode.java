@@ -0,0 +1,94 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.EvaluatorException;
+import ru.histone.evaluator.Symbol;
+import ru.histone.evaluator.nodes.Node;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.evaluator.nodes.ObjectHistoneNode;
+import ru.histone.evaluator.nodes.StringHistoneNode;
+import ru.histone.evaluator.output.TemplateOutput;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Compiled 'for' statement<br/>
+ * Every iteration is evaluated in it's own context frame, 'else' body is evaluated in current frame.
+ */
+public class ForNode extends CompiledNode {
+    final NodeFactory nodeFactory;
+    final Symbol iterVal;
+    final Symbol iterKey;
+    final CompiledNode collection;
+    final StatementsNode body;
+    final StatementsNode elseBody;
+
+    /**
+     * @param iterKey  name of variable for keys, can be null
+     * @param elseBody 'else' body, can be null
+     */
+    ForNode(NodeFactory nodeFactory, Symbol iterVal, Symbol iterKey, CompiledNode collection, StatementsNode body, StatementsNode elseBody) {
+        this.nodeFactory = nodeFactory;
+        this.iterVal = iterVal;
+        this.iterKey = iterKey;
+        this.collection = collection;
+        this.body = body;
+        this.elseBody = elseBody;
+    }
+
+    @Override
+    public StringHistoneNode evaluate(EvaluatorContext context) throws EvaluatorException {
+        return nodeFactory.string(renderToString(context));
+    }
+
+    @Override
+    public void render(EvaluatorContext context, TemplateOutput output) throws EvaluatorException, IOException {
+        Node collectionNode = collection.evaluate(context);
+
+        ObjectHistoneNode self = nodeFactory.object();
+        context.putProp(Symbol.SELF, self);
+
+        if (collectionNode.isObject() && collectionNode.getAsObject().size() > 0) {
+            int idx = 0;
+            self.add("last", nodeFactory.number(collectionNode.getAsObject().size() - 1));
+            for (Map.Entry<Object, Node> entry : collectionNode.getAsObject().entries()) {
+                // Save context state on each iteration
+                // HSTJ-26
+                context.saveState();
+                try {
+                    self.add("index", nodeFactory.number(idx));
+
+                    context.putProp(iterVal, entry.getValue());
+                    if (iterKey != null) {
+                        context.putProp(iterKey, nodeFactory.string(entry.getKey().toString()));
+                    }
+
+                    context.putProp(Symbol.SELF, self);
+                    body.render(context, output);
+                } finally {
+                    context.restoreState();
+                }
+
+                idx++;
+            }
+        } else if (elseBody != null) {
+            elseBody.render(context, output);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.evaluator.nodes.StringHistoneNode;
+import ru.histone.evaluator.output.StaticFragment;
+import ru.histone.evaluator.output.TemplateOutput;
+
+import java.io.IOException;
+
+/**
+ * Compiled static text fragment of template
+ */
+public class FragmentNode extends CompiledNode {
+    private final StringHistoneNode value;
+    private final StaticFragment fragment;
+
+    FragmentNode(NodeFactory nodeFactory, String text) {
+        this.value = nodeFactory.string(text);
+        this.fragment = new StaticFragment(text);
+    }
+
+    public String getText() {
+        return value.getValue();
+    }
+
+    public StaticFragment getFragment() {
+        return fragment;
+    }
+
+    @Override
+    public StringHistoneNode evaluate(EvaluatorContext context) {
+        return value;
+    }
+
+    @Override
+    public void render(EvaluatorContext context, TemplateOutput output) throws IOException {
+        output.write(fragment);
+    }
+
+    @Override
+    public String toString() {
+        return getText();
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.Histone;
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.MacroFunc;
+import ru.histone.evaluator.Symbol;
+import ru.histone.evaluator.nodes.Node;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.evaluator.nodes.ObjectHistoneNode;
+import ru.histone.evaluator.output.TemplateOutput;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Base class for statements compiled into JVM bytecode by {@link BytecodeCompiler}<br/>
+ * Generated class has one method per entry point (template body and bodies of all macros defined in template),
+ * every entry point is represented by it's own instance of generated class. Methods of this class are runtime helpers
+ * used by generated code.
+ */
+public abstract class GeneratedStatementsNode extends StatementsNode {
+    /**
+     * Objects referenced by generated code (constant nodes, fallback nodes, etc)
+     */
+    protected final Object[] constants;
+    /**
+     * Instances of generated class for all entry points, shared by all of them
+     */
+    protected final StatementsNode[] entries;
+    /**
+     * Index of entry point of this instance
+     */
+    protected final int entry;
+
+    private final NodeFactory nodeFactory;
+
+    protected GeneratedStatementsNode(NodeFactory nodeFactory, CompiledNode[] statements, Object[] constants,
+                                      StatementsNode[] entries, int entry) {
+        super(nodeFactory, statements);
+        this.nodeFactory = nodeFactory;
+        this.constants = constants;
+        this.entries = entries;
+        this.entry = entry;
+    }
+
+    /**
+     * Return root object of selector
+     */
+    protected final Node selectorRoot(EvaluatorContext context, int root) {
+        switch (root) {
+            case SelectorNode.ROOT_THIS:
+                return context.hasProp(Symbol.THIS) ? context.getProp(Symbol.THIS) : context.getInitialContext();
+            case SelectorNode.ROOT_GLOBAL:
+                return context.getGlobal();
+            case SelectorNode.ROOT_GLOBAL_BASE_URI:
+                if (context.getGlobal().hasProp("baseURI")) {
+                    return context.getGlobal().getProp("baseURI");
+                }
+                return nodeFactory.string(context.getBaseURI());
+            case SelectorNode.ROOT_SELF:
+                return context.getProp(Symbol.SELF);
+            default:
+                return context.getAsNode();
+        }
+    }
+
+    /**
+     * Return context variable, which is the first part of selector, or null if there is no such variable
+     */
+    protected static Node selectorContextProperty(EvaluatorContext context, Symbol symbol, Object selector) {
+        Node result = context.findProp(symbol);
+        if (result != null) {
+            return result;
+        }
+        ObjectHistoneNode global = context.getGlobal();
+        if (global.hasProp(symbol.getName())) {
+            return global.getProp(symbol.getName());
+        }
+        Histone.runtime_log_warn("Selector: in selector '{}' object '{}' doesn't have property '{}'", selector, context.getAsNode(), symbol.getName());
+        return null;
+    }
+
+    /**
+     * Return property of selector part, or null if there is no such property
+     */
+    protected static Node selectorProperty(Node ctx, String propName, EvaluatorContext context, Object selector) {
+        if (ctx.hasProp(propName)) {
+            return ctx.getProp(propName);
+        }
+        ObjectHistoneNode global = context.getGlobal();
+        if (global.hasProp(propName)) {
+            return global.getProp(propName);
+        }
+        Histone.runtime_log_warn("Selector: in selector '{}' object '{}' doesn't have property '{}'", selector, ctx, propName);
+        return null;
+    }
+
+    /**
+     * Report missing selector value
+     */
+    protected static void selectorMissing() {
+        Histone.runtime_log_warn("Property value was null, returning 'undefined()'");
+    }
+
+    /**
+     * Write result of function call into output, null result means it was already written
+     */
+    protected static void writeResult(Node result, TemplateOutput output) throws IOException {
+        if (result != null) {
+            output.write(result.getAsString().getValue());
+        }
+    }
+
+    /**
+     * Register macro, which body is entry point of generated class
+     */
+    protected final void defineMacro(EvaluatorContext context, String name, String[] args, int macroEntry) {
+        MacroFunc func = new MacroFunc();
+        func.setArgs(args);
+        func.setStatements(entries[macroEntry]);
+        func.setBaseURI(context.getBaseURI());
+        context.putMacro(name, func);
+    }
+
+    /**
+     * Create 'self' object of 'for' statement
+     */
+    protected final ObjectHistoneNode forSelf(EvaluatorContext context) {
+        ObjectHistoneNode self = nodeFactory.object();
+        context.putProp(Symbol.SELF, self);
+        return self;
+    }
+
+    /**
+     * Return iterator over collection items, or null if 'else' branch should be evaluated
+     */
+    protected final Iterator<Map.Entry<Object, Node>> forIterator(Node collection, ObjectHistoneNode self) {
+        if (collection.isObject() && collection.getAsObject().size() > 0) {
+            self.add("last", nodeFactory.number(collection.getAsObject().size() - 1));
+            return collection.getAsObject().entries().iterator();
+        }
+        return null;
+    }
+
+    /**
+     * Put iteration variables into current context frame
+     */
+    protected final void forIteration(EvaluatorContext context, ObjectHistoneNode self, int idx, Map.Entry<Object, Node> entry,
+                                      Symbol iterVal, Symbol iterKey) {
+        self.add("index", nodeFactory.number(idx));
+        context.putProp(iterVal, entry.getValue());
+        if (iterKey != null) {
+            context.putProp(iterKey, nodeFactory.string(entry.getKey().toString()));
+        }
+        context.putProp(Symbol.SELF, self);
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.evaluator.nodes.Node;
+
+/**
+ * Compiled '>=' operation
+ */
+public class GreaterOrEqualNode extends BinaryOperationNode {
+
+    GreaterOrEqualNode(CompiledNode left, CompiledNode right) {
+        super(left, right);
+    }
+
+    @Override
+    public Node apply(Node left, Node right) {
+        return left.oper_greaterOrEqual(right);
+    }
+}
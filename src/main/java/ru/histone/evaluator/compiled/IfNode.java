@@ -0,0 +1,60 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.EvaluatorException;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.evaluator.nodes.StringHistoneNode;
+import ru.histone.evaluator.output.TemplateOutput;
+
+import java.io.IOException;
+
+/**
+ * Compiled 'if' statement with all it's 'elseif' and 'else' branches<br/>
+ * Conditions and bodies are evaluated in their own context frame.
+ */
+public class IfNode extends CompiledNode {
+    final NodeFactory nodeFactory;
+    final CompiledNode[] conditions;
+    final StatementsNode[] bodies;
+
+    IfNode(NodeFactory nodeFactory, CompiledNode[] conditions, StatementsNode[] bodies) {
+        this.nodeFactory = nodeFactory;
+        this.conditions = conditions;
+        this.bodies = bodies;
+    }
+
+    @Override
+    public StringHistoneNode evaluate(EvaluatorContext context) throws EvaluatorException {
+        return nodeFactory.string(renderToString(context));
+    }
+
+    @Override
+    public void render(EvaluatorContext context, TemplateOutput output) throws EvaluatorException, IOException {
+        context.saveState();
+        try {
+            for (int i = 0; i < conditions.length; i++) {
+                if (conditions[i].evaluate(context).getAsBoolean().getValue()) {
+                    bodies[i].render(context, output);
+                    return;
+                }
+            }
+        } finally {
+            context.restoreState();
+        }
+    }
+}
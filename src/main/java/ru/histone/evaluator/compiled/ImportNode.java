@@ -0,0 +1,53 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.Histone;
+import ru.histone.evaluator.Evaluator;
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.EvaluatorException;
+import ru.histone.evaluator.nodes.Node;
+import ru.histone.evaluator.nodes.NodeFactory;
+
+/**
+ * Compiled 'import' statement
+ */
+public class ImportNode extends CompiledNode {
+    private final NodeFactory nodeFactory;
+    private final Evaluator evaluator;
+    private final String path;
+    private final String description;
+
+    /**
+     * @param path        path to imported template, null if path in AST wasn't a string
+     * @param description AST path element description, used for reporting invalid paths
+     */
+    ImportNode(NodeFactory nodeFactory, Evaluator evaluator, String path, String description) {
+        this.nodeFactory = nodeFactory;
+        this.evaluator = evaluator;
+        this.path = path;
+        this.description = description;
+    }
+
+    @Override
+    public Node evaluate(EvaluatorContext context) throws EvaluatorException {
+        if (path == null) {
+            Histone.runtime_log_warn("Invalid path to imported template: '{}'", description);
+            return nodeFactory.UNDEFINED;
+        }
+        return evaluator.importResource(path, context);
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.MacroFunc;
+import ru.histone.evaluator.nodes.Node;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.evaluator.output.TemplateOutput;
+
+/**
+ * Compiled macro definition<br/>
+ * Evaluation registers macro in current context frame, macro body is already compiled.
+ */
+public class MacroNode extends CompiledNode {
+    final NodeFactory nodeFactory;
+    final String name;
+    final String[] args;
+    final StatementsNode body;
+
+    MacroNode(NodeFactory nodeFactory, String name, String[] args, StatementsNode body) {
+        this.nodeFactory = nodeFactory;
+        this.name = name;
+        this.args = args;
+        this.body = body;
+    }
+
+    @Override
+    public Node evaluate(EvaluatorContext context) {
+        MacroFunc func = new MacroFunc();
+        func.setArgs(args);
+        func.setStatements(body);
+        func.setBaseURI(context.getBaseURI());
+        context.putMacro(name, func);
+
+        return nodeFactory.UNDEFINED;
+    }
+
+    /**
+     * Macro definition has no output
+     */
+    @Override
+    public void render(EvaluatorContext context, TemplateOutput output) {
+        evaluate(context);
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.EvaluatorException;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.evaluator.nodes.ObjectHistoneNode;
+
+/**
+ * Compiled map (object/array literal)<br/>
+ * Each item has either string key, integer key or no key at all (in this case value is added with auto-generated index).
+ */
+public class MapNode extends CompiledNode {
+    final NodeFactory nodeFactory;
+    final Object[] keys;
+    final CompiledNode[] values;
+
+    /**
+     * @param keys   item keys, each key is either String, Integer or null
+     * @param values item values
+     */
+    MapNode(NodeFactory nodeFactory, Object[] keys, CompiledNode[] values) {
+        this.nodeFactory = nodeFactory;
+        this.keys = keys;
+        this.values = values;
+    }
+
+    @Override
+    public ObjectHistoneNode evaluate(EvaluatorContext context) throws EvaluatorException {
+        ObjectHistoneNode result = nodeFactory.object();
+        for (int i = 0; i < values.length; i++) {
+            Object key = keys[i];
+            if (key == null) {
+                result.add(values[i].evaluate(context));
+            } else if (key instanceof Integer) {
+                result.add((Integer) key, values[i].evaluate(context));
+            } else {
+                result.add((String) key, values[i].evaluate(context));
+            }
+        }
+        return result;
+    }
+}
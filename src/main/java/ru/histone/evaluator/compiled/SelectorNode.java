@@ -0,0 +1,215 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.Histone;
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.EvaluatorException;
+import ru.histone.evaluator.Symbol;
+import ru.histone.evaluator.nodes.Node;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.evaluator.nodes.ObjectHistoneNode;
+
+/**
+ * Compiled selector (e.g. {{this.items[0].name}})<br/>
+ * Kind of selector root (expression, 'this', 'global', 'self' or context variable) is resolved during compilation,
+ * selector parts are either static property names or compiled expressions.
+ * Static name of context variable is resolved to {@link Symbol} during compilation.
+ */
+public class SelectorNode extends CompiledNode {
+    /**
+     * Selector starts with expression (e.g. {{[1, 2].size}})
+     */
+    static final int ROOT_EXPRESSION = 0;
+    /**
+     * Selector starts with 'this'
+     */
+    static final int ROOT_THIS = 1;
+    /**
+     * Selector starts with 'global'
+     */
+    static final int ROOT_GLOBAL = 2;
+    /**
+     * Selector starts with 'global.baseURI'
+     */
+    static final int ROOT_GLOBAL_BASE_URI = 3;
+    /**
+     * Selector starts with 'self'
+     */
+    static final int ROOT_SELF = 4;
+    /**
+     * Selector starts with 'baseURI', which can be overridden by context variable
+     */
+    static final int ROOT_BASE_URI = 5;
+    /**
+     * Selector starts with context variable
+     */
+    static final int ROOT_CONTEXT = 6;
+
+    final NodeFactory nodeFactory;
+    final int root;
+    final CompiledNode rootExpression;
+    final String[] names;
+    final CompiledNode[] expressions;
+    /**
+     * Symbol of context variable for {@link #ROOT_CONTEXT} selectors with static first part, otherwise null
+     */
+    final Symbol rootSymbol;
+
+    /**
+     * @param root           selector root kind
+     * @param rootExpression root expression for {@link #ROOT_EXPRESSION} selectors
+     * @param names          static names of selector parts (null for parts evaluated at runtime)
+     * @param expressions    compiled expressions for selector parts, that are evaluated at runtime
+     */
+    SelectorNode(NodeFactory nodeFactory, int root, CompiledNode rootExpression, String[] names, CompiledNode[] expressions) {
+        this.nodeFactory = nodeFactory;
+        this.root = root;
+        this.rootExpression = rootExpression;
+        this.names = names;
+        this.expressions = expressions;
+        this.rootSymbol = (root == ROOT_CONTEXT && names.length > 0 && names[0] != null) ? Symbol.of(names[0]) : null;
+    }
+
+    @Override
+    public Node evaluate(EvaluatorContext context) throws EvaluatorException {
+        int startIdx = 0;
+        Node ctx;
+        switch (root) {
+            case ROOT_EXPRESSION:
+                ctx = rootExpression.evaluate(context);
+                break;
+            case ROOT_THIS:
+                ctx = context.hasProp(Symbol.THIS) ? context.getProp(Symbol.THIS) : context.getInitialContext();
+                break;
+            case ROOT_GLOBAL:
+                ctx = context.getGlobal();
+                break;
+            case ROOT_GLOBAL_BASE_URI:
+                ctx = getBaseURI(context);
+                break;
+            case ROOT_SELF:
+                ctx = context.getProp(Symbol.SELF);
+                break;
+            case ROOT_BASE_URI:
+                if (context.hasStackProp("baseURI")) {
+                    ctx = context.getAsNode();
+                } else {
+                    ctx = getBaseURI(context);
+                    startIdx++;
+                }
+                break;
+            default:
+                if (rootSymbol == null) {
+                    ctx = context.getAsNode();
+                } else {
+                    ctx = getContextProp(context);
+                    if (ctx == null) {
+                        return nodeFactory.UNDEFINED;
+                    }
+                    startIdx++;
+                }
+        }
+
+        ObjectHistoneNode global = context.getGlobal();
+        for (int j = startIdx; j < names.length; j++) {
+            String propName = names[j];
+            if (propName == null) {
+                // selector is written inside ['...'], like access to array
+                propName = expressions[j].evaluate(context).getAsString().getValue();
+            }
+
+            if (ctx.hasProp(propName)) {
+                ctx = ctx.getProp(propName);
+            } else if (global.hasProp(propName)) {
+                ctx = global.getProp(propName);
+            } else {
+                Histone.runtime_log_warn("Selector: in selector '{}' object '{}' doesn't have property '{}'", this, ctx, propName);
+                ctx = null;
+                break;
+            }
+        }
+
+        if (ctx == null) {
+            Histone.runtime_log_warn("Property value was null, returning 'undefined()'");
+            return nodeFactory.UNDEFINED;
+        }
+        return ctx;
+    }
+
+    /**
+     * Resolves first selector part against context variables without wrapping context into node
+     *
+     * @return variable value or null if context doesn't have such variable
+     */
+    private Node getContextProp(EvaluatorContext context) {
+        Node result = context.findProp(rootSymbol);
+        if (result != null) {
+            return result;
+        }
+
+        ObjectHistoneNode global = context.getGlobal();
+        if (global.hasProp(rootSymbol.getName())) {
+            return global.getProp(rootSymbol.getName());
+        }
+
+        Histone.runtime_log_warn("Selector: in selector '{}' object '{}' doesn't have property '{}'", this, context.getAsNode(), rootSymbol.getName());
+        Histone.runtime_log_warn("Property value was null, returning 'undefined()'");
+        return null;
+    }
+
+    private Node getBaseURI(EvaluatorContext context) {
+        if (context.getGlobal().hasProp("baseURI")) {
+            return context.getGlobal().getProp("baseURI");
+        }
+        return nodeFactory.string(context.getBaseURI());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        switch (root) {
+            case ROOT_EXPRESSION:
+                sb.append("(expression)");
+                break;
+            case ROOT_THIS:
+                sb.append("this");
+                break;
+            case ROOT_GLOBAL:
+                sb.append("global");
+                break;
+            case ROOT_GLOBAL_BASE_URI:
+                sb.append("global.baseURI");
+                break;
+            case ROOT_SELF:
+                sb.append("self");
+                break;
+            default:
+                break;
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null) {
+                sb.append("[...]");
+            } else {
+                if (sb.length() > 0) {
+                    sb.append('.');
+                }
+                sb.append(names[i]);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.EvaluatorException;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.evaluator.nodes.StringHistoneNode;
+import ru.histone.evaluator.output.TemplateOutput;
+
+import java.io.IOException;
+
+/**
+ * Compiled list of statements (template body, macro body, bodies of 'if' and 'for' blocks)<br/>
+ * Evaluation result is concatenation of string values of all statements.
+ */
+public class StatementsNode extends CompiledNode {
+    private final NodeFactory nodeFactory;
+    private final CompiledNode[] statements;
+
+    protected StatementsNode(NodeFactory nodeFactory, CompiledNode[] statements) {
+        this.nodeFactory = nodeFactory;
+        this.statements = statements;
+    }
+
+    public CompiledNode[] getStatements() {
+        return statements;
+    }
+
+    /**
+     * Evaluate all statements one by one and return concatenated result
+     *
+     * @param context evaluator context
+     * @return evaluation result
+     * @throws EvaluatorException in case of evaluation errors
+     */
+    public String process(EvaluatorContext context) throws EvaluatorException {
+        return renderToString(context);
+    }
+
+    /**
+     * Evaluate all statements one by one writing their results into output
+     */
+    @Override
+    public void render(EvaluatorContext context, TemplateOutput output) throws EvaluatorException, IOException {
+        for (CompiledNode statement : statements) {
+            statement.render(context, output);
+        }
+    }
+
+    @Override
+    public StringHistoneNode evaluate(EvaluatorContext context) throws EvaluatorException {
+        return nodeFactory.string(process(context));
+    }
+}
@@ -0,0 +1,314 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import ru.histone.evaluator.Evaluator;
+import ru.histone.evaluator.Symbol;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.parser.AstNodeType;
+import ru.histone.parser.CompactAst;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Translates template AST into tree of executable nodes<br/>
+ * All constants are created during compilation, so compiled tree doesn't need JSON representation of template anymore.
+ */
+public class TemplateCompiler {
+    private static final CompiledNode[] NO_NODES = new CompiledNode[0];
+
+    private final NodeFactory nodeFactory;
+    private final Evaluator evaluator;
+    private final BytecodeCompiler bytecodeCompiler;
+    private final int bytecodeThreshold;
+
+    public TemplateCompiler(NodeFactory nodeFactory, Evaluator evaluator) {
+        this(nodeFactory, evaluator, CompilationMode.TREE, 0);
+    }
+
+    /**
+     * @param compilationMode   compilation backend
+     * @param bytecodeThreshold number of evaluations of compiled template, after which it's compiled into bytecode
+     *                          (used only with {@link CompilationMode#BYTECODE})
+     */
+    public TemplateCompiler(NodeFactory nodeFactory, Evaluator evaluator, CompilationMode compilationMode, int bytecodeThreshold) {
+        this.nodeFactory = nodeFactory;
+        this.evaluator = evaluator;
+        this.bytecodeCompiler = (compilationMode == CompilationMode.BYTECODE) ? new BytecodeCompiler(nodeFactory) : null;
+        this.bytecodeThreshold = bytecodeThreshold;
+    }
+
+    /**
+     * Compile template AST
+     *
+     * @param ast template AST (with or without HISTONE signature)
+     * @return compiled template
+     */
+    public CompiledTemplate compile(JsonNode ast) {
+        return new CompiledTemplate(compileStatements(ast), bytecodeCompiler, bytecodeThreshold);
+    }
+
+    /**
+     * Compile template AST kept in compact form<br/>
+     * JSON tree of AST exists only during compilation.
+     *
+     * @param ast compact template AST
+     * @return compiled template
+     */
+    public CompiledTemplate compile(CompactAst ast) {
+        return compile(ast.toJson(nodeFactory));
+    }
+
+    /**
+     * Compile list of statements
+     *
+     * @param statements statements AST (with or without HISTONE signature)
+     * @return compiled statements
+     */
+    public StatementsNode compileStatements(JsonNode statements) {
+        if ("HISTONE".equals(statements.path(0).path(0).asText())) {
+            statements = statements.path(1);
+        }
+
+        if (!statements.isArray()) {
+            return new StatementsNode(nodeFactory, new CompiledNode[]{compileNode(statements)});
+        }
+
+        CompiledNode[] result = new CompiledNode[statements.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = compileNode(statements.get(i));
+        }
+        return new StatementsNode(nodeFactory, result);
+    }
+
+    /**
+     * Compile single AST node
+     *
+     * @param element AST node
+     * @return compiled node
+     */
+    public CompiledNode compileNode(JsonNode element) {
+        if (element == null) {
+            return new UnknownNode(nodeFactory, false, "null");
+        }
+
+        if (element.isTextual()) {
+            return new FragmentNode(nodeFactory, element.asText());
+        }
+
+        if (!element.isArray() || element.size() == 0) {
+            return new UnknownNode(nodeFactory, false, element.toString());
+        }
+
+        int nodeType = element.get(0).intValue();
+        switch (nodeType) {
+            case AstNodeType.TRUE:
+                return new ConstantNode(nodeFactory.TRUE);
+            case AstNodeType.FALSE:
+                return new ConstantNode(nodeFactory.FALSE);
+            case AstNodeType.NULL:
+                return new ConstantNode(nodeFactory.NULL);
+            case AstNodeType.INT:
+            case AstNodeType.DOUBLE:
+                return new ConstantNode(nodeFactory.number(element.get(1).decimalValue()));
+            case AstNodeType.STRING:
+                return new ConstantNode(nodeFactory.string(element.get(1).asText()));
+
+            case AstNodeType.MAP:
+                return compileMap(element.get(1));
+
+            case AstNodeType.ADD:
+                return new AddNode(compileNode(element.get(1)), compileNode(element.get(2)));
+            case AstNodeType.SUB:
+                return new SubNode(compileNode(element.get(1)), compileNode(element.get(2)));
+            case AstNodeType.MUL:
+                return new MulNode(compileNode(element.get(1)), compileNode(element.get(2)));
+            case AstNodeType.DIV:
+                return new DivNode(compileNode(element.get(1)), compileNode(element.get(2)));
+            case AstNodeType.MOD:
+                return new ModNode(compileNode(element.get(1)), compileNode(element.get(2)));
+            case AstNodeType.NEGATE:
+                return new NegateNode(compileNode(element.get(1)));
+
+            case AstNodeType.OR:
+                return new OrNode(compileNode(element.get(1)), compileNode(element.get(2)));
+            case AstNodeType.AND:
+                return new AndNode(compileNode(element.get(1)), compileNode(element.get(2)));
+            case AstNodeType.NOT:
+                return new NotNode(compileNode(element.get(1)));
+
+            case AstNodeType.EQUAL:
+                return new EqualNode(compileNode(element.get(1)), compileNode(element.get(2)));
+            case AstNodeType.NOT_EQUAL:
+                return new NotEqualNode(compileNode(element.get(1)), compileNode(element.get(2)));
+            case AstNodeType.LESS_OR_EQUAL:
+                return new LessOrEqualNode(compileNode(element.get(1)), compileNode(element.get(2)));
+            case AstNodeType.LESS_THAN:
+                return new LessThanNode(compileNode(element.get(1)), compileNode(element.get(2)));
+            case AstNodeType.GREATER_OR_EQUAL:
+                return new GreaterOrEqualNode(compileNode(element.get(1)), compileNode(element.get(2)));
+            case AstNodeType.GREATER_THAN:
+                return new GreaterThanNode(compileNode(element.get(1)), compileNode(element.get(2)));
+
+            case AstNodeType.TERNARY:
+                return new TernaryNode(nodeFactory, compileNode(element.get(1)), compileNode(element.get(2)),
+                        (element.size() > 3) ? compileNode(element.get(3)) : null);
+            case AstNodeType.IF:
+                return compileIf(element.get(1));
+            case AstNodeType.FOR:
+                return compileFor(element.get(1), element.get(2), element.get(3));
+            case AstNodeType.STATEMENTS:
+                return compileStatements(element.get(1));
+            case AstNodeType.VAR:
+                return new VarNode(nodeFactory, Symbol.of(element.get(1).asText()), compileNode(element.get(2)));
+            case AstNodeType.SELECTOR:
+                return compileSelector(element.get(1));
+            case AstNodeType.CALL:
+                return compileCall(element.get(1), element.get(2), element.get(3));
+            case AstNodeType.IMPORT:
+                return compileImport(element.get(1));
+            case AstNodeType.MACRO:
+                return compileMacro(element.get(1), element.get(2), element.get(3));
+
+            default:
+                return new UnknownNode(nodeFactory, true, String.valueOf(nodeType));
+        }
+    }
+
+    private CompiledNode compileMap(JsonNode items) {
+        List<Object> keys = new ArrayList<Object>();
+        List<CompiledNode> values = new ArrayList<CompiledNode>();
+        for (JsonNode item : items) {
+            JsonNode key = item.get(0);
+            if (key.isNull()) {
+                keys.add(null);
+            } else if (key.isNumber()) {
+                keys.add(key.intValue());
+            } else if (key.isTextual()) {
+                keys.add(key.asText());
+            } else {
+                // items with keys of other types are ignored
+                continue;
+            }
+            values.add(compileNode(item.get(1)));
+        }
+        return new MapNode(nodeFactory, keys.toArray(), values.toArray(NO_NODES));
+    }
+
+    private CompiledNode compileIf(JsonNode conditions) {
+        CompiledNode[] compiledConditions = new CompiledNode[conditions.size()];
+        StatementsNode[] bodies = new StatementsNode[conditions.size()];
+        for (int i = 0; i < compiledConditions.length; i++) {
+            JsonNode condition = conditions.get(i);
+            compiledConditions[i] = compileNode(condition.get(0));
+            bodies[i] = compileStatements(condition.get(1));
+        }
+        return new IfNode(nodeFactory, compiledConditions, bodies);
+    }
+
+    private CompiledNode compileFor(JsonNode iterator, JsonNode collection, JsonNode statements) {
+        Symbol iterVal = Symbol.of(iterator.get(0).asText());
+        Symbol iterKey = (iterator.size() > 1) ? Symbol.of(iterator.get(1).asText()) : null;
+        StatementsNode body = compileStatements(statements.get(0));
+        StatementsNode elseBody = (statements.size() > 1) ? compileStatements(statements.get(1)) : null;
+        return new ForNode(nodeFactory, iterVal, iterKey, compileNode(collection), body, elseBody);
+    }
+
+    private CompiledNode compileSelector(JsonNode element) {
+        int root;
+        CompiledNode rootExpression = null;
+        int startIdx = 0;
+
+        JsonNode first = element.get(0);
+        if (first.isArray()) {
+            root = SelectorNode.ROOT_EXPRESSION;
+            rootExpression = compileNode(first);
+            startIdx = 1;
+        } else if ("this".equals(first.asText())) {
+            root = SelectorNode.ROOT_THIS;
+            startIdx = 1;
+        } else if ("global".equals(first.asText())) {
+            if ("baseURI".equals(element.path(1).asText())) {
+                root = SelectorNode.ROOT_GLOBAL_BASE_URI;
+                startIdx = 2;
+            } else {
+                root = SelectorNode.ROOT_GLOBAL;
+                startIdx = 1;
+            }
+        } else if ("self".equals(first.asText())) {
+            root = SelectorNode.ROOT_SELF;
+            startIdx = 1;
+        } else if ("baseURI".equals(first.asText())) {
+            root = SelectorNode.ROOT_BASE_URI;
+        } else {
+            root = SelectorNode.ROOT_CONTEXT;
+        }
+
+        int size = Math.max(element.size() - startIdx, 0);
+        String[] names = new String[size];
+        CompiledNode[] expressions = new CompiledNode[size];
+        for (int i = 0; i < size; i++) {
+            JsonNode selector = element.get(startIdx + i);
+            if (selector.isTextual()) {
+                names[i] = selector.asText();
+            } else {
+                expressions[i] = compileNode(selector);
+            }
+        }
+        return new SelectorNode(nodeFactory, root, rootExpression, names, expressions);
+    }
+
+    private CompiledNode compileCall(JsonNode target, JsonNode nameElement, JsonNode args) {
+        CompiledNode compiledTarget = (target == null || target.isNull()) ? null : compileNode(target);
+
+        String name = null;
+        CompiledNode nameExpression = null;
+        if (nameElement.isArray()) {
+            nameExpression = compileNode(nameElement);
+        } else if (nameElement.isTextual()) {
+            name = nameElement.asText();
+        }
+
+        CompiledNode[] compiledArgs = NO_NODES;
+        if (args != null && !args.isNull() && args.size() > 0) {
+            compiledArgs = new CompiledNode[args.size()];
+            for (int i = 0; i < compiledArgs.length; i++) {
+                compiledArgs[i] = compileNode(args.get(i));
+            }
+        }
+
+        String description = (name == null && nameExpression == null) ? nameElement.toString() : null;
+        return new CallNode(nodeFactory, evaluator, compiledTarget, name, nameExpression, compiledArgs, description);
+    }
+
+    private CompiledNode compileImport(JsonNode pathElement) {
+        if (pathElement.isTextual()) {
+            return new ImportNode(nodeFactory, evaluator, pathElement.asText(), null);
+        }
+        return new ImportNode(nodeFactory, evaluator, null, pathElement.toString());
+    }
+
+    private CompiledNode compileMacro(JsonNode ident, JsonNode args, JsonNode statements) {
+        String[] argNames = new String[args.size()];
+        for (int i = 0; i < argNames.length; i++) {
+            argNames[i] = args.get(i).asText();
+        }
+        return new MacroNode(nodeFactory, ident.asText(), argNames, compileStatements(statements));
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.EvaluatorException;
+import ru.histone.evaluator.nodes.Node;
+import ru.histone.evaluator.nodes.NodeFactory;
+
+/**
+ * Compiled ternary operator (condition ? trueValue : falseValue)
+ */
+public class TernaryNode extends CompiledNode {
+    final NodeFactory nodeFactory;
+    final CompiledNode condition;
+    final CompiledNode trueNode;
+    final CompiledNode falseNode;
+
+    /**
+     * @param falseNode false branch, can be null
+     */
+    TernaryNode(NodeFactory nodeFactory, CompiledNode condition, CompiledNode trueNode, CompiledNode falseNode) {
+        this.nodeFactory = nodeFactory;
+        this.condition = condition;
+        this.trueNode = trueNode;
+        this.falseNode = falseNode;
+    }
+
+    @Override
+    public Node evaluate(EvaluatorContext context) throws EvaluatorException {
+        if (condition.evaluate(context).getAsBoolean().getValue()) {
+            return trueNode.evaluate(context);
+        } else if (falseNode != null) {
+            return falseNode.evaluate(context);
+        }
+        return nodeFactory.UNDEFINED;
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.EvaluatorException;
+import ru.histone.evaluator.nodes.Node;
+
+/**
+ * Base class for compiled unary operations
+ */
+public abstract class UnaryOperationNode extends CompiledNode {
+    private final CompiledNode operand;
+
+    protected UnaryOperationNode(CompiledNode operand) {
+        this.operand = operand;
+    }
+
+    public CompiledNode getOperand() {
+        return operand;
+    }
+
+    @Override
+    public final Node evaluate(EvaluatorContext context) throws EvaluatorException {
+        return apply(operand.evaluate(context));
+    }
+
+    /**
+     * Apply operation to evaluated operand
+     *
+     * @param value operand value
+     * @return operation result
+     */
+    public abstract Node apply(Node value);
+}
@@ -0,0 +1,52 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.Histone;
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.nodes.Node;
+import ru.histone.evaluator.nodes.NodeFactory;
+
+/**
+ * Placeholder for AST elements, that can't be evaluated (unknown node types, malformed elements)<br/>
+ * Every evaluation reports the problem to runtime log and returns undefined.
+ */
+public class UnknownNode extends CompiledNode {
+    private final NodeFactory nodeFactory;
+    private final boolean unknownType;
+    private final String description;
+
+    UnknownNode(NodeFactory nodeFactory, boolean unknownType, String description) {
+        this.nodeFactory = nodeFactory;
+        this.unknownType = unknownType;
+        this.description = description;
+    }
+
+    @Override
+    public Node evaluate(EvaluatorContext context) {
+        if (unknownType) {
+            Histone.runtime_log_error("Unknown nodeType", null, description);
+        } else {
+            Histone.runtime_log_warn("Invalid JSON element! Neither 'string', nor 'array'. Element: '{}'", description);
+        }
+        return nodeFactory.UNDEFINED;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
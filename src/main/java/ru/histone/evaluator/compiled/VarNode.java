@@ -0,0 +1,56 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import ru.histone.evaluator.EvaluatorContext;
+import ru.histone.evaluator.EvaluatorException;
+import ru.histone.evaluator.Symbol;
+import ru.histone.evaluator.nodes.Node;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.evaluator.output.TemplateOutput;
+
+/**
+ * Compiled variable definition
+ */
+public class VarNode extends CompiledNode {
+    final NodeFactory nodeFactory;
+    final Symbol name;
+    final CompiledNode expression;
+
+    VarNode(NodeFactory nodeFactory, Symbol name, CompiledNode expression) {
+        this.nodeFactory = nodeFactory;
+        this.name = name;
+        this.expression = expression;
+    }
+
+    public String getName() {
+        return name.getName();
+    }
+
+    @Override
+    public Node evaluate(EvaluatorContext context) throws EvaluatorException {
+        context.putProp(name, expression.evaluate(context));
+        return nodeFactory.UNDEFINED;
+    }
+
+    /**
+     * Variable definition has no output
+     */
+    @Override
+    public void render(EvaluatorContext context, TemplateOutput output) throws EvaluatorException {
+        evaluate(context);
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writer of JVM class files<br/>
+ * Produces class files of version 49 (Java 5), so methods don't need stack map frames.
+ * Only features required for generated templates are supported: constant pool, fields and methods with code.
+ */
+public class ClassFileWriter {
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PRIVATE = 0x0002;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    private static final int CLASS_VERSION = 49;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<String, Integer>();
+    private int poolCount = 1;
+
+    private final List<byte[]> fields = new ArrayList<byte[]>();
+    private final List<byte[]> methods = new ArrayList<byte[]>();
+
+    private final String className;
+    private final String superClassName;
+
+    /**
+     * @param className      internal name of generated class (e.g. 'a/b/C')
+     * @param superClassName internal name of super class
+     */
+    public ClassFileWriter(String className, String superClassName) {
+        this.className = className;
+        this.superClassName = superClassName;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public int utf8(String value) {
+        String key = "U" + value;
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            try {
+                pool.writeByte(CONSTANT_UTF8);
+                pool.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException("Constant is too long for class file", e);
+            }
+            index = register(key, 1);
+        }
+        return index;
+    }
+
+    public int integer(int value) {
+        String key = "I" + value;
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            try {
+                pool.writeByte(CONSTANT_INTEGER);
+                pool.writeInt(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            index = register(key, 1);
+        }
+        return index;
+    }
+
+    public int classRef(String internalName) {
+        return ref(CONSTANT_CLASS, "C" + internalName, utf8(internalName));
+    }
+
+    public int string(String value) {
+        return ref(CONSTANT_STRING, "S" + value, utf8(value));
+    }
+
+    public int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    public int methodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    public int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_INTERFACE_METHODREF, owner, name, descriptor);
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        String key = "N" + name + ' ' + descriptor;
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            try {
+                pool.writeByte(CONSTANT_NAME_AND_TYPE);
+                pool.writeShort(nameIndex);
+                pool.writeShort(descriptorIndex);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            index = register(key, 1);
+        }
+        return index;
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        String key = "M" + tag + owner + '.' + name + descriptor;
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            int classIndex = classRef(owner);
+            int nameAndTypeIndex = nameAndType(name, descriptor);
+            try {
+                pool.writeByte(tag);
+                pool.writeShort(classIndex);
+                pool.writeShort(nameAndTypeIndex);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            index = register(key, 1);
+        }
+        return index;
+    }
+
+    private int ref(int tag, String key, int utf8Index) {
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            try {
+                pool.writeByte(tag);
+                pool.writeShort(utf8Index);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            index = register(key, 1);
+        }
+        return index;
+    }
+
+    private int register(String key, int slots) {
+        int index = poolCount;
+        poolCount += slots;
+        if (poolCount > 0xFFFF) {
+            throw new IllegalStateException("Constant pool is too large");
+        }
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    /**
+     * Add field to class
+     */
+    public void addField(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    /**
+     * Create code builder for new method, method is added to class by {@link #addMethod}
+     */
+    public CodeBuilder newCode(int maxLocals) {
+        return new CodeBuilder(this, maxLocals);
+    }
+
+    /**
+     * Add method with specified code to class
+     */
+    public void addMethod(int access, String name, String descriptor, CodeBuilder code) {
+        byte[] codeBytes = code.toByteArray();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);
+            out.writeShort(utf8("Code"));
+            out.writeInt(codeBytes.length);
+            out.write(codeBytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    /**
+     * Return class file content
+     */
+    public byte[] toByteArray() {
+        int thisIndex = classRef(className);
+        int superIndex = classRef(superClassName);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            pool.flush();
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(0);
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,395 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builder of method code<br/>
+ * Tracks operand stack depth and local variables, resolves branch labels and collects exception handlers.
+ * Branch targets must be reached with same stack depth from all sources.
+ */
+public class CodeBuilder {
+    public static final int ACONST_NULL = 1;
+    public static final int ICONST_0 = 3;
+    public static final int BIPUSH = 16;
+    public static final int SIPUSH = 17;
+    public static final int LDC = 18;
+    public static final int LDC_W = 19;
+    public static final int ILOAD = 21;
+    public static final int ALOAD = 25;
+    public static final int AALOAD = 50;
+    public static final int ISTORE = 54;
+    public static final int ASTORE = 58;
+    public static final int POP = 87;
+    public static final int DUP = 89;
+    public static final int IINC = 132;
+    public static final int IFEQ = 153;
+    public static final int IFNE = 154;
+    public static final int IF_ICMPNE = 160;
+    public static final int GOTO = 167;
+    public static final int ARETURN = 176;
+    public static final int RETURN = 177;
+    public static final int GETSTATIC = 178;
+    public static final int GETFIELD = 180;
+    public static final int PUTFIELD = 181;
+    public static final int INVOKEVIRTUAL = 182;
+    public static final int INVOKESPECIAL = 183;
+    public static final int INVOKESTATIC = 184;
+    public static final int INVOKEINTERFACE = 185;
+    public static final int NEW = 187;
+    public static final int ATHROW = 191;
+    public static final int CHECKCAST = 192;
+    public static final int WIDE = 196;
+    public static final int IFNULL = 198;
+    public static final int IFNONNULL = 199;
+
+    private static final int MAX_CODE_LENGTH = 0xFFFF;
+
+    private final ClassFileWriter classWriter;
+
+    private byte[] code = new byte[256];
+    private int length;
+
+    private int stack;
+    private int maxStack;
+    private int maxLocals;
+    private boolean reachable = true;
+
+    private final List<Label> branchLabels = new ArrayList<Label>();
+    private final List<Integer> branchPositions = new ArrayList<Integer>();
+    private final List<Label[]> handlers = new ArrayList<Label[]>();
+
+    CodeBuilder(ClassFileWriter classWriter, int maxLocals) {
+        this.classWriter = classWriter;
+        this.maxLocals = maxLocals;
+    }
+
+    /**
+     * Allocate new local variable slot
+     */
+    public int newLocal() {
+        return maxLocals++;
+    }
+
+    public Label newLabel() {
+        return new Label();
+    }
+
+    /**
+     * Place label at current position
+     */
+    public void mark(Label label) {
+        label.position = length;
+        if (!reachable) {
+            if (label.stack < 0) {
+                throw new IllegalStateException("Label is placed in unreachable code");
+            }
+            stack = label.stack;
+            reachable = true;
+        } else if (label.stack < 0) {
+            label.stack = stack;
+        } else if (label.stack != stack) {
+            throw new IllegalStateException("Inconsistent stack depth at label");
+        }
+    }
+
+    /**
+     * Place exception handler label at current position, handler starts with exception on the stack
+     *
+     * @param start   start of covered code (inclusive)
+     * @param end     end of covered code (exclusive)
+     * @param handler handler label
+     */
+    public void markHandler(Label start, Label end, Label handler) {
+        if (reachable) {
+            throw new IllegalStateException("Exception handler must not be reachable by fall through");
+        }
+        handler.stack = 1;
+        mark(handler);
+        maxStack = Math.max(maxStack, 1);
+        handlers.add(new Label[]{start, end, handler});
+    }
+
+    public void op(int opcode) {
+        emit(opcode);
+        switch (opcode) {
+            case ACONST_NULL:
+            case DUP:
+                grow(1);
+                break;
+            case AALOAD:
+            case POP:
+                grow(-1);
+                break;
+            case ARETURN:
+            case ATHROW:
+                grow(-1);
+                reachable = false;
+                break;
+            case RETURN:
+                reachable = false;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported opcode " + opcode);
+        }
+    }
+
+    public void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            emit(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            emit(BIPUSH);
+            emit(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            emit(SIPUSH);
+            emitShort(value);
+        } else {
+            ldc(classWriter.integer(value));
+            return;
+        }
+        grow(1);
+    }
+
+    public void pushString(String value) {
+        ldc(classWriter.string(value));
+    }
+
+    private void ldc(int index) {
+        if (index < 256) {
+            emit(LDC);
+            emit(index);
+        } else {
+            emit(LDC_W);
+            emitShort(index);
+        }
+        grow(1);
+    }
+
+    public void load(int opcode, int local) {
+        localOp(opcode, local);
+        grow(1);
+    }
+
+    public void store(int opcode, int local) {
+        localOp(opcode, local);
+        grow(-1);
+    }
+
+    public void iinc(int local, int increment) {
+        if (local > 255) {
+            emit(WIDE);
+            emit(IINC);
+            emitShort(local);
+            emitShort(increment);
+        } else {
+            emit(IINC);
+            emit(local);
+            emit(increment);
+        }
+    }
+
+    private void localOp(int opcode, int local) {
+        if (local > 255) {
+            emit(WIDE);
+            emit(opcode);
+            emitShort(local);
+        } else {
+            emit(opcode);
+            emit(local);
+        }
+        maxLocals = Math.max(maxLocals, local + 1);
+    }
+
+    public void type(int opcode, String internalName) {
+        emit(opcode);
+        emitShort(classWriter.classRef(internalName));
+        if (opcode == NEW) {
+            grow(1);
+        }
+    }
+
+    public void field(int opcode, String owner, String name, String descriptor) {
+        emit(opcode);
+        emitShort(classWriter.fieldRef(owner, name, descriptor));
+        int size = typeSize(descriptor, 0);
+        switch (opcode) {
+            case GETSTATIC:
+                grow(size);
+                break;
+            case GETFIELD:
+                grow(size - 1);
+                break;
+            case PUTFIELD:
+                grow(-size - 1);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported opcode " + opcode);
+        }
+    }
+
+    public void invoke(int opcode, String owner, String name, String descriptor) {
+        int argsSize = argumentsSize(descriptor);
+        int returnSize = typeSize(descriptor, descriptor.indexOf(')') + 1);
+        emit(opcode);
+        if (opcode == INVOKEINTERFACE) {
+            emitShort(classWriter.interfaceMethodRef(owner, name, descriptor));
+            emit(argsSize + 1);
+            emit(0);
+        } else {
+            emitShort(classWriter.methodRef(owner, name, descriptor));
+        }
+        grow(-argsSize - (opcode == INVOKESTATIC ? 0 : 1) + returnSize);
+    }
+
+    public void jump(int opcode, Label label) {
+        switch (opcode) {
+            case IFEQ:
+            case IFNE:
+            case IFNULL:
+            case IFNONNULL:
+                grow(-1);
+                break;
+            case IF_ICMPNE:
+                grow(-2);
+                break;
+            case GOTO:
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported opcode " + opcode);
+        }
+        if (label.stack < 0) {
+            label.stack = stack;
+        } else if (label.stack != stack) {
+            throw new IllegalStateException("Inconsistent stack depth at label");
+        }
+        branchLabels.add(label);
+        branchPositions.add(length);
+        emit(opcode);
+        emitShort(0);
+        if (opcode == GOTO) {
+            reachable = false;
+        }
+    }
+
+    /**
+     * Return content of code attribute
+     */
+    byte[] toByteArray() {
+        if (reachable) {
+            throw new IllegalStateException("Method code must not fall off the end");
+        }
+        if (length > MAX_CODE_LENGTH) {
+            throw new IllegalStateException("Method code is too large");
+        }
+        for (int i = 0; i < branchLabels.size(); i++) {
+            int position = branchPositions.get(i);
+            int offset = resolve(branchLabels.get(i)) - position;
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                throw new IllegalStateException("Branch offset is too large");
+            }
+            code[position + 1] = (byte) (offset >> 8);
+            code[position + 2] = (byte) offset;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(length);
+            out.write(Arrays.copyOf(code, length));
+            out.writeShort(handlers.size());
+            for (Label[] handler : handlers) {
+                out.writeShort(resolve(handler[0]));
+                out.writeShort(resolve(handler[1]));
+                out.writeShort(resolve(handler[2]));
+                out.writeShort(0);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int resolve(Label label) {
+        if (label.position < 0) {
+            throw new IllegalStateException("Label is not placed");
+        }
+        return label.position;
+    }
+
+    private void grow(int delta) {
+        stack += delta;
+        if (stack < 0) {
+            throw new IllegalStateException("Operand stack underflow");
+        }
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private void emit(int value) {
+        if (!reachable) {
+            throw new IllegalStateException("Code is unreachable");
+        }
+        if (length == code.length) {
+            code = Arrays.copyOf(code, length * 2);
+        }
+        code[length++] = (byte) value;
+    }
+
+    private void emitShort(int value) {
+        emit(value >> 8);
+        emit(value);
+    }
+
+    private static int argumentsSize(String descriptor) {
+        int size = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            size += typeSize(descriptor, i);
+            i = nextType(descriptor, i);
+        }
+        return size;
+    }
+
+    private static int typeSize(String descriptor, int index) {
+        switch (descriptor.charAt(index)) {
+            case 'V':
+                return 0;
+            case 'J':
+            case 'D':
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    private static int nextType(String descriptor, int index) {
+        while (descriptor.charAt(index) == '[') {
+            index++;
+        }
+        if (descriptor.charAt(index) == 'L') {
+            index = descriptor.indexOf(';', index);
+        }
+        return index + 1;
+    }
+}
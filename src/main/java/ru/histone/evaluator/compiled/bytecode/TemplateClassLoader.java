@@ -0,0 +1,38 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled.bytecode;
+
+/**
+ * Class loader for generated template classes<br/>
+ * Each generated class gets it's own loader, so class can be unloaded as soon as compiled template isn't used anymore.
+ */
+public class TemplateClassLoader extends ClassLoader {
+
+    public TemplateClassLoader(ClassLoader parent) {
+        super(parent);
+    }
+
+    /**
+     * Define class from specified class file
+     *
+     * @param className binary class name
+     * @param classFile class file content
+     * @return defined class
+     */
+    public Class<?> define(String className, byte[] classFile) {
+        return defineClass(className, classFile, 0, classFile.length);
+    }
+}
@@ -21,7 +21,6 @@ import ru.histone.evaluator.nodes.NumberHistoneNode;
 import ru.histone.evaluator.nodes.ObjectHistoneNode;
 import ru.histone.utils.ArrayUtils;
 
-import java.util.Map;
 
 /**
  * Return minimum value from specified arguments<br/>
@@ -56,8 +55,7 @@ public class Min extends GlobalFunction {
 
 	private NumberHistoneNode findMin(NumberHistoneNode previous, ObjectHistoneNode values) {
 		NumberHistoneNode result = previous;
-		Map<Object, Node> map = values.getElements();
-		for (Node valueNode : map.values()) {
+		for (Node valueNode : values.values()) {
 			if (valueNode.isNumber()) {
 				NumberHistoneNode numberNode = (NumberHistoneNode) valueNode;
 				result = (result == null || result.compareTo(numberNode) > 0) ? numberNode : result;
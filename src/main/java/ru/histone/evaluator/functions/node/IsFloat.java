@@ -35,6 +35,6 @@ public class IsFloat extends IsNumber {
 
     @Override
     public Node execute(Node target, Node... args) {
-        return isNumber(target) && target.getAsNumber().getValue().stripTrailingZeros().scale() > 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+        return isNumber(target) && target.isFloat() ? getNodeFactory().TRUE : getNodeFactory().FALSE;
     }
 }
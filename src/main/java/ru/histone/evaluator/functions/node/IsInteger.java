@@ -33,6 +33,6 @@ public class IsInteger extends IsNumber {
 
     @Override
     public Node execute(Node target, Node... args) {
-        return isNumber(target) && target.getAsNumber().getValue().stripTrailingZeros().scale() <= 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+        return isNumber(target) && target.isInteger() ? getNodeFactory().TRUE : getNodeFactory().FALSE;
     }
 }
@@ -23,7 +23,6 @@ import ru.histone.evaluator.nodes.ObjectHistoneNode;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class Group extends NodeFunction<ObjectHistoneNode> {
 
@@ -45,16 +44,13 @@ public class Group extends NodeFunction<ObjectHistoneNode> {
             }
             String column = args[0].getAsString().getValue();
 
-            Map<Object, Node> map = target.getElements();
-
-
-            for (Map.Entry<Object, Node> entry : map.entrySet()) {
-                Node val = entry.getValue().getProp(column);
+            for (Node value : target.values()) {
+                Node val = value.getProp(column);
                 String key = val.getAsString().getValue();
                 if (!result.hasProp(val.getAsString().getValue())) {
                     result.set(key, getNodeFactory().object());
                 }
-                result.getProp(key).getAsObject().add(entry.getValue());
+                result.getProp(key).getAsObject().add(value);
             }
         }
         return result;
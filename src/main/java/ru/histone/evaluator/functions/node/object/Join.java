@@ -43,7 +43,7 @@ public class Join extends NodeFunction<ObjectHistoneNode> {
         }
         boolean addSeparator = false;
         StringBuilder buffer = new StringBuilder();
-        for (Node element : target.getElements().values()) {
+        for (Node element : target.values()) {
             if (addSeparator) {
                 buffer.append(separator);
             }
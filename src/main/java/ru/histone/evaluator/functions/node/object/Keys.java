@@ -37,7 +37,7 @@ public class Keys extends NodeFunction<ObjectHistoneNode> {
     @Override
     public Node execute(ObjectHistoneNode target, Node... args) {
         ObjectHistoneNode result = getNodeFactory().object();
-        for( Object key: target.getElements().keySet()){
+        for (Object key : target.keys()) {
             result.add(getNodeFactory().string(key.toString()));
         }
         return result;
@@ -42,7 +42,7 @@ public class Resize extends NodeFunction<ObjectHistoneNode> {
     @Override
 	public Node execute(ObjectHistoneNode target, Node... args) {
 		if (args.length == 0)
-			return getNodeFactory().object(target.getElements().values());
+			return getNodeFactory().object(target.values());
 		if (args.length != 1 && args.length != 2)
 			return getNodeFactory().UNDEFINED;
 		//init variables
@@ -59,10 +59,10 @@ public class Resize extends NodeFunction<ObjectHistoneNode> {
 		final Node insertedNode = args.length == 2 ? args[1] : getNodeFactory().NULL;
 		//
 		if (newSize == null || newSize.intValue() < 0) {
-			return getNodeFactory().object(target.getElements().values());
+			return getNodeFactory().object(target.values());
 		}
 
-		Iterator<Node> it = target.getElements().values().iterator();
+		Iterator<Node> it = target.values().iterator();
 		List<Node> nodes = new ArrayList<Node>();
 		for (int i = 0; i < newSize.intValue(); i++) {
 			Node node;
@@ -21,8 +21,6 @@ import ru.histone.evaluator.nodes.NodeFactory;
 import ru.histone.evaluator.nodes.ObjectHistoneNode;
 
 import java.math.BigDecimal;
-import java.util.Map;
-import java.util.Map.Entry;
 
 /**
  * Implement Map.search() - search for index/key for specified element
@@ -38,29 +36,27 @@ public class Search extends NodeFunction<ObjectHistoneNode> {
         return "search";
     }
 
-    @SuppressWarnings("unchecked")
 	@Override
 	public Node execute(ObjectHistoneNode target, Node... args) {
 		if (args.length != 1 && args.length != 2)
 			return getNodeFactory().UNDEFINED;
 		final int start = args.length == 1 ? 0 : args[1].getAsNumber().getValue().intValue();
 		Object result = null;
-		Map<Object, Node> map = target.getElements();
-		Entry<Object, Node>[] entries = map.entrySet().toArray(new Entry[0]);
+		int size = target.size();
 		// search if start index is positive
 		if (start >= 0) {
-			for (int i = start; i < entries.length; i++) {
-				if (isEquals(entries[i].getValue(), args[0])) {
-					result = entries[i].getKey();
+			for (int i = start; i < size; i++) {
+				if (isEquals(target.valueAt(i), args[0])) {
+					result = target.keyAt(i);
 					break;
 				}
 			}
 		}
 		// search if start index is negative
 		else {
-			for (int i = entries.length + start; i >= 0; i--) {
-				if (isEquals(entries[i].getValue(), args[0])) {
-					result = entries[i].getKey();
+			for (int i = size + start; i >= 0; i--) {
+				if (isEquals(target.valueAt(i), args[0])) {
+					result = target.keyAt(i);
 					break;
 				}
 			}
@@ -20,7 +20,6 @@ import ru.histone.evaluator.nodes.Node;
 import ru.histone.evaluator.nodes.NodeFactory;
 import ru.histone.evaluator.nodes.ObjectHistoneNode;
 
-import java.util.Map;
 
 /**
  * Return slice from current array<br/>
@@ -50,8 +49,7 @@ public class Slice extends NodeFunction<ObjectHistoneNode> {
 
 
         int startIdx = start.getAsNumber().getValue().intValue();
-        Map<Object, Node> elements = target.getElements();
-        int elementsSize = elements.size();
+        int elementsSize = target.size();
         int stopIdx = elementsSize;
 
         if (args.length > 1 && args[1].isInteger()) {
@@ -93,12 +91,8 @@ public class Slice extends NodeFunction<ObjectHistoneNode> {
             }
 
             ObjectHistoneNode result = getNodeFactory().object();
-            int currentIdx = 0;
-            for (Object key : elements.keySet()) {
-                if ((currentIdx >= startIdx) && (currentIdx < stopIdx)) {
-                    result.add(key, elements.get(key));
-                }
-                currentIdx++;
+            for (int currentIdx = startIdx; currentIdx < stopIdx; currentIdx++) {
+                result.add(target.keyAt(currentIdx), target.valueAt(currentIdx));
             }
             return result;
         }
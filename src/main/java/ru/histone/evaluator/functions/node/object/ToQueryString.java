@@ -25,7 +25,6 @@ import ru.histone.evaluator.nodes.ObjectHistoneNode;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.Map.Entry;
-import java.util.Set;
 
 /**
  * Transforms key-to-parameter map to query string. <br/>
@@ -53,23 +52,21 @@ public class ToQueryString extends NodeFunction<ObjectHistoneNode> {
 	}
 
 	public static String toQueryString(final ObjectHistoneNode node, final String keyPrefix, final String separator) {
-		Set<Entry<Object, Node>> entries = node.getElements().entrySet();
 		StringBuilder b = new StringBuilder();
-		for (Entry<Object, Node> entry : entries) {
+		for (Entry<Object, Node> entry : node.entries()) {
 			String key = entry.getKey().toString();
 			// if key is integer then it is just a index in array. Add given
 			// prefix before
 			key = entry.getKey() instanceof Integer && keyPrefix != null ? keyPrefix + key : key;
 			addValue(keyPrefix, separator, b, key, entry.getValue());
 		}
-		String result = entries.size() == 0 ? "" : b.substring(1);
+		String result = node.size() == 0 ? "" : b.substring(1);
 		return result;
 	}
 
 	private static void addValue(final String keyPrefix, final String separator, final StringBuilder b, final String key, Node node) {
 		if (node.isObject()) {
-			Set<Entry<Object, Node>> entries = node.getAsObject().getElements().entrySet();
-			for (Entry<Object, Node> entry : entries) {
+			for (Entry<Object, Node> entry : node.getAsObject().entries()) {
 				String newKey = entry.getKey().toString();
 				newKey = key + "[" + newKey + "]";
 				addValue(keyPrefix, separator, b, newKey, entry.getValue());
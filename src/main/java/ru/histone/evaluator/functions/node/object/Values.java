@@ -36,6 +36,6 @@ public class Values extends NodeFunction<ObjectHistoneNode> {
 
     @Override
     public Node execute(ObjectHistoneNode target, Node... args) {
-        return getNodeFactory().object(target.getElements().values());
+        return getNodeFactory().object(target.values());
     }
 }
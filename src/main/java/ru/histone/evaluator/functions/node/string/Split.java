@@ -18,6 +18,7 @@ package ru.histone.evaluator.functions.node.string;
 import ru.histone.evaluator.functions.node.NodeFunction;
 import ru.histone.evaluator.nodes.Node;
 import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.evaluator.nodes.ObjectHistoneNode;
 import ru.histone.evaluator.nodes.StringHistoneNode;
 
 import java.util.regex.Pattern;
@@ -40,27 +41,21 @@ public class Split extends NodeFunction<StringHistoneNode> {
     @Override
     public Node execute(StringHistoneNode target, Node... args) {
         String value = target.getValue();
-        if (args.length > 0 && args[0].isString()) {
-            String separator = args[0].getAsString().getValue();
-            return getNodeFactory().object(split(value, separator));
-        } else {
-            return getNodeFactory().object(split(value, ""));
+        String separator = (args.length > 0 && args[0].isString()) ? args[0].getAsString().getValue() : "";
+        if (separator.isEmpty()) {
+            return splitChars(value);
         }
-
+        return getNodeFactory().object(value.split(Pattern.quote(separator)));
     }
 
-    private String[] split(String value, String separator) {
-        String result[] = null;
-
-        if (separator.isEmpty()) {
-            result = new String[value.length()];
-            for (int i = 0; i < value.length(); i++) {
-                result[i] = String.valueOf(value.charAt(i));
-            }
-        } else {
-            result = value.split(Pattern.quote(separator));
+    /**
+     * Split string into single chars, using canonical char nodes
+     */
+    private ObjectHistoneNode splitChars(String value) {
+        ObjectHistoneNode result = getNodeFactory().object();
+        for (int i = 0; i < value.length(); i++) {
+            result.add(getNodeFactory().string(value.charAt(i)));
         }
-
         return result;
     }
 
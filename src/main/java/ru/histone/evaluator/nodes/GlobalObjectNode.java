@@ -15,6 +15,8 @@
  */
 package ru.histone.evaluator.nodes;
 
+import java.util.Map;
+
 /**
  * Special class representing 'global' object in Histone syntax
  */
@@ -26,8 +28,8 @@ public class GlobalObjectNode extends ObjectHistoneNode {
     public GlobalObjectNode(NodeFactory nodeFactory, ObjectHistoneNode node) {
         super(nodeFactory);
         if (node != null) {
-            for (Object key : node.getElements().keySet()) {
-                this.add(key, node.getElements().get(key));
+            for (Map.Entry<Object, Node> entry : node.entries()) {
+                this.add(entry.getKey(), entry.getValue());
             }
         }
     }
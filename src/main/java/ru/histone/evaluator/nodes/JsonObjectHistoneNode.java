@@ -0,0 +1,82 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.nodes;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Object type node, that is backed by Jackson ObjectNode or ArrayNode and converts it on first access<br/>
+ * Only direct children are converted, nested objects and arrays become lazy nodes too, so parts of JSON,
+ * which are never used by template, are never converted. Besides that it behaves exactly as {@link ObjectHistoneNode}.<br/>
+ * Source JSON must not be modified after node is created.
+ *
+ * @see NodeFactory#jsonToLazyNode(JsonNode)
+ */
+public class JsonObjectHistoneNode extends ObjectHistoneNode {
+    /**
+     * JSON, which isn't converted yet, it's null after conversion
+     */
+    private volatile JsonNode source;
+    private boolean loading;
+
+    protected JsonObjectHistoneNode(NodeFactory nodeFactory, JsonNode source) {
+        super(nodeFactory);
+        this.source = source;
+    }
+
+    /**
+     * Check if source JSON is already converted
+     */
+    public boolean isLoaded() {
+        return source == null;
+    }
+
+    @Override
+    protected void loadElements() {
+        if (source != null) {
+            load();
+        }
+    }
+
+    private synchronized void load() {
+        // elements are added by this method itself, so nested calls are ignored
+        if (source == null || loading) {
+            return;
+        }
+
+        loading = true;
+        try {
+            NodeFactory nodeFactory = getNodeFactory();
+            if (source.isArray()) {
+                for (JsonNode item : source) {
+                    add(nodeFactory.jsonToLazyNode(item));
+                }
+            } else {
+                Iterator<Map.Entry<String, JsonNode>> fields = source.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    add(field.getKey(), nodeFactory.jsonToLazyNode(field.getValue()));
+                }
+            }
+        } finally {
+            loading = false;
+            source = null;
+        }
+    }
+}
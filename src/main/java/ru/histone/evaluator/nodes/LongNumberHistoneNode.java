@@ -0,0 +1,191 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.nodes;
+
+import java.math.BigDecimal;
+
+/**
+ * Number type object for integer values, that fit into long<br/>
+ * Arithmetic with other long numbers is done on primitives, results are widened to {@link BigDecimal}
+ * on overflow. Division is always done by {@link NumberHistoneNode}, so it keeps decimal scale and rounding.
+ */
+public class LongNumberHistoneNode extends NumberHistoneNode {
+    private final long longValue;
+    private BigDecimal decimalValue;
+
+    protected LongNumberHistoneNode(NodeFactory nodeFactory, long value) {
+        super(nodeFactory, null);
+        this.longValue = value;
+    }
+
+    protected LongNumberHistoneNode(NodeFactory nodeFactory, long value, BigDecimal decimalValue) {
+        super(nodeFactory, null);
+        this.longValue = value;
+        this.decimalValue = decimalValue;
+    }
+
+    /**
+     * Number type object value as long
+     *
+     * @return object value
+     */
+    public long getLongValue() {
+        return longValue;
+    }
+
+    @Override
+    public BigDecimal getValue() {
+        BigDecimal result = decimalValue;
+        if (result == null) {
+            result = BigDecimal.valueOf(longValue);
+            decimalValue = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isInteger() {
+        return true;
+    }
+
+    @Override
+    public boolean isFloat() {
+        return false;
+    }
+
+    @Override
+    public Node oper_add(Node right) {
+        if (right instanceof LongNumberHistoneNode) {
+            long rightValue = ((LongNumberHistoneNode) right).longValue;
+            long result = longValue + rightValue;
+            if (((longValue ^ result) & (rightValue ^ result)) >= 0) {
+                return getNodeFactory().number(result);
+            }
+        }
+        return super.oper_add(right);
+    }
+
+    @Override
+    public Node oper_sub(Node right) {
+        if (right instanceof LongNumberHistoneNode) {
+            long rightValue = ((LongNumberHistoneNode) right).longValue;
+            long result = longValue - rightValue;
+            if (((longValue ^ rightValue) & (longValue ^ result)) >= 0) {
+                return getNodeFactory().number(result);
+            }
+        }
+        return super.oper_sub(right);
+    }
+
+    @Override
+    public Node oper_mul(Node right) {
+        if (right instanceof LongNumberHistoneNode) {
+            long rightValue = ((LongNumberHistoneNode) right).longValue;
+            if (((Math.abs(longValue) | Math.abs(rightValue)) >>> 31) == 0) {
+                // both values fit into 31 bits, so result can't overflow
+                return getNodeFactory().number(longValue * rightValue);
+            }
+            long result = longValue * rightValue;
+            if (longValue == 0 || (result / longValue == rightValue && !(longValue == -1 && rightValue == Long.MIN_VALUE))) {
+                return getNodeFactory().number(result);
+            }
+        }
+        return super.oper_mul(right);
+    }
+
+    @Override
+    public Node oper_mod(Node right) {
+        if (right instanceof LongNumberHistoneNode) {
+            long rightValue = ((LongNumberHistoneNode) right).longValue;
+            if (rightValue != 0) {
+                return getNodeFactory().number(longValue % rightValue);
+            }
+        }
+        return super.oper_mod(right);
+    }
+
+    @Override
+    public Node oper_negate() {
+        if (longValue != Long.MIN_VALUE) {
+            return getNodeFactory().number(-longValue);
+        }
+        return super.oper_negate();
+    }
+
+    @Override
+    public Node oper_equal(Node right) {
+        if (right instanceof LongNumberHistoneNode) {
+            return (longValue == ((LongNumberHistoneNode) right).longValue) ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+        }
+        return super.oper_equal(right);
+    }
+
+    @Override
+    public Node oper_greaterThan(Node right) {
+        if (right instanceof LongNumberHistoneNode) {
+            return (longValue > ((LongNumberHistoneNode) right).longValue) ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+        }
+        return super.oper_greaterThan(right);
+    }
+
+    @Override
+    public Node oper_greaterOrEqual(Node right) {
+        if (right instanceof LongNumberHistoneNode) {
+            return (longValue >= ((LongNumberHistoneNode) right).longValue) ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+        }
+        return super.oper_greaterOrEqual(right);
+    }
+
+    @Override
+    public Node oper_lessThan(Node right) {
+        if (right instanceof LongNumberHistoneNode) {
+            return (longValue < ((LongNumberHistoneNode) right).longValue) ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+        }
+        return super.oper_lessThan(right);
+    }
+
+    @Override
+    public Node oper_lessOrEqual(Node right) {
+        if (right instanceof LongNumberHistoneNode) {
+            return (longValue <= ((LongNumberHistoneNode) right).longValue) ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+        }
+        return super.oper_lessOrEqual(right);
+    }
+
+    @Override
+    public BooleanHistoneNode getAsBoolean() {
+        return (longValue == 0) ? getNodeFactory().FALSE : getNodeFactory().TRUE;
+    }
+
+    @Override
+    protected String formatValue() {
+        return Long.toString(longValue);
+    }
+
+    @Override
+    public String toString() {
+        return "number(" + longValue + ")";
+    }
+
+    @Override
+    public int compareTo(NumberHistoneNode o) {
+        if (o instanceof LongNumberHistoneNode) {
+            long otherValue = ((LongNumberHistoneNode) o).longValue;
+            return (longValue < otherValue) ? -1 : ((longValue == otherValue) ? 0 : 1);
+        }
+        return super.compareTo(o);
+    }
+}
@@ -23,7 +23,7 @@ import java.util.Map;
 
 public class NameSpaceNode extends ObjectHistoneNode{
 
-    private Map<NodeKey, MacroFunc> macros = new HashMap<NodeKey, MacroFunc>();
+    private Map<String, MacroFunc> macros = new HashMap<String, MacroFunc>();
 
     protected NameSpaceNode(NodeFactory nodeFactory) {
         super(nodeFactory);
@@ -34,7 +34,7 @@ public class NameSpaceNode extends ObjectHistoneNode{
         if (key == null) throw new IllegalArgumentException();
         if (value == null) throw new IllegalArgumentException();
 
-        macros.put(new NodeKey(key), value);
+        macros.put(key, value);
     }
 
     public boolean hasMacro(String name) {
@@ -48,11 +48,7 @@ public class NameSpaceNode extends ObjectHistoneNode{
      * @return macro object
      */
     public MacroFunc getMacro(String name) {
-        NodeKey key = new NodeKey(name);
-        if (macros.containsKey(key)) {
-            return macros.get(key);
-        }
-        return null;
+        return macros.get(name);
     }
 
 }
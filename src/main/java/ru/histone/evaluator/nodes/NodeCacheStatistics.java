@@ -0,0 +1,58 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.nodes;
+
+/**
+ * Snapshot of {@link NodeFactory} canonical node cache usage<br/>
+ * Counters are thread-safe and count only lookups made while {@link NodeFactory#setCollectStatistics(boolean) collection}
+ * is enabled, it's disabled by default.
+ */
+public class NodeCacheStatistics {
+    private final long hits;
+    private final long misses;
+
+    public NodeCacheStatistics(long hits, long misses) {
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    /**
+     * @return number of requests served by canonical instances
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of requests, that created new nodes
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return share of requests served by canonical instances, 0 if there were no requests
+     */
+    public double getHitRate() {
+        long total = hits + misses;
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "NodeCacheStatistics{hits=" + hits + ", misses=" + misses + ", hitRate=" + getHitRate() + "}";
+    }
+}
@@ -20,6 +20,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.DecimalNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import ru.histone.utils.IOUtils;
 import ru.histone.utils.StringUtils;
@@ -30,18 +31,61 @@ import java.io.Reader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class NodeFactory {
+    /**
+     * Integer values with greater precision may not fit into long
+     */
+    private static final int MAX_LONG_PRECISION = 18;
+
+    /**
+     * Default range of integers, which have canonical number nodes
+     */
+    public static final int DEFAULT_MIN_CACHED_NUMBER = -128;
+    public static final int DEFAULT_MAX_CACHED_NUMBER = 1024;
+    /**
+     * Default upper bound of characters, which have canonical single char string nodes
+     */
+    public static final char DEFAULT_MAX_CACHED_CHAR = '\u00ff';
+    /**
+     * Frequently used string values, which have canonical string nodes
+     */
+    private static final String[] CACHED_LITERALS = {"true", "false", "null", "undefined", "0", "1", " ", ", "};
+    private static final int MAX_CACHED_LITERAL_LENGTH = 9;
+
     private ObjectMapper jackson;
     public final Node UNDEFINED;
     public final BooleanHistoneNode TRUE;
     public final BooleanHistoneNode FALSE;
     public final Node NULL;
     public final NumberHistoneNode UNDEFINED_NUMBER;
+    public final StringHistoneNode EMPTY_STRING;
+
+    private final int minCachedNumber;
+    private final NumberHistoneNode[] cachedNumbers;
+    private final StringHistoneNode[] cachedChars;
+    private final Map<String, StringHistoneNode> cachedLiterals;
+    private volatile boolean collectStatistics;
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
 
     public NodeFactory(ObjectMapper jackson) {
+        this(jackson, DEFAULT_MIN_CACHED_NUMBER, DEFAULT_MAX_CACHED_NUMBER, DEFAULT_MAX_CACHED_CHAR);
+    }
+
+    /**
+     * Create node factory with specified canonical node caches<br/>
+     * Nodes are immutable, so the same instance is returned every time cached value is requested.
+     *
+     * @param minCachedNumber lower bound of cached integers
+     * @param maxCachedNumber upper bound of cached integers, nothing is cached if it's less than lower bound
+     * @param maxCachedChar   upper bound of characters cached as single char strings
+     */
+    public NodeFactory(ObjectMapper jackson, int minCachedNumber, int maxCachedNumber, char maxCachedChar) {
         this.jackson = jackson;
 
         UNDEFINED = new UndefinedNode(this);
@@ -49,6 +93,55 @@ public class NodeFactory {
         NULL = new NullHistoneNode(this);
         TRUE = new BooleanHistoneNode(this, true);
         FALSE = new BooleanHistoneNode(this, false);
+        EMPTY_STRING = new StringHistoneNode(this, StringUtils.EMPTY);
+
+        this.minCachedNumber = minCachedNumber;
+        this.cachedNumbers = new NumberHistoneNode[Math.max(0, maxCachedNumber - minCachedNumber + 1)];
+        for (int i = 0; i < cachedNumbers.length; i++) {
+            cachedNumbers[i] = new LongNumberHistoneNode(this, minCachedNumber + i);
+        }
+
+        this.cachedChars = new StringHistoneNode[maxCachedChar + 1];
+        for (int i = 0; i < cachedChars.length; i++) {
+            cachedChars[i] = new StringHistoneNode(this, String.valueOf((char) i));
+        }
+
+        Map<String, StringHistoneNode> literals = new HashMap<String, StringHistoneNode>();
+        for (String literal : CACHED_LITERALS) {
+            literals.put(literal, (literal.length() == 1) ? string(literal.charAt(0)) : new StringHistoneNode(this, literal));
+        }
+        this.cachedLiterals = literals;
+    }
+
+    /**
+     * Enable or disable counting of canonical node cache hits and misses, disabled by default.<br/>
+     * Counters are shared by all evaluating threads, so they are updated only while collection is enabled.
+     */
+    public void setCollectStatistics(boolean collectStatistics) {
+        this.collectStatistics = collectStatistics;
+    }
+
+    public boolean isCollectStatistics() {
+        return collectStatistics;
+    }
+
+    /**
+     * Return usage statistics of canonical node caches, counted while statistics collection is enabled
+     */
+    public NodeCacheStatistics getCacheStatistics() {
+        return new NodeCacheStatistics(cacheHits.get(), cacheMisses.get());
+    }
+
+    private void cacheHit() {
+        if (collectStatistics) {
+            cacheHits.incrementAndGet();
+        }
+    }
+
+    private void cacheMiss() {
+        if (collectStatistics) {
+            cacheMisses.incrementAndGet();
+        }
     }
 
     public ObjectHistoneNode object() {
@@ -61,7 +154,7 @@ public class NodeFactory {
 
     public ObjectHistoneNode object(ObjectHistoneNode src) {
         ObjectHistoneNode node = src.isGlobalObject() ? new GlobalObjectNode(this) : object();
-        for (Map.Entry<Object, Node> entry : src.getElements().entrySet()) {
+        for (Map.Entry<Object, Node> entry : src.entries()) {
             node.add(entry.getKey(), entry.getValue());
         }
 //        node.elements = new LinkedHashMap<Object, Node>(src.elements);
@@ -103,6 +196,16 @@ public class NodeFactory {
     }
 
     public ObjectHistoneNode object(Collection<Node> elements) {
+        return object((Iterable<Node>) elements);
+    }
+
+    /**
+     * Create array node object and fill it with nodes from specified iterable (e.g. {@link ObjectHistoneNode#values()})
+     *
+     * @param elements node elements to use for creating new array object
+     * @return new array node object
+     */
+    public ObjectHistoneNode object(Iterable<Node> elements) {
         if (elements == null) {
             return object();
         }
@@ -169,6 +272,20 @@ public class NodeFactory {
         throw new IllegalArgumentException(String.format("Unknown type of JsonNode = '%s'", json.toString()));
     }
 
+    /**
+     * Convert JSON to node, JSON objects and arrays are converted lazily, when template accesses them
+     *
+     * @param json source JSON, it must not be modified after conversion
+     * @return node
+     * @see JsonObjectHistoneNode
+     */
+    public Node jsonToLazyNode(JsonNode json) {
+        if (json != null && json.isContainerNode()) {
+            return new JsonObjectHistoneNode(this, json);
+        }
+        return jsonToNode(json);
+    }
+
     public ObjectNode jsonObject() {
         return jackson.getNodeFactory().objectNode();
     }
@@ -177,6 +294,10 @@ public class NodeFactory {
         return jackson.getNodeFactory().arrayNode();
     }
 
+    public JsonNodeFactory getJsonNodeFactory() {
+        return jackson.getNodeFactory();
+    }
+
     public String toJsonString(JsonNode jsonNode) {
         if (jsonNode.isBigDecimal()) {
             BigDecimal number = ((DecimalNode) jsonNode).decimalValue();
@@ -231,13 +352,43 @@ public class NodeFactory {
     }
 
     public StringHistoneNode string(JsonNode value) {
-        return new StringHistoneNode(this, value.asText());
+        return string(value.asText());
     }
 
     public StringHistoneNode string(String value) {
+        if (value != null && value.length() <= MAX_CACHED_LITERAL_LENGTH) {
+            StringHistoneNode result;
+            if (value.length() == 0) {
+                result = EMPTY_STRING;
+            } else if (value.length() == 1 && value.charAt(0) < cachedChars.length) {
+                result = cachedChars[value.charAt(0)];
+            } else {
+                result = cachedLiterals.get(value);
+            }
+            if (result != null) {
+                cacheHit();
+                return result;
+            }
+        }
+        cacheMiss();
         return new StringHistoneNode(this, value);
     }
 
+    /**
+     * Create single char string type object
+     *
+     * @param value value
+     * @return string type object
+     */
+    public StringHistoneNode string(char value) {
+        if (value < cachedChars.length) {
+            cacheHit();
+            return cachedChars[value];
+        }
+        cacheMiss();
+        return new StringHistoneNode(this, String.valueOf(value));
+    }
+
     public JsonNode jsonString(String value) {
         return jackson.getNodeFactory().textNode(value);
     }
@@ -249,6 +400,12 @@ public class NodeFactory {
      * @return number type object
      */
     public NumberHistoneNode number(BigDecimal value) {
+        if (value != null && value.scale() == 0 && value.precision() <= MAX_LONG_PRECISION) {
+            long longValue = value.longValue();
+            NumberHistoneNode result = cachedNumber(longValue);
+            return (result != null) ? result : new LongNumberHistoneNode(this, longValue, value);
+        }
+        cacheMiss();
         return new NumberHistoneNode(this, value);
     }
 
@@ -259,7 +416,32 @@ public class NodeFactory {
      * @return number type object
      */
     public NumberHistoneNode number(int value) {
-        return new NumberHistoneNode(this, BigDecimal.valueOf(value));
+        NumberHistoneNode result = cachedNumber(value);
+        return (result != null) ? result : new LongNumberHistoneNode(this, value);
+    }
+
+    /**
+     * Create number type object using specified value
+     *
+     * @param value value
+     * @return number type object
+     */
+    public NumberHistoneNode number(long value) {
+        NumberHistoneNode result = cachedNumber(value);
+        return (result != null) ? result : new LongNumberHistoneNode(this, value);
+    }
+
+    /**
+     * Return canonical number node, or null if specified value isn't cached
+     */
+    private NumberHistoneNode cachedNumber(long value) {
+        long index = value - minCachedNumber;
+        if (index >= 0 && index < cachedNumbers.length) {
+            cacheHit();
+            return cachedNumbers[(int) index];
+        }
+        cacheMiss();
+        return null;
     }
 
     /**
@@ -296,7 +478,8 @@ public class NodeFactory {
     }
 
     public StringHistoneNode string() {
-        return new StringHistoneNode(this, StringUtils.EMPTY);
+        cacheHit();
+        return EMPTY_STRING;
     }
 
     public JsonNode jsonBoolean(Boolean value) {
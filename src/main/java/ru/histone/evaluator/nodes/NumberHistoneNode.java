@@ -22,10 +22,19 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 
 /**
- * Class representing Null type in Histone
+ * Class representing Number type in Histone<br/>
+ * Integer values, that fit into long, are represented by {@link LongNumberHistoneNode}
  */
 public class NumberHistoneNode extends Node implements Comparable<NumberHistoneNode> {
     private BigDecimal value;
+    /**
+     * Value without trailing zeros, computed on first use
+     */
+    private BigDecimal strippedValue;
+    /**
+     * String representation of value, computed on first use
+     */
+    private String stringValue;
 
     protected NumberHistoneNode(NodeFactory nodeFactory, BigDecimal value) {
         super(nodeFactory);
@@ -41,11 +50,30 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
         return value;
     }
 
+    private BigDecimal getStrippedValue() {
+        BigDecimal result = strippedValue;
+        if (result == null) {
+            result = getValue().stripTrailingZeros();
+            strippedValue = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isInteger() {
+        return isNumber() && getStrippedValue().scale() <= 0;
+    }
+
+    @Override
+    public boolean isFloat() {
+        return isNumber() && getStrippedValue().scale() > 0;
+    }
+
     @Override
     public Node oper_add(Node right) {
         if (right.isNumber()) {
             try {
-                return getNodeFactory().number(value.add(right.getAsNumber().value));
+                return getNodeFactory().number(getValue().add(right.getAsNumber().getValue()));
             } catch (Exception e) {
                 return getNodeFactory().UNDEFINED_NUMBER;
             }
@@ -67,7 +95,7 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
     public Node oper_mul(Node right) {
         if (right.isNumber()) {
             try {
-                return getNodeFactory().number(value.multiply(right.getAsNumber().getValue()));
+                return getNodeFactory().number(getValue().multiply(right.getAsNumber().getValue()));
             } catch (Exception e) {
                 return getNodeFactory().UNDEFINED_NUMBER;
             }
@@ -77,7 +105,7 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
                 return getNodeFactory().UNDEFINED;
             } else {
                 try {
-                    return getNodeFactory().number(value.multiply(right.getAsNumber().getValue()));
+                    return getNodeFactory().number(getValue().multiply(right.getAsNumber().getValue()));
                 } catch (Exception e) {
                     return getNodeFactory().UNDEFINED_NUMBER;
                 }
@@ -91,7 +119,7 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
     public Node oper_div(Node right) {
         if (right.isNumber()) {
             try {
-                return getNodeFactory().number(value.divide(right.getAsNumber().getValue(), 2, RoundingMode.HALF_UP));
+                return getNodeFactory().number(getValue().divide(right.getAsNumber().getValue(), 2, RoundingMode.HALF_UP));
             } catch (Exception e) {
                 return getNodeFactory().UNDEFINED_NUMBER;
             }
@@ -101,7 +129,7 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
                 return getNodeFactory().UNDEFINED;
             } else {
                 try {
-                    return getNodeFactory().number(value.divide(right.getAsNumber().getValue(), 2, RoundingMode.HALF_UP));
+                    return getNodeFactory().number(getValue().divide(right.getAsNumber().getValue(), 2, RoundingMode.HALF_UP));
                 } catch (Exception e) {
                     return getNodeFactory().UNDEFINED_NUMBER;
                 }
@@ -115,7 +143,7 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
     public Node oper_mod(Node right) {
         if (right.isNumber()) {
             try {
-                return getNodeFactory().number(value.remainder(right.getAsNumber().getValue()));
+                return getNodeFactory().number(getValue().remainder(right.getAsNumber().getValue()));
             } catch (Exception e) {
                 return getNodeFactory().UNDEFINED_NUMBER;
             }
@@ -125,7 +153,7 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
                 return getNodeFactory().UNDEFINED;
             } else {
                 try {
-                    return getNodeFactory().number(value.remainder(right.getAsNumber().getValue()));
+                    return getNodeFactory().number(getValue().remainder(right.getAsNumber().getValue()));
                 } catch (Exception e) {
                     return getNodeFactory().UNDEFINED_NUMBER;
                 }
@@ -137,14 +165,14 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
 
     @Override
     public Node oper_negate() {
-        return getNodeFactory().number(value.negate());
+        return getNodeFactory().number(getValue().negate());
     }
 
     @Override
     public Node oper_sub(Node right) {
         if (right.isNumber()) {
             try {
-                return getNodeFactory().number(value.subtract(right.getAsNumber().getValue()));
+                return getNodeFactory().number(getValue().subtract(right.getAsNumber().getValue()));
             } catch (Exception e) {
                 return getNodeFactory().UNDEFINED_NUMBER;
             }
@@ -155,7 +183,7 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
                 return getNodeFactory().UNDEFINED;
             } else {
                 try {
-                    return getNodeFactory().number(value.subtract(right.getAsNumber().getValue()));
+                    return getNodeFactory().number(getValue().subtract(right.getAsNumber().getValue()));
                 } catch (Exception e) {
                     return getNodeFactory().UNDEFINED_NUMBER;
                 }
@@ -173,11 +201,11 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
     @Override
     public Node oper_equal(Node right) {
         if (right.isNumber()) {
-            return value.equals(right.getAsNumber().getValue()) ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+            return getValue().equals(right.getAsNumber().getValue()) ? getNodeFactory().TRUE : getNodeFactory().FALSE;
         } else if (right.isString()) {
             NumberHistoneNode rightNum = right.getAsNumber();
             if (rightNum.isNumber()) {
-                return value.equals(rightNum.getValue()) ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+                return getValue().equals(rightNum.getValue()) ? getNodeFactory().TRUE : getNodeFactory().FALSE;
             } else {
                 return getNodeFactory().FALSE;
             }
@@ -190,7 +218,7 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
     public Node oper_greaterThan(Node right) {
         if (right.isNumber()) {
             try {
-                return value.compareTo(right.getAsNumber().getValue()) > 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+                return getValue().compareTo(right.getAsNumber().getValue()) > 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
             } catch (Exception e) {
                 return getNodeFactory().UNDEFINED_NUMBER;
             }
@@ -198,7 +226,7 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
             NumberHistoneNode rightNum = right.getAsNumber();
             if (rightNum.isNumber()) {
                 try {
-                    return value.compareTo(rightNum.getValue()) > 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+                    return getValue().compareTo(rightNum.getValue()) > 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
                 } catch (Exception e) {
                     return getNodeFactory().UNDEFINED_NUMBER;
                 }
@@ -213,7 +241,7 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
     public Node oper_greaterOrEqual(Node right) {
         if (right.isNumber()) {
             try {
-                return value.compareTo(right.getAsNumber().getValue()) >= 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+                return getValue().compareTo(right.getAsNumber().getValue()) >= 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
             } catch (Exception e) {
                 return getNodeFactory().UNDEFINED_NUMBER;
             }
@@ -221,7 +249,7 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
             NumberHistoneNode rightNum = right.getAsNumber();
             if (rightNum.isNumber()) {
                 try {
-                    return value.compareTo(rightNum.getValue()) >= 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+                    return getValue().compareTo(rightNum.getValue()) >= 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
                 } catch (Exception e) {
                     return getNodeFactory().UNDEFINED_NUMBER;
                 }
@@ -236,7 +264,7 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
     public Node oper_lessThan(Node right) {
         if (right.isNumber()) {
             try {
-                return value.compareTo(right.getAsNumber().getValue()) < 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+                return getValue().compareTo(right.getAsNumber().getValue()) < 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
             } catch (Exception e) {
                 return getNodeFactory().UNDEFINED_NUMBER;
             }
@@ -244,7 +272,7 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
             NumberHistoneNode rightNum = right.getAsNumber();
             if (rightNum.isNumber()) {
                 try {
-                    return value.compareTo(rightNum.getValue()) < 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+                    return getValue().compareTo(rightNum.getValue()) < 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
                 } catch (Exception e) {
                     return getNodeFactory().UNDEFINED_NUMBER;
                 }
@@ -259,7 +287,7 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
     public Node oper_lessOrEqual(Node right) {
         if (right.isNumber()) {
             try {
-                return value.compareTo(right.getAsNumber().getValue()) <= 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+                return getValue().compareTo(right.getAsNumber().getValue()) <= 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
             } catch (Exception e) {
                 return getNodeFactory().UNDEFINED_NUMBER;
             }
@@ -267,7 +295,7 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
             NumberHistoneNode rightNum = right.getAsNumber();
             if (rightNum.isNumber()) {
                 try {
-                    return value.compareTo(rightNum.getValue()) <= 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
+                    return getValue().compareTo(rightNum.getValue()) <= 0 ? getNodeFactory().TRUE : getNodeFactory().FALSE;
                 } catch (Exception e) {
                     return getNodeFactory().UNDEFINED_NUMBER;
                 }
@@ -280,25 +308,32 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
 
     @Override
     public BooleanHistoneNode getAsBoolean() {
-        return (getAsNumber().getValue().equals(new BigDecimal(0))) ? getNodeFactory().FALSE : getNodeFactory().TRUE;
+        return (BigDecimal.ZERO.equals(getValue())) ? getNodeFactory().FALSE : getNodeFactory().TRUE;
     }
 
     @Override
     public NumberHistoneNode getAsNumber() {
-        return getNodeFactory().number(value);
+        return this;
     }
 
     @Override
     public StringHistoneNode getAsString() {
-        StringHistoneNode result;
-
-        if (value.compareTo(new BigDecimal("0")) == 0) {
-            result = getNodeFactory().string("0");
-        } else {
-            result = getNodeFactory().string(getAsNumber().getValue().stripTrailingZeros().toPlainString());
+        String result = stringValue;
+        if (result == null) {
+            result = formatValue();
+            stringValue = result;
         }
+        return getNodeFactory().string(result);
+    }
 
-        return result;
+    /**
+     * Format value for output
+     */
+    protected String formatValue() {
+        if (getValue().signum() == 0) {
+            return "0";
+        }
+        return getStrippedValue().toPlainString();
     }
 
     @Override
@@ -308,10 +343,10 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
 
     @Override
     public JsonNode getAsJsonNode() {
-        if (value.equals(new BigDecimal("0"))) {
-            return getNodeFactory().jsonNumber(new BigDecimal("0"));
+        if (BigDecimal.ZERO.equals(getValue())) {
+            return getNodeFactory().jsonNumber(BigDecimal.ZERO);
         } else {
-            return getNodeFactory().jsonNumber(value);
+            return getNodeFactory().jsonNumber(getValue());
         }
     }
 
@@ -319,7 +354,7 @@ public class NumberHistoneNode extends Node implements Comparable<NumberHistoneN
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("number(");
-        sb.append(value.toPlainString());
+        sb.append(getValue().toPlainString());
         sb.append(")");
         return sb.toString();
     }
@@ -0,0 +1,470 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.nodes;
+
+import java.util.AbstractMap;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Insertion ordered hash map, that stores elements of {@link ObjectHistoneNode}.<br/>
+ * Keys are always strings, but keys, that are decimal representation of integer (index keys), are stored as ints.
+ * So integer 1 and string '1' is the same key, while '01' is a different string key, which still can be used as
+ * integer (see {@link #isIndexKey(int)}).<br/>
+ * Lookups don't allocate objects and keys are classified by scanning their chars, without parsing exceptions.<br/>
+ * Entries are stored in parallel arrays in insertion order, removed entries are marked deleted
+ * and are dropped when arrays are rebuilt.
+ */
+final class ObjectElements {
+    /**
+     * Key can't be used as integer
+     */
+    private static final byte STRING_KEY = 0;
+    /**
+     * Key is canonical decimal representation of integer, it's stored as int
+     */
+    private static final byte INDEX_KEY = 1;
+    /**
+     * Key can be parsed as integer, but isn't it's canonical representation (e.g. '01' or '+1')
+     */
+    private static final byte NUMERIC_KEY = 2;
+    private static final byte DELETED = -1;
+
+    private static final long NOT_INTEGER = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 4;
+
+    private String[] names;
+    private int[] indexes;
+    private byte[] kinds;
+    private Node[] values;
+    private int[] hashes;
+    private int[] chains;
+    private int[] buckets;
+
+    /**
+     * Number of used entry slots, including deleted ones
+     */
+    private int end;
+    private int size;
+    private int stringKeys;
+    /**
+     * Number of structural modifications, used to detect modification during iteration
+     */
+    private int modifications;
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return number of keys, that can't be used as integers
+     */
+    int stringKeyCount() {
+        return stringKeys;
+    }
+
+    Node get(String key) {
+        int pos = find(key);
+        return (pos < 0) ? null : values[pos];
+    }
+
+    boolean containsKey(String key) {
+        return find(key) >= 0;
+    }
+
+    Node get(int index) {
+        int pos = findIndex(index);
+        return (pos < 0) ? null : values[pos];
+    }
+
+    boolean containsIndex(int index) {
+        return findIndex(index) >= 0;
+    }
+
+    void put(String key, Node value) {
+        long parsed = parseInteger(key);
+        if (parsed != NOT_INTEGER && isCanonical(key)) {
+            put((int) parsed, key, value);
+            return;
+        }
+
+        int hash = stringHash(key);
+        int pos = findString(key, hash);
+        if (pos >= 0) {
+            values[pos] = value;
+            return;
+        }
+
+        byte kind = (parsed == NOT_INTEGER) ? STRING_KEY : NUMERIC_KEY;
+        append(kind, key, (int) parsed, hash, value);
+        if (kind == STRING_KEY) {
+            stringKeys++;
+        }
+    }
+
+    void put(int index, Node value) {
+        put(index, null, value);
+    }
+
+    private void put(int index, String name, Node value) {
+        int pos = findIndex(index);
+        if (pos >= 0) {
+            values[pos] = value;
+            return;
+        }
+        append(INDEX_KEY, name, index, indexHash(index), value);
+    }
+
+    /**
+     * @return removed value, or null if there was no such key
+     */
+    Node remove(String key) {
+        int pos = find(key);
+        if (pos < 0) {
+            return null;
+        }
+
+        int bucket = hashes[pos] & (buckets.length - 1);
+        int prev = -1;
+        int current = buckets[bucket] - 1;
+        while (current != pos) {
+            prev = current;
+            current = chains[current] - 1;
+        }
+        if (prev < 0) {
+            buckets[bucket] = chains[pos];
+        } else {
+            chains[prev] = chains[pos];
+        }
+
+        Node removed = values[pos];
+        if (kinds[pos] == STRING_KEY) {
+            stringKeys--;
+        }
+        kinds[pos] = DELETED;
+        names[pos] = null;
+        values[pos] = null;
+        size--;
+        modifications++;
+        return removed;
+    }
+
+    // ----------------------------------------------------
+    // Iteration methods ----------------------------------
+
+    /**
+     * Return position of first entry, or -1 if map is empty
+     */
+    int first() {
+        return next(-1);
+    }
+
+    /**
+     * Return position of entry, that follows specified position, or -1 if there is no more entries
+     */
+    int next(int pos) {
+        for (int i = pos + 1; i < end; i++) {
+            if (kinds[i] != DELETED) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true, if key at specified position can be used as integer
+     */
+    boolean isIndexKey(int pos) {
+        return kinds[pos] != STRING_KEY;
+    }
+
+    /**
+     * Return key at specified position as Integer for keys, which can be used as integers, otherwise as String
+     */
+    Object key(int pos) {
+        return (kinds[pos] == STRING_KEY) ? names[pos] : Integer.valueOf(indexes[pos]);
+    }
+
+    /**
+     * Return key at specified position as string
+     */
+    String keyString(int pos) {
+        String name = names[pos];
+        if (name == null) {
+            name = Integer.toString(indexes[pos]);
+            names[pos] = name;
+        }
+        return name;
+    }
+
+    Node value(int pos) {
+        return values[pos];
+    }
+
+    /**
+     * Return entry position by it's number in insertion order, it's O(1) if nothing was removed
+     *
+     * @return position, or -1 if there is no such entry
+     */
+    int position(int ordinal) {
+        if (ordinal < 0 || ordinal >= size) {
+            return -1;
+        }
+        if (end == size) {
+            return ordinal;
+        }
+        int pos = first();
+        for (int i = 0; i < ordinal; i++) {
+            pos = next(pos);
+        }
+        return pos;
+    }
+
+    Iterator<Map.Entry<Object, Node>> entryIterator() {
+        return new ElementsIterator<Map.Entry<Object, Node>>() {
+            @Override
+            protected Map.Entry<Object, Node> element(int pos) {
+                return new AbstractMap.SimpleImmutableEntry<Object, Node>(key(pos), values[pos]);
+            }
+        };
+    }
+
+    Iterator<Object> keyIterator() {
+        return new ElementsIterator<Object>() {
+            @Override
+            protected Object element(int pos) {
+                return key(pos);
+            }
+        };
+    }
+
+    Iterator<Node> valueIterator() {
+        return new ElementsIterator<Node>() {
+            @Override
+            protected Node element(int pos) {
+                return values[pos];
+            }
+        };
+    }
+
+    /**
+     * Read-only iterator in insertion order, it fails if map is structurally modified during iteration
+     */
+    private abstract class ElementsIterator<T> implements Iterator<T> {
+        private final int expectedModifications = modifications;
+        private int pos = first();
+
+        protected abstract T element(int pos);
+
+        @Override
+        public boolean hasNext() {
+            return pos >= 0;
+        }
+
+        @Override
+        public T next() {
+            if (modifications != expectedModifications) {
+                throw new ConcurrentModificationException();
+            }
+            if (pos < 0) {
+                throw new NoSuchElementException();
+            }
+            int current = pos;
+            pos = ObjectElements.this.next(pos);
+            return element(current);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Object elements view is read-only");
+        }
+    }
+
+    // ----------------------------------------------------
+    // Hash table methods ---------------------------------
+
+    private int find(String key) {
+        if (size == 0) {
+            return -1;
+        }
+        long parsed = parseInteger(key);
+        if (parsed != NOT_INTEGER && isCanonical(key)) {
+            return findIndex((int) parsed);
+        }
+        return findString(key, stringHash(key));
+    }
+
+    private int findString(String key, int hash) {
+        if (size == 0) {
+            return -1;
+        }
+        for (int pos = buckets[hash & (buckets.length - 1)] - 1; pos >= 0; pos = chains[pos] - 1) {
+            if (hashes[pos] == hash && kinds[pos] != INDEX_KEY && key.equals(names[pos])) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private int findIndex(int index) {
+        if (size == 0) {
+            return -1;
+        }
+        int hash = indexHash(index);
+        for (int pos = buckets[hash & (buckets.length - 1)] - 1; pos >= 0; pos = chains[pos] - 1) {
+            if (hashes[pos] == hash && kinds[pos] == INDEX_KEY && indexes[pos] == index) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private void append(byte kind, String name, int index, int hash, Node value) {
+        if (names == null) {
+            allocate(INITIAL_CAPACITY);
+        } else if (end == names.length) {
+            // drop deleted entries, if there are many of them, otherwise grow
+            rebuild((size > end / 2) ? names.length * 2 : names.length);
+        }
+
+        int pos = end++;
+        names[pos] = name;
+        indexes[pos] = index;
+        kinds[pos] = kind;
+        values[pos] = value;
+        hashes[pos] = hash;
+        link(pos);
+        size++;
+        modifications++;
+    }
+
+    private void allocate(int capacity) {
+        names = new String[capacity];
+        indexes = new int[capacity];
+        kinds = new byte[capacity];
+        values = new Node[capacity];
+        hashes = new int[capacity];
+        chains = new int[capacity];
+        buckets = new int[capacity * 2];
+    }
+
+    private void rebuild(int capacity) {
+        String[] oldNames = names;
+        int[] oldIndexes = indexes;
+        byte[] oldKinds = kinds;
+        Node[] oldValues = values;
+        int[] oldHashes = hashes;
+        int oldEnd = end;
+
+        allocate(capacity);
+        end = 0;
+        for (int i = 0; i < oldEnd; i++) {
+            if (oldKinds[i] != DELETED) {
+                names[end] = oldNames[i];
+                indexes[end] = oldIndexes[i];
+                kinds[end] = oldKinds[i];
+                values[end] = oldValues[i];
+                hashes[end] = oldHashes[i];
+                link(end);
+                end++;
+            }
+        }
+    }
+
+    private void link(int pos) {
+        int bucket = hashes[pos] & (buckets.length - 1);
+        chains[pos] = buckets[bucket];
+        buckets[bucket] = pos + 1;
+    }
+
+    private static int stringHash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int indexHash(int index) {
+        int h = index * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // ----------------------------------------------------
+    // Key classification ---------------------------------
+
+    /**
+     * Parse key the same way {@link Integer#parseInt(String)} does, but without exceptions
+     *
+     * @return parsed value, or {@link #NOT_INTEGER} if key isn't an integer
+     */
+    private static long parseInteger(String key) {
+        int length = key.length();
+        if (length == 0 || length > 11) {
+            return NOT_INTEGER;
+        }
+
+        int i = 0;
+        boolean negative = false;
+        char first = key.charAt(0);
+        if (first == '-' || first == '+') {
+            if (length == 1) {
+                return NOT_INTEGER;
+            }
+            negative = (first == '-');
+            i++;
+        }
+
+        long result = 0;
+        for (; i < length; i++) {
+            int digit = Character.digit(key.charAt(i), 10);
+            if (digit < 0) {
+                return NOT_INTEGER;
+            }
+            result = result * 10 + digit;
+        }
+        result = negative ? -result : result;
+        return (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) ? NOT_INTEGER : result;
+    }
+
+    /**
+     * Check if integer key is written exactly as {@link Integer#toString(int)} would write it
+     */
+    private static boolean isCanonical(String key) {
+        int i = (key.charAt(0) == '-') ? 1 : 0;
+        if (key.charAt(i) == '0') {
+            return key.length() == 1;
+        }
+        for (; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int pos = first(); pos >= 0; pos = next(pos)) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(keyString(pos)).append('=').append(values[pos]);
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -19,9 +19,9 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 
 /**
  * Represents Object type in Histone.
@@ -54,46 +54,12 @@ import java.util.Map.Entry;
  */
 public class ObjectHistoneNode extends Node {
     /**
-     * Map was extended to count all not-index keys, that are exist in the map.
+     * Elements of the map. It counts all not-index keys, that are exist in the map.
      * That allows to skip linear searcg in asJsonNode call (see consequence (a)).
      *
-     * We need LinkedHashMap here due to the fact, that some tests rely on keys sequence order.
+     * It keeps insertion order due to the fact, that some tests rely on keys sequence order.
      */
-    private final Map<NodeKey, Node> elements = new LinkedHashMap<NodeKey, Node>() {
-        @Override
-        public Node put(NodeKey key, Node value) {
-            if (key != null && key.isString()) stringNodeKeysCount++;
-            return super.put(key, value);
-        }
-
-        @Override
-        public void putAll(Map<? extends NodeKey, ? extends Node> m) {
-            for (NodeKey key : m.keySet())
-                if (key != null && key.isString())
-                    stringNodeKeysCount++;
-
-            super.putAll(m);
-        }
-
-        @Override
-        public Node remove(Object key) {
-            Node deleted = super.remove(key);
-            if (deleted != null) {
-                if (new NodeKey(key).isString()) stringNodeKeysCount--;
-            }
-            return deleted;
-        }
-
-        @Override
-        public void clear() {
-            stringNodeKeysCount = 0;
-        }
-    };
-
-    /**
-     * Count of not-index keys in map.
-     */
-    private int stringNodeKeysCount = 0;
+    private final ObjectElements elements = new ObjectElements();
 
     /**
      * Stores 'sequence' for index-key generation
@@ -112,10 +78,11 @@ public class ObjectHistoneNode extends Node {
      * It has linear complexity in worst case and O(1) in best.
      */
     private boolean isArray() {
-        if (stringNodeKeysCount > 0) return false;
+        ObjectElements elements = elements();
+        if (elements.stringKeyCount() > 0) return false;
 
         for (int i = 0; i < elements.size(); i++) {
-            if (!elements.containsKey(new NodeKey(i))) {
+            if (!elements.containsIndex(i)) {
                 return false;
             }
         }
@@ -127,6 +94,22 @@ public class ObjectHistoneNode extends Node {
         super(nodeFactory);
     }
 
+    /**
+     * Return elements of the map, loading them first if needed
+     */
+    private ObjectElements elements() {
+        loadElements();
+        return elements;
+    }
+
+    /**
+     * Called before every access to elements of the map, so lazy subclasses can fill elements on first access
+     *
+     * @see JsonObjectHistoneNode
+     */
+    protected void loadElements() {
+    }
+
     /**
      * Check if this is special object named GlobalObject
      *
@@ -146,7 +129,7 @@ public class ObjectHistoneNode extends Node {
     public Node getProp(String name) {
         if (name == null) return null;
 
-        return elements.get(new NodeKey(name));
+        return elements().get(name);
     }
 
     /**
@@ -158,7 +141,7 @@ public class ObjectHistoneNode extends Node {
     public boolean hasProp(String name) {
         if (name == null) return false;
 
-        return elements.containsKey(new NodeKey(name));
+        return elements().containsKey(name);
     }
 
     //<editor-fold desc="add">
@@ -170,7 +153,7 @@ public class ObjectHistoneNode extends Node {
         if (key == null) throw new IllegalArgumentException();
         if (value == null) throw new IllegalArgumentException();
 
-        elements.put(new NodeKey(key), value);
+        elements().put(key, value);
     }
 
     /**
@@ -180,7 +163,7 @@ public class ObjectHistoneNode extends Node {
         if (key == null) throw new IllegalArgumentException();
         if (value == null) throw new IllegalArgumentException();
 
-        elements.put(new NodeKey(key), value);
+        elements().put(key.intValue(), value);
     }
 
     /**
@@ -191,15 +174,18 @@ public class ObjectHistoneNode extends Node {
     public void add(Object key, Node value) {
         if (key == null) throw new IllegalArgumentException();
 
-        elements.put(new NodeKey(key), value);
+        if (key instanceof Integer) {
+            elements().put(((Integer) key).intValue(), value);
+        } else {
+            elements().put(key.toString(), value);
+        }
     }
 
 
     public void add(Node value) {
         if (value == null) throw new IllegalArgumentException();
 
-        int i = this.indexCounter;
-        this.add(i, value);
+        elements().put(indexCounter, value);
         indexCounter++;
     }
 
@@ -214,12 +200,10 @@ public class ObjectHistoneNode extends Node {
         if (key == null) throw new IllegalArgumentException();
         if (value == null) throw new IllegalArgumentException();
 
-        NodeKey nodeKey = new NodeKey(key);
-
         if (!value.isUndefined()) {
-            elements.put(nodeKey, value);
+            elements().put(key, value);
         } else {
-            elements.remove(nodeKey);
+            elements().remove(key);
         }
     }
 
@@ -230,12 +214,10 @@ public class ObjectHistoneNode extends Node {
         if (key == null) throw new IllegalArgumentException();
         if (value == null) throw new IllegalArgumentException();
 
-        NodeKey nodeKey = new NodeKey(key);
-
         if (!value.isUndefined()) {
-            elements.put(nodeKey, value);
+            elements().put(key.intValue(), value);
         } else {
-            elements.remove(nodeKey);
+            elements().remove(key.toString());
         }
     }
 
@@ -247,7 +229,7 @@ public class ObjectHistoneNode extends Node {
     public void remove(String key) {
         if (key == null) throw new IllegalArgumentException();
 
-        elements.remove(new NodeKey(key));
+        elements().remove(key);
     }
 
     /**
@@ -256,20 +238,85 @@ public class ObjectHistoneNode extends Node {
     public Map<Object, Node> getElements() {
 
         Map<Object, Node> result = new LinkedHashMap<Object, Node>();
-        for (NodeKey key : elements.keySet()) {
-            Node value = elements.get(key);
-            if (key.isString()) result.put(key.stringValue(), value);
-            if (key.isInteger()) result.put(key.integerValue(), value);
+        ObjectElements elements = elements();
+        for (int pos = elements.first(); pos >= 0; pos = elements.next(pos)) {
+            result.put(elements.key(pos), elements.value(pos));
         }
 
         return result;
     }
 
+    /**
+     * Return read-only live view of object entries in insertion order, it doesn't copy elements like {@link #getElements()}.
+     * Keys are the same as in {@link #getElements()}: Integer for index keys and String for others.
+     * Object must not be modified while view is iterated.
+     */
+    public Iterable<Map.Entry<Object, Node>> entries() {
+        return new Iterable<Map.Entry<Object, Node>>() {
+            @Override
+            public Iterator<Map.Entry<Object, Node>> iterator() {
+                return elements().entryIterator();
+            }
+        };
+    }
+
+    /**
+     * Return read-only live view of object keys in insertion order
+     *
+     * @see #entries()
+     */
+    public Iterable<Object> keys() {
+        return new Iterable<Object>() {
+            @Override
+            public Iterator<Object> iterator() {
+                return elements().keyIterator();
+            }
+        };
+    }
+
+    /**
+     * Return read-only live view of object values in insertion order
+     *
+     * @see #entries()
+     */
+    public Iterable<Node> values() {
+        return new Iterable<Node>() {
+            @Override
+            public Iterator<Node> iterator() {
+                return elements().valueIterator();
+            }
+        };
+    }
+
+    /**
+     * Return key of entry by it's position in insertion order, for array-like objects it's the same as index
+     *
+     * @param position entry position
+     * @return Integer for index keys, String for others, or null if there is no such position
+     */
+    public Object keyAt(int position) {
+        ObjectElements elements = elements();
+        int pos = elements.position(position);
+        return (pos < 0) ? null : elements.key(pos);
+    }
+
+    /**
+     * Return value of entry by it's position in insertion order, for array-like objects it's the same as index
+     *
+     * @param position entry position
+     * @return value, or null if there is no such position
+     */
+    public Node valueAt(int position) {
+        ObjectElements elements = elements();
+        int pos = elements.position(position);
+        return (pos < 0) ? null : elements.value(pos);
+    }
+
     /**
      * Return number of entries current object stores (number of pairs key:value).
      */
     public int size() {
-        return elements.size();
+        return elements().size();
     }
 
     //<editor-fold desc="Operations">
@@ -282,23 +329,8 @@ public class ObjectHistoneNode extends Node {
             ObjectHistoneNode result = getNodeFactory().object();
             ObjectHistoneNode rightObj = right.getAsObject();
 
-            for (Entry<NodeKey, Node> entry : this.elements.entrySet()) {
-                if (entry.getKey().isString()) {
-                    result.add(entry.getKey().stringValue(), entry.getValue());
-                }
-                if (entry.getKey().isInteger()) {
-                    result.add(entry.getValue());
-                }
-            }
-
-            for (Entry<NodeKey, Node> entry : rightObj.elements.entrySet()) {
-                if (entry.getKey().isString()) {
-                    result.add(entry.getKey().stringValue(), entry.getValue());
-                }
-                if (entry.getKey().isInteger()) {
-                    result.add(entry.getValue());
-                }
-            }
+            result.addAll(this.elements());
+            result.addAll(rightObj.elements());
 
             return result;
         } else if (right.isNumber()) {
@@ -308,6 +340,19 @@ public class ObjectHistoneNode extends Node {
         }
     }
 
+    /**
+     * Add all elements to this map, elements with index keys are appended as array items
+     */
+    private void addAll(ObjectElements source) {
+        for (int pos = source.first(); pos >= 0; pos = source.next(pos)) {
+            if (source.isIndexKey(pos)) {
+                add(source.value(pos));
+            } else {
+                add(source.keyString(pos), source.value(pos));
+            }
+        }
+    }
+
     private Node commonMulDivSubMod(Node right) {
         return getNodeFactory().UNDEFINED;
     }
@@ -381,7 +426,9 @@ public class ObjectHistoneNode extends Node {
     @Override
     public StringHistoneNode getAsString() {
         StringBuilder sb = new StringBuilder();
-        for (Node value : this.elements.values()) {
+        ObjectElements elements = elements();
+        for (int pos = elements.first(); pos >= 0; pos = elements.next(pos)) {
+            Node value = elements.value(pos);
             if (!value.isUndefined()) {
                 sb.append(value.getAsString().getValue()).append(" ");
             }
@@ -399,12 +446,13 @@ public class ObjectHistoneNode extends Node {
     public JsonNode getAsJsonNode() {
         if (size() == 0) return getNodeFactory().jsonArray();
 
+        ObjectElements elements = elements();
         if (isArray()) {
             // Return as array
             ArrayNode json = getNodeFactory().jsonArray();
 
-            for (Entry<NodeKey, Node> entry : elements.entrySet()) {
-                json.add(entry.getValue().getAsJsonNode());
+            for (int pos = elements.first(); pos >= 0; pos = elements.next(pos)) {
+                json.add(elements.value(pos).getAsJsonNode());
             }
 
             return json;
@@ -412,11 +460,12 @@ public class ObjectHistoneNode extends Node {
             // Return as object
             ObjectNode json = getNodeFactory().jsonObject();
 
-            for (Entry<NodeKey, Node> entry : elements.entrySet()) {
-                if (!entry.getValue().isUndefined()) {
-                    json.put(entry.getKey().toString(), entry.getValue().getAsJsonNode());
+            for (int pos = elements.first(); pos >= 0; pos = elements.next(pos)) {
+                Node value = elements.value(pos);
+                if (!value.isUndefined()) {
+                    json.put(elements.keyString(pos), value.getAsJsonNode());
                 } else {
-                    json.put(entry.getKey().toString(), getNodeFactory().jsonObject());
+                    json.put(elements.keyString(pos), getNodeFactory().jsonObject());
                 }
             }
 
@@ -428,137 +477,8 @@ public class ObjectHistoneNode extends Node {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("object(");
-        sb.append(elements.size());
+        sb.append(elements().size());
         sb.append(")");
         return sb.toString();
     }
-
-    /**
-     * Defines a key type for the internal map, wrapped by ObjectHistoneNode. It's important to remmember,
-     * that key is _always_ a string. It also can be convertiable to a number (if it's an 'index' key), but it's a string.
-     *
-     * So, equals(), hashCode() and toString() implementations use only String value (field sValue).
-     *
-     * From some point of view, you may think, that we can not to store parsed values of index keys. And you are right.
-     * But in this case we would have to parse ALL keys in ObjectHistoneNode#getAsJsonNode method. So I preffer to parse keys in add() function,
-     * but not to do it in getAsJsonNode method.
-     *
-     * @author sazonovkirill@gmail.com
-     */
-    class NodeKey {
-        /**
-         * String value of this key. It's always not null, because key is always string.
-         */
-        private String sValue;
-
-        /**
-         * Integer value of this kiy. It CAN be null, if this key is not an index key.
-         */
-        private Integer iValue;
-
-        /**
-         * In this constructuor, we assign string value. And we try to parse it as integer to find if we can use it as index key.
-         */
-        public NodeKey(String s) {
-            if (s == null) throw new IllegalArgumentException();
-
-            sValue = s;
-
-            try {
-                iValue = new Integer(s);
-            } catch (NumberFormatException e) {
-                // notihng
-            }
-        }
-
-        /**
-         * In this constructor we definitely know, that i parameter is an index key. So we hust assign it ti sValue and iValue both.
-         */
-        public NodeKey(Integer i) {
-            if (i == null) throw new IllegalArgumentException();
-
-            sValue = i.toString();
-            iValue = i;
-        }
-
-        /**
-         * In this contructor, we dont know the object type. So it's a 'concatenation' of other two constructors.
-         * Anyway we assign string value. And we try to assign number value also, if it's an Integer or can be parsed as integer.
-         */
-        public NodeKey(Object o) {
-            if (o == null) throw new IllegalArgumentException();
-            sValue = o.toString();
-
-            if (o instanceof Integer) {
-                iValue = (Integer) o;
-            } else {
-                try {
-                    iValue = new Integer(o.toString());
-                } catch (NumberFormatException e) {
-                    // notihng
-                }
-            }
-        }
-
-        /**
-         * Returns true, if this key CANNOT be used as index key.
-         */
-        public boolean isString() {
-            return iValue == null;
-        }
-
-        /**
-         * Returns true, if this index CAN be used as index key.
-         */
-        public boolean isInteger() {
-            return iValue != null;
-        }
-
-        /**
-         * Returns string value of this key. It's always available, because key is always a string.
-         */
-        public String stringValue() {
-            return sValue;
-        }
-
-        /**
-         * Returns integer value of this index. It's available only if this key is an index key.
-         * Otherwise returns null.
-         */
-        public Integer integerValue() {
-            return iValue;
-        }
-
-        /**
-         * Implementation, based only on String value (sValue)
-         */
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-
-            NodeKey that = (NodeKey) o;
-
-            if (sValue != null ? !sValue.equals(that.sValue) : that.sValue != null) return false;
-
-            return true;
-        }
-
-        /**
-         * Implementation, based only on String value (sValue)
-         */
-        @Override
-        public int hashCode() {
-            return sValue != null ? sValue.hashCode() : 0;
-        }
-
-        /**
-         * Implementation, based only on String value (sValue)
-         */
-        @Override
-        public String toString() {
-            return sValue;
-        }
-    }
-
 }
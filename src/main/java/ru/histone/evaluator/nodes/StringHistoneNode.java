@@ -129,7 +129,7 @@ public class StringHistoneNode extends Node {
         }
 
         if ((propIdx >= 0) && (propIdx < value.length())) {
-            result = getNodeFactory().string(String.valueOf(value.charAt(propIdx)));
+            result = getNodeFactory().string(value.charAt(propIdx));
 //        } else if ("length".equals(name)) {
 //            return NumberHistonegetNodeFactory().create(value.length());
         } else {
@@ -357,7 +357,7 @@ public class StringHistoneNode extends Node {
 
     @Override
     public StringHistoneNode getAsString() {
-        return getNodeFactory().string(value);
+        return this;
     }
 
     @Override
@@ -0,0 +1,85 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.output;
+
+import java.io.IOException;
+
+/**
+ * Output flushing underlying output during evaluation according to {@link FlushPolicy}<br/>
+ * So beginning of page reaches client while the rest of template (e.g. with slow resource calls) is still evaluated.
+ * Threshold is counted in characters, because underlying output can be either character or byte one.
+ */
+public class EarlyFlushTemplateOutput extends TemplateOutput {
+    private final TemplateOutput output;
+    private final FlushPolicy policy;
+    private long unflushed;
+    private int flushes;
+
+    public EarlyFlushTemplateOutput(TemplateOutput output, FlushPolicy policy) {
+        this.output = output;
+        this.policy = policy;
+    }
+
+    @Override
+    public void write(String text) throws IOException {
+        output.write(text);
+        written(text.length());
+    }
+
+    @Override
+    public void write(StaticFragment fragment) throws IOException {
+        output.write(fragment);
+        written(fragment.getText().length());
+    }
+
+    @Override
+    public void flushPoint(FlushPoint point) throws IOException {
+        if (unflushed > 0 && policy.isFlushedAt(point)) {
+            flushEarly();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        unflushed = 0;
+        output.flush();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        unflushed = 0;
+        output.finish();
+    }
+
+    /**
+     * @return number of flushes done during evaluation
+     */
+    public int getFlushes() {
+        return flushes;
+    }
+
+    private void written(int length) throws IOException {
+        unflushed += length;
+        if (policy.getThreshold() > 0 && unflushed >= policy.getThreshold()) {
+            flushEarly();
+        }
+    }
+
+    private void flushEarly() throws IOException {
+        flushes++;
+        flush();
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.output;
+
+/**
+ * Points of template evaluation, where output can be flushed early
+ */
+public enum FlushPoint {
+    /**
+     * Explicit flush marker in template
+     */
+    MARKER,
+    /**
+     * Right before blocking resource call (include, loadJSON, loadText, require)
+     */
+    RESOURCE_CALL
+}
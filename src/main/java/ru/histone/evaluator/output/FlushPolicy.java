@@ -0,0 +1,68 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.output;
+
+/**
+ * Points of template evaluation, where streamed output is flushed to client, see {@link EarlyFlushTemplateOutput}
+ */
+public final class FlushPolicy {
+    /**
+     * Flush only at explicit flush markers ({@code {{flush()}}} in template)
+     */
+    public static final FlushPolicy MARKERS = new FlushPolicy(0, true, false);
+
+    private final int threshold;
+    private final boolean atMarkers;
+    private final boolean beforeResourceCalls;
+
+    /**
+     * @param threshold           flush after this number of characters was written since previous flush, 0 disables it
+     * @param atMarkers           flush at explicit flush markers
+     * @param beforeResourceCalls flush before blocking resource calls (include, loadJSON, loadText, require)
+     */
+    public FlushPolicy(int threshold, boolean atMarkers, boolean beforeResourceCalls) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Flush threshold can't be negative: " + threshold);
+        }
+        this.threshold = threshold;
+        this.atMarkers = atMarkers;
+        this.beforeResourceCalls = beforeResourceCalls;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public boolean isAtMarkers() {
+        return atMarkers;
+    }
+
+    public boolean isBeforeResourceCalls() {
+        return beforeResourceCalls;
+    }
+
+    /**
+     * Check if output should be flushed at specified point
+     */
+    public boolean isFlushedAt(FlushPoint point) {
+        return point == FlushPoint.MARKER ? atMarkers : beforeResourceCalls;
+    }
+
+    @Override
+    public String toString() {
+        return "FlushPolicy[threshold=" + threshold + ", atMarkers=" + atMarkers + ", beforeResourceCalls=" + beforeResourceCalls + "]";
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Output writing evaluation result into {@link OutputStream} as bytes in specified charset<br/>
+ * Static fragments of compiled templates are copied as pre-encoded bytes, only dynamic values are encoded.
+ * Encoder keeps its state between dynamic values (so surrogate pairs split between writes stay intact) and is brought
+ * back to initial state before fragment bytes are copied, as they are encoded from initial state.
+ * Output is buffered, {@link #finish()} must be called after evaluation.
+ */
+public class OutputStreamTemplateOutput extends TemplateOutput {
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final CharBuffer EMPTY = CharBuffer.wrap("");
+
+    private final OutputStream stream;
+    private final Charset charset;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer buffer;
+    private final boolean concatenable;
+    // chars, that encoder couldn't encode without the following input (e.g. high surrogate)
+    private CharBuffer pending;
+    // encoder has encoded something since it was reset
+    private boolean encoding;
+
+    public OutputStreamTemplateOutput(OutputStream stream, Charset charset) {
+        this(stream, charset, DEFAULT_BUFFER_SIZE);
+    }
+
+    public OutputStreamTemplateOutput(OutputStream stream, Charset charset, int bufferSize) {
+        this.stream = stream;
+        this.charset = charset;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.buffer = ByteBuffer.allocate(Math.max(bufferSize, 16));
+        // some charsets (e.g. UTF-16) start every encoded string with byte order mark,
+        // so separately encoded fragments can't be concatenated
+        this.concatenable = "aa".getBytes(charset).length == 2 * "a".getBytes(charset).length;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    @Override
+    public void write(String text) throws IOException {
+        if (text.length() == 0) {
+            return;
+        }
+        // encoder isn't reset between writes, so byte order mark is written only once
+        CharBuffer chars = CharBuffer.wrap(text);
+        if (pending != null) {
+            chars = CharBuffer.allocate(pending.remaining() + text.length()).put(pending).put(text);
+            chars.flip();
+            pending = null;
+        }
+        encoding = true;
+        encode(chars, false);
+        if (chars.hasRemaining()) {
+            pending = CharBuffer.allocate(chars.remaining()).put(chars);
+            pending.flip();
+        }
+    }
+
+    @Override
+    public void write(StaticFragment fragment) throws IOException {
+        if (!concatenable) {
+            write(fragment.getText());
+            return;
+        }
+        endEncoding();
+        byte[] bytes = fragment.getBytes(charset);
+        if (bytes.length > buffer.remaining()) {
+            flushBuffer();
+            if (bytes.length > buffer.capacity()) {
+                stream.write(bytes);
+                return;
+            }
+        }
+        buffer.put(bytes);
+    }
+
+    /**
+     * @return number of bytes written into buffer, but not yet into underlying stream
+     */
+    public int getBufferedBytes() {
+        return buffer.position();
+    }
+
+    /**
+     * Flush encoded bytes into underlying stream, encoder keeps its state, as evaluation can continue
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        stream.flush();
+    }
+
+    /**
+     * Complete encoding (writing pending chars and bytes returning stateful encoding to initial state) and flush
+     */
+    @Override
+    public void finish() throws IOException {
+        endEncoding();
+        flush();
+    }
+
+    private void encode(CharBuffer chars, boolean endOfInput) throws IOException {
+        CoderResult result;
+        while ((result = encoder.encode(chars, buffer, endOfInput)).isOverflow()) {
+            flushBuffer();
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+    }
+
+    /**
+     * Bring encoder to initial state, writing pending chars and shift sequences of stateful charsets
+     */
+    private void endEncoding() throws IOException {
+        if (!encoding) {
+            return;
+        }
+        encode((pending != null) ? pending : EMPTY.duplicate(), true);
+        pending = null;
+        while (encoder.flush(buffer).isOverflow()) {
+            flushBuffer();
+        }
+        encoder.reset();
+        encoding = false;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (buffer.position() > 0) {
+            stream.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.output;
+
+import java.nio.charset.Charset;
+
+/**
+ * Static text fragment of compiled template<br/>
+ * Fragments never change, so byte outputs don't need to encode them on every evaluation: encoded bytes are
+ * remembered for the last used charset (usually the only one).
+ */
+public final class StaticFragment {
+    private final String text;
+    private volatile Encoded encoded;
+
+    public StaticFragment(String text) {
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Return text encoded with specified charset, returned array must not be modified
+     */
+    public byte[] getBytes(Charset charset) {
+        Encoded current = encoded;
+        if (current == null || !current.charset.equals(charset)) {
+            current = new Encoded(charset, text.getBytes(charset));
+            encoded = current;
+        }
+        return current.bytes;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static final class Encoded {
+        final Charset charset;
+        final byte[] bytes;
+
+        Encoded(Charset charset, byte[] bytes) {
+            this.charset = charset;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.output;
+
+import java.io.IOException;
+
+/**
+ * Sink for template evaluation results<br/>
+ * Statements write their results directly into output, so evaluation of template doesn't need to build
+ * intermediate strings for template body, macros and 'if'/'for' statements.
+ */
+public abstract class TemplateOutput {
+
+    /**
+     * Write evaluated text into output
+     *
+     * @param text text to write
+     * @throws IOException if underlying output can't be written
+     */
+    public abstract void write(String text) throws IOException;
+
+    /**
+     * Write static text fragment of template into output
+     *
+     * @param fragment fragment to write
+     * @throws IOException if underlying output can't be written
+     */
+    public void write(StaticFragment fragment) throws IOException {
+        write(fragment.getText());
+    }
+
+    /**
+     * Notify output, that evaluation reached point, where output can be flushed early, see {@link EarlyFlushTemplateOutput}
+     *
+     * @param point flush point
+     * @throws IOException if underlying output can't be written
+     */
+    public void flushPoint(FlushPoint point) throws IOException {
+    }
+
+    /**
+     * Flush all buffered text into underlying output
+     *
+     * @throws IOException if underlying output can't be written
+     */
+    public void flush() throws IOException {
+    }
+
+    /**
+     * Complete output after evaluation: write any state kept by output and flush it
+     *
+     * @throws IOException if underlying output can't be written
+     */
+    public void finish() throws IOException {
+        flush();
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.output;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Output writing evaluation result into {@link Writer}
+ */
+public class WriterTemplateOutput extends TemplateOutput {
+    private final Writer writer;
+
+    public WriterTemplateOutput(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void write(String text) throws IOException {
+        writer.write(text);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+}
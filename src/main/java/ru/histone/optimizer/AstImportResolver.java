@@ -24,6 +24,7 @@ import ru.histone.HistoneException;
 import ru.histone.evaluator.EvaluatorException;
 import ru.histone.evaluator.nodes.NodeFactory;
 import ru.histone.parser.AstNodeType;
+import ru.histone.parser.BinaryAstReader;
 import ru.histone.parser.Parser;
 import ru.histone.parser.ParserException;
 import ru.histone.resourceloaders.AstResource;
@@ -49,11 +50,13 @@ public class AstImportResolver {
 
     private ResourceLoader resourceLoader;
     private Parser parser;
+    private BinaryAstReader binaryAstReader;
 
     public AstImportResolver(Parser parser, ResourceLoader resourceLoader, NodeFactory nodeFactory) {
         this.parser = parser;
         this.resourceLoader = resourceLoader;
         this.nodeFactory = nodeFactory;
+        this.binaryAstReader = new BinaryAstReader(nodeFactory);
     }
 
     public ArrayNode resolve(ArrayNode ast) throws HistoneException {
@@ -251,6 +254,8 @@ public class AstImportResolver {
             String templateContent = null;
             if (resource instanceof StringResource) {
                 templateContent = ((StringResource) resource).getContent();
+            } else if (resource instanceof StreamResource && resource.getContentType() == ContentType.BINARY_AST) {
+                ast = binaryAstReader.read(((StreamResource) resource).getContent());
             } else if (resource instanceof StreamResource) {
                 templateContent = IOUtils.toString(((StreamResource) resource).getContent());
             } else if (resource instanceof AstResource) {
@@ -259,7 +264,7 @@ public class AstImportResolver {
                 throw new ResourceLoadException(MessageFormat.format("Unsupported resource class: {0}", resource.getClass()));
             }
 
-            if (resource instanceof StringResource || resource instanceof StreamResource) {
+            if (ast == null && (resource instanceof StringResource || resource instanceof StreamResource)) {
                 if (templateContent == null) {
                     throw new ResourceLoadException(MessageFormat.format("Can't import resource by path: {0}. Resource is unreadable", path));
                 }
@@ -0,0 +1,122 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.parser;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BigIntegerNode;
+import com.fasterxml.jackson.databind.node.DecimalNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Interning table for parsed ASTs, shared by all templates of one Histone instance<br/>
+ * Identical text fragments, string literals, selector names and number literals of different templates are
+ * replaced with single canonical node, so compiled templates share their strings too.
+ * Only immutable value nodes are shared: AST arrays are mutable and some optimizers change them in place.
+ * Table holds canonical nodes through weak references, so entries not used by any template are collected.
+ */
+public class AstInterner {
+    // approximate sizes of objects on 64-bit JVM with compressed oops
+    private static final int STRING_OVERHEAD = 24 + 16;
+    private static final int NODE_OVERHEAD = 16;
+    private static final int NUMBER_OVERHEAD = 40;
+
+    private final Map<Object, WeakReference<JsonNode>> table = new WeakHashMap<Object, WeakReference<JsonNode>>();
+
+    private long lookups;
+    private long hits;
+    private long savedBytes;
+
+    /**
+     * Replace value nodes of AST with canonical ones
+     *
+     * @param ast AST to process, it's changed in place
+     * @return the same AST
+     */
+    public synchronized <T extends JsonNode> T intern(T ast) {
+        internChildren(ast);
+        return ast;
+    }
+
+    private void internChildren(JsonNode node) {
+        if (node.isArray()) {
+            ArrayNode array = (ArrayNode) node;
+            for (int i = 0; i < array.size(); i++) {
+                JsonNode child = array.get(i);
+                JsonNode canonical = canonical(child);
+                if (canonical != child) {
+                    array.set(i, canonical);
+                }
+            }
+        } else if (node.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> fields = ((ObjectNode) node).fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode canonical = canonical(field.getValue());
+                if (canonical != field.getValue()) {
+                    field.setValue(canonical);
+                }
+            }
+        }
+    }
+
+    private JsonNode canonical(JsonNode node) {
+        Object key;
+        int size;
+        if (node.isTextual()) {
+            key = node.textValue();
+            size = STRING_OVERHEAD + NODE_OVERHEAD + 2 * node.textValue().length();
+        } else if (node instanceof BigIntegerNode) {
+            key = node.bigIntegerValue();
+            size = NUMBER_OVERHEAD;
+        } else if (node instanceof DecimalNode) {
+            key = node.decimalValue();
+            size = NUMBER_OVERHEAD;
+        } else {
+            if (node.isContainerNode()) {
+                internChildren(node);
+            }
+            return node;
+        }
+
+        lookups++;
+        WeakReference<JsonNode> ref = table.get(key);
+        JsonNode canonical = (ref != null) ? ref.get() : null;
+        if (canonical != null && canonical.getClass() == node.getClass()) {
+            hits++;
+            savedBytes += size;
+            return canonical;
+        }
+        // map keeps key instance of existing entry, but it should be the one held by canonical node,
+        // otherwise entry would be collected at once
+        table.remove(key);
+        table.put(key, new WeakReference<JsonNode>(node));
+        return node;
+    }
+
+    /**
+     * @return snapshot of deduplication statistics
+     */
+    public synchronized AstInternerStatistics getStatistics() {
+        return new AstInternerStatistics(lookups, hits, savedBytes, table.size());
+    }
+}
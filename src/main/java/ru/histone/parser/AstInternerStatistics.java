@@ -0,0 +1,66 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.parser;
+
+/**
+ * Snapshot of {@link AstInterner} usage
+ */
+public class AstInternerStatistics {
+    private final long lookups;
+    private final long hits;
+    private final long savedBytes;
+    private final int size;
+
+    public AstInternerStatistics(long lookups, long hits, long savedBytes, int size) {
+        this.lookups = lookups;
+        this.hits = hits;
+        this.savedBytes = savedBytes;
+        this.size = size;
+    }
+
+    /**
+     * @return number of interned value nodes
+     */
+    public long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * @return number of nodes replaced with already known canonical node
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return approximate number of bytes, that duplicated nodes would occupy
+     */
+    public long getSavedBytes() {
+        return savedBytes;
+    }
+
+    /**
+     * @return number of canonical nodes, that are still alive
+     */
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "AstInternerStatistics{lookups=" + lookups + ", hits=" + hits + ", savedBytes=" + savedBytes + ", size=" + size + '}';
+    }
+}
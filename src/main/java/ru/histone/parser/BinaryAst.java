@@ -0,0 +1,61 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.parser;
+
+/**
+ * Constants of compact binary AST format<br/>
+ * <p/>
+ * Layout of binary AST:
+ * <pre>
+ * magic      4 bytes "HSTB"
+ * version    varint
+ * pool size  varint
+ * pool       (varint length, UTF-8 bytes) for every string
+ * root       value
+ * </pre>
+ * Every value starts with one byte tag. Strings and object keys are references to string pool, integers are zigzag
+ * varints, AST nodes (arrays starting with non negative int) store their type as varint, so most of nodes take
+ * only a few bytes.
+ */
+public final class BinaryAst {
+    /**
+     * Extension of files, that are loaded as binary AST by default resource loader
+     */
+    public static final String FILE_EXTENSION = ".hstb";
+
+    /**
+     * Current version of binary AST format
+     */
+    public static final int VERSION = 1;
+
+    static final byte[] MAGIC = {'H', 'S', 'T', 'B'};
+
+    static final int TAG_NULL = 0;
+    static final int TAG_FALSE = 1;
+    static final int TAG_TRUE = 2;
+    static final int TAG_INT = 3;
+    static final int TAG_LONG = 4;
+    static final int TAG_BIG_INTEGER = 5;
+    static final int TAG_DECIMAL = 6;
+    static final int TAG_DOUBLE = 7;
+    static final int TAG_STRING = 8;
+    static final int TAG_ARRAY = 9;
+    static final int TAG_OBJECT = 10;
+    static final int TAG_NODE = 11;
+
+    private BinaryAst() {
+    }
+}
@@ -0,0 +1,298 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.parser;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.DoubleNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.LongNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import ru.histone.evaluator.nodes.NodeFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import static ru.histone.parser.BinaryAst.*;
+
+/**
+ * Reads AST written by {@link BinaryAstWriter}<br/>
+ * Strings are decoded once per string pool entry and shared by all nodes, which refer to them,
+ * numbers are stored in their binary form and don't need to be parsed.
+ * Reader is stateless and can be shared between threads.
+ */
+public class BinaryAstReader {
+    private final NodeFactory nodeFactory;
+
+    public BinaryAstReader(NodeFactory nodeFactory) {
+        this.nodeFactory = nodeFactory;
+    }
+
+    /**
+     * Read binary AST from input stream, stream is read till the end but not closed
+     *
+     * @param in input stream
+     * @return AST
+     * @throws IOException if stream reading error occurs or data isn't valid binary AST
+     */
+    public JsonNode read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return read(out.toByteArray());
+    }
+
+    /**
+     * Read binary AST from byte array
+     *
+     * @param data binary AST
+     * @return AST
+     * @throws IOException if data isn't valid binary AST
+     */
+    public JsonNode read(byte[] data) throws IOException {
+        return read(data, 0, data.length);
+    }
+
+    /**
+     * Read binary AST from part of byte array
+     *
+     * @param data   byte array
+     * @param offset offset of binary AST
+     * @param length length of binary AST
+     * @return AST
+     * @throws IOException if data isn't valid binary AST
+     */
+    public JsonNode read(byte[] data, int offset, int length) throws IOException {
+        return read(ByteBuffer.wrap(data, offset, length));
+    }
+
+    /**
+     * Read binary AST from remaining bytes of buffer, e.g. memory-mapped file<br/>
+     * Position of buffer isn't changed.
+     *
+     * @param data buffer containing binary AST between its position and limit
+     * @return AST
+     * @throws IOException if data isn't valid binary AST
+     */
+    public JsonNode read(ByteBuffer data) throws IOException {
+        return new Decoder(data, data.position(), data.limit()).readAst();
+    }
+
+    /**
+     * Check whether data starts with binary AST signature
+     */
+    public static boolean isBinaryAst(byte[] data, int offset, int length) {
+        if (length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[offset + i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private class Decoder {
+        private final ByteBuffer data;
+        private final int limit;
+        private int position;
+
+        private String[] strings;
+        private JsonNode[] stringNodes;
+
+        Decoder(ByteBuffer data, int offset, int limit) {
+            this.data = data;
+            this.position = offset;
+            this.limit = limit;
+        }
+
+        JsonNode readAst() throws IOException {
+            if (limit - position < MAGIC.length) {
+                throw malformed("signature not found");
+            }
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (data.get(position + i) != MAGIC[i]) {
+                    throw malformed("signature not found");
+                }
+            }
+            position += MAGIC.length;
+            int version = readUnsigned();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary AST version " + version + ", expected " + VERSION);
+            }
+
+            int poolSize = readCount();
+            strings = new String[poolSize];
+            stringNodes = new JsonNode[poolSize];
+            for (int i = 0; i < poolSize; i++) {
+                int length = readCount();
+                if (data.hasArray()) {
+                    strings[i] = new String(data.array(), data.arrayOffset() + position, length, BinaryAstWriter.UTF8);
+                    position += length;
+                } else {
+                    strings[i] = new String(readBytes(length), BinaryAstWriter.UTF8);
+                }
+            }
+
+            JsonNode result = readValue();
+            if (position != limit) {
+                throw malformed("unexpected data after AST");
+            }
+            return result;
+        }
+
+        private JsonNode readValue() throws IOException {
+            int tag = readByte();
+            switch (tag) {
+                case TAG_NULL:
+                    return nodeFactory.jsonNull();
+                case TAG_FALSE:
+                    return nodeFactory.jsonBoolean(false);
+                case TAG_TRUE:
+                    return nodeFactory.jsonBoolean(true);
+                case TAG_INT:
+                    return IntNode.valueOf((int) unzigzag(readVarlong()));
+                case TAG_LONG:
+                    return LongNode.valueOf(unzigzag(readVarlong()));
+                case TAG_BIG_INTEGER:
+                    return nodeFactory.jsonNumber(readBigInteger());
+                case TAG_DECIMAL:
+                    int scale = (int) unzigzag(readVarlong());
+                    return nodeFactory.jsonNumber(new BigDecimal(readBigInteger(), scale));
+                case TAG_DOUBLE:
+                    long bits = 0;
+                    for (int i = 0; i < 8; i++) {
+                        bits = (bits << 8) | readByte();
+                    }
+                    return DoubleNode.valueOf(Double.longBitsToDouble(bits));
+                case TAG_STRING:
+                    int index = readStringIndex();
+                    if (stringNodes[index] == null) {
+                        stringNodes[index] = nodeFactory.jsonString(strings[index]);
+                    }
+                    return stringNodes[index];
+                case TAG_ARRAY: {
+                    int size = readCount();
+                    ArrayNode result = nodeFactory.jsonArray();
+                    for (int i = 0; i < size; i++) {
+                        result.add(readValue());
+                    }
+                    return result;
+                }
+                case TAG_NODE: {
+                    int type = readUnsigned();
+                    int size = readCount();
+                    ArrayNode result = nodeFactory.jsonArray();
+                    result.add(IntNode.valueOf(type));
+                    for (int i = 0; i < size; i++) {
+                        result.add(readValue());
+                    }
+                    return result;
+                }
+                case TAG_OBJECT: {
+                    int size = readCount();
+                    ObjectNode result = nodeFactory.jsonObject();
+                    for (int i = 0; i < size; i++) {
+                        String key = strings[readStringIndex()];
+                        result.set(key, readValue());
+                    }
+                    return result;
+                }
+                default:
+                    throw malformed("unknown tag " + tag + " at offset " + (position - 1));
+            }
+        }
+
+        private BigInteger readBigInteger() throws IOException {
+            int length = readCount();
+            if (length == 0) {
+                return BigInteger.valueOf(unzigzag(readVarlong()));
+            }
+            return new BigInteger(readBytes(length));
+        }
+
+        private byte[] readBytes(int length) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = data.get(position + i);
+            }
+            position += length;
+            return bytes;
+        }
+
+        private int readStringIndex() throws IOException {
+            int index = readUnsigned();
+            if (index >= strings.length) {
+                throw malformed("string index " + index + " is out of pool");
+            }
+            return index;
+        }
+
+        private int readUnsigned() throws IOException {
+            long value = readVarlong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw malformed("value " + value + " at offset " + position + " is out of range");
+            }
+            return (int) value;
+        }
+
+        /**
+         * Read non negative varint, which can't exceed size of remaining data
+         */
+        private int readCount() throws IOException {
+            long value = readVarlong();
+            if (value < 0 || value > limit - position) {
+                throw malformed("length " + value + " at offset " + position + " exceeds data");
+            }
+            return (int) value;
+        }
+
+        private long readVarlong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw malformed("varint is too long");
+        }
+
+        private int readByte() throws IOException {
+            if (position >= limit) {
+                throw malformed("unexpected end of data");
+            }
+            return data.get(position++) & 0xFF;
+        }
+
+        private long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private IOException malformed(String reason) {
+            return new IOException("Malformed binary AST: " + reason);
+        }
+    }
+}
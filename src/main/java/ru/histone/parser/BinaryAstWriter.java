@@ -0,0 +1,208 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.parser;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static ru.histone.parser.BinaryAst.*;
+
+/**
+ * Writes AST into compact binary format, see {@link BinaryAst}<br/>
+ * Writer is stateless and can be shared between threads.
+ */
+public class BinaryAstWriter {
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Write AST in binary format into output stream, stream is not closed
+     *
+     * @param ast AST to write
+     * @param out output stream
+     * @throws IOException if AST contains values that can't be represented or stream writing error occurs
+     */
+    public void write(JsonNode ast, OutputStream out) throws IOException {
+        Encoder body = new Encoder();
+        body.writeValue(ast);
+
+        Encoder header = new Encoder();
+        header.write(MAGIC, 0, MAGIC.length);
+        header.writeVarint(VERSION);
+        header.writeVarint(body.pool.size());
+        String[] strings = new String[body.pool.size()];
+        for (Map.Entry<String, Integer> entry : body.pool.entrySet()) {
+            strings[entry.getValue()] = entry.getKey();
+        }
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(UTF8);
+            header.writeVarint(bytes.length);
+            header.write(bytes, 0, bytes.length);
+        }
+
+        header.writeTo(out);
+        body.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Write AST in binary format into byte array
+     *
+     * @param ast AST to write
+     * @return binary AST
+     * @throws IOException if AST contains values that can't be represented
+     */
+    public byte[] toByteArray(JsonNode ast) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(ast, out);
+        return out.toByteArray();
+    }
+
+    private static class Encoder extends ByteArrayOutputStream {
+        final Map<String, Integer> pool = new HashMap<String, Integer>();
+
+        Encoder() {
+            super(256);
+        }
+
+        void writeValue(JsonNode node) throws IOException {
+            switch (node.getNodeType()) {
+                case NULL:
+                case MISSING:
+                    write(TAG_NULL);
+                    break;
+                case BOOLEAN:
+                    write(node.booleanValue() ? TAG_TRUE : TAG_FALSE);
+                    break;
+                case STRING:
+                    write(TAG_STRING);
+                    writeVarint(stringIndex(node.textValue()));
+                    break;
+                case NUMBER:
+                    writeNumber(node);
+                    break;
+                case ARRAY:
+                    writeArray(node);
+                    break;
+                case OBJECT:
+                    write(TAG_OBJECT);
+                    writeVarint(node.size());
+                    Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                    while (fields.hasNext()) {
+                        Map.Entry<String, JsonNode> field = fields.next();
+                        writeVarint(stringIndex(field.getKey()));
+                        writeValue(field.getValue());
+                    }
+                    break;
+                default:
+                    throw new IOException("Value of type " + node.getNodeType() + " can't be written into binary AST");
+            }
+        }
+
+        private void writeArray(JsonNode node) throws IOException {
+            int size = node.size();
+            JsonNode first = (size > 0) ? node.get(0) : null;
+            if (first != null && first.isInt() && first.intValue() >= 0) {
+                write(TAG_NODE);
+                writeVarint(first.intValue());
+                writeVarint(size - 1);
+                for (int i = 1; i < size; i++) {
+                    writeValue(node.get(i));
+                }
+            } else {
+                write(TAG_ARRAY);
+                writeVarint(size);
+                for (int i = 0; i < size; i++) {
+                    writeValue(node.get(i));
+                }
+            }
+        }
+
+        private void writeNumber(JsonNode node) throws IOException {
+            if (node.isInt() || node.isShort()) {
+                write(TAG_INT);
+                writeVarlong(zigzag(node.intValue()));
+            } else if (node.isLong()) {
+                write(TAG_LONG);
+                writeVarlong(zigzag(node.longValue()));
+            } else if (node.isBigInteger()) {
+                write(TAG_BIG_INTEGER);
+                writeBigInteger(node.bigIntegerValue());
+            } else if (node.isBigDecimal()) {
+                BigDecimal value = node.decimalValue();
+                write(TAG_DECIMAL);
+                writeVarlong(zigzag(value.scale()));
+                writeBigInteger(value.unscaledValue());
+            } else if (node.isDouble() || node.isFloat()) {
+                write(TAG_DOUBLE);
+                long bits = Double.doubleToLongBits(node.doubleValue());
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    write((int) (bits >>> shift));
+                }
+            } else {
+                throw new IOException("Number " + node + " can't be written into binary AST");
+            }
+        }
+
+        /**
+         * Integers that fit into long are written as zigzag varint with zero length marker, others as
+         * (length, two's-complement bytes)
+         */
+        private void writeBigInteger(BigInteger value) {
+            if (value.bitLength() < 64) {
+                writeVarint(0);
+                writeVarlong(zigzag(value.longValue()));
+            } else {
+                byte[] bytes = value.toByteArray();
+                writeVarint(bytes.length);
+                write(bytes, 0, bytes.length);
+            }
+        }
+
+        private int stringIndex(String value) {
+            Integer index = pool.get(value);
+            if (index == null) {
+                index = pool.size();
+                pool.put(value, index);
+            }
+            return index;
+        }
+
+        void writeVarint(int value) {
+            writeVarlong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarlong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+}
@@ -0,0 +1,406 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.parser;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.DoubleNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.LongNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import ru.histone.evaluator.nodes.NodeFactory;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Compact immutable representation of AST<br/>
+ * <p/>
+ * All values are stored in one flat int array, every value is addressed by its offset in this array and starts with
+ * header: low 4 bits are tag, other bits are payload. Children are stored before their parents, the root is the last
+ * value. Layout of values:
+ * <pre>
+ * NULL, FALSE, TRUE  header
+ * INT                header, payload is the value (used for ints, that fit into 28 bits)
+ * CONSTANT           header, payload is index in constant pool (strings and other numbers)
+ * ARRAY              header (payload is size), offsets of elements
+ * NODE               header (payload is number of arguments), node type, offsets of arguments
+ * OBJECT             header (payload is size), (constant index of key, offset of value) for every field
+ * </pre>
+ * NODE is an AST node, that is array, which first element is non negative int node type, see {@link AstNodeType}.
+ * Equal constants are stored once in constant pool. Use {@link #fromJson(JsonNode)} and {@link #toJson(NodeFactory)}
+ * to convert between compact and JSON form.
+ */
+public final class CompactAst {
+    public static final int NULL = 0;
+    public static final int FALSE = 1;
+    public static final int TRUE = 2;
+    public static final int INT = 3;
+    public static final int CONSTANT = 4;
+    public static final int ARRAY = 5;
+    public static final int NODE = 6;
+    public static final int OBJECT = 7;
+
+    private static final int TAG_BITS = 4;
+    private static final int TAG_MASK = (1 << TAG_BITS) - 1;
+    private static final int MIN_INLINE_INT = -(1 << (31 - TAG_BITS));
+    private static final int MAX_INLINE_INT = (1 << (31 - TAG_BITS)) - 1;
+
+    private final int[] code;
+    private final Object[] constants;
+    private final int root;
+
+    private CompactAst(int[] code, Object[] constants, int root) {
+        this.code = code;
+        this.constants = constants;
+        this.root = root;
+    }
+
+    /**
+     * Convert JSON form of AST into compact form
+     *
+     * @param ast AST
+     * @return compact AST
+     * @throws IllegalArgumentException if AST contains values, that can't be represented (e.g. binary or POJO nodes)
+     */
+    public static CompactAst fromJson(JsonNode ast) {
+        Builder builder = new Builder();
+        int root = builder.add(ast);
+        return new CompactAst(Arrays.copyOf(builder.code, builder.length), builder.constants.toArray(), root);
+    }
+
+    /**
+     * Convert AST into JSON form
+     *
+     * @param nodeFactory node factory to create JSON nodes
+     * @return JSON representation of AST
+     */
+    public JsonNode toJson(NodeFactory nodeFactory) {
+        return toJson(nodeFactory.getJsonNodeFactory());
+    }
+
+    /**
+     * Convert AST into JSON form
+     *
+     * @param nodeFactory factory of JSON nodes
+     * @return JSON representation of AST
+     */
+    public JsonNode toJson(JsonNodeFactory nodeFactory) {
+        JsonNode[] constantNodes = new JsonNode[constants.length];
+        return toJson(root, nodeFactory, constantNodes);
+    }
+
+    private JsonNode toJson(int node, JsonNodeFactory nodeFactory, JsonNode[] constantNodes) {
+        int header = code[node];
+        switch (header & TAG_MASK) {
+            case NULL:
+                return nodeFactory.nullNode();
+            case FALSE:
+                return nodeFactory.booleanNode(false);
+            case TRUE:
+                return nodeFactory.booleanNode(true);
+            case INT:
+                return IntNode.valueOf(header >> TAG_BITS);
+            case CONSTANT: {
+                int index = header >>> TAG_BITS;
+                if (constantNodes[index] == null) {
+                    constantNodes[index] = constantToJson(constants[index], nodeFactory);
+                }
+                return constantNodes[index];
+            }
+            case ARRAY:
+            case NODE: {
+                ArrayNode result = nodeFactory.arrayNode();
+                if (isNode(node)) {
+                    result.add(IntNode.valueOf(code[node + 1]));
+                }
+                int size = size(node);
+                for (int i = 0; i < size; i++) {
+                    result.add(toJson(child(node, i), nodeFactory, constantNodes));
+                }
+                return result;
+            }
+            case OBJECT: {
+                ObjectNode result = nodeFactory.objectNode();
+                int size = size(node);
+                for (int i = 0; i < size; i++) {
+                    result.set(key(node, i), toJson(child(node, i), nodeFactory, constantNodes));
+                }
+                return result;
+            }
+            default:
+                throw new IllegalStateException("Unknown tag at offset " + node);
+        }
+    }
+
+    private static JsonNode constantToJson(Object value, JsonNodeFactory nodeFactory) {
+        if (value instanceof String) {
+            return nodeFactory.textNode((String) value);
+        } else if (value instanceof BigInteger) {
+            return nodeFactory.numberNode((BigInteger) value);
+        } else if (value instanceof BigDecimal) {
+            return nodeFactory.numberNode((BigDecimal) value);
+        } else if (value instanceof Integer) {
+            return IntNode.valueOf((Integer) value);
+        } else if (value instanceof Long) {
+            return LongNode.valueOf((Long) value);
+        } else {
+            return DoubleNode.valueOf((Double) value);
+        }
+    }
+
+    /**
+     * @return offset of root value
+     */
+    public int getRoot() {
+        return root;
+    }
+
+    /**
+     * @return tag of value at specified offset
+     */
+    public int tag(int node) {
+        return code[node] & TAG_MASK;
+    }
+
+    /**
+     * @return true if value is AST node (array starting with node type)
+     */
+    public boolean isNode(int node) {
+        return tag(node) == NODE;
+    }
+
+    /**
+     * @return type of AST node, -1 if value isn't AST node
+     */
+    public int nodeType(int node) {
+        return isNode(node) ? code[node + 1] : -1;
+    }
+
+    /**
+     * @return number of elements of array or object, number of arguments of AST node, 0 for other values
+     */
+    public int size(int node) {
+        int tag = tag(node);
+        return (tag == ARRAY || tag == NODE || tag == OBJECT) ? code[node] >>> TAG_BITS : 0;
+    }
+
+    /**
+     * Return offset of child value: element of array, argument of AST node (not counting node type) or field value of object
+     */
+    public int child(int node, int index) {
+        switch (tag(node)) {
+            case ARRAY:
+                return code[node + 1 + index];
+            case NODE:
+                return code[node + 2 + index];
+            case OBJECT:
+                return code[node + 2 + 2 * index];
+            default:
+                throw new IllegalArgumentException("Value at offset " + node + " has no children");
+        }
+    }
+
+    /**
+     * Return key of object field
+     */
+    public String key(int node, int index) {
+        if (tag(node) != OBJECT) {
+            throw new IllegalArgumentException("Value at offset " + node + " isn't object");
+        }
+        return (String) constants[code[node + 1 + 2 * index]];
+    }
+
+    /**
+     * Return value of scalar node: null, Boolean, Integer, Long, Double, BigInteger, BigDecimal or String
+     */
+    public Object value(int node) {
+        int header = code[node];
+        switch (header & TAG_MASK) {
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case INT:
+                return header >> TAG_BITS;
+            case CONSTANT:
+                return constants[header >>> TAG_BITS];
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return string value of node, null if it isn't string
+     */
+    public String stringValue(int node) {
+        Object value = value(node);
+        return (value instanceof String) ? (String) value : null;
+    }
+
+    /**
+     * @return number of ints used by values
+     */
+    public int getCodeLength() {
+        return code.length;
+    }
+
+    /**
+     * @return number of distinct constants
+     */
+    public int getConstantCount() {
+        return constants.length;
+    }
+
+    /**
+     * Return approximate number of bytes occupied by this AST on 64-bit JVM with compressed oops
+     */
+    public long estimateSize() {
+        long size = 16 + (16 + 4L * code.length) + (16 + 4L * constants.length);
+        for (Object constant : constants) {
+            size += (constant instanceof String) ? 40 + 2 * ((String) constant).length() : 40;
+        }
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CompactAst)) return false;
+        CompactAst other = (CompactAst) o;
+        return root == other.root && Arrays.equals(code, other.code) && Arrays.equals(constants, other.constants);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(code) + Arrays.hashCode(constants);
+    }
+
+    private static class Builder {
+        int[] code = new int[64];
+        int length;
+        final ConstantPool constants = new ConstantPool();
+
+        int add(JsonNode node) {
+            switch (node.getNodeType()) {
+                case NULL:
+                case MISSING:
+                    return write(NULL);
+                case BOOLEAN:
+                    return write(node.booleanValue() ? TRUE : FALSE);
+                case STRING:
+                    return write(CONSTANT | (constants.index(node.textValue()) << TAG_BITS));
+                case NUMBER:
+                    if (node.isInt() && node.intValue() >= MIN_INLINE_INT && node.intValue() <= MAX_INLINE_INT) {
+                        return write(INT | (node.intValue() << TAG_BITS));
+                    }
+                    return write(CONSTANT | (constants.index(numberValue(node)) << TAG_BITS));
+                case ARRAY: {
+                    int size = node.size();
+                    JsonNode first = (size > 0) ? node.get(0) : null;
+                    boolean isNode = first != null && first.isInt() && first.intValue() >= 0;
+                    int start = isNode ? 1 : 0;
+                    int[] children = new int[size - start];
+                    for (int i = start; i < size; i++) {
+                        children[i - start] = add(node.get(i));
+                    }
+                    int offset = write((isNode ? NODE : ARRAY) | (children.length << TAG_BITS));
+                    if (isNode) {
+                        write(first.intValue());
+                    }
+                    for (int child : children) {
+                        write(child);
+                    }
+                    return offset;
+                }
+                case OBJECT: {
+                    int size = node.size();
+                    int[] fields = new int[2 * size];
+                    int i = 0;
+                    Iterator<Map.Entry<String, JsonNode>> it = node.fields();
+                    while (it.hasNext()) {
+                        Map.Entry<String, JsonNode> field = it.next();
+                        fields[i++] = constants.index(field.getKey());
+                        fields[i++] = add(field.getValue());
+                    }
+                    int offset = write(OBJECT | (size << TAG_BITS));
+                    for (int field : fields) {
+                        write(field);
+                    }
+                    return offset;
+                }
+                default:
+                    throw new IllegalArgumentException("Value of type " + node.getNodeType() + " can't be stored in compact AST");
+            }
+        }
+
+        private static Object numberValue(JsonNode node) {
+            if (node.isInt()) {
+                return node.intValue();
+            } else if (node.isLong()) {
+                return node.longValue();
+            } else if (node.isBigInteger()) {
+                return node.bigIntegerValue();
+            } else if (node.isBigDecimal()) {
+                return node.decimalValue();
+            } else {
+                return node.doubleValue();
+            }
+        }
+
+        private int write(int value) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length] = value;
+            return length++;
+        }
+    }
+
+    /**
+     * Constants are distinguished by class too, so 1 and 1L are different constants
+     */
+    private static class ConstantPool {
+        private final Map<Object, Integer> indexes = new HashMap<Object, Integer>();
+        private final Map<Object, Integer> numbers = new HashMap<Object, Integer>();
+        private Object[] values = new Object[16];
+        private int size;
+
+        int index(Object value) {
+            Map<Object, Integer> map = (value instanceof String) ? indexes : numbers;
+            Object key = (value instanceof String) ? value : Arrays.asList(value.getClass(), value);
+            Integer index = map.get(key);
+            if (index == null) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                values[size] = value;
+                index = size++;
+                map.put(key, index);
+            }
+            return index;
+        }
+
+        Object[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -18,9 +18,15 @@ package ru.histone.parser;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.histone.HistoneException;
 import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.tokenizer.TokenContext;
 import ru.histone.tokenizer.Tokenizer;
 import ru.histone.tokenizer.TokenizerFactory;
+import ru.histone.tokenizer.TokenizerInput;
+import ru.histone.tokenizer.TokenizerReadException;
+
+import java.io.Reader;
 
 /**
  * Parser wrapper class - takes tokens from tokenizer and process them generating Abstract Syntax AstNodeFactory (AST) from input sequence
@@ -29,6 +35,7 @@ public class Parser {
     private final static Logger log = LoggerFactory.getLogger(Parser.class);
     private TokenizerFactory tokenizerFactory;
     private NodeFactory nodeFactory;
+    private AstInterner interner;
 
     /**
      * Constructs parser with {@link TokenizerFactory} dependency
@@ -40,6 +47,19 @@ public class Parser {
         this.nodeFactory = nodeFactory;
     }
 
+    public AstInterner getInterner() {
+        return interner;
+    }
+
+    /**
+     * Set interning table, through which all parsed ASTs are passed
+     *
+     * @param interner interning table, null disables interning
+     */
+    public void setInterner(AstInterner interner) {
+        this.interner = interner;
+    }
+
     /**
      * Parse input sequence into AST
      *
@@ -52,9 +72,48 @@ public class Parser {
 
         Tokenizer tokenizer = tokenizerFactory.match(input);
         ParserImpl parser = new ParserImpl(tokenizer, nodeFactory);
-        ArrayNode astTree = parser.parseTemplate();
+        ArrayNode astTree = intern(parser.parseTemplate());
         log.debug("parse(): astTree={}", astTree);
 
         return astTree;
     }
+
+    /**
+     * Parse template streamed from Reader into AST<br/>
+     * Input is tokenized through sliding buffer, so template source isn't held in memory as a whole.
+     *
+     * @param input input reader
+     * @return JSON representation of AST
+     * @throws ParserException in case of parse error
+     * @throws HistoneException if input can't be read
+     */
+    public ArrayNode parse(Reader input) throws HistoneException {
+        log.debug("parse(): input={}", input);
+        return parse(TokenizerInput.of(input));
+    }
+
+    /**
+     * Parse tokenizer input into AST
+     *
+     * @param input tokenizer input
+     * @return JSON representation of AST
+     * @throws ParserException in case of parse error
+     * @throws HistoneException if streamed input can't be read
+     */
+    public ArrayNode parse(TokenizerInput input) throws HistoneException {
+        try {
+            Tokenizer tokenizer = tokenizerFactory.match(input, TokenContext.TEMPLATE);
+            ParserImpl parser = new ParserImpl(tokenizer, nodeFactory);
+            ArrayNode astTree = intern(parser.parseTemplate());
+            log.debug("parse(): astTree={}", astTree);
+
+            return astTree;
+        } catch (TokenizerReadException e) {
+            throw new HistoneException("Error reading input Reader", e.getCause());
+        }
+    }
+
+    private ArrayNode intern(ArrayNode ast) {
+        return (interner != null) ? interner.intern(ast) : ast;
+    }
 }
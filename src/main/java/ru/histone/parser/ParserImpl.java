@@ -15,13 +15,7 @@
  */
 package ru.histone.parser;
 
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.Logger;
@@ -37,6 +31,8 @@ import ru.histone.utils.StringUtils;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Parser implementation
@@ -44,8 +40,7 @@ import java.math.BigInteger;
 public class ParserImpl {
     private final static Logger log = LoggerFactory.getLogger(ParserImpl.class);
 
-    private JsonFactory jsonFactory = new JsonFactory();
-    private ObjectMapper objectMapper = new ObjectMapper();
+    private static final String SIGNATURE = "\"HISTONE\"";
 
     private Tokenizer tokenizer;
     private NodeFactory nodeFactory;
@@ -77,15 +72,11 @@ public class ParserImpl {
         }
 
         //  If input string starts with histone signature
-        if (validateHistoneSignature(tokenizer.getInput())) {
-            //  then parse it through ObjectMapper, any errors skipped
+        if (hasHistoneSignature(tokenizer.getInputPrefix())) {
+            //  then parse it through ObjectMapper in one pass, any errors skipped
             try {
-                JsonNode node = objectMapper.readTree(tokenizer.getInput());
+                JsonNode node = nodeFactory.jsonNode(tokenizer.getInputReader());
                 if (node instanceof ArrayNode) return (ArrayNode) node;
-            } catch (JsonParseException e) {
-                // nothing
-            } catch (JsonProcessingException e) {
-                // nothing
             } catch (IOException e) {
                 // nothing
             }
@@ -104,33 +95,43 @@ public class ParserImpl {
     }
 
     /**
-     * Validates whether input string has Histone signature:
-     * [["HISTONE":...
+     * Checks whether input starts with Histone signature:
+     * [["HISTONE",...
+     * JSON whitespaces are allowed between tokens, input isn't copied.
      */
-    private boolean validateHistoneSignature(String input) {
-        final Object[][] SIGNATURE = new Object[][] {
-                new Object[] {JsonToken.START_ARRAY},
-                new Object[] {JsonToken.START_ARRAY},
-                new Object[] {JsonToken.VALUE_STRING, "HISTONE"}
-        };
-
-        try {
-            JsonParser jp = jsonFactory.createJsonParser(tokenizer.getInput());
-
-            return
-                jp.nextToken() == SIGNATURE[0][0] &&
-                jp.nextToken() == SIGNATURE[1][0] &&
-                jp.nextToken() == SIGNATURE[2][0] &&
-                jp.getValueAsString().equals(SIGNATURE[2][1]);
-        } catch (Exception e) {
-            // nothing
-        }
-        return false;
+    static boolean hasHistoneSignature(CharSequence input) {
+        int offset = skipJsonWhitespaces(input, 0);
+        for (int i = 0; i < 2; i++) {
+            if (offset >= input.length() || input.charAt(offset) != '[') {
+                return false;
+            }
+            offset = skipJsonWhitespaces(input, offset + 1);
+        }
+        if (input.length() - offset < SIGNATURE.length()) {
+            return false;
+        }
+        for (int i = 0; i < SIGNATURE.length(); i++) {
+            if (input.charAt(offset + i) != SIGNATURE.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipJsonWhitespaces(CharSequence input, int offset) {
+        while (offset < input.length()) {
+            char c = input.charAt(offset);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                break;
+            }
+            offset++;
+        }
+        return offset;
     }
 
     private ArrayNode parse(TokenType... breakOn) throws ParserException {
         log.trace("parse(TokenType): breakOn={}", new Object[]{breakOn});
-        int lastFragment = -1;
+        Fragment lastFragment = new Fragment();
 
         ArrayNode tree = nodeFactory.jsonArray();
         while (tokenizer.next(TokenType.T_EOF) == null) {
@@ -156,13 +157,7 @@ public class ParserImpl {
                     throw expectedFound("%}}", tokenizer.next());
                 }
 
-                if (lastFragment == -1) {
-                    lastFragment = tree.size();
-                    tree.add(literalStr.toString());
-                } else {
-                    String tmp = tree.get(lastFragment).asText();
-                    tree.set(lastFragment, nodeFactory.jsonString(tmp + literalStr.toString()));
-                }
+                lastFragment.append(tree, literalStr.toString());
             }
 
             // parse instructions
@@ -182,7 +177,7 @@ public class ParserImpl {
 
                 // skip empty instructions
                 if (tokenizer.next(TokenType.T_BLOCK_END)!=null) continue;
-                lastFragment = -1;
+                lastFragment.flush(tree);
 
                 // parse statements
                 JsonNode block = parseBlock();
@@ -193,16 +188,11 @@ public class ParserImpl {
 
             // parse text fragments
             else if (!tokenizer.isNext(TokenType.T_EOF)) {
-                if (lastFragment == -1) {
-                    lastFragment = tree.size();
-                    tree.add(tokenizer.next().getContent());
-                } else {
-                    String tmp = tree.get(lastFragment).asText();
-                    tree.set(lastFragment, nodeFactory.jsonString(tmp + tokenizer.next().getContent()));
-                }
+                lastFragment.append(tree, tokenizer.next().getContent());
             }
 
         }
+        lastFragment.flush(tree);
 
         log.trace("parse(TokenType): result={}", new Object[]{tree});
         return tree;
@@ -814,4 +804,42 @@ public class ParserImpl {
     // tokenizer.getColumnNumber(), unexpected);
     // }
 
+    /**
+     * Text fragment, that is merged from consecutive fragments, literals and comments<br/>
+     * Parts are joined only once, when fragment is finished, so big streamed fragments aren't copied again and again.
+     */
+    private final class Fragment {
+        private int index = -1;
+        private final List<String> parts = new ArrayList<String>();
+        private int length;
+
+        void append(ArrayNode tree, String part) {
+            if (index == -1) {
+                index = tree.size();
+                tree.add(part);
+            }
+            parts.add(part);
+            length += part.length();
+        }
+
+        void flush(ArrayNode tree) {
+            if (index == -1) {
+                return;
+            }
+            if (parts.size() > 1) {
+                char[] chars = new char[length];
+                int offset = 0;
+                for (int i = 0; i < parts.size(); i++) {
+                    String part = parts.get(i);
+                    part.getChars(0, part.length(), chars, offset);
+                    offset += part.length();
+                    parts.set(i, null);
+                }
+                tree.set(index, nodeFactory.jsonString(new String(chars)));
+            }
+            index = -1;
+            parts.clear();
+            length = 0;
+        }
+    }
 }
@@ -14,25 +14,101 @@
  *    limitations under the License.
  */
 package ru.histone.resourceloaders;
-
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import ru.histone.parser.CompactAst;
 
 import java.io.IOException;
 
+/**
+ * Resource containing template AST<br/>
+ * AST can be supplied by loader lazily, together with key identifying its content (e.g. template source or digest),
+ * so consumers caching compiled templates can find them without reading AST at all.
+ * Resident ASTs (e.g. cached ones) are supplied in {@link CompactAst compact form}, which consumers may compile as is,
+ * JSON tree is created for every {@link #getContent()} caller.
+ */
 public class AstResource implements Resource<JsonNode> {
+    /**
+     * Supplier of AST, called on first {@link #getContent()}
+     */
+    public interface AstSource {
+        JsonNode read() throws IOException;
+    }
+
     private final String baseHref;
-    private final JsonNode ast;
+    private final Object contentKey;
+    private final CompactAst compactAst;
+    private AstSource source;
+    private JsonNode ast;
 
     public AstResource(JsonNode ast, String baseHref) {
+        this(ast, null, baseHref);
+    }
+
+    /**
+     * @param ast        template AST
+     * @param contentKey key identifying AST content, null if it's unknown
+     * @param baseHref   resource location
+     */
+    public AstResource(JsonNode ast, Object contentKey, String baseHref) {
         this.baseHref = baseHref;
+        this.contentKey = contentKey;
+        this.compactAst = null;
         this.ast = ast;
     }
 
+    /**
+     * @param compactAst template AST in compact form
+     * @param contentKey key identifying AST content, null if it's unknown
+     * @param baseHref   resource location
+     */
+    public AstResource(CompactAst compactAst, Object contentKey, String baseHref) {
+        this.baseHref = baseHref;
+        this.contentKey = contentKey;
+        this.compactAst = compactAst;
+    }
+
+    /**
+     * @param source     supplier of template AST
+     * @param contentKey key identifying AST content, null if it's unknown
+     * @param baseHref   resource location
+     */
+    public AstResource(AstSource source, Object contentKey, String baseHref) {
+        this.baseHref = baseHref;
+        this.contentKey = contentKey;
+        this.compactAst = null;
+        this.source = source;
+    }
+
     @Override
     public JsonNode getContent() throws IOException {
+        if (source != null) {
+            ast = source.read();
+            source = null;
+        } else if (ast == null && compactAst != null) {
+            ast = compactAst.toJson(JsonNodeFactory.instance);
+        }
         return ast;
     }
 
+    /**
+     * Return AST in compact form, if resource was created with it
+     *
+     * @return compact AST, or null if resource holds JSON tree
+     */
+    public CompactAst getCompactContent() {
+        return compactAst;
+    }
+
+    /**
+     * Return key identifying AST content: resources with equal keys have equal ASTs
+     *
+     * @return content key, or null if it's unknown
+     */
+    public Object getContentKey() {
+        return contentKey;
+    }
+
     @Override
     public String getBaseHref() {
         return baseHref;
@@ -0,0 +1,100 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.resourceloaders;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ru.histone.bundle.TemplateBundle;
+import ru.histone.evaluator.nodes.Node;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.parser.BinaryAstReader;
+import ru.histone.utils.PathUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Resource loader, which serves precompiled templates from {@link TemplateBundle}<br/>
+ * Templates are addressed by URIs starting with bundle root (by default {@value #DEFAULT_ROOT}), e.g.
+ * {@code bundle:/pages/index.tpl}, relative imports between bundled templates are resolved as usual.
+ * Templates are returned as {@link AstResource}, so they are never parsed at runtime.
+ * All other resources, and bundled templates requested as text, are loaded by delegate resource loader.
+ */
+public class BundleResourceLoader implements ResourceLoader {
+    public static final String DEFAULT_ROOT = "bundle:/";
+
+    private final TemplateBundle bundle;
+    private final String root;
+    private final ResourceLoader delegate;
+    private final BinaryAstReader astReader = new BinaryAstReader(new NodeFactory(new ObjectMapper()));
+
+    public BundleResourceLoader(TemplateBundle bundle, ResourceLoader delegate) {
+        this(bundle, DEFAULT_ROOT, delegate);
+    }
+
+    /**
+     * @param bundle   template bundle
+     * @param root     URI prefix of bundled templates
+     * @param delegate resource loader for resources, which are not in bundle
+     */
+    public BundleResourceLoader(TemplateBundle bundle, String root, ResourceLoader delegate) {
+        this.bundle = bundle;
+        this.root = root;
+        this.delegate = delegate;
+    }
+
+    public TemplateBundle getBundle() {
+        return bundle;
+    }
+
+    @Override
+    public Resource load(String href, String baseHref, String[] contentTypes, Node... args) throws ResourceLoadException {
+        String fullPath = resolveBundlePath(href, baseHref);
+        String name = (fullPath != null) ? fullPath.substring(root.length()) : null;
+        if (name != null && bundle.contains(name) && Arrays.asList(contentTypes).contains(ContentType.AST)) {
+            final String template = name;
+            // AST is decoded only if consumer doesn't have template with the same digest compiled already
+            return new AstResource(new AstResource.AstSource() {
+                @Override
+                public JsonNode read() {
+                    try {
+                        return bundle.readAst(template, astReader);
+                    } catch (IOException e) {
+                        throw new ResourceLoadException("Error reading template '" + template + "' from bundle " + bundle.getFile(), e);
+                    }
+                }
+            }, bundle.getDigest(name), fullPath);
+        }
+        return delegate.load(href, baseHref, contentTypes, args);
+    }
+
+    @Override
+    public String resolveFullPath(String href, String baseHref) throws ResourceLoadException {
+        String fullPath = resolveBundlePath(href, baseHref);
+        return (fullPath != null) ? fullPath : delegate.resolveFullPath(href, baseHref);
+    }
+
+    /**
+     * Return full path of resource if it's inside bundle root, null otherwise
+     */
+    private String resolveBundlePath(String href, String baseHref) {
+        if (!href.startsWith(root) && (baseHref == null || !baseHref.startsWith(root))) {
+            return null;
+        }
+        String fullPath = PathUtils.resolveUrl(href, baseHref);
+        return fullPath.startsWith(root) ? fullPath : null;
+    }
+}
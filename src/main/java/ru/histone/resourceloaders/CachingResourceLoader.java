@@ -0,0 +1,253 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.resourceloaders;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import ru.histone.evaluator.nodes.Node;
+import ru.histone.parser.CompactAst;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resource loader decorator caching parsed templates (resources requested as {@link ContentType#AST})<br/>
+ * Entries are keyed by full resource path and revalidated on access:
+ * <ul>
+ * <li>'file:' entries are checked by modification time of file, not more often than once per check interval</li>
+ * <li>entries with other schemes (e.g. 'http:') live for specified time to live</li>
+ * </ul>
+ * Cache is limited by number of entries and by their total weight (number of AST nodes plus length of strings),
+ * least recently used entries are evicted. Requests with additional arguments (e.g. HTTP method or headers) and
+ * requests for text resources are passed to delegate loader as is.<br/>
+ * Cached ASTs are kept in {@link CompactAst compact form} and returned as is, so compiler can read them directly
+ * and every caller reading JSON tree gets its own copy. This class is thread safe.
+ */
+public class CachingResourceLoader implements ResourceLoader {
+    private final ResourceLoader delegate;
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long checkIntervalNanos;
+    private final long ttlNanos;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long weight;
+
+    private long hits;
+    private long misses;
+    private long reloads;
+    private long evictions;
+
+    /**
+     * @param delegate            loader actually loading resources
+     * @param maxEntries          maximum number of cached resources
+     * @param maxWeight           maximum total weight of cached resources
+     * @param checkIntervalMillis minimal interval between modification checks of file, 0 checks file on every access
+     * @param ttlMillis           time to live of resources, that aren't files, 0 disables their caching
+     */
+    public CachingResourceLoader(ResourceLoader delegate, int maxEntries, long maxWeight, long checkIntervalMillis, long ttlMillis) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Maximum number of entries should be positive");
+        }
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight should be positive");
+        }
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.checkIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(checkIntervalMillis, 0));
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(ttlMillis, 0));
+    }
+
+    public ResourceLoader getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String resolveFullPath(String href, String baseHref) throws ResourceLoadException {
+        return delegate.resolveFullPath(href, baseHref);
+    }
+
+    @Override
+    public Resource load(String href, String baseHref, String[] contentTypes, Node... args) throws ResourceLoadException {
+        if (!Arrays.asList(contentTypes).contains(ContentType.AST) || hasArguments(args)) {
+            return delegate.load(href, baseHref, contentTypes, args);
+        }
+
+        String fullPath = delegate.resolveFullPath(href, baseHref);
+        File file = toFile(fullPath);
+        if (file == null && ttlNanos == 0) {
+            return delegate.load(href, baseHref, contentTypes, args);
+        }
+
+        long now = System.nanoTime();
+        synchronized (this) {
+            Entry entry = entries.get(fullPath);
+            if (entry != null && isValid(entry, file, now)) {
+                hits++;
+                return new AstResource(entry.ast, entry.contentKey, entry.baseHref);
+            }
+            if (entry != null) {
+                remove(fullPath, entry);
+                reloads++;
+            }
+            misses++;
+        }
+
+        // modification time is taken before loading, so concurrent modification is noticed by the next check
+        long lastModified = (file != null) ? file.lastModified() : 0;
+        Resource resource = delegate.load(href, baseHref, contentTypes, args);
+        if (!(resource instanceof AstResource)) {
+            return resource;
+        }
+        JsonNode ast;
+        try {
+            ast = ((AstResource) resource).getContent();
+        } catch (IOException e) {
+            throw new ResourceLoadException("Error reading AST resource", e);
+        }
+        if (ast != null) {
+            Object contentKey = ((AstResource) resource).getContentKey();
+            Entry entry = new Entry(CompactAst.fromJson(ast), contentKey, resource.getBaseHref(), weigh(ast), lastModified, now);
+            if (put(fullPath, entry)) {
+                return new AstResource(entry.ast, entry.contentKey, entry.baseHref);
+            }
+        }
+        return resource;
+    }
+
+    /**
+     * Remove all cached resources
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return snapshot of cache usage
+     */
+    public synchronized ResourceCacheStatistics getStatistics() {
+        return new ResourceCacheStatistics(hits, misses, reloads, evictions, entries.size(), weight);
+    }
+
+    private boolean isValid(Entry entry, File file, long now) {
+        if (file == null) {
+            return now - entry.loaded < ttlNanos;
+        }
+        if (now - entry.checked < checkIntervalNanos) {
+            return true;
+        }
+        if (file.lastModified() != entry.lastModified) {
+            return false;
+        }
+        entry.checked = now;
+        return true;
+    }
+
+    /**
+     * @return false if entry is too heavy to be cached
+     */
+    private synchronized boolean put(String fullPath, Entry entry) {
+        if (entry.weight > maxWeight) {
+            return false;
+        }
+        Entry previous = entries.put(fullPath, entry);
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += entry.weight;
+        Iterator<Entry> it = entries.values().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && it.hasNext()) {
+            Entry eldest = it.next();
+            if (eldest != entry) {
+                weight -= eldest.weight;
+                it.remove();
+                evictions++;
+            }
+        }
+        return true;
+    }
+
+    private void remove(String fullPath, Entry entry) {
+        entries.remove(fullPath);
+        weight -= entry.weight;
+    }
+
+    private static boolean hasArguments(Node[] args) {
+        if (args != null) {
+            for (Node arg : args) {
+                if (arg != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static File toFile(String fullPath) {
+        if (!fullPath.startsWith("file:")) {
+            return null;
+        }
+        try {
+            return new File(URI.create(fullPath));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long weigh(JsonNode node) {
+        long result = 1;
+        if (node.isTextual()) {
+            result += node.textValue().length();
+        } else if (node.isObject()) {
+            Iterator<String> names = node.fieldNames();
+            while (names.hasNext()) {
+                result += names.next().length();
+            }
+        }
+        for (JsonNode child : node) {
+            result += weigh(child);
+        }
+        return result;
+    }
+
+    private static class Entry {
+        final CompactAst ast;
+        // shared with resources returned by delegate, so consumers keep recognizing content after reload
+        final Object contentKey;
+        final String baseHref;
+        final long weight;
+        final long lastModified;
+        final long loaded;
+        // guarded by cache lock
+        long checked;
+
+        Entry(CompactAst ast, Object contentKey, String baseHref, long weight, long lastModified, long loaded) {
+            this.ast = ast;
+            this.contentKey = contentKey;
+            this.baseHref = baseHref;
+            this.weight = weight;
+            this.lastModified = lastModified;
+            this.loaded = loaded;
+            this.checked = loaded;
+        }
+    }
+}
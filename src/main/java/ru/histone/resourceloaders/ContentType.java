@@ -22,6 +22,10 @@ package ru.histone.resourceloaders;
 public class ContentType {
     public static final String TEXT = "text";
     public static final String AST = "ast";
+    /**
+     * AST in compact binary format, see {@link ru.histone.parser.BinaryAst}
+     */
+    public static final String BINARY_AST = "binary-ast";
 
     private ContentType() {
     }
@@ -15,12 +15,13 @@
  */
 package ru.histone.resourceloaders;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.http.Header;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.ProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpDelete;
@@ -35,12 +36,11 @@ import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpTrace;
 import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.AbstractHttpClient;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.DefaultRedirectStrategy;
-import org.apache.http.impl.conn.BasicClientConnectionManager;
-import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.histone.HistoneTokensHolder;
@@ -48,6 +48,8 @@ import ru.histone.evaluator.functions.node.object.ToQueryString;
 import ru.histone.evaluator.nodes.Node;
 import ru.histone.evaluator.nodes.NodeFactory;
 import ru.histone.evaluator.nodes.ObjectHistoneNode;
+import ru.histone.parser.BinaryAst;
+import ru.histone.parser.BinaryAstReader;
 import ru.histone.parser.Parser;
 import ru.histone.parser.ParserException;
 import ru.histone.tokenizer.TokenizerFactory;
@@ -68,6 +70,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 /**
  * Histone default resource loader<br/>
@@ -76,11 +80,43 @@ import java.util.Set;
 public class DefaultResourceLoader implements ResourceLoader {
     private static final Logger log = LoggerFactory.getLogger(DefaultResourceLoader.class);
 
-    private ClientConnectionManager httpClientConnectionManager = new BasicClientConnectionManager(SchemeRegistryFactory.createDefault());
+    /**
+     * Default maximum number of pooled HTTP connections
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+    /**
+     * Default maximum number of pooled HTTP connections per route (host and port)
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 16;
+    /**
+     * Default time in milliseconds, after which idle HTTP connection is closed
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+    /**
+     * Default HTTP connect timeout in milliseconds
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    /**
+     * Default HTTP read timeout in milliseconds
+     */
+    public static final int DEFAULT_READ_TIMEOUT = 30000;
+
+    /**
+     * Requests with these methods are never coalesced, as each of them can change state on server
+     */
+    private static final Set<String> NON_IDEMPOTENT_METHODS = new HashSet<String>(Arrays.asList("POST", "PATCH"));
+
+    private ClientConnectionManager httpClientConnectionManager;
+    private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private int readTimeout = DEFAULT_READ_TIMEOUT;
+    private HttpClient httpClient;
+    private volatile HttpResponseCache httpResponseCache;
+    private volatile RequestCoalescer<byte[]> requestCoalescer = new RequestCoalescer<byte[]>();
 
     private TokenizerFactory tokenizerFactory = new TokenizerFactory(HistoneTokensHolder.getTokens());
     private NodeFactory nodeFactory = new NodeFactory(new ObjectMapper());
     private Parser parser = new Parser(tokenizerFactory, nodeFactory);
+    private BinaryAstReader binaryAstReader = new BinaryAstReader(nodeFactory);
 
     @Override
     public String resolveFullPath(String location, String baseLocation) throws ResourceLoadException {
@@ -134,25 +170,41 @@ public class DefaultResourceLoader implements ResourceLoader {
 
         if (contentTypesSet.contains(ContentType.AST)) {
             String content = null;
-            ArrayNode ast = null;
+            JsonNode ast = null;
 
             try {
-                if (resource instanceof StringResource) {
+                if (resource instanceof StreamResource && resource.getContentType() == ContentType.BINARY_AST) {
+                    ast = binaryAstReader.read(((StreamResource) resource).getContent());
+                } else if (resource instanceof StringResource) {
                     content = ((StringResource) resource).getContent();
                 } else if (resource instanceof StreamResource) {
                     content = IOUtils.toString(((StreamResource) resource).getContent());
                 } else {
                     throw new ResourceLoadException("Unsupported resource class:" + resource.getClass());
                 }
-                ast = parser.parse(content);
             } catch (IOException e) {
                 throw new ResourceLoadException("Error reading resource InputStream", e);
-            } catch (ParserException e) {
-                throw new ResourceLoadException("Error parsing resource", e);
+            } finally {
+                IOUtils.closeQuietly(resource, log);
             }
 
             String fullLocation = PathUtils.resolveUrl(href, baseHref);
-            resource = new AstResource(ast, fullLocation);
+            if (ast != null) {
+                resource = new AstResource(ast, fullLocation);
+            } else {
+                // source is parsed only if consumer doesn't have template compiled from the same source already
+                final String source = content;
+                resource = new AstResource(new AstResource.AstSource() {
+                    @Override
+                    public JsonNode read() {
+                        try {
+                            return parser.parse(source);
+                        } catch (ParserException e) {
+                            throw new ResourceLoadException("Error parsing resource", e);
+                        }
+                    }
+                }, source, fullLocation);
+            }
         }
 
         return resource;
@@ -173,6 +225,10 @@ public class DefaultResourceLoader implements ResourceLoader {
             throw new ResourceLoadException(String.format("Can't read file '%s'", location.toString()));
         }
 
+        if (file.getName().endsWith(BinaryAst.FILE_EXTENSION)) {
+            return new StreamResource(stream, location.toString(), ContentType.BINARY_AST, file.lastModified());
+        }
+
         BOMInputStream bomStream = null;
         try {
             bomStream = new BOMInputStream(stream);
@@ -196,7 +252,7 @@ public class DefaultResourceLoader implements ResourceLoader {
                 .get("method").getAsString().getValue() : "GET";
         final Map<String, String> headers = new HashMap<String, String>();
         if (requestMap.containsKey("headers")) {
-            for (Map.Entry<Object, Node> en : requestMap.get("headers").getAsObject().getElements().entrySet()) {
+            for (Map.Entry<Object, Node> en : requestMap.get("headers").getAsObject().entries()) {
                 String value = null;
                 if (en.getValue().isUndefined())
                     value = "undefined";
@@ -232,8 +288,8 @@ public class DefaultResourceLoader implements ResourceLoader {
         for (Map.Entry<String, String> en : filteredHeaders.entrySet()) {
             request.setHeader(en.getKey(), en.getValue());
         }
+        String stringData = null;
         if (("POST".equalsIgnoreCase(method) || "PUT".equalsIgnoreCase(method)) && data != null) {
-            String stringData = null;
             String contentType = filteredHeaders.get("content-type") == null ? "" : filteredHeaders.get("content-type");
             if (data.isObject()) {
                 stringData = ToQueryString.toQueryString(data.getAsObject(), null, "&");
@@ -256,12 +312,45 @@ public class DefaultResourceLoader implements ResourceLoader {
             request.setHeader("Content-Type", "");
         }
 
+        final HttpRequestBase httpRequest = request;
+        final String cacheKey = cacheKey(newLocation, filteredHeaders);
+        Callable<byte[]> execution = new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                HttpResponseCache cache = httpResponseCache;
+                if (cache != null && httpRequest instanceof HttpGet) {
+                    return cache.execute(getHttpClient(), (HttpGet) httpRequest, cacheKey);
+                }
+                HttpResponse response = getHttpClient().execute(httpRequest);
+                return response.getEntity() == null ? null : EntityUtils.toByteArray(response.getEntity());
+            }
+        };
+
+        RequestCoalescer<byte[]> coalescer = requestCoalescer;
+        if (coalescer != null && !NON_IDEMPOTENT_METHODS.contains(request.getMethod())) {
+            try {
+                byte[] body = coalescer.execute(request.getMethod() + " " + cacheKey + "\n\n" + (stringData == null ? "" : stringData),
+                        execution);
+                return new StreamResource(body == null ? null : new ByteArrayInputStream(body), location.toString(), ContentType.TEXT);
+            } catch (IOException e) {
+                throw new ResourceLoadException(String.format("Can't load resource '%s'", location.toString()));
+            }
+        }
+
+        HttpResponseCache cache = httpResponseCache;
+        if (cache != null && request instanceof HttpGet) {
+            try {
+                byte[] body = cache.execute(getHttpClient(), (HttpGet) request, cacheKey);
+                return new StreamResource(new ByteArrayInputStream(body), location.toString(), ContentType.TEXT);
+            } catch (IOException e) {
+                throw new ResourceLoadException(String.format("Can't load resource '%s'", location.toString()));
+            }
+        }
+
         // Execute request
-        HttpClient client = new DefaultHttpClient(httpClientConnectionManager);
-        ((AbstractHttpClient) client).setRedirectStrategy(new RedirectStrategy());
         InputStream input = null;
         try {
-            HttpResponse response = client.execute(request);
+            HttpResponse response = getHttpClient().execute(request);
             input = response.getEntity() == null ? null : response.getEntity().getContent();
         } catch (IOException e) {
             throw new ResourceLoadException(String.format("Can't load resource '%s'", location.toString()));
@@ -270,6 +359,17 @@ public class DefaultResourceLoader implements ResourceLoader {
         return new StreamResource(input, location.toString(), ContentType.TEXT);
     }
 
+    /**
+     * Responses are cached by URL and request headers, because headers can change response
+     */
+    private static String cacheKey(URI location, Map<String, String> headers) {
+        StringBuilder key = new StringBuilder(location.toString());
+        for (Map.Entry<String, String> header : new TreeMap<String, String>(headers).entrySet()) {
+            key.append('\n').append(header.getKey().toLowerCase()).append(": ").append(header.getValue());
+        }
+        return key.toString();
+    }
+
     private Resource loadDataResource(String location) {
 
         Resource resource = null;
@@ -344,12 +444,99 @@ public class DefaultResourceLoader implements ResourceLoader {
         return locationURI;
     }
 
-    public ClientConnectionManager getHttpClientConnectionManager() {
+    /**
+     * Return HTTP connection manager, by default it's {@link PooledHttpConnectionManager} created on first use
+     */
+    public synchronized ClientConnectionManager getHttpClientConnectionManager() {
+        if (httpClientConnectionManager == null) {
+            httpClientConnectionManager = new PooledHttpConnectionManager(DEFAULT_MAX_CONNECTIONS,
+                    DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_IDLE_TIMEOUT);
+        }
         return httpClientConnectionManager;
     }
 
-    public void setHttpClientConnectionManager(ClientConnectionManager httpClientConnectionManager) {
+    public synchronized void setHttpClientConnectionManager(ClientConnectionManager httpClientConnectionManager) {
         this.httpClientConnectionManager = httpClientConnectionManager;
+        this.httpClient = null;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Set HTTP connect timeout
+     *
+     * @param connectTimeout timeout in milliseconds, 0 means no timeout
+     */
+    public synchronized void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.httpClient = null;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Set HTTP read timeout (maximum period of inactivity between two data packets)
+     *
+     * @param readTimeout timeout in milliseconds, 0 means no timeout
+     */
+    public synchronized void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+        this.httpClient = null;
+    }
+
+    public HttpResponseCache getHttpResponseCache() {
+        return httpResponseCache;
+    }
+
+    /**
+     * Set cache of HTTP GET responses
+     *
+     * @param httpResponseCache cache, null disables caching (default)
+     */
+    public void setHttpResponseCache(HttpResponseCache httpResponseCache) {
+        this.httpResponseCache = httpResponseCache;
+    }
+
+    /**
+     * Return coalescer of concurrent identical HTTP requests
+     *
+     * @return coalescer, null if coalescing is disabled
+     */
+    public RequestCoalescer<byte[]> getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * Enable or disable coalescing of concurrent identical HTTP requests (enabled by default)<br/>
+     * Requests with the same method, URL, headers and body, that are executed concurrently, share one request to server
+     * and its response. POST and PATCH requests are never coalesced.
+     *
+     * @param requestCoalescing true to enable coalescing
+     */
+    public void setRequestCoalescing(boolean requestCoalescing) {
+        if (!requestCoalescing) {
+            this.requestCoalescer = null;
+        } else if (this.requestCoalescer == null) {
+            this.requestCoalescer = new RequestCoalescer<byte[]>();
+        }
+    }
+
+    /**
+     * Return HTTP client shared by all requests, it's thread safe as long as connection manager is
+     */
+    private synchronized HttpClient getHttpClient() {
+        if (httpClient == null) {
+            DefaultHttpClient client = new DefaultHttpClient(getHttpClientConnectionManager());
+            client.setRedirectStrategy(new RedirectStrategy());
+            HttpConnectionParams.setConnectionTimeout(client.getParams(), connectTimeout);
+            HttpConnectionParams.setSoTimeout(client.getParams(), readTimeout);
+            httpClient = client;
+        }
+        return httpClient;
     }
 
 
@@ -369,7 +556,8 @@ public class DefaultResourceLoader implements ResourceLoader {
             int statusCode = response.getStatusLine().getStatusCode();
             String method = request.getRequestLine().getMethod();
             Header locationHeader = response.getFirstHeader("location");
-            if (301 <= statusCode && statusCode <= 399) {
+            // 304 without location answers conditional request of response cache
+            if (301 <= statusCode && statusCode <= 399 && (statusCode != HttpStatus.SC_NOT_MODIFIED || locationHeader != null)) {
                 return true;
             } else {
                 return false;
@@ -0,0 +1,94 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.resourceloaders;
+
+/**
+ * Snapshot of {@link HttpResponseCache} usage
+ */
+public class HttpCacheStatistics {
+    private final long hits;
+    private final long staleHits;
+    private final long revalidations;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+    private final long bytes;
+
+    public HttpCacheStatistics(long hits, long staleHits, long revalidations, long misses, long evictions, int size, long bytes) {
+        this.hits = hits;
+        this.staleHits = staleHits;
+        this.revalidations = revalidations;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return number of requests served by fresh responses
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of requests served by stale responses, while they were revalidated in background
+     */
+    public long getStaleHits() {
+        return staleHits;
+    }
+
+    /**
+     * @return number of conditional requests, that confirmed cached response wasn't modified
+     */
+    public long getRevalidations() {
+        return revalidations;
+    }
+
+    /**
+     * @return number of requests, that received response body from server
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of responses removed from cache because of size limit
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return number of cached responses
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return approximate memory used by cached responses
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpCacheStatistics{hits=" + hits + ", staleHits=" + staleHits + ", revalidations=" + revalidations +
+                ", misses=" + misses + ", evictions=" + evictions + ", size=" + size + ", bytes=" + bytes + "}";
+    }
+}
@@ -0,0 +1,364 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.resourceloaders;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of HTTP GET responses used by {@link DefaultResourceLoader}<br/>
+ * Successful responses are cached according to HTTP semantics:
+ * <ul>
+ * <li>freshness is taken from 'Cache-Control' (s-maxage, max-age) or 'Expires' headers, responses with 'no-store' or
+ * 'private' aren't cached</li>
+ * <li>stale responses with 'ETag' or 'Last-Modified' validators are revalidated by conditional requests</li>
+ * <li>responses within 'stale-while-revalidate' period are served stale, while they are revalidated in background</li>
+ * </ul>
+ * Freshness of URLs can be overridden by URL prefix, e.g. for backends, that don't send caching headers.
+ * Total size of cached bodies is limited, least recently used responses are evicted.<br/>
+ * This class is thread safe.
+ */
+public class HttpResponseCache {
+    private static final Logger log = LoggerFactory.getLogger(HttpResponseCache.class);
+
+    /**
+     * Approximate memory overhead of one entry
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final TreeMap<String, Long> overrides = new TreeMap<String, Long>();
+    private long bytes;
+
+    private long hits;
+    private long staleHits;
+    private long revalidations;
+    private long misses;
+    private long evictions;
+
+    private ExecutorService revalidator;
+
+    /**
+     * @param maxBytes maximum total size of cached responses
+     */
+    public HttpResponseCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Maximum size should be positive");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Override freshness of responses, which URL starts with specified prefix (the longest matching prefix wins)
+     *
+     * @param urlPrefix URL prefix
+     * @param ttlMillis time in milliseconds, during which response is fresh regardless of its headers, 0 disables caching
+     */
+    public synchronized void setOverride(String urlPrefix, long ttlMillis) {
+        overrides.put(urlPrefix, Math.max(ttlMillis, 0));
+    }
+
+    /**
+     * Set freshness overrides, see {@link #setOverride(String, long)}
+     *
+     * @param overrides time in milliseconds by URL prefix
+     */
+    public synchronized void setOverrides(Map<String, Long> overrides) {
+        this.overrides.clear();
+        for (Map.Entry<String, Long> override : overrides.entrySet()) {
+            setOverride(override.getKey(), override.getValue());
+        }
+    }
+
+    /**
+     * Return response body from cache, or execute request
+     *
+     * @param client  HTTP client
+     * @param request GET request
+     * @param key     cache key, identifying URL and request headers
+     * @return response body
+     * @throws IOException if request failed
+     */
+    public byte[] execute(HttpClient client, HttpGet request, String key) throws IOException {
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && now < entry.freshUntil) {
+                hits++;
+                return entry.body;
+            }
+            if (entry != null && now < entry.staleUntil) {
+                staleHits++;
+                if (!entry.revalidating) {
+                    entry.revalidating = true;
+                    revalidateInBackground(client, request, key, entry);
+                }
+                return entry.body;
+            }
+        }
+        return fetch(client, request, key, entry);
+    }
+
+    /**
+     * Remove all cached responses
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return snapshot of cache usage
+     */
+    public synchronized HttpCacheStatistics getStatistics() {
+        return new HttpCacheStatistics(hits, staleHits, revalidations, misses, evictions, entries.size(), bytes);
+    }
+
+    private byte[] fetch(HttpClient client, HttpGet request, String key, Entry cached) throws IOException {
+        HttpGet get = new HttpGet(request.getURI());
+        get.setHeaders(request.getAllHeaders());
+        if (cached != null && cached.etag != null) {
+            get.setHeader("If-None-Match", cached.etag);
+        }
+        if (cached != null && cached.lastModified != null) {
+            get.setHeader("If-Modified-Since", cached.lastModified);
+        }
+
+        long requested = System.currentTimeMillis();
+        HttpResponse response = client.execute(get);
+        int status = response.getStatusLine().getStatusCode();
+        if (status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+            EntityUtils.consume(response.getEntity());
+            Entry refreshed = createEntry(request, response, cached.body, requested);
+            synchronized (this) {
+                revalidations++;
+                if (refreshed != null) {
+                    put(key, refreshed);
+                } else {
+                    remove(key);
+                }
+            }
+            return cached.body;
+        }
+
+        HttpEntity entity = response.getEntity();
+        byte[] body = (entity == null) ? new byte[0] : EntityUtils.toByteArray(entity);
+        Entry entry = (status == HttpStatus.SC_OK) ? createEntry(request, response, body, requested) : null;
+        synchronized (this) {
+            misses++;
+            if (entry != null) {
+                put(key, entry);
+            } else {
+                remove(key);
+            }
+        }
+        return body;
+    }
+
+    private void revalidateInBackground(final HttpClient client, final HttpGet request, final String key, final Entry entry) {
+        try {
+            getRevalidator().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        fetch(client, request, key, entry);
+                    } catch (Exception e) {
+                        log.debug("Background revalidation of '{}' failed", request.getURI(), e);
+                    } finally {
+                        synchronized (HttpResponseCache.this) {
+                            entry.revalidating = false;
+                        }
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            entry.revalidating = false;
+            log.debug("Background revalidation of '{}' rejected", request.getURI(), e);
+        }
+    }
+
+    private synchronized ExecutorService getRevalidator() {
+        if (revalidator == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "histone-http-revalidator");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            revalidator = executor;
+        }
+        return revalidator;
+    }
+
+    /**
+     * Create cache entry for response, or return null, if it can't be cached
+     */
+    private Entry createEntry(HttpGet request, HttpResponse response, byte[] body, long requested) {
+        long maxAge = -1;
+        long sMaxAge = -1;
+        long staleWhileRevalidate = 0;
+        boolean noCache = false;
+        for (Header header : response.getHeaders("Cache-Control")) {
+            for (HeaderElement element : header.getElements()) {
+                String name = element.getName().toLowerCase();
+                if ("no-store".equals(name) || "private".equals(name)) {
+                    return null;
+                } else if ("no-cache".equals(name)) {
+                    noCache = true;
+                } else if ("max-age".equals(name)) {
+                    maxAge = parseSeconds(element.getValue());
+                } else if ("s-maxage".equals(name)) {
+                    sMaxAge = parseSeconds(element.getValue());
+                } else if ("stale-while-revalidate".equals(name)) {
+                    staleWhileRevalidate = Math.max(parseSeconds(element.getValue()), 0);
+                }
+            }
+        }
+
+        long freshness;
+        Long override = findOverride(request.getURI().toString());
+        if (override != null) {
+            if (override == 0) {
+                return null;
+            }
+            freshness = override;
+        } else if (noCache) {
+            freshness = 0;
+        } else if (sMaxAge >= 0 || maxAge >= 0) {
+            freshness = 1000 * (sMaxAge >= 0 ? sMaxAge : maxAge) - 1000 * Math.max(parseSeconds(headerValue(response, "Age")), 0);
+        } else {
+            Date expires = parseDate(headerValue(response, "Expires"));
+            Date date = parseDate(headerValue(response, "Date"));
+            freshness = (expires == null) ? 0 : expires.getTime() - ((date == null) ? requested : date.getTime());
+        }
+        freshness = Math.max(freshness, 0);
+
+        String etag = headerValue(response, "ETag");
+        String lastModified = headerValue(response, "Last-Modified");
+        long freshUntil = requested + freshness;
+        long staleUntil = noCache ? freshUntil : freshUntil + 1000 * staleWhileRevalidate;
+        if (staleUntil == requested && etag == null && lastModified == null) {
+            return null;
+        }
+        return new Entry(body, etag, lastModified, freshUntil, staleUntil);
+    }
+
+    private synchronized Long findOverride(String url) {
+        Map.Entry<String, Long> candidate = overrides.floorEntry(url);
+        while (candidate != null) {
+            if (url.startsWith(candidate.getKey())) {
+                return candidate.getValue();
+            }
+            candidate = overrides.lowerEntry(candidate.getKey());
+        }
+        return null;
+    }
+
+    private void put(String key, Entry entry) {
+        remove(key);
+        long size = entry.size(key);
+        if (size > maxBytes) {
+            return;
+        }
+        entries.put(key, entry);
+        bytes += size;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getValue() != entry) {
+                bytes -= eldest.getValue().size(eldest.getKey());
+                it.remove();
+                evictions++;
+            }
+        }
+    }
+
+    private void remove(String key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            bytes -= previous.size(key);
+        }
+    }
+
+    private static String headerValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return (header == null) ? null : header.getValue();
+    }
+
+    private static long parseSeconds(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Date parseDate(String value) {
+        return (value == null) ? null : DateUtils.parseDate(value);
+    }
+
+    private static class Entry {
+        final byte[] body;
+        final String etag;
+        final String lastModified;
+        final long freshUntil;
+        final long staleUntil;
+        // guarded by cache lock
+        boolean revalidating;
+
+        Entry(byte[] body, String etag, String lastModified, long freshUntil, long staleUntil) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+        }
+
+        long size(String key) {
+            return body.length + 2L * key.length() + ENTRY_OVERHEAD;
+        }
+    }
+}
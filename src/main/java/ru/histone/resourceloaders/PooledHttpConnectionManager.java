@@ -0,0 +1,111 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.resourceloaders;
+
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP connection manager keeping pool of keep-alive connections for resource loading<br/>
+ * Number of connections is limited both in total and per route (host and port), so concurrent evaluations
+ * loading resources by HTTP don't serialize on single connection. Expired connections and connections idle for longer
+ * than idle timeout are closed by shared background daemon thread. Manager is thread safe and can be shared by many resource
+ * loaders, call {@link #shutdown()} to close all connections and stop background thread.
+ */
+public class PooledHttpConnectionManager extends PoolingClientConnectionManager {
+    /**
+     * One daemon thread evicts idle connections of all managers
+     */
+    private static final Timer EVICTOR = new Timer("histone-http-evictor", true);
+
+    private final long idleTimeoutMillis;
+    private final TimerTask eviction;
+
+    /**
+     * @param maxTotal          maximum number of connections
+     * @param maxPerRoute       maximum number of connections per route
+     * @param idleTimeoutMillis time after which idle connection is closed, 0 disables eviction of idle connections
+     */
+    public PooledHttpConnectionManager(int maxTotal, int maxPerRoute, long idleTimeoutMillis) {
+        super(SchemeRegistryFactory.createDefault());
+        if (maxTotal <= 0 || maxPerRoute <= 0) {
+            throw new IllegalArgumentException("Maximum number of connections should be positive");
+        }
+        setMaxTotal(maxTotal);
+        setDefaultMaxPerRoute(Math.min(maxPerRoute, maxTotal));
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        if (idleTimeoutMillis > 0) {
+            long period = Math.max(idleTimeoutMillis / 2, 100);
+            eviction = new Eviction(this);
+            EVICTOR.schedule(eviction, period, period);
+        } else {
+            eviction = null;
+        }
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Close expired connections and connections idle for longer than idle timeout
+     */
+    public void evictIdleConnections() {
+        closeExpiredConnections();
+        if (idleTimeoutMillis > 0) {
+            closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (eviction != null) {
+            eviction.cancel();
+        }
+        super.shutdown();
+    }
+
+    /**
+     * Eviction task doesn't keep manager reachable, so forgotten manager can be garbage collected
+     */
+    private static class Eviction extends TimerTask {
+        private final WeakReference<PooledHttpConnectionManager> manager;
+
+        Eviction(PooledHttpConnectionManager manager) {
+            this.manager = new WeakReference<PooledHttpConnectionManager>(manager);
+        }
+
+        @Override
+        public void run() {
+            PooledHttpConnectionManager current = manager.get();
+            if (current == null) {
+                cancel();
+                return;
+            }
+            try {
+                current.evictIdleConnections();
+            } catch (RuntimeException e) {
+                // timer thread must survive errors of single manager
+                cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.resourceloaders;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces identical concurrent requests into one in-flight execution<br/>
+ * First caller with some key executes request, callers arriving with the same key while it's running wait for it and
+ * receive the same result or exception. Nothing is kept after execution completes, so next call executes request again.<br/>
+ * This class is thread safe.
+ *
+ * @param <V> type of request result
+ */
+public class RequestCoalescer<V> {
+    private final ConcurrentMap<String, FutureTask<V>> inFlight = new ConcurrentHashMap<String, FutureTask<V>>();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Execute request, or join identical request already in flight
+     *
+     * @param key     key identifying request
+     * @param request request to execute
+     * @return request result
+     * @throws IOException if request failed with IOException
+     */
+    public V execute(String key, Callable<V> request) throws IOException {
+        FutureTask<V> task = new FutureTask<V>(request);
+        FutureTask<V> running = inFlight.putIfAbsent(key, task);
+        if (running == null) {
+            executions.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+        } else {
+            coalesced.incrementAndGet();
+            task = running;
+        }
+        return get(task);
+    }
+
+    /**
+     * @return number of requests, that were actually executed
+     */
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    /**
+     * @return number of requests, that joined already running identical request
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return number of requests currently in flight
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    private V get(FutureTask<V> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for coalesced request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.resourceloaders;
+
+/**
+ * Snapshot of {@link CachingResourceLoader} usage
+ */
+public class ResourceCacheStatistics {
+    private final long hits;
+    private final long misses;
+    private final long reloads;
+    private final long evictions;
+    private final int size;
+    private final long weight;
+
+    public ResourceCacheStatistics(long hits, long misses, long reloads, long evictions, int size, long weight) {
+        this.hits = hits;
+        this.misses = misses;
+        this.reloads = reloads;
+        this.evictions = evictions;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    /**
+     * @return number of requests served from cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of requests, that loaded resource
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of misses caused by modified file or expired entry
+     */
+    public long getReloads() {
+        return reloads;
+    }
+
+    /**
+     * @return number of resources removed from cache because of size or weight limits
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return number of cached entries
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return total weight of cached entries
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return share of requests served from cache, 0 if there were no requests
+     */
+    public double getHitRate() {
+        long total = hits + misses;
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceCacheStatistics{hits=" + hits + ", misses=" + misses + ", reloads=" + reloads +
+                ", evictions=" + evictions + ", size=" + size + ", weight=" + weight + ", hitRate=" + getHitRate() + "}";
+    }
+}
@@ -32,6 +32,11 @@ public class TokenDef {
      */
     private String regexp;
 
+    /**
+     * Token matcher, equivalent to regexp
+     */
+    private TokenMatcher matcher;
+
     /**
      * Context where token appears
      */
@@ -52,21 +57,35 @@ public class TokenDef {
     }
 
     public TokenDef(TokenType type, TokenKind kind, TokenContext context, TokenContext transition, String regexp) {
+        this(type, kind, context, transition, TokenMatchers.regexp(regexp));
+    }
+
+    public TokenDef(TokenType type, TokenKind kind, Collection<TokenContext> contexts, TokenTransitionCallback transitionCallback, String regexp) {
+        this(type, kind, contexts, transitionCallback, TokenMatchers.regexp(regexp));
+    }
+
+    public TokenDef(TokenType type, TokenKind kind, TokenContext context, TokenMatcher matcher) {
+        this(type, kind, context, null, matcher);
+    }
+
+    public TokenDef(TokenType type, TokenKind kind, TokenContext context, TokenContext transition, TokenMatcher matcher) {
         this.type = type;
         this.kind = kind;
         this.contexts.add(context);
-        this.regexp = regexp;
+        this.matcher = matcher;
+        this.regexp = matcher.getRegexp();
         this.transitionCallback = new DefaultTokenTransitionCallback(transition);
     }
 
-    public TokenDef(TokenType type, TokenKind kind, Collection<TokenContext> contexts, TokenTransitionCallback transitionCallback, String regexp) {
+    public TokenDef(TokenType type, TokenKind kind, Collection<TokenContext> contexts, TokenTransitionCallback transitionCallback, TokenMatcher matcher) {
         if(transitionCallback == null){
             throw new RuntimeException("Error, transitionCallback can't be null");
         }
         this.type = type;
         this.kind = kind;
         this.contexts.addAll(contexts);
-        this.regexp = regexp;
+        this.matcher = matcher;
+        this.regexp = matcher.getRegexp();
         this.transitionCallback = transitionCallback;
     }
 
@@ -78,6 +97,10 @@ public class TokenDef {
         return regexp;
     }
 
+    public TokenMatcher getMatcher() {
+        return matcher;
+    }
+
     public Collection<TokenContext> getContexts() {
         return contexts;
     }
@@ -0,0 +1,87 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.tokenizer;
+
+/**
+ * Matches token at specified position of input sequence<br/>
+ * Matchers are used by {@link Tokenizer} instead of regular expressions: they run directly over input sequence
+ * and don't create substrings while searching for tokens. Use {@link TokenMatchers} to create matchers.
+ * Matcher implementations must be stateless, because they are shared between tokenizers.
+ */
+public abstract class TokenMatcher {
+    private final String regexp;
+    private final String firstChars;
+
+    /**
+     * @param regexp     regular expression, equivalent to this matcher
+     * @param firstChars ASCII characters, that can start the token, null if token can start with any character
+     */
+    protected TokenMatcher(String regexp, String firstChars) {
+        this.regexp = regexp;
+        this.firstChars = firstChars;
+    }
+
+    /**
+     * Match token starting exactly at specified offset
+     *
+     * @param input  input sequence
+     * @param offset token start offset
+     * @return token end offset (exclusive), or -1 if token doesn't start at this offset
+     */
+    public abstract int match(TokenizerInput input, int offset);
+
+    /**
+     * Return token content<br/>
+     * Matchers of fixed tokens return constant strings, so they don't need to copy input.
+     *
+     * @param input input sequence
+     * @param start token start offset
+     * @param end   token end offset
+     * @return token content
+     */
+    public String content(TokenizerInput input, int start, int end) {
+        return input.subSequence(start, end).toString();
+    }
+
+    /**
+     * Check if token can start with specified character
+     *
+     * @param c first character of token
+     * @return false if token definitely doesn't start with this character
+     */
+    public boolean mayStartWith(char c) {
+        return (firstChars == null) || (c < 0x80 && firstChars.indexOf(c) >= 0);
+    }
+
+    /**
+     * @return true if token can start only with ASCII characters
+     */
+    public boolean isAsciiStart() {
+        return firstChars != null;
+    }
+
+    /**
+     * @return regular expression, equivalent to this matcher
+     */
+    public String getRegexp() {
+        return regexp;
+    }
+
+    @Override
+    public String toString() {
+        return regexp;
+    }
+}
@@ -0,0 +1,326 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.tokenizer;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Factory of {@link TokenMatcher} implementations used to describe Histone tokens<br/>
+ * Every matcher behaves exactly like the regular expression returned by its {@link TokenMatcher#getRegexp()}
+ * (when this expression is used as an alternative in {@link Matcher#find(int)}).
+ */
+public final class TokenMatchers {
+    private static final String DIGITS = "0123456789";
+    private static final String IDENT_START = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ_$";
+    private static final String WHITESPACES = " \t\n\u000B\f\r";
+
+    private TokenMatchers() {
+    }
+
+    /**
+     * Match fixed string
+     */
+    public static TokenMatcher literal(String word) {
+        return new LiteralMatcher(word, false);
+    }
+
+    /**
+     * Match fixed word followed by word boundary (like {@code word\b})
+     */
+    public static TokenMatcher keyword(String word) {
+        return new LiteralMatcher(word, true);
+    }
+
+    /**
+     * Match first of specified alternatives (like {@code a|b|c})
+     */
+    public static TokenMatcher anyOf(TokenMatcher... alternatives) {
+        return new AnyOfMatcher(alternatives);
+    }
+
+    /**
+     * Match sequence of whitespaces (like {@code [\s]+})
+     */
+    public static TokenMatcher whitespaces() {
+        return new TokenMatcher("[\\s]+", WHITESPACES) {
+            @Override
+            public int match(TokenizerInput input, int offset) {
+                int end = offset;
+                while (input.has(end) && isWhitespace(input.charAt(end))) {
+                    end++;
+                }
+                return (end > offset) ? end : -1;
+            }
+        };
+    }
+
+    /**
+     * Match integer number (like {@code [0-9]+})
+     */
+    public static TokenMatcher digits() {
+        return new TokenMatcher("[0-9]+", DIGITS) {
+            @Override
+            public int match(TokenizerInput input, int offset) {
+                int end = skipDigits(input, offset);
+                return (end > offset) ? end : -1;
+            }
+        };
+    }
+
+    /**
+     * Match number with fraction part (like {@code [0-9]*\.[0-9]+})
+     */
+    public static TokenMatcher fraction() {
+        return new TokenMatcher("[0-9]*\\.[0-9]+", DIGITS + ".") {
+            @Override
+            public int match(TokenizerInput input, int offset) {
+                int dot = skipDigits(input, offset);
+                if (!input.has(dot) || input.charAt(dot) != '.') {
+                    return -1;
+                }
+                int end = skipDigits(input, dot + 1);
+                return (end > dot + 1) ? end : -1;
+            }
+        };
+    }
+
+    /**
+     * Match number with exponent (like {@code (?:[0-9]*\.)?[0-9]+[eE][\+\-]?[0-9]+})
+     */
+    public static TokenMatcher exponent() {
+        return new TokenMatcher("(?:[0-9]*\\.)?[0-9]+[eE][\\+\\-]?[0-9]+", DIGITS + ".") {
+            @Override
+            public int match(TokenizerInput input, int offset) {
+                int mantissa = skipDigits(input, offset);
+                if (input.has(mantissa) && input.charAt(mantissa) == '.') {
+                    mantissa++;
+                } else if (mantissa == offset) {
+                    return -1;
+                } else {
+                    // integer mantissa, digits are matched once again below
+                    mantissa = offset;
+                }
+
+                int e = skipDigits(input, mantissa);
+                if (e == mantissa || !input.has(e) || (input.charAt(e) != 'e' && input.charAt(e) != 'E')) {
+                    return -1;
+                }
+                int exponent = e + 1;
+                if (input.has(exponent) && (input.charAt(exponent) == '+' || input.charAt(exponent) == '-')) {
+                    exponent++;
+                }
+                int end = skipDigits(input, exponent);
+                return (end > exponent) ? end : -1;
+            }
+        };
+    }
+
+    /**
+     * Match string literal in specified quotes, with backslash escapes (like {@code '(?:[^'\\]|\\.)*'})
+     */
+    public static TokenMatcher quoted(final char quote) {
+        String q = String.valueOf(quote);
+        return new TokenMatcher(q + "(?:[^" + q + "\\\\]|\\\\.)*" + q, q) {
+            @Override
+            public int match(TokenizerInput input, int offset) {
+                if (input.charAt(offset) != quote) {
+                    return -1;
+                }
+                for (int i = offset + 1; input.has(i); i++) {
+                    char c = input.charAt(i);
+                    if (c == quote) {
+                        return i + 1;
+                    } else if (c == '\\') {
+                        // escaped character can't be line terminator, just like '.' in regular expression
+                        if (!input.has(++i) || isLineTerminator(input.charAt(i))) {
+                            return -1;
+                        }
+                    }
+                }
+                return -1;
+            }
+        };
+    }
+
+    /**
+     * Match identifier (like {@code [a-zA-Z_$][a-zA-Z0-9_$]*})
+     */
+    public static TokenMatcher identifier() {
+        return new TokenMatcher("[a-zA-Z_$][a-zA-Z0-9_$]*", IDENT_START) {
+            @Override
+            public int match(TokenizerInput input, int offset) {
+                if (!isIdentStart(input.charAt(offset))) {
+                    return -1;
+                }
+                int end = offset + 1;
+                while (input.has(end) && (isIdentStart(input.charAt(end)) || isDigit(input.charAt(end)))) {
+                    end++;
+                }
+                return end;
+            }
+        };
+    }
+
+    /**
+     * Match regular expression<br/>
+     * Regular expression matcher is much slower than others, it's supposed to be used only for custom token definitions.
+     * It also needs length of input, so streamed input is read into memory as a whole.
+     */
+    public static TokenMatcher regexp(String regexp) {
+        final Pattern pattern = Pattern.compile(regexp);
+        return new TokenMatcher(regexp, null) {
+            @Override
+            public int match(TokenizerInput input, int offset) {
+                Matcher m = pattern.matcher(input);
+                m.region(offset, input.length());
+                m.useTransparentBounds(true);
+                m.useAnchoringBounds(false);
+                return m.lookingAt() ? m.end() : -1;
+            }
+        };
+    }
+
+    private static int skipDigits(TokenizerInput input, int offset) {
+        int end = offset;
+        while (input.has(end) && isDigit(input.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * Check word boundary after word character, the same way as {@code \b} does
+     */
+    private static boolean isWordEnd(TokenizerInput input, int offset) {
+        if (!input.has(offset)) {
+            return true;
+        }
+        int c = input.charAt(offset);
+        if (Character.isHighSurrogate((char) c) && input.has(offset + 1) && Character.isLowSurrogate(input.charAt(offset + 1))) {
+            c = Character.toCodePoint((char) c, input.charAt(offset + 1));
+        }
+        return !(c == '_' || Character.isLetterOrDigit(c) || Character.getType(c) == Character.NON_SPACING_MARK);
+    }
+
+    private static class LiteralMatcher extends TokenMatcher {
+        private final String word;
+        private final boolean keyword;
+
+        LiteralMatcher(String word, boolean keyword) {
+            super(Pattern.quote(word) + (keyword ? "\\b" : ""), (word.charAt(0) < 0x80) ? word.substring(0, 1) : null);
+            if (keyword && !Character.isLetterOrDigit(word.charAt(word.length() - 1))) {
+                throw new IllegalArgumentException("Keyword should end with letter or digit: " + word);
+            }
+            this.word = word;
+            this.keyword = keyword;
+        }
+
+        @Override
+        public int match(TokenizerInput input, int offset) {
+            int length = word.length();
+            if (!input.has(offset + length - 1)) {
+                return -1;
+            }
+            for (int i = 0; i < length; i++) {
+                if (input.charAt(offset + i) != word.charAt(i)) {
+                    return -1;
+                }
+            }
+            if (keyword && !isWordEnd(input, offset + length)) {
+                return -1;
+            }
+            return offset + length;
+        }
+
+        @Override
+        public String content(TokenizerInput input, int start, int end) {
+            return word;
+        }
+    }
+
+    private static class AnyOfMatcher extends TokenMatcher {
+        private final TokenMatcher[] alternatives;
+
+        AnyOfMatcher(TokenMatcher[] alternatives) {
+            super(regexp(alternatives), firstChars(alternatives));
+            this.alternatives = alternatives.clone();
+        }
+
+        @Override
+        public int match(TokenizerInput input, int offset) {
+            for (TokenMatcher alternative : alternatives) {
+                int end = alternative.match(input, offset);
+                if (end >= 0) {
+                    return end;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public String content(TokenizerInput input, int start, int end) {
+            for (TokenMatcher alternative : alternatives) {
+                if (alternative.match(input, start) >= 0) {
+                    return alternative.content(input, start, end);
+                }
+            }
+            return super.content(input, start, end);
+        }
+
+        private static String regexp(TokenMatcher[] alternatives) {
+            StringBuilder sb = new StringBuilder("(?:");
+            for (int i = 0; i < alternatives.length; i++) {
+                if (i > 0) {
+                    sb.append('|');
+                }
+                sb.append(alternatives[i].getRegexp());
+            }
+            return sb.append(')').toString();
+        }
+
+        private static String firstChars(TokenMatcher[] alternatives) {
+            StringBuilder sb = new StringBuilder();
+            for (TokenMatcher alternative : alternatives) {
+                if (!alternative.isAsciiStart()) {
+                    return null;
+                }
+                for (char c = 0; c < 0x80; c++) {
+                    if (alternative.mayStartWith(c)) {
+                        sb.append(c);
+                    }
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.tokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Searches for tokens of single token context<br/>
+ * Scanner finds leftmost token in input sequence, if several tokens start at the same position, then first defined token wins
+ * (the same way as alternation of tokens regexps did). Candidate tokens are selected by their first character, so most
+ * positions of input are skipped after single table lookup.
+ */
+final class TokenScanner {
+    private static final int ASCII_SIZE = 0x80;
+    private static final TokenDef[] NO_TOKENS = new TokenDef[0];
+
+    private final TokenDef[][] asciiCandidates = new TokenDef[ASCII_SIZE][];
+    private final TokenDef[] otherCandidates;
+
+    TokenScanner(List<TokenDef> tokens) {
+        for (char c = 0; c < ASCII_SIZE; c++) {
+            List<TokenDef> candidates = new ArrayList<TokenDef>();
+            for (TokenDef token : tokens) {
+                if (token.getMatcher().mayStartWith(c)) {
+                    candidates.add(token);
+                }
+            }
+            asciiCandidates[c] = candidates.isEmpty() ? NO_TOKENS : candidates.toArray(new TokenDef[candidates.size()]);
+        }
+
+        List<TokenDef> candidates = new ArrayList<TokenDef>();
+        for (TokenDef token : tokens) {
+            if (!token.getMatcher().isAsciiStart()) {
+                candidates.add(token);
+            }
+        }
+        otherCandidates = candidates.toArray(new TokenDef[candidates.size()]);
+    }
+
+    /**
+     * Find leftmost token starting from specified offset<br/>
+     * If token wasn't found, then {@code match.start} is set to offset, where search stopped.
+     *
+     * @param input  input sequence
+     * @param offset search start offset
+     * @param limit  offset, where search stops (token can end after it)
+     * @param match  found token holder
+     * @return true if token was found
+     */
+    boolean find(TokenizerInput input, int offset, int limit, Match match) {
+        int i = offset;
+        for (; i < limit && input.has(i); i++) {
+            char c = input.charAt(i);
+            TokenDef[] candidates = (c < ASCII_SIZE) ? asciiCandidates[c] : otherCandidates;
+            for (TokenDef candidate : candidates) {
+                int end = candidate.getMatcher().match(input, i);
+                // empty tokens are ignored, tokenizer wouldn't move forward on them
+                if (end > i) {
+                    match.def = candidate;
+                    match.start = i;
+                    match.end = end;
+                    return true;
+                }
+            }
+        }
+        match.def = null;
+        match.start = i;
+        return false;
+    }
+
+    /**
+     * Found token holder, reused by tokenizer between searches
+     */
+    static final class Match {
+        TokenDef def;
+        int start;
+        int end;
+    }
+}
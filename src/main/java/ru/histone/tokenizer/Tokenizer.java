@@ -18,22 +18,17 @@ package ru.histone.tokenizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.List;
+import java.io.Reader;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import static java.util.Collections.unmodifiableMap;
 
 /**
  * Histone template tokenizer<br/>
- * Tokenizer is based on regular expressions and returns tokens one by one. All tokens are configured in {@link ru.histone.HistoneTokensHolder}
+ * Tokenizer scans input by offset using {@link TokenMatcher}s and returns tokens one by one. All tokens are configured in {@link ru.histone.HistoneTokensHolder}
  */
 public class Tokenizer {
     private static final Logger log = LoggerFactory.getLogger(Tokenizer.class);
 
-    private CharSequence input;
+    private TokenizerInput input;
 
     private int inputOffset = 0;
 
@@ -42,21 +37,17 @@ public class Tokenizer {
     private Token tokenBuffer = null;
     private TokenDef tokenDefBuffer = null;
 
-    private final Map<TokenContext, List<TokenDef>> tokens;
-    private final Map<TokenContext, StringBuilder> regexpList;
-    private Map<TokenContext, Matcher> matchers = new HashMap<TokenContext, Matcher>();
+    private final Map<TokenContext, TokenScanner> scanners;
+    private final TokenScanner.Match match = new TokenScanner.Match();
     private TokenTransitionCallback.NestedLevelHolder nestLevel = new TokenTransitionCallback.NestedLevelHolder();
 
     /**
-     * Constructs new tokenizer instance using specified tokens definitions and their regexps<br/>
-     * It's important, that order of tokens and their regexps should be the same in {@code tokens} and {@code regexps} arguments
+     * Constructs new tokenizer instance using specified tokens scanners
      *
-     * @param tokens  map of tokens, separated by their token context
-     * @param regexps map of tokens regexps, separaed by their token context
+     * @param scanners map of tokens scanners, separated by their token context
      */
-    public Tokenizer(Map<TokenContext, List<TokenDef>> tokens, Map<TokenContext, StringBuilder> regexps) {
-        this.tokens = unmodifiableMap(tokens == null ? new HashMap<TokenContext, List<TokenDef>>() : tokens);
-        this.regexpList = unmodifiableMap(regexps == null ? new HashMap<TokenContext, StringBuilder>() : regexps);
+    Tokenizer(Map<TokenContext, TokenScanner> scanners) {
+        this.scanners = scanners;
     }
 
     /**
@@ -67,16 +58,24 @@ public class Tokenizer {
      * @return current object instance
      */
     public Tokenizer tokenize(CharSequence input, TokenContext startContext) {
-        log.debug("tokenize(): input={}, currentContext={}", new Object[]{input, currentContext});
-        this.currentContext = startContext;
-        this.input = input;
-
-        for (TokenContext context : tokens.keySet()) {
-            StringBuilder sb = regexpList.get(context);
-            Pattern pattern = Pattern.compile(sb.substring(0, sb.length() - 1));
-            matchers.put(context, pattern.matcher(input));
+        if (input instanceof TokenizerInput) {
+            return tokenize((TokenizerInput) input, startContext);
         }
+        log.debug("tokenize(): input={}, currentContext={}", new Object[]{input, startContext});
+        return tokenize(TokenizerInput.of(input), startContext);
+    }
 
+    /**
+     * Start tokenization of input using specified token context as current active<br/>
+     * Characters of input are released as soon as tokens are returned, so streamed input is never held in memory as a whole.
+     *
+     * @param input        tokenizer input
+     * @param startContext current active token context
+     * @return current object instance
+     */
+    public Tokenizer tokenize(TokenizerInput input, TokenContext startContext) {
+        this.currentContext = startContext;
+        this.input = input;
         return this;
     }
 
@@ -154,7 +153,7 @@ public class Tokenizer {
     private Token getNextToken() {
         Token result = null;
 
-        log.trace("getNextToken()>>: tokenBuffer={}, tokenDefBuffer={}, inputOffset={}, input.length={}", new Object[]{tokenBuffer, tokenDefBuffer, inputOffset, input.length()});
+        log.trace("getNextToken()>>: tokenBuffer={}, tokenDefBuffer={}, inputOffset={}", new Object[]{tokenBuffer, tokenDefBuffer, inputOffset});
 
         if (tokenBuffer != null) {
             log.trace("getNextToken(): tokenBuffer not empty, returning it's content");
@@ -167,51 +166,49 @@ public class Tokenizer {
 
             tokenBuffer = null;
             tokenDefBuffer = null;
-        } else if (inputOffset == input.length()) {
+        } else if (!input.has(inputOffset)) {
             log.trace("getNextToken(): end of file reached");
             result = Token.EOF_TOKEN;
         } else {
-            log.trace("getNextToken(): searching for more tokens via regexp");
-            Matcher m = getMatcher(getCurrentContext());
-
-            if (m.find(inputOffset)) {
-                log.trace("getNextToken(): m.group()={}, m.start()={}, m.end()={}, m.groupCount()={}", new Object[]{m.group(), m.start(), m.end(), m.groupCount()});
-                for (int i = 1; i <= m.groupCount(); i++) {
-                    if (m.group(0).equals(m.group(i))) {
-                        TokenDef def = tokens.get(getCurrentContext()).get(i - 1);
-                        tokenDefBuffer = def;
-                        log.trace("getNextToken(): def={}", def);
-
-                        if (m.start() - inputOffset > 0) {
-                            // fragment
-                            result = new Token(TokenType.T_FRAGMENT, inputOffset + 1, input.subSequence(inputOffset, m.start()).toString());
-                            tokenBuffer = new Token(def.getType(), m.start() + 1, m.group(0));
-                        } else {
-
-                            if (def.getKind() == TokenKind.TOKEN) {
-                                result = new Token(def.getType(), m.start() + 1, m.group(0));
-                            } else if (def.getKind() == TokenKind.LITERAL) {
-                                result = new Token(def.getType(), m.start() + 1, m.group(0));
-                            } else if (def.getKind() == TokenKind.IGNORE) {
-                                inputOffset = m.end();
-                                result = getNextToken();
-                            }
-
-                            TokenContext transition = def.getTransitionCallback().getTransition(nestLevel);
-                            if (transition != null) {
-                                switchContext(transition);
-                            }
-                        }
-                        inputOffset = m.end();
-
-                        // break from for loop
-                        break;
+            log.trace("getNextToken(): searching for more tokens");
+
+            int fragmentLimit = input.getFragmentLimit();
+            int limit = (fragmentLimit > 0) ? inputOffset + fragmentLimit : Integer.MAX_VALUE;
+
+            if (getScanner(getCurrentContext()).find(input, inputOffset, limit, match)) {
+                TokenDef def = match.def;
+                int start = match.start;
+                int end = match.end;
+                log.trace("getNextToken(): def={}, start={}, end={}", new Object[]{def, start, end});
+                tokenDefBuffer = def;
+
+                if (start - inputOffset > 0) {
+                    // fragment
+                    result = new Token(TokenType.T_FRAGMENT, inputOffset + 1, input.subSequence(inputOffset, start).toString());
+                    tokenBuffer = new Token(def.getType(), start + 1, def.getMatcher().content(input, start, end));
+                    inputOffset = end;
+                } else {
+                    inputOffset = end;
+
+                    if (def.getKind() == TokenKind.TOKEN) {
+                        result = new Token(def.getType(), start + 1, def.getMatcher().content(input, start, end));
+                    } else if (def.getKind() == TokenKind.LITERAL) {
+                        result = new Token(def.getType(), start + 1, def.getMatcher().content(input, start, end));
+                    } else if (def.getKind() == TokenKind.IGNORE) {
+                        result = getNextToken();
+                    }
+
+                    TokenContext transition = def.getTransitionCallback().getTransition(nestLevel);
+                    if (transition != null) {
+                        switchContext(transition);
                     }
                 }
             } else {
-                result = new Token(TokenType.T_FRAGMENT, inputOffset + 1, input.subSequence(inputOffset, input.length()).toString());
-                inputOffset = input.length();
+                // up to the end of input, or up to fragment limit, remaining text will be returned as next fragment
+                result = new Token(TokenType.T_FRAGMENT, inputOffset + 1, input.subSequence(inputOffset, match.start).toString());
+                inputOffset = match.start;
             }
+            input.release(inputOffset);
         }
 
         log.debug("getNextToken(): result={}, currentToken={}, currentContext={}",new Object[]{result,this.currentToken,this.currentContext});
@@ -220,8 +217,8 @@ public class Tokenizer {
         return result;
     }
 
-    private Matcher getMatcher(TokenContext currentContext) {
-        return matchers.get(currentContext);
+    private TokenScanner getScanner(TokenContext currentContext) {
+        return scanners.get(currentContext);
     }
 
 //	public void reset() {
@@ -236,32 +233,40 @@ public class Tokenizer {
 //	}
 
     public int getLineNumber() {
-        int lineNumber = 1;
-        int offset = inputOffset - 1;
-        for (; offset > 0; offset--) {
-            int code = input.charAt(offset);
-            if (code == '\n' || code == '\r' || code == '\f') {
-                lineNumber++;
-            }
-        }
-        return lineNumber;
+        return input.getLineNumber(inputOffset);
     }
 
     public int getColumnNumber() {
-        int columnNumber = 1;
-        int offset = inputOffset - 1;
-        for (; offset > 0; offset--) {
-            int code = input.charAt(offset);
-            if (code == '\n' || code == '\r' || code == '\f') {
-                columnNumber = 1;
-            } else {
-                columnNumber++;
-            }
-        }
-        return columnNumber;
+        return input.getColumnNumber(inputOffset);
     }
 
+    /**
+     * Return the whole input<br/>
+     * Streamed input is read into memory, so this method can be called only before any token was read.
+     *
+     * @return input
+     */
     public String getInput() {
         return input.toString();
     }
+
+    /**
+     * Return Reader over the whole input, streamed input is buffered but not copied<br/>
+     * This method can be called only before any token was read.
+     *
+     * @return input reader
+     */
+    public Reader getInputReader() {
+        return input.reader();
+    }
+
+    /**
+     * Return beginning of input, for streamed input it's limited by buffer size<br/>
+     * This method can be called only before any token was read.
+     *
+     * @return input prefix
+     */
+    public CharSequence getInputPrefix() {
+        return input.prefix();
+    }
 }
@@ -18,9 +18,10 @@ package ru.histone.tokenizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 
@@ -32,8 +33,7 @@ import static java.util.Collections.unmodifiableMap;
 public final class TokenizerFactory {
     private static final Logger log = LoggerFactory.getLogger(TokenizerFactory.class);
 
-    private final Map<TokenContext, List<TokenDef>> tokens;
-    private final Map<TokenContext, StringBuilder> regexpList;
+    private final Map<TokenContext, TokenScanner> scanners;
 
     /**
      * Constructs tokenizer factory using list of tokens definitions<br/>
@@ -42,11 +42,7 @@ public final class TokenizerFactory {
      * @param tokens list of tokens definitions
      */
     public TokenizerFactory(List<TokenDef> tokens) {
-        Map<TokenContext, List<TokenDef>> tokensLocal = new HashMap<TokenContext, List<TokenDef>>();
-        Map<TokenContext, StringBuilder> regexpsLocal = new HashMap<TokenContext, StringBuilder>();
-
-        final char t1 = '(';
-        final char[] t2 = new char[]{')', '|'};
+        Map<TokenContext, List<TokenDef>> tokensLocal = new EnumMap<TokenContext, List<TokenDef>>(TokenContext.class);
 
         for (TokenDef token : tokens) {
             Collection<TokenContext> contexts = token.getContexts();
@@ -58,18 +54,14 @@ public final class TokenizerFactory {
                     tokensLocal.put(context, tokenDefs);
                 }
                 tokenDefs.add(token);
-
-                StringBuilder regexpBuilder = regexpsLocal.get(context);
-                if (regexpBuilder == null) {
-                    regexpBuilder = new StringBuilder();
-                    regexpsLocal.put(context, regexpBuilder);
-                }
-                regexpBuilder.append(t1).append(token.getRegexp()).append(t2);
             }
         }
 
-        this.tokens = unmodifiableMap(tokensLocal);
-        this.regexpList = unmodifiableMap(regexpsLocal);
+        Map<TokenContext, TokenScanner> scannersLocal = new EnumMap<TokenContext, TokenScanner>(TokenContext.class);
+        for (Map.Entry<TokenContext, List<TokenDef>> entry : tokensLocal.entrySet()) {
+            scannersLocal.put(entry.getKey(), new TokenScanner(entry.getValue()));
+        }
+        this.scanners = unmodifiableMap(scannersLocal);
     }
 
     /**
@@ -79,15 +71,22 @@ public final class TokenizerFactory {
         return match(input, TokenContext.TEMPLATE);
     }
 
+    /**
+     * Constructs tokenizer, that streams input from specified Reader
+     */
+    public Tokenizer match(Reader input) {
+        return match(TokenizerInput.of(input), TokenContext.TEMPLATE);
+    }
+
     /**
      * Constructs tokenizer for specified input sequence and starting tokens context
      */
     public Tokenizer match(CharSequence input, TokenContext startContext) {
-        log.debug("tokenize(): input={}, currentContext={}", new Object[]{input, startContext});
+        log.debug("match(): startContext={}", startContext);
         if (startContext == TokenContext.NONE) {
             throw new IllegalArgumentException("Start context undefined");
         }
-        Tokenizer tokenizer = new Tokenizer(tokens, regexpList);
+        Tokenizer tokenizer = new Tokenizer(scanners);
         return tokenizer.tokenize(input, startContext);
     }
 
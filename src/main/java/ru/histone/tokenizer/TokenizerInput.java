@@ -0,0 +1,343 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.tokenizer;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Input sequence of {@link Tokenizer}<br/>
+ * Input is addressed by absolute offsets. Input read from Reader is pulled into sliding buffer on demand,
+ * and characters before {@link #release released} offset are dropped, so it's never held in memory as a whole.
+ * That's why tokens matchers should check input bounds using {@link #has(int)}, but not {@link #length()}:
+ * length of streamed input is known only after the whole Reader is read.
+ */
+public abstract class TokenizerInput implements CharSequence {
+    /**
+     * Default size of sliding buffer for Reader input (in characters)
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Minimal length of streamed input {@link #prefix()}
+     */
+    private static final int MIN_PREFIX_LENGTH = 1024;
+
+    /**
+     * Wrap character sequence
+     */
+    public static TokenizerInput of(CharSequence input) {
+        return (input instanceof TokenizerInput) ? (TokenizerInput) input : new SequenceInput(input);
+    }
+
+    /**
+     * Stream characters from Reader using sliding buffer of default size
+     */
+    public static TokenizerInput of(Reader reader) {
+        return of(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Stream characters from Reader using sliding buffer<br/>
+     * Text fragments longer than buffer size are returned by tokenizer in several consecutive fragment tokens.
+     *
+     * @param reader     input reader
+     * @param bufferSize buffer size in characters
+     */
+    public static TokenizerInput of(Reader reader, int bufferSize) {
+        return new ReaderInput(reader, bufferSize);
+    }
+
+    /**
+     * Check if input has character at specified offset, reading more input if necessary
+     *
+     * @param offset absolute offset
+     * @return true if character exists
+     */
+    public abstract boolean has(int offset);
+
+    /**
+     * Return beginning of input, that is available without reading the whole stream<br/>
+     * Should be called before any characters are released.
+     *
+     * @return input prefix
+     */
+    public abstract CharSequence prefix();
+
+    /**
+     * Return Reader over the whole input, that reads characters through this input without copying them<br/>
+     * Characters read are kept in input, so it still can be tokenized from the beginning.
+     *
+     * @return input reader
+     */
+    public Reader reader() {
+        return new InputReader(this);
+    }
+
+    /**
+     * Mark characters before specified offset as not needed anymore
+     *
+     * @param offset absolute offset
+     */
+    public void release(int offset) {
+    }
+
+    /**
+     * @return maximum length of text fragment, that tokenizer should return at once, 0 if unlimited
+     */
+    public int getFragmentLimit() {
+        return 0;
+    }
+
+    /**
+     * Return number of line in which character before specified offset is located
+     */
+    public int getLineNumber(int offset) {
+        int lineNumber = 1;
+        for (offset--; offset > 0; offset--) {
+            if (isLineBreak(charAt(offset))) {
+                lineNumber++;
+            }
+        }
+        return lineNumber;
+    }
+
+    /**
+     * Return column number of character before specified offset
+     */
+    public int getColumnNumber(int offset) {
+        int columnNumber = 1;
+        for (offset--; offset > 0; offset--) {
+            if (isLineBreak(charAt(offset))) {
+                columnNumber = 1;
+            } else {
+                columnNumber++;
+            }
+        }
+        return columnNumber;
+    }
+
+    static boolean isLineBreak(char c) {
+        return c == '\n' || c == '\r' || c == '\f';
+    }
+
+    private static final class InputReader extends Reader {
+        private final TokenizerInput input;
+        private int offset;
+
+        InputReader(TokenizerInput input) {
+            this.input = input;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            int read = 0;
+            while (read < len && input.has(offset)) {
+                cbuf[off + read++] = input.charAt(offset++);
+            }
+            return (read == 0 && len > 0) ? -1 : read;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class SequenceInput extends TokenizerInput {
+        private final CharSequence input;
+
+        SequenceInput(CharSequence input) {
+            this.input = input;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return offset < input.length();
+        }
+
+        @Override
+        public int length() {
+            return input.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return input.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return input.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return input.toString();
+        }
+
+        @Override
+        public CharSequence prefix() {
+            return input;
+        }
+    }
+
+    private static final class ReaderInput extends TokenizerInput {
+        private final Reader reader;
+        private final int bufferSize;
+
+        private char[] buffer;
+        // absolute offset of buffer[0]
+        private int start;
+        // number of characters in buffer
+        private int count;
+        // absolute offset, before which characters aren't needed anymore
+        private int released;
+        private boolean eof;
+
+        // line breaks information about characters, that were dropped from buffer
+        private int droppedLineBreaks;
+        private int firstLineBreak = -1;
+
+        ReaderInput(Reader reader, int bufferSize) {
+            if (bufferSize <= 0) {
+                throw new IllegalArgumentException("Buffer size should be positive");
+            }
+            this.reader = reader;
+            this.bufferSize = bufferSize;
+            this.buffer = new char[bufferSize];
+        }
+
+        @Override
+        public boolean has(int offset) {
+            while (offset >= start + count && !eof) {
+                fill();
+            }
+            return offset < start + count;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < start || !has(index)) {
+                throw new IndexOutOfBoundsException("Offset " + index + " is out of buffered input [" + start + ", " + (start + count) + ")");
+            }
+            return buffer[index - start];
+        }
+
+        /**
+         * Length of streamed input is known only at the end of Reader, so this method reads the whole input
+         */
+        @Override
+        public int length() {
+            has(Integer.MAX_VALUE - 1);
+            return start + count;
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < this.start || start > end || (end > start && !has(end - 1))) {
+                throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") is out of buffered input");
+            }
+            return new String(buffer, start - this.start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            if (start > 0) {
+                throw new IllegalStateException("Beginning of streamed input was already released");
+            }
+            return subSequence(0, length()).toString();
+        }
+
+        @Override
+        public CharSequence prefix() {
+            int length = Math.max(bufferSize, MIN_PREFIX_LENGTH);
+            has(length - 1);
+            return subSequence(0, Math.min(count, length));
+        }
+
+        @Override
+        public void release(int offset) {
+            // one character before offset is kept for word boundary checks
+            released = Math.max(released, offset - 1);
+        }
+
+        @Override
+        public int getFragmentLimit() {
+            return bufferSize;
+        }
+
+        @Override
+        public int getLineNumber(int offset) {
+            int lineNumber = 1 + droppedLineBreaks;
+            for (offset--; offset > 0 && offset >= start; offset--) {
+                if (isLineBreak(buffer[offset - start])) {
+                    lineNumber++;
+                }
+            }
+            return lineNumber;
+        }
+
+        @Override
+        public int getColumnNumber(int offset) {
+            // column is counted from the beginning of input up to the first line break
+            if (firstLineBreak > 0 && firstLineBreak < offset) {
+                return firstLineBreak;
+            }
+            for (int i = Math.max(start, 1); i < offset && i < start + count; i++) {
+                if (isLineBreak(buffer[i - start])) {
+                    return i;
+                }
+            }
+            return Math.max(offset, 1);
+        }
+
+        private void fill() {
+            if (count == buffer.length) {
+                if (released > start) {
+                    drop(released - start);
+                } else {
+                    char[] larger = new char[buffer.length * 2];
+                    System.arraycopy(buffer, 0, larger, 0, count);
+                    buffer = larger;
+                }
+            }
+            try {
+                int read = reader.read(buffer, count, buffer.length - count);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    count += read;
+                }
+            } catch (IOException e) {
+                throw new TokenizerReadException(e);
+            }
+        }
+
+        private void drop(int length) {
+            for (int i = 0; i < length; i++) {
+                if (start + i > 0 && isLineBreak(buffer[i])) {
+                    droppedLineBreaks++;
+                    if (firstLineBreak < 0) {
+                        firstLineBreak = start + i;
+                    }
+                }
+            }
+            System.arraycopy(buffer, length, buffer, 0, count - length);
+            start += length;
+            count -= length;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.tokenizer;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link TokenizerInput} if underlying Reader fails<br/>
+ * Tokens matchers can't throw checked exceptions, so I/O errors are passed through tokenizer as runtime exception.
+ */
+public class TokenizerReadException extends RuntimeException {
+    public TokenizerReadException(IOException cause) {
+        super("Error reading template input", cause);
+    }
+
+    @Override
+    public IOException getCause() {
+        return (IOException) super.getCause();
+    }
+}
@@ -38,6 +38,7 @@ import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 public class HistoneBuilderTest {
     private NodeFunction<StringHistoneNode> nodeFunction1;
@@ -302,6 +303,25 @@ public class HistoneBuilderTest {
         assertEquals(expected, output);
     }
 
+    @Test
+    public void customResourceLoaderKeepsItsSettings() throws HistoneException {
+        DefaultResourceLoader loader = new DefaultResourceLoader();
+        loader.setConnectTimeout(123);
+        loader.setReadTimeout(456);
+        HttpResponseCache cache = new HttpResponseCache(1024);
+        loader.setHttpResponseCache(cache);
+
+        HistoneBuilder builder = new HistoneBuilder();
+        builder.setResourceLoader(loader);
+        builder.setHttpConnectTimeout(1);
+        builder.setHttpReadTimeout(2);
+        builder.build();
+
+        assertEquals(123, loader.getConnectTimeout());
+        assertEquals(456, loader.getReadTimeout());
+        assertSame(cache, loader.getHttpResponseCache());
+    }
+
     @Test
     public void tttttt() throws HistoneException {
         HistoneBuilder builder = new HistoneBuilder();
@@ -0,0 +1,145 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.bundle;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.junit.Before;
+import org.junit.Test;
+import ru.histone.Histone;
+import ru.histone.HistoneBuilder;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.optimizer.OptimizationTypes;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class AstDiskCacheTest {
+    private static final String TEMPLATE = "{{var x = 2}}a{{x * 3}}b{{for i in [1, 2]}}{{i}}{{/for}}";
+
+    private File directory;
+    private NodeFactory nodeFactory;
+
+    @Before
+    public void before() {
+        directory = new File("target/ast-disk-cache-test");
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        nodeFactory = new NodeFactory(new ObjectMapper());
+    }
+
+    @Test
+    public void putAndGet() throws Exception {
+        Histone histone = new HistoneBuilder().build();
+        ArrayNode ast = histone.parseTemplateToAST(TEMPLATE);
+
+        AstDiskCache cache = new AstDiskCache(directory, nodeFactory);
+        assertNull(cache.get(TEMPLATE));
+        cache.put(TEMPLATE, ast);
+        assertEquals(ast, cache.get(TEMPLATE));
+        assertEquals(ast, new AstDiskCache(directory, nodeFactory).get(TEMPLATE));
+
+        assertEquals(1, cache.getWrites());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    public void keyDependsOnOptimizations() {
+        AstDiskCache plain = new AstDiskCache(directory, nodeFactory);
+        AstDiskCache optimized = new AstDiskCache(directory, nodeFactory, OptimizationTypes.ELIMINATE_SINGLE_NODE, OptimizationTypes.FRAGMENT_CONCATENATION);
+        AstDiskCache reordered = new AstDiskCache(directory, nodeFactory, OptimizationTypes.FRAGMENT_CONCATENATION, OptimizationTypes.ELIMINATE_SINGLE_NODE);
+
+        assertFalse(plain.key(TEMPLATE).equals(optimized.key(TEMPLATE)));
+        assertEquals(optimized.key(TEMPLATE), reordered.key(TEMPLATE));
+        assertFalse(plain.key(TEMPLATE).equals(plain.key(TEMPLATE + " ")));
+    }
+
+    @Test
+    public void corruptedEntriesAreIgnored() throws Exception {
+        Histone histone = new HistoneBuilder().build();
+        AstDiskCache cache = new AstDiskCache(directory, nodeFactory);
+        cache.put(TEMPLATE, histone.parseTemplateToAST(TEMPLATE));
+
+        File entry = cache.entryFile(cache.key(TEMPLATE));
+        RandomAccessFile raf = new RandomAccessFile(entry, "rw");
+        try {
+            raf.seek(raf.length() / 2);
+            int b = raf.read();
+            raf.seek(raf.length() / 2);
+            raf.write(b ^ 0x55);
+        } finally {
+            raf.close();
+        }
+
+        assertNull(cache.get(TEMPLATE));
+        assertEquals(1, cache.getCorrupted());
+        assertFalse(entry.exists());
+    }
+
+    @Test
+    public void histoneUsesCache() throws Exception {
+        HistoneBuilder builder = new HistoneBuilder();
+        builder.setAstCacheDirectory(directory);
+        builder.setAstCacheOptimizations(OptimizationTypes.FRAGMENT_CONCATENATION);
+        builder.setTemplateCacheSize(0);
+
+        Histone first = builder.build();
+        String expected = new HistoneBuilder().build().evaluate(TEMPLATE);
+        assertEquals(expected, first.evaluate(TEMPLATE));
+        assertEquals(1, first.getAstDiskCache().getWrites());
+
+        Histone second = builder.build();
+        assertEquals(expected, second.evaluate(TEMPLATE));
+        assertEquals(expected, second.evaluate(new StringReader(TEMPLATE)));
+        assertEquals(2, second.getAstDiskCache().getHits());
+        assertEquals(0, second.getAstDiskCache().getWrites());
+
+        ArrayNode expectedAst = second.optimizeAST(second.parseTemplateToAST(TEMPLATE), OptimizationTypes.FRAGMENT_CONCATENATION);
+        assertEquals(expectedAst, second.loadTemplateAST(TEMPLATE));
+    }
+
+    @Test
+    public void onlySourceDependentOptimizationsAreAccepted() {
+        HistoneBuilder builder = new HistoneBuilder();
+        for (OptimizationTypes optimization : new OptimizationTypes[]{OptimizationTypes.CONSTANTS_SUBSTITUTION,
+                OptimizationTypes.SAFE_CODE_EVALUATION, OptimizationTypes.IMPORT_RESOLVING, null}) {
+            try {
+                builder.setAstCacheOptimizations(OptimizationTypes.FRAGMENT_CONCATENATION, optimization);
+                fail("Accepted " + optimization);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            try {
+                new AstDiskCache(directory, nodeFactory, optimization);
+                fail("Accepted " + optimization);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
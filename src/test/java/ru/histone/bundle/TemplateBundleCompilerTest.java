@@ -0,0 +1,162 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.bundle;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import ru.histone.Histone;
+import ru.histone.HistoneBuilder;
+import ru.histone.resourceloaders.BundleResourceLoader;
+import ru.histone.resourceloaders.DefaultResourceLoader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TemplateBundleCompilerTest {
+    private File templateDir;
+    private File bundleFile;
+
+    @Before
+    public void before() throws IOException {
+        File dir = new File("target/template-bundle-test");
+        templateDir = new File(dir, "templates");
+        bundleFile = new File(dir, "templates.hsbn");
+        delete(dir);
+
+        write("index.tpl", "{{import 'lib/macros.tpl'}}<h1>{{title}}</h1>{{hello(name)}}");
+        write("lib/macros.tpl", "{{macro hello(name)}}Hello, {{name}}!{{/macro}}");
+        write("missing.tpl", "{{import 'nowhere.tpl'}}text");
+        write("readme.txt", "not a template");
+    }
+
+    @Test
+    public void compileAndServe() throws Exception {
+        TemplateBundleCompiler compiler = new TemplateBundleCompiler(new HistoneBuilder().build());
+        Map<String, String> manifest = compiler.compile(templateDir, bundleFile);
+
+        assertEquals(3, manifest.size());
+        assertEquals(sha256("{{macro hello(name)}}Hello, {{name}}!{{/macro}}"), manifest.get("lib/macros.tpl"));
+        assertEquals(1, compiler.getWarnings().size());
+        assertTrue(compiler.getWarnings().get(0).contains("nowhere.tpl"));
+
+        TemplateBundle bundle = TemplateBundle.open(bundleFile);
+        try {
+            assertEquals(manifest, bundle.getManifest());
+            assertEquals(manifest.keySet(), bundle.getNames());
+            assertEquals(manifest.get("index.tpl"), bundle.getDigest("index.tpl"));
+
+            HistoneBuilder builder = new HistoneBuilder();
+            builder.setResourceLoader(new BundleResourceLoader(bundle, new DefaultResourceLoader()));
+            Histone histone = builder.build();
+
+            String context = "{\"title\": \"Bundle\", \"name\": \"world\"}";
+            assertEquals("<h1>Bundle</h1>Hello, world!",
+                    histone.evaluateURI("bundle:/index.tpl", new ObjectMapper().readTree(context)));
+            assertEquals("Hello, bundle!", histone.evaluate("bundle:/", "{{import 'lib/macros.tpl'}}{{hello('bundle')}}", null));
+        } finally {
+            bundle.close();
+        }
+    }
+
+    @Test
+    public void commandLine() throws Exception {
+        File manifest = new File(bundleFile.getParentFile(), "manifest.txt");
+        assertEquals(0, TemplateBundleCompiler.run(new String[]{"-O", "", "-m", manifest.getPath(), templateDir.getPath(), bundleFile.getPath()}));
+        assertTrue(bundleFile.isFile());
+        assertTrue(manifest.isFile());
+
+        assertEquals(2, TemplateBundleCompiler.run(new String[]{templateDir.getPath()}));
+        assertEquals(2, TemplateBundleCompiler.run(new String[]{"-O", "NO_SUCH_OPTIMIZATION", templateDir.getPath(), bundleFile.getPath()}));
+
+        write("broken.tpl", "{{if}}");
+        assertEquals(1, TemplateBundleCompiler.run(new String[]{templateDir.getPath(), bundleFile.getPath()}));
+    }
+
+    @Test
+    public void corruptedBundle() throws Exception {
+        new TemplateBundleCompiler(new HistoneBuilder().build()).compile(templateDir, bundleFile);
+        RandomAccessFile raf = new RandomAccessFile(bundleFile, "rw");
+        try {
+            raf.setLength(raf.length() - 10);
+        } finally {
+            raf.close();
+        }
+        try {
+            TemplateBundle.open(bundleFile).close();
+            fail("Truncated bundle shouldn't be opened");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // huge template count in header
+        new TemplateBundleCompiler(new HistoneBuilder().build()).compile(templateDir, bundleFile);
+        raf = new RandomAccessFile(bundleFile, "rw");
+        try {
+            raf.seek(8);
+            raf.writeInt(Integer.MAX_VALUE);
+        } finally {
+            raf.close();
+        }
+        try {
+            TemplateBundle.open(bundleFile).close();
+            fail("Bundle with invalid template count shouldn't be opened");
+        } catch (IOException e) {
+            // expected
+        }
+
+        try {
+            TemplateBundle.open(new File(templateDir, "index.tpl")).close();
+            fail("Template source isn't a bundle");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private void write(String name, String content) throws IOException {
+        File file = new File(templateDir, name);
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String sha256(String content) throws Exception {
+        return TemplateBundle.toHex(MessageDigest.getInstance("SHA-256").digest(content.getBytes("UTF-8")));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
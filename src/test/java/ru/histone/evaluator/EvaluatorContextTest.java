@@ -0,0 +1,137 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Before;
+import org.junit.Test;
+import ru.histone.evaluator.nodes.Node;
+import ru.histone.evaluator.nodes.NodeFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EvaluatorContextTest {
+    private NodeFactory nodeFactory;
+    private EvaluatorContext context;
+
+    @Before
+    public void before() {
+        ObjectMapper jackson = new ObjectMapper();
+        nodeFactory = new NodeFactory(jackson);
+        ObjectNode json = jackson.createObjectNode();
+        json.put("fromJson", "json");
+        context = EvaluatorContext.createFromJson(nodeFactory, null, json);
+    }
+
+    @Test
+    public void innerFrameShadowsOuter() {
+        Symbol a = Symbol.of("a");
+        context.putProp(a, nodeFactory.string("outer"));
+        context.saveState();
+        context.putProp("a", nodeFactory.string("inner"));
+        assertEquals("inner", context.getProp(a).getAsString().getValue());
+
+        context.restoreState();
+        assertEquals("outer", context.getProp("a").getAsString().getValue());
+    }
+
+    @Test
+    public void restoreDropsFrameVariables() {
+        context.saveState();
+        context.putProp("local", nodeFactory.string("value"));
+        context.putMacro("localMacro", new MacroFunc());
+        assertTrue(context.hasStackProp("local"));
+        assertTrue(context.hasMacro("localMacro"));
+
+        context.restoreState();
+        assertFalse(context.hasProp("local"));
+        assertFalse(context.hasMacro("localMacro"));
+        assertSame(nodeFactory.UNDEFINED, context.getProp("local"));
+    }
+
+    @Test
+    public void putReplacesVariableInCurrentFrame() {
+        context.putProp("a", nodeFactory.string("first"));
+        context.putProp("a", nodeFactory.string("second"));
+        context.saveState();
+        context.saveState();
+        assertEquals("second", context.getProp("a").getAsString().getValue());
+        assertEquals(1, context.getProps().size());
+    }
+
+    @Test
+    public void lookupFallsBackToInitialContextAndBaseURI() {
+        context.setBaseURI("http://localhost/");
+        assertEquals("json", context.getProp("fromJson").getAsString().getValue());
+        assertEquals("http://localhost/", context.findProp(Symbol.BASE_URI).getAsString().getValue());
+        assertTrue(context.hasProp("baseURI"));
+        assertNull(context.findProp(Symbol.of("missing")));
+        assertSame(nodeFactory.UNDEFINED, context.getProp("neverDefinedName"));
+    }
+
+    @Test
+    public void unusedSymbolsAreCollected() throws InterruptedException {
+        String name = "unused" + System.nanoTime();
+        WeakReference<Symbol> ref = new WeakReference<Symbol>(Symbol.of(name));
+        assertSame(ref.get(), Symbol.of(name));
+
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+        assertNull(Symbol.find(name));
+        assertEquals(name, Symbol.of(name).getName());
+    }
+
+    @Test
+    public void outerFramesWinInProps() {
+        context.putProp("a", nodeFactory.string("outer"));
+        context.saveState();
+        context.putProp("a", nodeFactory.string("inner"));
+        context.putProp("b", nodeFactory.string("inner"));
+
+        Map<String, Node> props = context.getProps();
+        assertEquals("outer", props.get("a").getAsString().getValue());
+        assertEquals("inner", props.get("b").getAsString().getValue());
+    }
+
+    @Test
+    public void frameGrowsBeyondInitialCapacity() {
+        for (int i = 0; i < 100; i++) {
+            context.saveState();
+            context.putProp("var" + i, nodeFactory.number(i));
+        }
+        assertEquals(0, context.getProp("var0").getAsNumber().getValue().intValue());
+        for (int i = 0; i < 100; i++) {
+            context.restoreState();
+        }
+        assertFalse(context.hasStackProp("var0"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void restoreWithoutSaveFails() {
+        context.restoreState();
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.histone.Histone;
+import ru.histone.HistoneBuilder;
+import ru.histone.evaluator.nodes.Node;
+import ru.histone.resourceloaders.DefaultResourceLoader;
+import ru.histone.resourceloaders.Resource;
+import ru.histone.resourceloaders.ResourceLoader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ResourceMemoTest {
+    private File dir;
+    private String baseHref;
+    private CountingLoader loader;
+    private Histone histone;
+
+    @Before
+    public void before() throws Exception {
+        dir = File.createTempFile("histone-memo", "");
+        dir.delete();
+        dir.mkdirs();
+        baseHref = dir.toURI().toString();
+        loader = new CountingLoader(new DefaultResourceLoader());
+        HistoneBuilder builder = new HistoneBuilder();
+        builder.setResourceLoader(loader);
+        histone = builder.build();
+
+        write("user.json", "{\"name\": \"Ann\"}");
+        write("text.txt", "text");
+        write("header.tpl", "[{{loadJSON('user.json').name}}]");
+        write("macros.tpl", "{{macro hello}}hello{{/macro}}");
+    }
+
+    @After
+    public void after() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void repeatedLoadsAreMemoizedWithinEvaluation() throws Exception {
+        String template = "{{loadJSON('user.json').name}} {{loadJSON('user.json').name}} "
+                + "{{loadText('text.txt')}} {{loadText('text.txt')}} {{include('header.tpl')}}{{include('header.tpl')}} "
+                + "{{var m = require('macros.tpl')}}{{var n = require('macros.tpl')}}{{m.hello()}}{{n.hello()}}";
+        String expected = "Ann Ann text text [Ann][Ann] hellohello";
+        assertEquals(expected, histone.evaluate(baseHref, template, null));
+        assertEquals(1, loader.loads("user.json"));
+        assertEquals(1, loader.loads("text.txt"));
+        assertEquals(1, loader.loads("header.tpl"));
+        assertEquals(1, loader.loads("macros.tpl"));
+
+        // memo lives for one evaluation only
+        assertEquals(expected, histone.evaluate(baseHref, template, null));
+        assertEquals(2, loader.loads("user.json"));
+        assertEquals(2, loader.loads("header.tpl"));
+    }
+
+    @Test
+    public void memoCanBeTurnedOffPerCall() throws Exception {
+        String template = "{{loadText('text.txt', ['memo': false])}}{{loadText('text.txt', ['memo': false])}}"
+                + "{{loadJSON('user.json', ['method': 'POST']).name}}{{loadJSON('user.json', ['method': 'post']).name}}"
+                + "{{loadJSON('user.json', ['method': 'POST', 'memo': true]).name}}"
+                + "{{loadJSON('user.json', ['method': 'POST', 'memo': true]).name}}";
+        assertEquals("texttextAnnAnnAnnAnn", histone.evaluate(baseHref, template, null));
+        assertEquals(2, loader.loads("text.txt"));
+        assertEquals(3, loader.loads("user.json"));
+    }
+
+    @Test
+    public void differentRequestsAreNotShared() throws Exception {
+        String template = "{{loadText('text.txt')}}{{loadText('text.txt', ['headers': ['X-A': '1']])}}"
+                + "{{loadText('text.txt', ['headers': ['X-A': '1']])}}";
+        assertEquals("texttexttext", histone.evaluate(baseHref, template, null));
+        assertEquals(2, loader.loads("text.txt"));
+    }
+
+    private void write(String name, String content) throws IOException {
+        OutputStream output = new FileOutputStream(new File(dir, name));
+        try {
+            output.write(content.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+    }
+
+    private static class CountingLoader implements ResourceLoader {
+        private final ResourceLoader delegate;
+        private final Map<String, Integer> loads = new HashMap<String, Integer>();
+
+        CountingLoader(ResourceLoader delegate) {
+            this.delegate = delegate;
+        }
+
+        int loads(String href) {
+            Integer count = loads.get(href);
+            return (count == null) ? 0 : count;
+        }
+
+        @Override
+        public Resource load(String href, String baseHref, String[] contentTypes, Node... args) {
+            loads.put(href, loads(href) + 1);
+            return delegate.load(href, baseHref, contentTypes, args);
+        }
+
+        @Override
+        public String resolveFullPath(String href, String baseHref) {
+            return delegate.resolveFullPath(href, baseHref);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Before;
+import org.junit.Test;
+import ru.histone.Histone;
+import ru.histone.HistoneBuilder;
+import ru.histone.HistoneException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BytecodeCompilerTest {
+    private ObjectMapper jackson;
+    private Histone treeHistone;
+    private Histone bytecodeHistone;
+
+    @Before
+    public void before() throws HistoneException {
+        jackson = new ObjectMapper();
+        treeHistone = new HistoneBuilder().build();
+
+        HistoneBuilder builder = new HistoneBuilder();
+        builder.setCompilationMode(CompilationMode.BYTECODE);
+        builder.setBytecodeCompilationThreshold(2);
+        bytecodeHistone = builder.build();
+    }
+
+    @Test
+    public void templateIsCompiledWhenHot() throws HistoneException {
+        CompiledTemplate template = bytecodeHistone.compileAST(bytecodeHistone.parseTemplateToAST("a{{1 + 2}}b"));
+
+        assertEquals("a3b", bytecodeHistone.evaluateCompiled(null, template, null));
+        assertFalse(template.isBytecodeCompiled());
+        assertEquals("a3b", bytecodeHistone.evaluateCompiled(null, template, null));
+        assertTrue(template.isBytecodeCompiled());
+        assertEquals("a3b", bytecodeHistone.evaluateCompiled(null, template, null));
+    }
+
+    @Test
+    public void treeModeNeverCompiles() throws HistoneException {
+        CompiledTemplate template = treeHistone.compileAST(treeHistone.parseTemplateToAST("a{{1 + 2}}b"));
+        for (int i = 0; i < 5; i++) {
+            assertEquals("a3b", treeHistone.evaluateCompiled(null, template, null));
+        }
+        assertFalse(template.isBytecodeCompiled());
+    }
+
+    @Test
+    public void bytecodeResultMatchesTree() throws HistoneException {
+        String source = "{{macro item(value, n)}}<{{n}}:{{value.name ? value.name : 'none'}}>{{/macro}}" +
+                "{{var total = 0}}" +
+                "{{for key:value in items}}{{item(value, self.index)}}{{key}}{{if self.index is self.last}}.{{elseif value.name}},{{else}};{{/if}}" +
+                "{{var total = total + value.price}}{{/for}}" +
+                "{{for x in empty}}never{{else}}empty{{/for}}" +
+                "[{{total}}][{{-total}}][{{not total}}][{{total / 3}}][{{total mod 4}}][{{total >= 10 and total < 100}}]" +
+                "[{{this.missing.name}}][{{items['b'].name}}][{{global.baseURI.size()}}][{{self.last}}]" +
+                "[{{['x': 1, 2, 3: 'y'].toJSON()}}][{{'abc'.toUpperCase()}}][{{range(1, 3).join(',')}}]" +
+                "[{{eval('{{1 + 1}}')}}][{{total is 45 ? 'one' : 'other'}}]";
+
+        ObjectNode context = jackson.createObjectNode();
+        ObjectNode items = context.putObject("items");
+        items.putObject("a").put("name", "first").put("price", 10);
+        items.putObject("b").put("price", 15);
+        items.putObject("c").put("name", "third").put("price", 20);
+        context.putArray("empty");
+
+        ArrayNode ast = treeHistone.parseTemplateToAST(source);
+        String expected = treeHistone.evaluateAST(null, ast, context);
+
+        CompiledTemplate template = bytecodeHistone.compileAST(ast);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expected, bytecodeHistone.evaluateCompiled(null, template, context));
+        }
+        assertTrue(template.isBytecodeCompiled());
+    }
+
+    @Test
+    public void macroDefinedInHotTemplateIsCompiled() throws HistoneException {
+        String source = "{{macro twice(x)}}{{x}}{{x}}{{/macro}}{{twice(value)}}";
+        CompiledTemplate template = bytecodeHistone.compileAST(bytecodeHistone.parseTemplateToAST(source));
+
+        ObjectNode context = jackson.createObjectNode();
+        for (int i = 0; i < 3; i++) {
+            context.put("value", i);
+            assertEquals("" + i + i, bytecodeHistone.evaluateCompiled(null, template, context));
+        }
+        assertTrue(template.isBytecodeCompiled());
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import org.junit.Before;
+import org.junit.Test;
+import ru.histone.Histone;
+import ru.histone.HistoneBuilder;
+import ru.histone.HistoneException;
+import ru.histone.parser.ParserException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class CompiledTemplateCacheTest {
+    private Histone histone;
+
+    @Before
+    public void before() throws HistoneException {
+        histone = new HistoneBuilder().build();
+    }
+
+    private CompiledTemplateCache.Compilation compilation(final String template, final AtomicInteger counter) {
+        return new CompiledTemplateCache.Compilation() {
+            @Override
+            public CompiledTemplate compile() throws HistoneException {
+                counter.incrementAndGet();
+                return histone.compileAST(histone.parseTemplateToAST(template));
+            }
+        };
+    }
+
+    @Test
+    public void evaluateReusesCompiledTemplate() throws HistoneException {
+        CompiledTemplate template = histone.compileTemplate("a{{x}}");
+        assertSame(template, histone.compileTemplate("a" + "{{x}}"));
+        assertEquals("a", histone.evaluate("a{{x}}"));
+
+        CompiledTemplateCacheStatistics statistics = histone.getTemplateCacheStatistics();
+        assertEquals(1, statistics.getMisses());
+        assertEquals(2, statistics.getHits());
+        assertEquals(1, statistics.getSize());
+        assertEquals(6, statistics.getWeight());
+
+        histone.clearTemplateCache();
+        assertNotSame(template, histone.compileTemplate("a{{x}}"));
+    }
+
+    @Test
+    public void cacheCanBeDisabled() throws HistoneException {
+        HistoneBuilder builder = new HistoneBuilder();
+        builder.setTemplateCacheSize(0);
+        Histone histone = builder.build();
+
+        assertNull(histone.getTemplateCacheStatistics());
+        assertNotSame(histone.compileTemplate("a"), histone.compileTemplate("a"));
+        assertEquals("a", histone.evaluate("a"));
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws HistoneException {
+        CompiledTemplateCache cache = new CompiledTemplateCache(2, 100, 0);
+        AtomicInteger compilations = new AtomicInteger();
+
+        CompiledTemplate a = cache.get("a", 1, compilation("a", compilations));
+        cache.get("b", 1, compilation("b", compilations));
+        assertSame(a, cache.get("a", 1, compilation("a", compilations)));
+        cache.get("c", 1, compilation("c", compilations));
+
+        assertSame(a, cache.get("a", 1, compilation("a", compilations)));
+        assertEquals(3, compilations.get());
+        cache.get("b", 1, compilation("b", compilations));
+        assertEquals(4, compilations.get());
+
+        CompiledTemplateCacheStatistics statistics = cache.getStatistics();
+        assertEquals(2, statistics.getEvictions());
+        assertEquals(2, statistics.getSize());
+    }
+
+    @Test
+    public void weightIsLimited() throws HistoneException {
+        CompiledTemplateCache cache = new CompiledTemplateCache(10, 10, 0);
+        AtomicInteger compilations = new AtomicInteger();
+
+        cache.get("a", 6, compilation("a", compilations));
+        cache.get("b", 6, compilation("b", compilations));
+        assertEquals(1, cache.getStatistics().getSize());
+        assertEquals(6, cache.getStatistics().getWeight());
+        assertEquals(1, cache.getStatistics().getEvictions());
+
+        cache.get("c", 11, compilation("c", compilations));
+        cache.get("c", 11, compilation("c", compilations));
+        assertEquals(4, compilations.get());
+        assertEquals(6, cache.getStatistics().getWeight());
+    }
+
+    @Test
+    public void parseErrorsAreCachedForShortTime() throws Exception {
+        CompiledTemplateCache cache = new CompiledTemplateCache(10, 100, 50);
+        final AtomicInteger compilations = new AtomicInteger();
+        CompiledTemplateCache.Compilation failing = new CompiledTemplateCache.Compilation() {
+            @Override
+            public CompiledTemplate compile() throws HistoneException {
+                compilations.incrementAndGet();
+                throw new ParserException("broken");
+            }
+        };
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                cache.get("broken", 1, failing);
+                fail("Parse error expected");
+            } catch (ParserException e) {
+                assertEquals("broken", e.getMessage());
+            }
+        }
+        assertEquals(1, compilations.get());
+        assertEquals(2, cache.getStatistics().getFailureHits());
+
+        Thread.sleep(100);
+        try {
+            cache.get("broken", 1, failing);
+            fail("Parse error expected");
+        } catch (ParserException e) {
+            assertEquals(2, compilations.get());
+        }
+    }
+
+    @Test
+    public void otherErrorsAreNotCached() throws HistoneException {
+        CompiledTemplateCache cache = new CompiledTemplateCache(10, 100, 1000);
+        final AtomicInteger compilations = new AtomicInteger();
+        CompiledTemplateCache.Compilation failing = new CompiledTemplateCache.Compilation() {
+            @Override
+            public CompiledTemplate compile() throws HistoneException {
+                compilations.incrementAndGet();
+                throw new IllegalStateException("failed");
+            }
+        };
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get("failing", 1, failing);
+                fail("Exception expected");
+            } catch (IllegalStateException e) {
+                assertEquals("failed", e.getMessage());
+            }
+        }
+        assertEquals(2, compilations.get());
+        assertEquals(0, cache.getStatistics().getSize());
+    }
+
+    @Test
+    public void concurrentMissesCompileOnce() throws Exception {
+        final CompiledTemplateCache cache = new CompiledTemplateCache(10, 100, 0);
+        final AtomicInteger compilations = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompiledTemplateCache.Compilation slow = new CompiledTemplateCache.Compilation() {
+            @Override
+            public CompiledTemplate compile() throws HistoneException {
+                compilations.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new HistoneException(e);
+                }
+                return histone.compileAST(histone.parseTemplateToAST("slow"));
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<CompiledTemplate> first = executor.submit(new Callable<CompiledTemplate>() {
+                @Override
+                public CompiledTemplate call() throws Exception {
+                    return cache.get("slow", 1, slow);
+                }
+            });
+            started.await(10, TimeUnit.SECONDS);
+
+            @SuppressWarnings("unchecked")
+            Future<CompiledTemplate>[] others = new Future[3];
+            for (int i = 0; i < others.length; i++) {
+                others[i] = executor.submit(new Callable<CompiledTemplate>() {
+                    @Override
+                    public CompiledTemplate call() throws Exception {
+                        return cache.get("slow", 1, slow);
+                    }
+                });
+            }
+            while (cache.getStatistics().getHits() < others.length) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            CompiledTemplate template = first.get(10, TimeUnit.SECONDS);
+            for (Future<CompiledTemplate> other : others) {
+                assertSame(template, other.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, compilations.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
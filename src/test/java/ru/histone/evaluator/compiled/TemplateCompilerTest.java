@@ -0,0 +1,114 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.compiled;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Before;
+import org.junit.Test;
+import ru.histone.Histone;
+import ru.histone.HistoneBuilder;
+import ru.histone.HistoneException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TemplateCompilerTest {
+    private ObjectMapper jackson;
+    private Histone histone;
+
+    @Before
+    public void before() throws HistoneException {
+        jackson = new ObjectMapper();
+        histone = new HistoneBuilder().build();
+    }
+
+    @Test
+    public void compiledTemplateIsReusable() throws HistoneException {
+        ArrayNode ast = histone.parseTemplateToAST("{{macro greet(name)}}Hello, {{name}}!{{/macro}}" +
+                "{{for item in items}}{{greet(item)}}{{if self.index < self.last}} {{/if}}{{/for}}");
+        CompiledTemplate template = histone.compileAST(ast);
+
+        ObjectNode context = jackson.createObjectNode();
+        context.putArray("items").add("a").add("b");
+        assertEquals("Hello, a! Hello, b!", histone.evaluateCompiled(null, template, context));
+
+        context.putArray("items").add("c");
+        assertEquals("Hello, c!", histone.evaluateCompiled(null, template, context));
+    }
+
+    @Test
+    public void constantsAreCreatedOnce() throws HistoneException {
+        ArrayNode ast = histone.parseTemplateToAST("text{{'literal'}}");
+        CompiledTemplate template = histone.compileAST(ast);
+
+        CompiledNode[] statements = template.getBody().getStatements();
+        assertEquals(2, statements.length);
+        assertSame(statements[0].evaluate(null), statements[0].evaluate(null));
+        assertSame(statements[1].evaluate(null), statements[1].evaluate(null));
+        assertEquals("textliteral", histone.evaluateCompiled(null, template, null));
+    }
+
+    @Test
+    public void compiledResultMatchesAst() throws HistoneException {
+        String source = "{{var x = 5}}{{x * 2 + 1}} {{x > 3 ? 'big' : 'small'}} {{[1, 2, 3].join('-')}} {{['a': ['b': 'c']].a.b}}";
+        ArrayNode ast = histone.parseTemplateToAST(source);
+        assertEquals(histone.evaluateAST(ast), histone.evaluateCompiled(null, histone.compileAST(ast), null));
+        assertEquals("11 big 1-2-3 c", histone.evaluateAST(ast));
+    }
+
+    @Test
+    public void resourceTemplatesAreCompiledOnce() throws Exception {
+        File dir = File.createTempFile("histone-compiled", "");
+        dir.delete();
+        dir.mkdirs();
+        try {
+            File file = new File(dir, "layout.tpl");
+            write(file, "[{{eval('{{1 + 1}}')}}]");
+            String baseURI = dir.toURI().toString();
+            String template = "{{include('layout.tpl')}}{{require('layout.tpl')}}";
+
+            assertEquals("[2]", histone.evaluate(baseURI, template, null));
+            assertEquals("[2]", histone.evaluate(baseURI, template, null));
+            // source, layout.tpl and eval() template are compiled once
+            assertEquals(3, histone.getTemplateCacheStatistics().getMisses());
+
+            write(file, "({{eval('{{1 + 1}}')}})");
+            assertEquals("(2)", histone.evaluate(baseURI, template, null));
+            assertEquals(4, histone.getTemplateCacheStatistics().getMisses());
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+    }
+}
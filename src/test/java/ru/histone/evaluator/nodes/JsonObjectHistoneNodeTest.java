@@ -0,0 +1,74 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.nodes;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JsonObjectHistoneNodeTest {
+    private static final String JSON = "{\"user\":{\"name\":\"John\",\"tags\":[\"a\",\"b\"]},\"items\":[{\"id\":1},{\"id\":2.50}]," +
+            "\"digits\":{\"0\":\"x\",\"1\":\"y\"},\"empty\":null}";
+
+    private ObjectMapper jackson;
+    private NodeFactory nodeFactory;
+
+    @Before
+    public void before() {
+        jackson = new ObjectMapper();
+        nodeFactory = new NodeFactory(jackson);
+    }
+
+    @Test
+    public void childrenAreConvertedOnAccess() throws Exception {
+        JsonObjectHistoneNode root = (JsonObjectHistoneNode) nodeFactory.jsonToLazyNode(jackson.readTree(JSON));
+        assertFalse(root.isLoaded());
+
+        Node user = root.getProp("user");
+        assertTrue(root.isLoaded());
+        assertFalse(((JsonObjectHistoneNode) user).isLoaded());
+        assertFalse(((JsonObjectHistoneNode) root.getProp("items")).isLoaded());
+
+        assertEquals("John", user.getProp("name").getAsString().getValue());
+        assertFalse(((JsonObjectHistoneNode) user.getProp("tags")).isLoaded());
+    }
+
+    @Test
+    public void lazyNodeMatchesEagerNode() throws Exception {
+        JsonNode json = jackson.readTree(JSON);
+        Node eager = nodeFactory.jsonToNode(json);
+        Node lazy = nodeFactory.jsonToLazyNode(json);
+
+        assertEquals(eager.getAsJsonNode(), lazy.getAsJsonNode());
+        assertEquals(eager.getAsString().getValue(), lazy.getAsString().getValue());
+        assertEquals(eager.getAsObject().getElements().keySet(), lazy.getAsObject().getElements().keySet());
+        assertEquals(eager.getProp("digits").getAsJsonNode(), lazy.getProp("digits").getAsJsonNode());
+        assertTrue(lazy.getProp("empty").isNull());
+        assertTrue(lazy.getProp("items").getProp("1").getProp("id").isFloat());
+        assertEquals(2, lazy.getProp("items").getAsObject().size());
+    }
+
+    @Test
+    public void valuesAreNotWrapped() throws Exception {
+        assertTrue(nodeFactory.jsonToLazyNode(jackson.readTree("\"text\"")).isString());
+        assertTrue(nodeFactory.jsonToLazyNode(null).isNull());
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.nodes;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LongNumberHistoneNodeTest {
+    private NodeFactory nodeFactory;
+
+    @Before
+    public void before() {
+        nodeFactory = new NodeFactory(new ObjectMapper());
+    }
+
+    @Test
+    public void integersAreLongBacked() {
+        assertTrue(nodeFactory.number(5) instanceof LongNumberHistoneNode);
+        assertTrue(nodeFactory.number(new BigDecimal("123456789012")) instanceof LongNumberHistoneNode);
+        assertFalse(nodeFactory.number(new BigDecimal("1.50")) instanceof LongNumberHistoneNode);
+        assertFalse(nodeFactory.number(new BigDecimal("1E+3")) instanceof LongNumberHistoneNode);
+        assertFalse(nodeFactory.number(new BigDecimal("12345678901234567890")) instanceof LongNumberHistoneNode);
+    }
+
+    @Test
+    public void arithmeticStaysOnLongs() {
+        Node result = nodeFactory.number(40).oper_add(nodeFactory.number(2));
+        assertTrue(result instanceof LongNumberHistoneNode);
+        assertEquals("42", result.getAsString().getValue());
+        assertEquals("-38", nodeFactory.number(2).oper_sub(nodeFactory.number(40)).getAsString().getValue());
+        assertEquals("80", nodeFactory.number(40).oper_mul(nodeFactory.number(2)).getAsString().getValue());
+        assertEquals("-1", nodeFactory.number(-7).oper_mod(nodeFactory.number(3)).getAsString().getValue());
+        assertEquals("-5", nodeFactory.number(5).oper_negate().getAsString().getValue());
+    }
+
+    @Test
+    public void overflowWidensToDecimal() {
+        NumberHistoneNode max = nodeFactory.number(Long.MAX_VALUE);
+        NumberHistoneNode min = nodeFactory.number(Long.MIN_VALUE);
+        BigDecimal maxDecimal = BigDecimal.valueOf(Long.MAX_VALUE);
+        BigDecimal minDecimal = BigDecimal.valueOf(Long.MIN_VALUE);
+
+        assertEquals(maxDecimal.add(BigDecimal.ONE), max.oper_add(nodeFactory.number(1)).getAsNumber().getValue());
+        assertEquals(minDecimal.subtract(BigDecimal.ONE), min.oper_sub(nodeFactory.number(1)).getAsNumber().getValue());
+        assertEquals(maxDecimal.multiply(maxDecimal), max.oper_mul(max).getAsNumber().getValue());
+        assertEquals(minDecimal.negate(), min.oper_mul(nodeFactory.number(-1)).getAsNumber().getValue());
+        assertEquals(minDecimal.negate(), nodeFactory.number(-1).oper_mul(min).getAsNumber().getValue());
+        assertEquals(minDecimal.negate(), min.oper_negate().getAsNumber().getValue());
+    }
+
+    @Test
+    public void divisionKeepsDecimalSemantics() {
+        assertEquals("2", nodeFactory.number(6).oper_div(nodeFactory.number(3)).getAsString().getValue());
+        assertEquals("3.5", nodeFactory.number(7).oper_div(nodeFactory.number(2)).getAsString().getValue());
+        assertEquals("0.67", nodeFactory.number(2).oper_div(nodeFactory.number(3)).getAsString().getValue());
+        assertSame(nodeFactory.UNDEFINED_NUMBER, nodeFactory.number(1).oper_div(nodeFactory.number(0)));
+        assertSame(nodeFactory.UNDEFINED_NUMBER, nodeFactory.number(1).oper_mod(nodeFactory.number(0)));
+    }
+
+    @Test
+    public void mixedOperandsUseDecimals() {
+        NumberHistoneNode price = nodeFactory.number(new BigDecimal("19.99"));
+        assertEquals("59.97", nodeFactory.number(3).oper_mul(price).getAsString().getValue());
+        assertSame(nodeFactory.TRUE, nodeFactory.number(20).oper_greaterThan(price));
+        assertSame(nodeFactory.TRUE, nodeFactory.number(2).oper_equal(nodeFactory.string("2")));
+        assertSame(nodeFactory.FALSE, nodeFactory.number(0).getAsBoolean());
+        assertTrue(nodeFactory.number(3).isInteger());
+        assertTrue(price.isFloat());
+        assertTrue(nodeFactory.number(new BigDecimal("3.00")).isInteger());
+    }
+}
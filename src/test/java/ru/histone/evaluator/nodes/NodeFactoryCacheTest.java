@@ -0,0 +1,75 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.nodes;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class NodeFactoryCacheTest {
+
+    @Test
+    public void smallNumbersAreCanonical() {
+        NodeFactory nodeFactory = new NodeFactory(new ObjectMapper());
+        assertSame(nodeFactory.number(7), nodeFactory.number(7L));
+        assertSame(nodeFactory.number(-128), nodeFactory.number(new BigDecimal("-128")));
+        assertNotSame(nodeFactory.number(100000), nodeFactory.number(100000));
+        assertNotSame(nodeFactory.number(new BigDecimal("7.0")), nodeFactory.number(7));
+    }
+
+    @Test
+    public void stringsAreCanonical() {
+        NodeFactory nodeFactory = new NodeFactory(new ObjectMapper());
+        assertSame(nodeFactory.EMPTY_STRING, nodeFactory.string(""));
+        assertSame(nodeFactory.EMPTY_STRING, nodeFactory.string());
+        assertSame(nodeFactory.string('a'), nodeFactory.string("a"));
+        assertSame(nodeFactory.string("true"), nodeFactory.TRUE.getAsString());
+        assertSame(nodeFactory.string('b'), nodeFactory.string("abc").getProp("1"));
+        assertNotSame(nodeFactory.string("abc"), nodeFactory.string("abc"));
+    }
+
+    @Test
+    public void cacheRangesAreConfigurable() {
+        NodeFactory nodeFactory = new NodeFactory(new ObjectMapper(), 0, 10, 'z');
+        assertSame(nodeFactory.number(10), nodeFactory.number(10));
+        assertNotSame(nodeFactory.number(-1), nodeFactory.number(-1));
+        assertNotSame(nodeFactory.string('é'), nodeFactory.string('é'));
+        assertEquals("é", nodeFactory.string('é').getValue());
+    }
+
+    @Test
+    public void hitRateIsReported() {
+        NodeFactory nodeFactory = new NodeFactory(new ObjectMapper());
+        nodeFactory.number(1);
+        assertEquals(0, nodeFactory.getCacheStatistics().getHits());
+
+        nodeFactory.setCollectStatistics(true);
+        nodeFactory.number(1);
+        nodeFactory.string("x");
+        nodeFactory.string("not cached");
+        nodeFactory.number(100000);
+
+        NodeCacheStatistics statistics = nodeFactory.getCacheStatistics();
+        assertEquals(2, statistics.getHits());
+        assertEquals(2, statistics.getMisses());
+        assertEquals(0.5, statistics.getHitRate(), 0.0001);
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.nodes;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ObjectHistoneNodeKeysTest {
+    private NodeFactory nodeFactory;
+
+    @Before
+    public void before() {
+        nodeFactory = new NodeFactory(new ObjectMapper());
+    }
+
+    @Test
+    public void integerAndStringKeysAreEquivalent() {
+        ObjectHistoneNode object = nodeFactory.object();
+        Node first = nodeFactory.string("first");
+        Node second = nodeFactory.string("second");
+        object.add(first);
+        object.add("1", second);
+
+        assertSame(first, object.getProp("0"));
+        assertSame(second, object.getProp("1"));
+        assertEquals(2, object.size());
+        assertEquals("[\"first\",\"second\"]", object.getAsJsonNode().toString());
+    }
+
+    @Test
+    public void nonCanonicalNumbersAreSeparateKeys() {
+        ObjectHistoneNode object = nodeFactory.object();
+        object.add(1, nodeFactory.string("one"));
+        object.add("01", nodeFactory.string("zero one"));
+        object.add("-0", nodeFactory.string("minus zero"));
+
+        assertEquals(3, object.size());
+        assertEquals("one", object.getProp("1").getAsString().getValue());
+        assertEquals("zero one", object.getProp("01").getAsString().getValue());
+        assertFalse(object.hasProp("0"));
+        assertTrue(object.hasProp("-0"));
+        assertFalse(object.hasProp("2147483648"));
+    }
+
+    @Test
+    public void insertionOrderIsPreserved() {
+        ObjectHistoneNode object = nodeFactory.object();
+        for (int i = 0; i < 20; i++) {
+            object.add("key" + i, nodeFactory.number(i));
+        }
+        for (int i = 0; i < 20; i += 2) {
+            object.remove("key" + i);
+        }
+        object.add("key0", nodeFactory.number(0));
+        object.add("key1", nodeFactory.number(100));
+
+        List<Object> keys = new ArrayList<Object>(object.getElements().keySet());
+        assertEquals(11, keys.size());
+        assertEquals(Arrays.<Object>asList("key1", "key3", "key5"), keys.subList(0, 3));
+        assertEquals("key0", keys.get(10));
+        assertEquals("100", object.getProp("key1").getAsString().getValue());
+        assertNull(object.getProp("key2"));
+    }
+
+    @Test
+    public void stringKeysMakeObject() {
+        ObjectHistoneNode object = nodeFactory.object();
+        object.add(nodeFactory.number(1));
+        object.add("name", nodeFactory.number(2));
+        assertTrue(object.getAsJsonNode().isObject());
+
+        object.remove("name");
+        assertTrue(object.getAsJsonNode().isArray());
+        assertEquals(Integer.valueOf(0), object.getElements().keySet().iterator().next());
+    }
+
+    @Test
+    public void viewsFollowInsertionOrder() {
+        ObjectHistoneNode object = nodeFactory.object();
+        object.add(nodeFactory.string("a"));
+        object.add("name", nodeFactory.string("b"));
+        object.add(nodeFactory.string("c"));
+        object.remove("0");
+
+        List<Object> keys = new ArrayList<Object>();
+        for (Object key : object.keys()) {
+            keys.add(key);
+        }
+        assertEquals(Arrays.<Object>asList("name", 1), keys);
+
+        List<String> values = new ArrayList<String>();
+        for (Map.Entry<Object, Node> entry : object.entries()) {
+            values.add(entry.getKey() + "=" + entry.getValue().getAsString().getValue());
+        }
+        assertEquals(Arrays.asList("name=b", "1=c"), values);
+
+        assertEquals("name", object.keyAt(0));
+        assertEquals("c", object.valueAt(1).getAsString().getValue());
+        assertNull(object.valueAt(2));
+    }
+
+    @Test
+    public void viewsAreReadOnly() {
+        ObjectHistoneNode object = nodeFactory.object(nodeFactory.number(1), nodeFactory.number(2));
+        Iterator<Node> values = object.values().iterator();
+        try {
+            values.remove();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        values.next();
+        object.add(nodeFactory.number(3));
+        try {
+            values.next();
+            fail();
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.evaluator.output;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Before;
+import org.junit.Test;
+import ru.histone.Histone;
+import ru.histone.HistoneBuilder;
+import ru.histone.HistoneException;
+import ru.histone.evaluator.compiled.CompilationMode;
+import ru.histone.evaluator.compiled.CompiledTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TemplateOutputTest {
+    private static final String TEMPLATE = "{{macro row(item)}}<li>{{item.name}}</li>{{/macro}}" +
+            "<ul>{{for item in items}}{{row(item)}}{{if self.index is self.last}}!{{/if}}{{/for}}</ul>" +
+            "{{var rows = row(items[0])}}[{{rows.size()}}]";
+
+    private ObjectMapper jackson;
+    private ObjectNode context;
+
+    @Before
+    public void before() {
+        jackson = new ObjectMapper();
+        context = jackson.createObjectNode();
+        ArrayNode items = context.putArray("items");
+        items.addObject().put("name", "a");
+        items.addObject().put("name", "b");
+    }
+
+    @Test
+    public void writerOutputMatchesString() throws HistoneException {
+        Histone histone = new HistoneBuilder().build();
+        ArrayNode ast = histone.parseTemplateToAST(TEMPLATE);
+
+        String expected = histone.evaluateAST(null, ast, context);
+        assertEquals("<ul><li>a</li><li>b</li>!</ul>[10]", expected);
+
+        StringWriter writer = new StringWriter();
+        histone.evaluateAST(null, ast, context, writer);
+        assertEquals(expected, writer.toString());
+    }
+
+    @Test
+    public void bytecodeWriterOutputMatchesString() throws HistoneException {
+        HistoneBuilder builder = new HistoneBuilder();
+        builder.setCompilationMode(CompilationMode.BYTECODE);
+        builder.setBytecodeCompilationThreshold(1);
+        Histone histone = builder.build();
+        CompiledTemplate template = histone.compileAST(histone.parseTemplateToAST(TEMPLATE));
+
+        StringWriter writer = new StringWriter();
+        histone.evaluateCompiled(null, template, context, writer);
+        assertTrue(template.isBytecodeCompiled());
+        assertEquals("<ul><li>a</li><li>b</li>!</ul>[10]", writer.toString());
+    }
+
+    @Test
+    public void resultIsStreamed() throws HistoneException {
+        Histone histone = new HistoneBuilder().build();
+        RecordingWriter writer = new RecordingWriter();
+        histone.evaluateAST(null, histone.parseTemplateToAST(TEMPLATE), context, writer);
+
+        assertEquals("<ul><li>a</li><li>b</li>!</ul>[10]", writer.toString());
+        assertTrue(writer.writes.size() > 1);
+        assertFalse(writer.writes.contains(writer.toString()));
+        assertTrue(writer.writes.contains("<li>"));
+    }
+
+    @Test
+    public void byteOutputMatchesString() throws Exception {
+        for (CompilationMode mode : CompilationMode.values()) {
+            HistoneBuilder builder = new HistoneBuilder();
+            builder.setCompilationMode(mode);
+            builder.setBytecodeCompilationThreshold(1);
+            Histone histone = builder.build();
+            String template = "\u0442\u0435\u043a\u0441\u0442 " + TEMPLATE + " {{'\u20ac' + items[1].name}}";
+            CompiledTemplate compiled = histone.compileTemplate(template);
+            String expected = histone.evaluateCompiled(null, compiled, context);
+
+            for (String charsetName : new String[]{"UTF-8", "windows-1251", "UTF-16"}) {
+                Charset charset = Charset.forName(charsetName);
+                ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                histone.evaluateCompiled(null, compiled, context, stream, charset);
+                assertEquals(mode + " " + charsetName, expected, new String(stream.toByteArray(), charset));
+
+                ByteBuffer buffer = histone.evaluateCompiledToBytes(null, compiled, context, charset);
+                assertEquals(mode + " " + charsetName, expected, charset.decode(buffer).toString());
+            }
+        }
+    }
+
+    @Test
+    public void staticFragmentsAreCopiedAsBytes() throws Exception {
+        Charset utf8 = Charset.forName("UTF-8");
+        StaticFragment fragment = new StaticFragment("<div class=\"\u044f\">");
+        assertSame(fragment.getBytes(utf8), fragment.getBytes(utf8));
+        assertEquals("<div class=\"\u044f\">", new String(fragment.getBytes(utf8), utf8));
+
+        // small buffer makes both long fragments and long dynamic values overflow it
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        OutputStreamTemplateOutput output = new OutputStreamTemplateOutput(stream, utf8, 16);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            output.write(fragment);
+            output.write("\u044f" + i + "\ud83d\ude00");
+            expected.append(fragment.getText()).append("\u044f").append(i).append("\ud83d\ude00");
+        }
+        output.write(new StaticFragment(expected.toString()));
+        expected.append(expected.toString());
+        output.finish();
+        assertEquals(0, output.getBufferedBytes());
+        assertEquals(expected.toString(), new String(stream.toByteArray(), utf8));
+    }
+
+    @Test
+    public void statefulCharsetIsResetBeforeFragments() throws Exception {
+        Charset charset = Charset.forName("ISO-2022-JP");
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        OutputStreamTemplateOutput output = new OutputStreamTemplateOutput(stream, charset);
+        output.write("\u65e5\u672c");
+        output.write(new StaticFragment("abc"));
+        output.write("\u65e5");
+        output.write(new StaticFragment("\u672c!"));
+        output.write("\u65e5");
+        output.finish();
+        assertEquals("\u65e5\u672cabc\u65e5\u672c!\u65e5", new String(stream.toByteArray(), charset));
+    }
+
+    @Test
+    public void surrogatePairsSplitBetweenWritesAreKept() throws Exception {
+        for (String charsetName : new String[]{"UTF-8", "UTF-16", "GB18030"}) {
+            Charset charset = Charset.forName(charsetName);
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            OutputStreamTemplateOutput output = new OutputStreamTemplateOutput(stream, charset, 16);
+            output.write("a\ud83d");
+            output.write("\ude00b\ud83d");
+            output.flush();
+            output.write("\ude00");
+            output.write(new StaticFragment("c"));
+            output.write("\ud83d");
+            output.finish();
+
+            // the same text written by Writer, unpaired surrogate at the end is replaced
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            Writer writer = new OutputStreamWriter(expected, charset);
+            writer.write("a\ud83d\ude00b\ud83d\ude00c\ud83d");
+            writer.close();
+            assertTrue(charsetName, Arrays.equals(expected.toByteArray(), stream.toByteArray()));
+            assertTrue(charsetName, new String(stream.toByteArray(), charset).startsWith("a\ud83d\ude00b\ud83d\ude00c"));
+        }
+    }
+
+    @Test
+    public void earlyFlush() throws Exception {
+        String template = "<head>{{flush()}}<body>{{loadText('missing.txt')}}{{for i in range(1, 20)}}[{{i}}]{{/for}}";
+
+        RecordingWriter writer = new RecordingWriter();
+        Histone histone = new HistoneBuilder().build();
+        histone.evaluateCompiled(null, histone.compileTemplate(template), context, writer);
+        assertEquals(0, writer.flushes.size());
+        String expected = writer.toString();
+
+        HistoneBuilder builder = new HistoneBuilder();
+        builder.setFlushPolicy(FlushPolicy.MARKERS);
+        writer = new RecordingWriter();
+        histone = builder.build();
+        histone.evaluateCompiled(null, histone.compileTemplate(template), context, writer);
+        assertEquals(expected, writer.toString());
+        assertEquals(Collections.singletonList("<head>"), writer.flushes);
+
+        builder.setFlushPolicy(new FlushPolicy(0, false, true));
+        writer = new RecordingWriter();
+        histone = builder.build();
+        histone.evaluateCompiled(null, histone.compileTemplate(template), context, writer);
+        assertEquals(Collections.singletonList("<head><body>"), writer.flushes);
+
+        builder.setCompilationMode(CompilationMode.BYTECODE);
+        builder.setBytecodeCompilationThreshold(1);
+        builder.setFlushPolicy(new FlushPolicy(20, true, true));
+        histone = builder.build();
+        CompiledTemplate compiled = histone.compileTemplate(template);
+        for (int i = 0; i < 2; i++) {
+            writer = new RecordingWriter();
+            histone.evaluateCompiled(null, compiled, context, writer);
+            assertTrue(compiled.isBytecodeCompiled());
+            assertEquals(expected, writer.toString());
+            assertEquals("<head>", writer.flushes.get(0));
+            assertEquals("<head><body>", writer.flushes.get(1));
+            assertTrue(writer.flushes.size() > 3);
+            for (int j = 3; j < writer.flushes.size(); j++) {
+                assertTrue(writer.flushes.get(j).length() - writer.flushes.get(j - 1).length() >= 20);
+            }
+        }
+    }
+
+    @Test
+    public void memoizedLoadsDontFlush() throws Exception {
+        File dir = File.createTempFile("histone", "flush");
+        assertTrue(dir.delete() && dir.mkdir());
+        File text = new File(dir, "text.txt");
+        Writer fileWriter = new OutputStreamWriter(new FileOutputStream(text), "UTF-8");
+        fileWriter.write("text");
+        fileWriter.close();
+        try {
+            HistoneBuilder builder = new HistoneBuilder();
+            builder.setFlushPolicy(new FlushPolicy(0, false, true));
+            Histone histone = builder.build();
+            CompiledTemplate compiled = histone.compileTemplate("<a>{{loadText('text.txt')}}<b>{{loadText('text.txt')}}<c>");
+
+            RecordingWriter writer = new RecordingWriter();
+            histone.evaluateCompiled(dir.toURI().toString(), compiled, context, writer);
+            assertEquals("<a>text<b>text<c>", writer.toString());
+            assertEquals(Collections.singletonList("<a>"), writer.flushes);
+        } finally {
+            text.delete();
+            dir.delete();
+        }
+    }
+
+    private static class RecordingWriter extends Writer {
+        private final List<String> writes = new ArrayList<String>();
+        private final List<String> flushes = new ArrayList<String>();
+        private final StringBuilder content = new StringBuilder();
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            String text = new String(buffer, offset, length);
+            writes.add(text);
+            content.append(text);
+        }
+
+        @Override
+        public void write(String text) {
+            writes.add(text);
+            content.append(text);
+        }
+
+        @Override
+        public void flush() {
+            flushes.add(content.toString());
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return content.toString();
+        }
+    }
+}
@@ -25,6 +25,7 @@ import ru.histone.HistoneException;
 import java.io.StringReader;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class ASTSignatureTest {
@@ -101,4 +102,36 @@ public class ASTSignatureTest {
 
         assertEquals(0, outputAST.get(1).size());
     }
+
+    @Test
+    public void testSignatureCheck() {
+        assertTrue(ParserImpl.hasHistoneSignature("[[\"HISTONE\",{}],[]]"));
+        assertTrue(ParserImpl.hasHistoneSignature(" \r\n[ \t[\n\"HISTONE\""));
+        assertFalse(ParserImpl.hasHistoneSignature("[[\"HISTON"));
+        assertFalse(ParserImpl.hasHistoneSignature("[\"HISTONE\"]"));
+        assertFalse(ParserImpl.hasHistoneSignature("[[[\"HISTONE\"]]]"));
+        assertFalse(ParserImpl.hasHistoneSignature("[['HISTONE']]"));
+        assertFalse(ParserImpl.hasHistoneSignature(""));
+    }
+
+    @Test
+    public void testParsedAST() throws HistoneException {
+        JsonNode ast = histone.parseTemplateToAST("a{{x}}b");
+        String json = ast.toString();
+
+        assertEquals(ast, histone.parseTemplateToAST(json));
+        assertEquals(ast, histone.parseTemplateToAST(new StringReader(json)));
+        assertEquals(ast, histone.parseTemplateToAST(new StringReader("\n " + json)));
+    }
+
+    @Test
+    public void testBrokenASTFallsBackToTemplate() throws HistoneException {
+        String input = "[[\"HISTONE\", {{1+1}}]]";
+
+        JsonNode outputAST = histone.parseTemplateToAST(new StringReader(input));
+
+        assertEquals("HISTONE", outputAST.get(0).get(0).asText());
+        assertEquals("[[\"HISTONE\", ", outputAST.get(1).get(0).asText());
+        assertEquals("[[\"HISTONE\", 2]]", histone.evaluate(new StringReader(input)));
+    }
 }
@@ -0,0 +1,89 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.parser;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.junit.Test;
+import ru.histone.Histone;
+import ru.histone.HistoneBuilder;
+import ru.histone.HistoneException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AstInternerTest {
+    private static final String HEADER = "<html><head><title>Shared header</title></head><body>";
+
+    @Test
+    public void sharedValuesAreStoredOnce() throws HistoneException {
+        Histone histone = new HistoneBuilder().build();
+        ArrayNode first = histone.parseTemplateToAST(HEADER + "{{user.name}}{{'literal'}}{{1.5}}");
+        ArrayNode second = histone.parseTemplateToAST(HEADER + "{{user.name}}{{'literal'}}{{1.5}}{{1.50}}");
+
+        assertSame(first.get(1).get(0), second.get(1).get(0));
+        assertSame(first.get(1).get(0).textValue(), second.get(1).get(0).textValue());
+        assertSame(first.get(1).get(1).get(1).get(0), second.get(1).get(1).get(1).get(0));
+        assertSame(first.get(1).get(2).get(1), second.get(1).get(2).get(1));
+        assertSame(first.get(1).get(3).get(1), second.get(1).get(3).get(1));
+        // AST arrays are mutable, so they are never shared
+        assertNotSame(first.get(1).get(1), second.get(1).get(1));
+
+        AstInternerStatistics statistics = histone.getAstInternerStatistics();
+        assertTrue(statistics.toString(), statistics.getHits() >= 6);
+        assertTrue(statistics.toString(), statistics.getSavedBytes() > 2 * HEADER.length());
+    }
+
+    @Test
+    public void differentNumbersAreNotMixed() throws HistoneException {
+        Histone histone = new HistoneBuilder().build();
+        ArrayNode ast = histone.parseTemplateToAST("{{1}}{{1.0}}{{'1'}}");
+
+        assertTrue(ast.get(1).get(0).get(1).isBigInteger());
+        assertTrue(ast.get(1).get(1).get(1).isBigDecimal());
+        assertTrue(ast.get(1).get(2).get(1).isTextual());
+        assertEquals("11.51", histone.evaluate("{{1}}{{1.5}}{{'1'}}"));
+    }
+
+    @Test
+    public void unusedEntriesAreCollected() throws Exception {
+        AstInterner interner = new AstInterner();
+        Histone histone = new HistoneBuilder().build();
+        ArrayNode kept = interner.intern(histone.parseTemplateToAST("kept text"));
+        for (int i = 0; i < 100; i++) {
+            interner.intern(histone.parseTemplateToAST("garbage text " + i));
+        }
+
+        for (int i = 0; i < 50 && interner.getStatistics().getSize() > 10; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertTrue(interner.getStatistics().toString(), interner.getStatistics().getSize() < 100);
+        assertEquals("kept text", kept.get(1).get(0).asText());
+    }
+
+    @Test
+    public void interningCanBeDisabled() throws HistoneException {
+        HistoneBuilder builder = new HistoneBuilder();
+        builder.setAstInterning(false);
+        Histone histone = builder.build();
+
+        assertNull(histone.getAstInternerStatistics());
+        assertNotSame(histone.parseTemplateToAST(HEADER).get(1).get(0), histone.parseTemplateToAST(HEADER).get(1).get(0));
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.parser;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Before;
+import org.junit.Test;
+import ru.histone.Histone;
+import ru.histone.HistoneBuilder;
+import ru.histone.HistoneException;
+import ru.histone.HistoneTokensHolder;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.tokenizer.TokenizerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryAstTest {
+    private static final String[] TEMPLATES = {
+            "",
+            "plain text",
+            "a{{x}}b{{* comment *}}c{{% literal {{x}} %}}d",
+            "{{var x = [1, 2.5, -7, 'a\\'b', \"c\", true, null, 123456789012345678901234567890]}}{{x + 1 * 3 mod 2}}",
+            "{{var y = ['a': 1.25e-30, 'b': ['c': 'юникод \\u2028']]}}{{y.b.c}}",
+            "{{if a isNot b and not c}}yes{{elseif d}}maybe{{else}}no{{/if}}",
+            "{{for k:v in [1,2]}}{{k}} {{v}}{{/for}}",
+            "{{macro m(a)}}<{{a}}>{{/macro}}{{m('text')}}{{m('text')}}",
+    };
+
+    private NodeFactory nodeFactory;
+    private Parser parser;
+    private BinaryAstWriter writer;
+    private BinaryAstReader reader;
+
+    @Before
+    public void before() {
+        nodeFactory = new NodeFactory(new ObjectMapper());
+        parser = new Parser(new TokenizerFactory(HistoneTokensHolder.getTokens()), nodeFactory);
+        writer = new BinaryAstWriter();
+        reader = new BinaryAstReader(nodeFactory);
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        int binarySize = 0;
+        int jsonSize = 0;
+        for (String template : TEMPLATES) {
+            ArrayNode ast = parser.parse(template);
+            byte[] binary = writer.toByteArray(ast);
+            assertEquals(template, ast, reader.read(binary));
+            assertEquals(template, ast, reader.read(new ByteArrayInputStream(binary)));
+            binarySize += binary.length;
+            jsonSize += ast.toString().getBytes("UTF-8").length;
+        }
+        assertTrue(binarySize + " / " + jsonSize, binarySize < jsonSize);
+    }
+
+    @Test
+    public void roundTripJsonValues() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode object = mapper.createObjectNode();
+        object.put("int", Integer.MIN_VALUE);
+        object.put("long", Long.MAX_VALUE);
+        object.put("double", -0.5d);
+        object.put("decimal", new BigDecimal("-12345678901234567890.0987654321"));
+        object.set("bigInteger", nodeFactory.jsonNumber(new BigInteger("-98765432109876543210")));
+        object.set("smallBigInteger", nodeFactory.jsonNumber(BigInteger.valueOf(-3)));
+        object.put("string", "");
+        object.putNull("null");
+        object.putArray("array").add(-1).add(false).add("string");
+        object.putArray("empty");
+        object.putObject("nested").put("string", "nested");
+
+        assertEquals(object, reader.read(writer.toByteArray(object)));
+    }
+
+    @Test
+    public void stringsAreShared() throws Exception {
+        JsonNode ast = reader.read(writer.toByteArray(parser.parse("{{x}}{{x}}")));
+        JsonNode statements = ast.get(1);
+        assertTrue(statements.get(0).get(1).get(0) == statements.get(1).get(1).get(0));
+    }
+
+    @Test
+    public void malformedData() throws Exception {
+        byte[] binary = writer.toByteArray(parser.parse("{{for k:v in [1,2]}}{{k}} {{v}}{{/for}}"));
+        for (int length = 0; length < binary.length; length++) {
+            try {
+                reader.read(binary, 0, length);
+                fail("Truncated data shouldn't be read: " + length);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+
+        byte[] wrongVersion = binary.clone();
+        wrongVersion[BinaryAst.MAGIC.length] = (byte) (BinaryAst.VERSION + 1);
+        try {
+            reader.read(wrongVersion);
+            fail("Unsupported version shouldn't be read");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("version"));
+        }
+
+        try {
+            reader.read("[[\"HISTONE\"]]".getBytes("UTF-8"));
+            fail("JSON shouldn't be read as binary AST");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void histoneApi() throws Exception {
+        Histone histone = new HistoneBuilder().build();
+        for (String template : TEMPLATES) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            histone.writeBinaryAST(histone.parseTemplateToAST(template), out);
+
+            assertEquals(template, histone.parseTemplateToAST(template), histone.readBinaryAST(new ByteArrayInputStream(out.toByteArray())));
+            assertEquals(template, histone.evaluate(template),
+                    histone.evaluateCompiled(null, histone.compileBinaryAST(new ByteArrayInputStream(out.toByteArray())), nodeFactory.jsonObject()));
+        }
+    }
+
+    @Test
+    public void importBinaryAstFile() throws Exception {
+        Histone histone = new HistoneBuilder().build();
+        File dir = new File("target/binary-ast-test");
+        dir.mkdirs();
+        File file = new File(dir, "macros" + BinaryAst.FILE_EXTENSION);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            histone.writeBinaryAST(histone.parseTemplateToAST("{{macro hello(name)}}Hello, {{name}}!{{/macro}}"), out);
+        } finally {
+            out.close();
+        }
+
+        String baseURI = dir.getAbsoluteFile().toURI().toString();
+        assertEquals("Hello, world!", histone.evaluate(baseURI, "{{import 'macros.hstb'}}{{hello('world')}}", nodeFactory.jsonObject()));
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.parser;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Before;
+import org.junit.Test;
+import ru.histone.Histone;
+import ru.histone.HistoneBuilder;
+import ru.histone.HistoneTokensHolder;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.tokenizer.TokenizerFactory;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompactAstTest {
+    private static final String[] TEMPLATES = {
+            "",
+            "plain text",
+            "a{{x}}b{{* comment *}}c{{% literal {{x}} %}}d",
+            "{{var x = [1, 2.5, -7, 'a\\'b', \"c\", true, null, 123456789012345678901234567890]}}{{x + 1 * 3 mod 2}}",
+            "{{var y = ['a': 1.25e-30, 'b': ['c': '\\u044e\\u043d\\u0438\\u043a\\u043e\\u0434']]}}{{y.b.c}}",
+            "{{if a isNot b and not c}}yes{{elseif d}}maybe{{else}}no{{/if}}",
+            "{{for k:v in [1,2]}}{{k}} {{v}}{{/for}}",
+            "{{macro m(a)}}<{{a}}>{{/macro}}{{m('text')}}{{m('text')}}",
+    };
+
+    private NodeFactory nodeFactory;
+    private Parser parser;
+
+    @Before
+    public void before() {
+        nodeFactory = new NodeFactory(new ObjectMapper());
+        parser = new Parser(new TokenizerFactory(HistoneTokensHolder.getTokens()), nodeFactory);
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        for (String template : TEMPLATES) {
+            ArrayNode ast = parser.parse(template);
+            CompactAst compact = CompactAst.fromJson(ast);
+            assertEquals(template, ast, compact.toJson(nodeFactory));
+            assertEquals(template, compact, CompactAst.fromJson(compact.toJson(nodeFactory)));
+        }
+    }
+
+    @Test
+    public void roundTripJsonValues() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode object = mapper.createObjectNode();
+        object.put("int", Integer.MIN_VALUE);
+        object.put("small", -5);
+        object.put("long", Long.MAX_VALUE);
+        object.put("double", -0.5d);
+        object.set("big", nodeFactory.jsonNumber(new BigInteger("-98765432109876543210")));
+        object.set("decimal", nodeFactory.jsonNumber(new BigDecimal("1.5E-40")));
+        object.putNull("null");
+        object.set("empty", mapper.createArrayNode());
+        object.set("negative", mapper.createArrayNode().add(-1).add("x"));
+        JsonNode[] values = {object, mapper.createArrayNode(), nodeFactory.jsonString("s"), nodeFactory.jsonBoolean(true)};
+        for (JsonNode value : values) {
+            assertEquals(value, CompactAst.fromJson(value).toJson(nodeFactory));
+        }
+    }
+
+    @Test
+    public void navigation() throws Exception {
+        CompactAst ast = CompactAst.fromJson(parser.parse("a{{x.y}}a"));
+        int root = ast.getRoot();
+        assertEquals(CompactAst.ARRAY, ast.tag(root));
+        assertEquals(2, ast.size(root));
+
+        int header = ast.child(root, 0);
+        assertEquals("HISTONE", ast.stringValue(ast.child(header, 0)));
+        assertEquals(CompactAst.OBJECT, ast.tag(ast.child(header, 1)));
+        assertEquals("version", ast.key(ast.child(header, 1), 0));
+
+        int statements = ast.child(root, 1);
+        assertEquals(3, ast.size(statements));
+        assertEquals("a", ast.stringValue(ast.child(statements, 0)));
+        int selector = ast.child(statements, 1);
+        assertTrue(ast.isNode(selector));
+        assertEquals(AstNodeType.SELECTOR, ast.nodeType(selector));
+        assertNull(ast.stringValue(selector));
+        assertEquals(-1, ast.nodeType(ast.child(statements, 0)));
+        // equal strings are stored once
+        assertSame(ast.value(ast.child(statements, 0)), ast.value(ast.child(statements, 2)));
+    }
+
+    @Test
+    public void compactSize() throws Exception {
+        StringBuilder template = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            template.append("<li class=\"item\">{{for x in items}}{{if x.visible}}{{x.name + ' ' + x.price * 2}}{{/if}}{{/for}}</li>\n");
+        }
+        ArrayNode ast = parser.parse(template.toString());
+        CompactAst compact = CompactAst.fromJson(ast);
+        // every JSON node object takes at least 16 bytes, array nodes have backing lists in addition
+        long jsonLowerBound = 16L * countNodes(ast);
+        assertTrue(compact.estimateSize() + " / " + jsonLowerBound, compact.estimateSize() * 2 < jsonLowerBound);
+    }
+
+    @Test
+    public void compileCompactAst() throws Exception {
+        Histone histone = new HistoneBuilder().build();
+        String template = "{{var x = ['a': 1, 'b': 'c']}}{{x.a + 2}}{{x.b}}{{for i in [1,2]}}{{i}}{{/for}}";
+        CompactAst ast = histone.toCompactAST(histone.parseTemplateToAST(template));
+        assertEquals(histone.evaluate(template), histone.evaluateCompiled("", histone.compileCompactAST(ast), nodeFactory.jsonObject()));
+        assertEquals(histone.parseTemplateToAST(template), histone.fromCompactAST(ast));
+    }
+
+    private static int countNodes(JsonNode node) {
+        int count = 1;
+        for (JsonNode child : node) {
+            count += countNodes(child);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.parser;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.junit.Before;
+import org.junit.Test;
+import ru.histone.HistoneException;
+import ru.histone.HistoneTokensHolder;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.tokenizer.TokenizerFactory;
+import ru.histone.tokenizer.TokenizerInput;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ParserStreamingTest {
+    private static final String[] TEMPLATES = {
+            "",
+            "plain text",
+            "a{{x}}b{{* comment {{x}} *}}c{{% literal {{x}} %}}d",
+            "{{var x = [1, 2.5, 'a\\'b', \"c\", true, null]}}{{x + 1 * 3 mod 2}}",
+            "{{if a isNot b and not c}}yes{{elseif d}}maybe{{else}}no{{/if}}",
+            "{{for k:v in [1,2]}}{{k}} {{v}}{{/for}}",
+            "{{macro m(a)}}<{{a}}>{{/macro}}{{m('long text between blocks')}}",
+            "{{}}a{{}}b{{* *}}c",
+            "[[\"HISTONE\", {\"version\": \"1\"}], [\"text\"]]",
+            "[[\"HISTONE\" broken json",
+    };
+
+    private Parser parser;
+
+    @Before
+    public void before() {
+        parser = new Parser(new TokenizerFactory(HistoneTokensHolder.getTokens()), new NodeFactory(new ObjectMapper()));
+    }
+
+    @Test
+    public void streamedParseEqualsStringParse() throws HistoneException {
+        for (String template : TEMPLATES) {
+            ArrayNode expected = parser.parse(template);
+            for (int bufferSize = 1; bufferSize <= 8; bufferSize++) {
+                assertEquals(template + " / " + bufferSize, expected, parser.parse(TokenizerInput.of(new StringReader(template), bufferSize)));
+            }
+            assertEquals(template, expected, parser.parse(new StringReader(template)));
+        }
+    }
+
+    @Test
+    public void longFragmentsAreMerged() throws HistoneException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        String template = text + "{{x}}" + text;
+
+        ArrayNode ast = parser.parse(TokenizerInput.of(new StringReader(template), 16));
+        assertEquals(parser.parse(template), ast);
+        assertEquals(3, ast.get(1).size());
+        assertEquals(text.toString(), ast.get(1).get(0).asText());
+    }
+
+    @Test
+    public void errorLineIsReportedForStreamedInput() throws HistoneException {
+        StringBuilder template = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            template.append("line ").append(i).append('\n');
+        }
+        template.append("{{if}}");
+
+        int expected = lineOfError(template.toString(), null);
+        assertEquals(expected, lineOfError(template.toString(), 4));
+    }
+
+    @Test
+    public void readErrorsAreReported() {
+        Reader failing = new Reader() {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("broken");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try {
+            parser.parse(failing);
+            fail("HistoneException expected");
+        } catch (HistoneException e) {
+            assertEquals("broken", e.getCause().getMessage());
+        }
+    }
+
+    private int lineOfError(String template, Integer bufferSize) throws HistoneException {
+        try {
+            if (bufferSize == null) {
+                parser.parse(template);
+            } else {
+                parser.parse(TokenizerInput.of(new StringReader(template), bufferSize));
+            }
+            fail("ParserException expected");
+            return -1;
+        } catch (ParserException e) {
+            return e.getLineNumber();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.resourceloaders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.histone.Histone;
+import ru.histone.HistoneBuilder;
+import ru.histone.evaluator.nodes.Node;
+import ru.histone.evaluator.nodes.NodeFactory;
+import ru.histone.parser.CompactAst;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CachingResourceLoaderTest {
+    private File dir;
+    private String baseHref;
+    private CountingLoader delegate;
+
+    @Before
+    public void before() throws IOException {
+        dir = File.createTempFile("histone-resources", "");
+        dir.delete();
+        dir.mkdirs();
+        baseHref = dir.toURI().toString();
+        delegate = new CountingLoader(new DefaultResourceLoader());
+    }
+
+    @After
+    public void after() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void fileIsRevalidatedByModificationTime() throws Exception {
+        File file = write("a.tpl", "first");
+        CachingResourceLoader loader = new CachingResourceLoader(delegate, 10, 1000, 0, 0);
+
+        CompactAst ast = loadAst(loader, "a.tpl");
+        assertSame(ast, loadAst(loader, "a.tpl"));
+        assertEquals(1, delegate.loads);
+        // callers reading JSON tree get their own copies
+        Resource first = loader.load("a.tpl", baseHref, new String[]{ContentType.AST});
+        Resource second = loader.load("a.tpl", baseHref, new String[]{ContentType.AST});
+        assertNotSame(((AstResource) first).getContent(), ((AstResource) second).getContent());
+        assertEquals(((AstResource) first).getContent(), ((AstResource) second).getContent());
+        assertEquals(delegate.load("a.tpl", baseHref, new String[]{ContentType.AST}).getBaseHref(),
+                loader.load("a.tpl", baseHref, new String[]{ContentType.AST}).getBaseHref());
+        delegate.loads = 1;
+
+        write("a.tpl", "second");
+        file.setLastModified(file.lastModified() + 2000);
+        CompactAst reloaded = loadAst(loader, "a.tpl");
+        assertNotSame(ast, reloaded);
+        assertTrue(reloaded.toJson(JsonNodeFactory.instance).toString().contains("second"));
+        assertEquals(2, delegate.loads);
+
+        ResourceCacheStatistics statistics = loader.getStatistics();
+        assertEquals(4, statistics.getHits());
+        assertEquals(2, statistics.getMisses());
+        assertEquals(1, statistics.getReloads());
+        assertEquals(1, statistics.getSize());
+    }
+
+    @Test
+    public void fileIsCheckedOncePerInterval() throws Exception {
+        File file = write("a.tpl", "first");
+        CachingResourceLoader loader = new CachingResourceLoader(delegate, 10, 1000, 60000, 0);
+        CompactAst ast = loadAst(loader, "a.tpl");
+        write("a.tpl", "second");
+        file.setLastModified(file.lastModified() + 2000);
+        assertSame(ast, loadAst(loader, "a.tpl"));
+        assertEquals(1, delegate.loads);
+    }
+
+    @Test
+    public void otherResourcesExpire() throws Exception {
+        ResourceLoader remote = new ResourceLoader() {
+            @Override
+            public Resource load(String href, String baseHref, String[] contentTypes, Node... args) {
+                return new AstResource(new NodeFactory(new ObjectMapper()).jsonArray(), resolveFullPath(href, baseHref));
+            }
+
+            @Override
+            public String resolveFullPath(String href, String baseHref) {
+                return "http://example.com/" + href;
+            }
+        };
+        delegate = new CountingLoader(remote);
+
+        CachingResourceLoader loader = new CachingResourceLoader(delegate, 10, 1000, 0, 0);
+        loadAst(loader, "a.tpl");
+        loadAst(loader, "a.tpl");
+        assertEquals(2, delegate.loads);
+
+        loader = new CachingResourceLoader(delegate, 10, 1000, 0, 50);
+        CompactAst ast = loadAst(loader, "a.tpl");
+        assertSame(ast, loadAst(loader, "a.tpl"));
+        assertEquals(3, delegate.loads);
+        Thread.sleep(60);
+        assertNotSame(ast, loadAst(loader, "a.tpl"));
+        assertEquals(4, delegate.loads);
+    }
+
+    @Test
+    public void cacheIsBounded() throws Exception {
+        write("a.tpl", "a");
+        write("b.tpl", "b");
+        write("c.tpl", "c");
+        StringBuilder big = new StringBuilder("{{var x = [0");
+        for (int i = 1; i < 100; i++) {
+            big.append(", ").append(i);
+        }
+        write("big.tpl", big.append("]}}").toString());
+
+        CachingResourceLoader loader = new CachingResourceLoader(delegate, 10, 1000, 0, 0);
+        loadAst(loader, "a.tpl");
+        long weight = loader.getStatistics().getWeight();
+        loader = new CachingResourceLoader(delegate, 2, 3 * weight, 0, 0);
+        delegate.loads = 0;
+
+        loadAst(loader, "a.tpl");
+        loadAst(loader, "b.tpl");
+        loadAst(loader, "a.tpl");
+        loadAst(loader, "c.tpl");
+        assertEquals(1, loader.getStatistics().getEvictions());
+        assertEquals(2, loader.getStatistics().getSize());
+        assertEquals(2 * weight, loader.getStatistics().getWeight());
+
+        // b was least recently used
+        loadAst(loader, "a.tpl");
+        loadAst(loader, "b.tpl");
+        assertEquals(4, delegate.loads);
+
+        // too heavy to be cached
+        loadAst(loader, "big.tpl");
+        loadAst(loader, "big.tpl");
+        assertEquals(6, delegate.loads);
+    }
+
+    @Test
+    public void requestsWithArgumentsAndTextRequestsAreNotCached() throws Exception {
+        write("a.tpl", "a");
+        CachingResourceLoader loader = new CachingResourceLoader(delegate, 10, 1000, 0, 0);
+        Node args = new NodeFactory(new ObjectMapper()).object();
+
+        loader.load("a.tpl", baseHref, new String[]{ContentType.TEXT}).close();
+        loader.load("a.tpl", baseHref, new String[]{ContentType.TEXT}).close();
+        loader.load("a.tpl", baseHref, new String[]{ContentType.AST}, args);
+        loader.load("a.tpl", baseHref, new String[]{ContentType.AST}, args);
+        assertEquals(4, delegate.loads);
+        assertEquals(0, loader.getStatistics().getSize());
+    }
+
+    @Test
+    public void histoneImportsAreCached() throws Exception {
+        write("macros.tpl", "{{macro hello(name)}}Hello, {{name}}!{{/macro}}");
+        HistoneBuilder builder = new HistoneBuilder();
+        builder.setResourceCacheSize(10);
+        Histone histone = builder.build();
+        String template = "{{import 'macros.tpl'}}{{hello('world')}}";
+        for (int i = 0; i < 3; i++) {
+            assertEquals("Hello, world!", histone.evaluate(baseHref, template, null));
+        }
+        assertEquals(1, histone.getResourceCacheStatistics().getMisses());
+        assertEquals(2, histone.getResourceCacheStatistics().getHits());
+
+        assertNull(new HistoneBuilder().build().getResourceCacheStatistics());
+    }
+
+    private CompactAst loadAst(ResourceLoader loader, String href) throws IOException {
+        Resource resource = loader.load(href, baseHref, new String[]{ContentType.TEXT, ContentType.AST});
+        assertNotNull(((AstResource) resource).getContent());
+        return ((AstResource) resource).getCompactContent();
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(dir, name);
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+        return file;
+    }
+
+    private static class CountingLoader implements ResourceLoader {
+        private final ResourceLoader delegate;
+        private int loads;
+
+        CountingLoader(ResourceLoader delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Resource load(String href, String baseHref, String[] contentTypes, Node... args) {
+            loads++;
+            return delegate.load(href, baseHref, contentTypes, args);
+        }
+
+        @Override
+        public String resolveFullPath(String href, String baseHref) {
+            return delegate.resolveFullPath(href, baseHref);
+        }
+    }
+}
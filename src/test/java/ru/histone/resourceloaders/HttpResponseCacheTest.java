@@ -0,0 +1,181 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.resourceloaders;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.histone.Histone;
+import ru.histone.HistoneBuilder;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HttpResponseCacheTest {
+    private static final String LAST_MODIFIED = "Sat, 01 Jan 2000 00:00:00 GMT";
+
+    private Server jetty;
+    private String baseURI;
+    private final ConcurrentMap<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger>();
+
+    @Before
+    public void before() throws Exception {
+        jetty = new Server(0);
+        jetty.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+                requests.putIfAbsent(target, new AtomicInteger());
+                int count = requests.get(target).incrementAndGet();
+                baseRequest.setHandled(true);
+                if (target.startsWith("/max-age")) {
+                    response.setHeader("Cache-Control", "public, max-age=60");
+                } else if (target.startsWith("/etag")) {
+                    response.setHeader("Cache-Control", "no-cache");
+                    response.setHeader("ETag", "\"v1\"");
+                    if ("\"v1\"".equals(request.getHeader("If-None-Match"))) {
+                        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                        return;
+                    }
+                } else if (target.startsWith("/last-modified")) {
+                    response.setHeader("Last-Modified", LAST_MODIFIED);
+                    if (LAST_MODIFIED.equals(request.getHeader("If-Modified-Since"))) {
+                        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                        return;
+                    }
+                } else if (target.startsWith("/swr")) {
+                    response.setHeader("Cache-Control", "max-age=0, stale-while-revalidate=60");
+                } else if (target.startsWith("/no-store")) {
+                    response.setHeader("Cache-Control", "max-age=60, no-store");
+                }
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setContentType("text/plain;charset=utf-8");
+                response.getWriter().print(target + ":" + count);
+            }
+        });
+        jetty.start();
+        baseURI = "http://localhost:" + jetty.getConnectors()[0].getLocalPort() + "/";
+    }
+
+    @After
+    public void after() throws Exception {
+        jetty.stop();
+    }
+
+    @Test
+    public void freshResponsesAreServedFromCache() throws Exception {
+        Histone histone = build(1024 * 1024);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("/max-age:1", load(histone, "max-age"));
+        }
+        assertEquals(1, requests.get("/max-age").get());
+        assertEquals(2, histone.getHttpCacheStatistics().getHits());
+        assertEquals(1, histone.getHttpCacheStatistics().getMisses());
+
+        // request headers are part of cache key
+        String withHeader = "{{loadText('max-age', ['headers': ['X-Test': 'a']])}}";
+        assertEquals("/max-age:2", histone.evaluate(baseURI, withHeader, null));
+        assertEquals("/max-age:2", histone.evaluate(baseURI, withHeader, null));
+        assertEquals(2, requests.get("/max-age").get());
+    }
+
+    @Test
+    public void staleResponsesAreRevalidated() throws Exception {
+        Histone histone = build(1024 * 1024);
+        assertEquals("/etag:1", load(histone, "etag"));
+        assertEquals("/etag:1", load(histone, "etag"));
+        assertEquals("/last-modified:1", load(histone, "last-modified"));
+        assertEquals("/last-modified:1", load(histone, "last-modified"));
+        assertEquals(2, requests.get("/etag").get());
+        assertEquals(2, requests.get("/last-modified").get());
+        assertEquals(2, histone.getHttpCacheStatistics().getRevalidations());
+    }
+
+    @Test
+    public void staleWhileRevalidate() throws Exception {
+        Histone histone = build(1024 * 1024);
+        assertEquals("/swr:1", load(histone, "swr"));
+        assertEquals("/swr:1", load(histone, "swr"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (requests.get("/swr").get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, requests.get("/swr").get());
+        deadline = System.currentTimeMillis() + 5000;
+        while (!load(histone, "swr").equals("/swr:2") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(histone.getHttpCacheStatistics().getStaleHits() >= 2);
+    }
+
+    @Test
+    public void uncacheableResponses() throws Exception {
+        Histone histone = build(1024 * 1024);
+        assertEquals("/no-store:1", load(histone, "no-store"));
+        assertEquals("/no-store:2", load(histone, "no-store"));
+        assertEquals("/plain:1", load(histone, "plain"));
+        assertEquals("/plain:2", load(histone, "plain"));
+        assertEquals(0, histone.getHttpCacheStatistics().getSize());
+
+        assertNull(new HistoneBuilder().build().getHttpCacheStatistics());
+    }
+
+    @Test
+    public void overrides() throws Exception {
+        HistoneBuilder builder = new HistoneBuilder();
+        builder.setHttpCacheSize(1024 * 1024);
+        builder.setHttpCacheOverride(baseURI, 0);
+        builder.setHttpCacheOverride(baseURI + "plain", 60000);
+        Histone histone = builder.build();
+        assertEquals("/plain:1", load(histone, "plain"));
+        assertEquals("/plain:1", load(histone, "plain"));
+        assertEquals("/max-age:1", load(histone, "max-age"));
+        assertEquals("/max-age:2", load(histone, "max-age"));
+    }
+
+    @Test
+    public void sizeIsBounded() throws Exception {
+        Histone histone = build(400);
+        load(histone, "max-age/1");
+        load(histone, "max-age/2");
+        load(histone, "max-age/3");
+        HttpCacheStatistics statistics = histone.getHttpCacheStatistics();
+        assertTrue(statistics.toString(), statistics.getBytes() <= 400);
+        assertTrue(statistics.toString(), statistics.getEvictions() > 0);
+        assertEquals("/max-age/3:1", load(histone, "max-age/3"));
+        assertEquals("/max-age/1:2", load(histone, "max-age/1"));
+    }
+
+    private Histone build(long cacheSize) throws Exception {
+        HistoneBuilder builder = new HistoneBuilder();
+        builder.setHttpCacheSize(cacheSize);
+        return builder.build();
+    }
+
+    private String load(Histone histone, String path) throws Exception {
+        return histone.evaluate(baseURI, "{{loadText('" + path + "')}}", null);
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.resourceloaders;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.histone.Histone;
+import ru.histone.HistoneBuilder;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PooledHttpConnectionTest {
+    private Server jetty;
+    private String baseURI;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    @Before
+    public void before() throws Exception {
+        jetty = new Server(0);
+        jetty.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+                clientPorts.add(request.getRemotePort());
+                int current = active.incrementAndGet();
+                synchronized (maxActive) {
+                    maxActive.set(Math.max(maxActive.get(), current));
+                }
+                try {
+                    Thread.sleep(target.startsWith("/slow") ? 200 : target.startsWith("/hang") ? 3000 : 0);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    active.decrementAndGet();
+                }
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setContentType("text/plain;charset=utf-8");
+                response.getWriter().print("response" + target);
+                baseRequest.setHandled(true);
+            }
+        });
+        jetty.start();
+        baseURI = "http://localhost:" + jetty.getConnectors()[0].getLocalPort() + "/";
+    }
+
+    @After
+    public void after() throws Exception {
+        jetty.stop();
+    }
+
+    @Test
+    public void concurrentRequestsUseSeveralConnections() throws Exception {
+        HistoneBuilder builder = new HistoneBuilder();
+        builder.setHttpMaxConnectionsPerRoute(4);
+        final Histone histone = builder.build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 8; i++) {
+                // distinct URLs, identical concurrent requests would be coalesced into one
+                final String path = "slow/" + i;
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return histone.evaluate(baseURI, "{{loadText('" + path + "')}}", null);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals("response/slow/" + i, results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue("max concurrent requests " + maxActive.get(), maxActive.get() > 1);
+        assertTrue(maxActive.get() <= 4);
+        assertTrue(clientPorts.size() <= 4);
+    }
+
+    @Test
+    public void connectionsAreReusedAndShared() throws Exception {
+        HistoneBuilder builder = new HistoneBuilder();
+        Histone first = builder.build();
+        Histone second = builder.build();
+        for (int i = 0; i < 5; i++) {
+            assertEquals("response/a", first.evaluate(baseURI, "{{loadText('a')}}", null));
+            assertEquals("response/b", second.evaluate(baseURI, "{{loadText('b')}}", null));
+        }
+        assertEquals(1, clientPorts.size());
+
+        PooledHttpConnectionManager manager = (PooledHttpConnectionManager) builder.getHttpClientConnectionManager();
+        assertSame(manager, builder.getHttpClientConnectionManager());
+        assertEquals(1, manager.getTotalStats().getAvailable());
+        assertEquals(0, manager.getTotalStats().getLeased());
+        manager.shutdown();
+    }
+
+    @Test
+    public void idleConnectionsAreEvicted() throws Exception {
+        PooledHttpConnectionManager manager = new PooledHttpConnectionManager(4, 2, 100);
+        HistoneBuilder builder = new HistoneBuilder();
+        builder.setHttpClientConnectionManager(manager);
+        Histone histone = builder.build();
+        assertEquals("response/a", histone.evaluate(baseURI, "{{loadText('a')}}", null));
+        assertEquals(1, manager.getTotalStats().getAvailable());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (manager.getTotalStats().getAvailable() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, manager.getTotalStats().getAvailable());
+        manager.shutdown();
+    }
+
+    @Test
+    public void readTimeout() throws Exception {
+        HistoneBuilder builder = new HistoneBuilder();
+        builder.setHttpReadTimeout(500);
+        Histone histone = builder.build();
+        assertEquals("response/a", histone.evaluate(baseURI, "{{loadText('a')}}", null));
+        long start = System.currentTimeMillis();
+        assertEquals("", histone.evaluate(baseURI, "{{loadText('hang')}}", null));
+        assertTrue(System.currentTimeMillis() - start < 2500);
+    }
+}
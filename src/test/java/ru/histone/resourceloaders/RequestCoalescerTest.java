@@ -0,0 +1,185 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.resourceloaders;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.histone.Histone;
+import ru.histone.HistoneBuilder;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RequestCoalescerTest {
+    private static final int THREADS = 8;
+
+    private Server jetty;
+    private String baseURI;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile CountDownLatch release;
+    private ExecutorService executor;
+
+    @Before
+    public void before() throws Exception {
+        release = new CountDownLatch(1);
+        executor = Executors.newFixedThreadPool(THREADS);
+        jetty = new Server(0);
+        jetty.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+                int count = requests.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                response.setContentType("text/plain;charset=utf-8");
+                response.setStatus(HttpServletResponse.SC_OK);
+                baseRequest.setHandled(true);
+                response.getWriter().print(request.getMethod() + target + ":" + count);
+            }
+        });
+        jetty.start();
+        baseURI = "http://localhost:" + jetty.getConnectors()[0].getLocalPort() + "/";
+    }
+
+    @After
+    public void after() throws Exception {
+        release.countDown();
+        executor.shutdownNow();
+        jetty.stop();
+    }
+
+    @Test
+    public void concurrentLoadsShareOneRequest() throws Exception {
+        HistoneBuilder builder = new HistoneBuilder();
+        DefaultResourceLoader loader = new DefaultResourceLoader();
+        builder.setResourceLoader(loader);
+        Histone histone = builder.build();
+
+        List<Future<String>> results = render(histone, "{{loadText('data')}}");
+        awaitCoalesced(loader.getRequestCoalescer(), THREADS - 1);
+        release.countDown();
+        for (Future<String> result : results) {
+            assertEquals("GET/data:1", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, requests.get());
+        assertEquals(0, loader.getRequestCoalescer().getInFlight());
+
+        // nothing is cached after request completes
+        assertEquals("GET/data:2", histone.evaluate(baseURI, "{{loadText('data')}}", null));
+    }
+
+    @Test
+    public void postIsNotCoalesced() throws Exception {
+        Histone histone = new HistoneBuilder().build();
+        List<Future<String>> results = render(histone, "{{loadText('data', ['method': 'POST'])}}");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (requests.get() < THREADS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(THREADS, requests.get());
+        release.countDown();
+        for (Future<String> result : results) {
+            assertTrue(result.get(5, TimeUnit.SECONDS).startsWith("POST/data:"));
+        }
+    }
+
+    @Test
+    public void errorsArePropagatedToAllCallers() throws Exception {
+        final RequestCoalescer<String> coalescer = new RequestCoalescer<String>();
+        final IOException failure = new IOException("failed");
+        List<Future<Exception>> results = new ArrayList<Future<Exception>>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(new Callable<Exception>() {
+                @Override
+                public Exception call() throws Exception {
+                    try {
+                        coalescer.execute("key", new Callable<String>() {
+                            @Override
+                            public String call() throws Exception {
+                                release.await(5, TimeUnit.SECONDS);
+                                throw failure;
+                            }
+                        });
+                        return null;
+                    } catch (IOException e) {
+                        return e;
+                    }
+                }
+            }));
+        }
+        awaitCoalesced(coalescer, THREADS - 1);
+        release.countDown();
+        for (Future<Exception> result : results) {
+            assertSame(failure, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, coalescer.getExecutions());
+
+        try {
+            coalescer.execute("key", new Callable<String>() {
+                @Override
+                public String call() {
+                    throw new IllegalStateException("again");
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("again", e.getMessage());
+        }
+        assertEquals(2, coalescer.getExecutions());
+    }
+
+    private List<Future<String>> render(final Histone histone, final String template) {
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return histone.evaluate(baseURI, template, null);
+                }
+            }));
+        }
+        return results;
+    }
+
+    private void awaitCoalesced(RequestCoalescer<?> coalescer, long coalesced) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (coalescer.getCoalesced() < coalesced && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(coalesced, coalescer.getCoalesced());
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ *    Copyright 2013 MegaFon
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.histone.tokenizer;
+
+import org.junit.Test;
+import ru.histone.HistoneTokensHolder;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TokenMatchersTest {
+    private static final String[] INPUTS = {
+            "if iff if$ if_ if1 ifé if́ if",
+            "isNot isNotx is isx <> != <= >= < > = <<=",
+            " \t\n\u000B\f\r x    ",
+            "1 12 1.5 .5 1. 1.e3 1e3 1e+3 1e-3 1e 1e+ 1.5e3 .5E-2 1.5.3 12.x 0x1f",
+            "'a' 'a\\'b' 'a\\\\' 'a\\\nb' 'a\nb' 'unclosed \"a\\\"b\" \"\" '' \"a\\ \"",
+            "ident _ident $ident ident1 1ident идент a-b",
+            "[ ] ( ) ? : , . .. + - * / {{ }} {{* *}} {{% %}} {",
+    };
+
+    private static final String[] TEMPLATES = {
+            "fragment{{ident}}fragment",
+            "a{{* comment {{x}} *}}b{{% literal {{x}} %}}c",
+            "{{var x = [1, 2.5, 'a\\'b', \"c\", true, null]}}{{x.0 + x.1 * 3 mod 2}}",
+            "{{if a isNot b and not c}}{{else if d <> e}}{{/if}}",
+            "{{for k:v in [1,2]}}{{k}} {{v}} {{/for}}",
+            "{{macro m(a)}}{{a.toString()}}{{/macro}}{{m('x')}}",
+            "{{x @ y}} {{ # }} {{1e}} {{'unclosed}} }} {{{{x}}}}",
+            "{{x | idént}}текст{{* незакрытый",
+            "{{a ? b : c}}{{self.index}}{{this}}{{global.baseURI}}{{import 'x'}}",
+            "",
+            "{{",
+    };
+
+    @Test
+    public void matchersAreEquivalentToRegexps() {
+        for (TokenDef def : HistoneTokensHolder.getTokens()) {
+            TokenMatcher matcher = def.getMatcher();
+            TokenMatcher regexp = TokenMatchers.regexp(matcher.getRegexp());
+            for (String text : INPUTS) {
+                TokenizerInput input = TokenizerInput.of(text);
+                for (int offset = 0; offset < input.length(); offset++) {
+                    String message = def.getType() + " at " + offset + " of '" + text + "'";
+                    int expected = regexp.match(input, offset);
+                    assertEquals(message, expected, matcher.match(input, offset));
+                    assertEquals(message, expected, matcher.match(TokenizerInput.of(new StringReader(text), 1), offset));
+                    if (expected >= 0) {
+                        assertTrue(message, matcher.mayStartWith(input.charAt(offset)));
+                        assertEquals(message, text.substring(offset, expected), matcher.content(input, offset, expected));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tokenizerMatchesRegexpTokenizer() {
+        List<TokenDef> regexpTokens = new ArrayList<TokenDef>();
+        for (TokenDef def : HistoneTokensHolder.getTokens()) {
+            regexpTokens.add(new TokenDef(def.getType(), def.getKind(), def.getContexts(), def.getTransitionCallback(), def.getRegexp()));
+        }
+        TokenizerFactory expectedFactory = new TokenizerFactory(regexpTokens);
+        TokenizerFactory actualFactory = new TokenizerFactory(HistoneTokensHolder.getTokens());
+
+        for (String template : TEMPLATES) {
+            Tokenizer expected = expectedFactory.match(template);
+            Tokenizer actual = actualFactory.match(template);
+            while (true) {
+                Token expectedToken = expected.next();
+                Token actualToken = actual.next();
+                String message = "'" + template + "'";
+                assertEquals(message, expectedToken.getType(), actualToken.getType());
+                assertEquals(message, expectedToken.getPos(), actualToken.getPos());
+                assertEquals(message, expectedToken.getContent(), actualToken.getContent());
+                assertEquals(message, expected.getCurrentContext(), actual.getCurrentContext());
+                if (expectedToken.getType() == TokenType.T_EOF) {
+                    break;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void fixedTokensDontCopyInput() {
+        String input = "{{if x}}";
+        Tokenizer tokenizer = new TokenizerFactory(HistoneTokensHolder.getTokens()).match(input);
+        Token blockStart = tokenizer.next(TokenType.T_BLOCK_START);
+        Token ifToken = tokenizer.next(TokenType.EXPR_IF);
+
+        Tokenizer other = new TokenizerFactory(HistoneTokensHolder.getTokens()).match("{{if y}}");
+        assertSame(blockStart.getContent(), other.next(TokenType.T_BLOCK_START).getContent());
+        assertSame(ifToken.getContent(), other.next(TokenType.EXPR_IF).getContent());
+    }
+}